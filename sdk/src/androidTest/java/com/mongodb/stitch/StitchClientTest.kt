@@ -10,14 +10,21 @@ import com.mongodb.stitch.android.StitchClient
 import com.mongodb.stitch.android.auth.anonymous.AnonymousAuthProvider
 import com.mongodb.stitch.android.auth.oauth2.facebook.FacebookAuthProviderInfo
 import com.mongodb.stitch.android.auth.oauth2.google.GoogleAuthProviderInfo
+import com.mongodb.stitch.android.http.OkHttpTransport
 import io.appflate.restmock.MatchableCall
 import io.appflate.restmock.RESTMockServer
 import io.appflate.restmock.RESTMockServerStarter
+import io.appflate.restmock.RequestsVerifier
 import io.appflate.restmock.android.AndroidAssetsFileParser
 import io.appflate.restmock.android.AndroidLogger
 import io.appflate.restmock.utils.RequestMatchers.pathContains
 import io.appflate.restmock.utils.RequestMatchers.pathEndsWith
+import okhttp3.mockwebserver.RecordedRequest
 import org.bson.Document
+import org.hamcrest.CoreMatchers.allOf
+import org.hamcrest.Description
+import org.hamcrest.Matcher
+import org.hamcrest.TypeSafeMatcher
 import org.json.JSONObject
 import org.junit.Before
 import org.junit.Test
@@ -52,6 +59,9 @@ class StitchClientTest {
 
         const val FAKE_SENDER_ID = "595341599960"
 
+        const val FAKE_REFRESHED_ACCESS_TOKEN = "fake-refreshed-access-token"
+        const val CONCURRENT_REQUESTS = 5
+
         const val SHARED_PREFERENCES_NAME = "com.mongodb.stitch.sdk.push.SharedPreferences.%s"
         const val PREF_CONFIGS = "gcm.configs"
         const val GCM_KEY = "gcm"
@@ -102,6 +112,17 @@ class StitchClientTest {
                 "deviceId" to FAKE_DEVICE_ID
         )).toString()
 
+        /** Mock data for a refreshed access token */
+        val mockRefreshData = JSONObject(mapOf(
+                "accessToken" to FAKE_REFRESHED_ACCESS_TOKEN
+        )).toString()
+
+        /** Mock data for a request rejected with an expired access token */
+        val mockInvalidSessionData = JSONObject(mapOf(
+                "error" to "invalid session",
+                "errorCode" to "InvalidSession"
+        )).toString()
+
         /** Mock data for pipeline execution from [StitchClient.executePipeline] */
         val mockPipelineData = JSONObject(mapOf(
                 "result" to arrayOf(FAKE_PIPELINE_LITERAL_FOO, FAKE_PIPELINE_LITERAL_BAR)
@@ -333,4 +354,78 @@ class StitchClientTest {
                 listOf(FAKE_PIPELINE_LITERAL_FOO, FAKE_PIPELINE_LITERAL_BAR))
         )
     }
+
+    /**
+     * Test pipeline flow over the pooled OkHttp transport
+     */
+    @Test
+    fun testPipelineWithOkHttpTransport() {
+        val okHttpClient = StitchClient.Builder(instrumentationCtx)
+                .withAppId("dummy-app")
+                .withBaseUrl(RESTMockServer.getUrl())
+                .withTransport(OkHttpTransport())
+                .build()
+
+        // log in anonymously to be able to execute pipelines
+        await(okHttpClient.logInWithProvider(AnonymousAuthProvider()))
+
+        // execute a new pipeline and assert that it contains the mocked data
+        val pipelineData = await(okHttpClient.executePipeline(PipelineStage("literal", mapOf(
+                "items" to listOf(FAKE_PIPELINE_LITERAL_FOO, FAKE_PIPELINE_LITERAL_BAR)
+        ))))
+
+        assertThat(pipelineData.containsAll(
+                listOf(FAKE_PIPELINE_LITERAL_FOO, FAKE_PIPELINE_LITERAL_BAR))
+        )
+    }
+
+    /**
+     * Test that concurrent requests rejected with an expired access token share one refresh
+     */
+    @Test
+    fun testConcurrentRequestsShareTokenRefresh() {
+        // log in anonymously to be able to execute pipelines
+        await(stitchClient!!.logInWithProvider(AnonymousAuthProvider()))
+
+        // reject the access token from logging in, and only accept the refreshed one
+        RESTMockServer.reset()
+        RESTMockServer.whenPOST(pathEndsWith("newAccessToken")).thenReturn(
+                mockResponseBuilder(mockRefreshData)
+        )
+        RESTMockServer.whenPOST(allOf(pathEndsWith("pipeline"), hasBearerToken(FAKE_ACCESS_TOKEN)))
+                .thenReturn(mockResponseBuilder(mockInvalidSessionData, 401))
+        RESTMockServer.whenPOST(allOf(pathEndsWith("pipeline"), hasBearerToken(FAKE_REFRESHED_ACCESS_TOKEN)))
+                .thenReturn(mockResponseBuilder(mockPipelineData))
+
+        // execute distinct pipelines at once so that they are not deduplicated
+        val pipelines = (1..CONCURRENT_REQUESTS).map {
+            stitchClient!!.executePipeline(PipelineStage("literal", mapOf("items" to listOf(it))))
+        }
+        pipelines.forEach {
+            assertThat(await(it).containsAll(listOf(FAKE_PIPELINE_LITERAL_FOO, FAKE_PIPELINE_LITERAL_BAR)))
+        }
+
+        // assert that the access token was refreshed once and every request was sent again with it
+        assertThat(stitchClient!!.tokenRefreshCount == 1)
+        assertThat(stitchClient!!.auth.accessToken == FAKE_REFRESHED_ACCESS_TOKEN)
+        RequestsVerifier.verifyRequest(pathEndsWith("newAccessToken")).invoked(1)
+        RequestsVerifier.verifyRequest(
+                allOf(pathEndsWith("pipeline"), hasBearerToken(FAKE_REFRESHED_ACCESS_TOKEN))
+        ).invoked(CONCURRENT_REQUESTS)
+    }
+
+    /**
+     * @param[token] the access token a request must be authorized with
+     *
+     * @return a matcher of requests that are authorized with the token
+     */
+    private fun hasBearerToken(token: String): Matcher<RecordedRequest> =
+            object : TypeSafeMatcher<RecordedRequest>() {
+                override fun matchesSafely(request: RecordedRequest) =
+                        request.getHeader("Authorization") == "Bearer $token"
+
+                override fun describeTo(description: Description) {
+                    description.appendText("authorized with $token")
+                }
+            }
 }
@@ -0,0 +1,72 @@
+package com.mongodb.stitch.android
+
+import android.support.test.runner.AndroidJUnit4
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test cancelling calls and timing out their deadlines.
+ */
+@RunWith(AndroidJUnit4::class)
+class CancellationTokenTest {
+    private val scheduler = Executors.newSingleThreadScheduledExecutor()
+
+    @After
+    fun tearDown() {
+        scheduler.shutdownNow()
+    }
+
+    @Test
+    fun testCancelRunsListeners() {
+        val token = CancellationToken()
+        var runs = 0
+        token.addListener { runs++ }
+        token.cancel()
+        token.cancel()
+        assertTrue(token.isCancelled)
+        assertEquals(1, runs)
+
+        // Listeners added once cancelled run right away
+        token.addListener { runs++ }
+        assertEquals(2, runs)
+        assertEquals("Request was cancelled", token.newCancelledException().message)
+    }
+
+    @Test
+    fun testCallTokenFollowsCallerToken() {
+        assertNull(CancellationToken.forCall(null, scheduler))
+        assertNull(CancellationToken.forCall(RequestOptions(), scheduler))
+
+        val caller = CancellationToken()
+        val call = CancellationToken.forCall(RequestOptions().withCancellationToken(caller), scheduler)
+        caller.cancel()
+        assertTrue(call.isCancelled)
+        assertFalse(call.isDeadlineExceeded)
+
+        // A released call no longer follows the caller
+        val otherCaller = CancellationToken()
+        val released = CancellationToken.forCall(RequestOptions().withCancellationToken(otherCaller), scheduler)
+        released.release()
+        otherCaller.cancel()
+        assertFalse(released.isCancelled)
+    }
+
+    @Test
+    fun testCallTokenTimesOut() {
+        val call = CancellationToken.forCall(RequestOptions().withTimeout(10, TimeUnit.MILLISECONDS), scheduler)
+        val cancelled = CountDownLatch(1)
+        call.addListener { cancelled.countDown() }
+
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS))
+        assertTrue(call.isDeadlineExceeded)
+        assertEquals("Request exceeded its deadline", call.newCancelledException().message)
+    }
+}
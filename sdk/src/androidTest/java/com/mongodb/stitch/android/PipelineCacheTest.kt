@@ -0,0 +1,88 @@
+package com.mongodb.stitch.android
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import com.google.android.gms.tasks.Task
+import com.google.android.gms.tasks.Tasks
+import com.mongodb.stitch.android.http.HttpResponse
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test serving read-only pipeline results from memory and disk, and invalidating them.
+ */
+@RunWith(AndroidJUnit4::class)
+class PipelineCacheTest {
+    companion object {
+        const val SCOPE = "dummy-app/fake-user-id"
+        const val CONTENT_TYPE = "application/json"
+        val NAMESPACES = setOf("mongodb1/db.items")
+    }
+
+    private val context = InstrumentationRegistry.getContext()
+    private val directExecutor = Executor { it.run() }
+
+    private var fetches = 0
+
+    private val fetcher = PipelineCache.Fetcher {
+        fetches++
+        Tasks.forResult(HttpResponse(200, mapOf("Content-Type" to CONTENT_TYPE), "{\"result\": [$fetches]}".toByteArray()))
+    }
+
+    private fun get(cache: PipelineCache, body: String = "[{\"action\": \"find\"}]"): Task<HttpResponse> =
+            cache.get(SCOPE, body.toByteArray(), CONTENT_TYPE, NAMESPACES, fetcher, directExecutor)
+
+    @Before
+    fun setup() {
+        PipelineCache(context).clear()
+    }
+
+    @Test
+    fun testServesFromMemory() {
+        val cache = PipelineCache(context).withDiskBudget(0)
+        assertEquals("{\"result\": [1]}", String(get(cache).result.body))
+        assertEquals("{\"result\": [1]}", String(get(cache).result.body))
+        assertEquals(1, fetches)
+
+        // Different pipelines have their own results
+        get(cache, "[{\"action\": \"count\"}]")
+        assertEquals(2, fetches)
+    }
+
+    @Test
+    fun testServesFromDisk() {
+        get(PipelineCache(context))
+        assertEquals("{\"result\": [1]}", String(get(PipelineCache(context)).result.body))
+        assertEquals(1, fetches)
+    }
+
+    @Test
+    fun testInvalidate() {
+        val cache = PipelineCache(context)
+        get(cache)
+
+        // Results on disk stop being used before their deletion runs
+        val pendingDeletes = mutableListOf<Runnable>()
+        cache.invalidate(NAMESPACES, Executor { pendingDeletes.add(it) })
+        assertEquals(1, pendingDeletes.size)
+        assertEquals("{\"result\": [2]}", String(get(cache).result.body))
+
+        // Other namespaces are kept
+        cache.invalidate(setOf("mongodb1/db.other"), directExecutor)
+        get(cache)
+        assertEquals(2, fetches)
+    }
+
+    @Test
+    fun testExpires() {
+        val cache = PipelineCache(context).withTimeToLive(0, TimeUnit.MILLISECONDS)
+        get(cache)
+        Thread.sleep(5)
+        get(cache)
+        assertEquals(2, fetches)
+    }
+}
@@ -0,0 +1,72 @@
+package com.mongodb.stitch.android
+
+import android.support.test.runner.AndroidJUnit4
+import com.google.android.gms.tasks.Task
+import com.google.android.gms.tasks.TaskCompletionSource
+import com.google.android.gms.tasks.Tasks
+import com.mongodb.stitch.android.http.HttpMethod
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.Executor
+
+/**
+ * Test sharing a single network call between identical in-flight requests.
+ */
+@RunWith(AndroidJUnit4::class)
+class RequestDeduplicatorTest {
+    private val deduplicator = RequestDeduplicator(Executor { it.run() })
+
+    private var started = 0
+
+    private fun starter(source: TaskCompletionSource<String>) = RequestDeduplicator.Starter<String> {
+        started++
+        source.task
+    }
+
+    @Test
+    fun testJoinsIdenticalRequestInFlight() {
+        val source = TaskCompletionSource<String>()
+        val first = deduplicator.execute(HttpMethod.POST, "pipeline", "{a: 1}".toByteArray(), starter(source))
+        val second = deduplicator.execute(HttpMethod.POST, "pipeline", "{a: 1}".toByteArray(), starter(source))
+
+        assertSame(first, second)
+        assertEquals(1, started)
+
+        source.setResult("result")
+        assertEquals("result", second.result)
+    }
+
+    @Test
+    fun testSeparatesDifferentRequests() {
+        val source = TaskCompletionSource<String>()
+        deduplicator.execute(HttpMethod.POST, "pipeline", "{a: 1, b: 1}".toByteArray(), starter(source))
+        deduplicator.execute(HttpMethod.POST, "pipeline", "{b: 1, a: 1}".toByteArray(), starter(source))
+        deduplicator.execute(HttpMethod.GET, "pipeline", "{a: 1, b: 1}".toByteArray(), starter(source))
+        deduplicator.execute(HttpMethod.POST, "auth", "{a: 1, b: 1}".toByteArray(), starter(source))
+
+        assertEquals(4, started)
+    }
+
+    @Test
+    fun testForgetsCompletedRequests() {
+        val first = TaskCompletionSource<String>()
+        val firstTask = deduplicator.execute(HttpMethod.GET, "me", null, starter(first))
+        first.setException(RuntimeException("failed"))
+
+        val second = TaskCompletionSource<String>()
+        val secondTask = deduplicator.execute(HttpMethod.GET, "me", null, starter(second))
+
+        assertNotSame(firstTask, secondTask)
+        assertEquals(2, started)
+
+        val joined: Task<String> = deduplicator.execute(HttpMethod.GET, "me", null, RequestDeduplicator.Starter {
+            started++
+            Tasks.forResult("cached")
+        })
+        assertSame(secondTask, joined)
+        assertEquals(2, started)
+    }
+}
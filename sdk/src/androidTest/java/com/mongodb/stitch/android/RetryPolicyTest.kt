@@ -0,0 +1,59 @@
+package com.mongodb.stitch.android
+
+import android.support.test.runner.AndroidJUnit4
+import com.mongodb.stitch.android.StitchException.StitchRequestException
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test deciding when to retry a request and when to stop sending requests to an endpoint.
+ */
+@RunWith(AndroidJUnit4::class)
+class RetryPolicyTest {
+    private val policy = RetryPolicy()
+            .withMaxAttempts(3)
+            .withBackoff(100, 1000, 2.0, TimeUnit.MILLISECONDS)
+
+    @Test
+    fun testRetriesTransientFailures() {
+        val retryable = StitchRequestException(RuntimeException("network"), true)
+        for (attempt in 1..2) {
+            val delay = policy.getRetryDelayMillis(attempt, retryable)
+            assertTrue(delay >= 0 && delay < 100L shl (attempt - 1))
+        }
+        assertEquals(-1, policy.getRetryDelayMillis(3, retryable))
+    }
+
+    @Test
+    fun testDoesNotRetryOtherFailures() {
+        assertEquals(-1, policy.getRetryDelayMillis(1, StitchRequestException(RuntimeException("bad request"))))
+        assertEquals(-1, policy.getRetryDelayMillis(1, IllegalArgumentException()))
+    }
+
+    @Test
+    fun testHonorsRetryAfter() {
+        assertEquals(500, policy.getRetryDelayMillis(1, StitchRequestException("busy", true, 500L)))
+        assertEquals(-1, policy.getRetryDelayMillis(1, StitchRequestException("busy", true, 5000L)))
+    }
+
+    @Test
+    fun testCircuitBreaker() {
+        val breaker = CircuitBreaker("pipeline", 2, TimeUnit.MINUTES.toMillis(1))
+        breaker.onFailure()
+        assertTrue(breaker.allowRequest())
+        breaker.onFailure()
+        assertFalse(breaker.allowRequest())
+
+        val probing = CircuitBreaker("pipeline", 1, 0)
+        probing.onFailure()
+        assertTrue(probing.allowRequest())
+        assertFalse(probing.allowRequest())
+        probing.onSuccess()
+        assertTrue(probing.allowRequest())
+        assertTrue(probing.allowRequest())
+    }
+}
@@ -0,0 +1,57 @@
+package com.mongodb.stitch.android
+
+import android.support.test.runner.AndroidJUnit4
+import com.mongodb.stitch.android.StitchException.StitchServiceException
+import com.mongodb.stitch.android.http.ContentTypes
+import com.mongodb.stitch.android.http.Headers
+import com.mongodb.stitch.android.http.HttpResponse
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Test describing unsuccessful responses as exceptions.
+ */
+@RunWith(AndroidJUnit4::class)
+class StitchErrorTest {
+
+    private fun jsonResponse(statusCode: Int, body: String, headers: Map<String, String> = emptyMap()) =
+            HttpResponse(statusCode, headers + (Headers.CONTENT_TYPE to ContentTypes.APPLICATION_JSON_UTF8), body.toByteArray())
+
+    @Test
+    fun testParsesStitchError() {
+        val error = StitchError.parseRequestError(
+                jsonResponse(401, """{"error": "invalid session", "errorCode": "InvalidSession"}"""))
+
+        assertTrue(error is StitchServiceException)
+        assertEquals("invalid session", error.message)
+        assertEquals(StitchError.ErrorCode.INVALID_SESSION, (error as StitchServiceException).errorCode)
+        assertFalse(error.isRetryable)
+    }
+
+    @Test
+    fun testDescribesJsonBodyWithoutStitchError() {
+        // Such as a gateway in front of Stitch that is unavailable
+        val body = """{"message": "upstream unavailable"}"""
+        val error = StitchError.parseRequestError(jsonResponse(503, body, mapOf(Headers.RETRY_AFTER to "2")))
+
+        assertFalse(error is StitchServiceException)
+        assertEquals(body, error.message)
+        assertTrue(error.isRetryable)
+        assertEquals(2000L, error.retryAfterMillis)
+    }
+
+    @Test
+    fun testDescribesMalformedJsonBody() {
+        val error = StitchError.parseRequestError(jsonResponse(502, "<html>Bad Gateway</html>"))
+
+        assertEquals("<html>Bad Gateway</html>", error.message)
+        assertTrue(error.isRetryable)
+        assertNull(error.retryAfterMillis)
+
+        assertFalse(StitchError.parseRequestError(jsonResponse(400, "[]")).isRetryable)
+    }
+}
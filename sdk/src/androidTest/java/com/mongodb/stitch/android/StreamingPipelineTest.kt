@@ -0,0 +1,111 @@
+package com.mongodb.stitch.android
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import com.mongodb.stitch.android.services.mongodb.FakeStitchTransport
+import com.mongodb.stitch.android.services.mongodb.await
+import com.mongodb.stitch.android.services.mongodb.awaitFailure
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.IOException
+import java.util.Collections
+
+/**
+ * Test handing out the elements of a pipeline result while its response body is read.
+ */
+@RunWith(AndroidJUnit4::class)
+class StreamingPipelineTest {
+    companion object {
+        val WIRE_FORMATS = listOf(WireFormat.EXTENDED_JSON, WireFormat.BSON)
+    }
+
+    private val transport = FakeStitchTransport()
+
+    private val elements: MutableList<Any> = Collections.synchronizedList(ArrayList())
+
+    private fun newClient(wireFormat: WireFormat): StitchClient {
+        elements.clear()
+        transport.streamedBytes.set(0)
+        return transport.newClient(InstrumentationRegistry.getContext(), wireFormat = wireFormat)
+    }
+
+    private fun literal(items: List<Any>): List<PipelineStage> {
+        val args = HashMap<String, Any>()
+        args[PipelineStage.LiteralStage.PARAMETER_ITEMS] = items
+        return listOf(PipelineStage(PipelineStage.LiteralStage.NAME, args))
+    }
+
+    private fun documents(ids: IntRange, padding: Int = 0) =
+            ids.map { Document("_id", it).append("padding", "x".repeat(padding)) }
+
+    @Test
+    fun testHandsOutElementsWhileReading() {
+        for (wireFormat in WIRE_FORMATS) {
+            val client = newClient(wireFormat)
+            val items = documents(1..200, 1000) + "text" + 7
+            val readAtFirstElement = ArrayList<Int>()
+            val listener = ResultListener<Any> {
+                if (elements.isEmpty()) {
+                    readAtFirstElement.add(transport.streamedBytes.get())
+                }
+                elements.add(it)
+            }
+
+            await(client.executePipeline(literal(items), null, listener))
+
+            assertEquals(items, elements)
+            // The first element was handed out before most of the body was read
+            assertTrue(readAtFirstElement.single() < transport.streamedBytes.get() / 2)
+        }
+    }
+
+    @Test
+    fun testHandsOutNothingForEmptyResult() {
+        for (wireFormat in WIRE_FORMATS) {
+            val client = newClient(wireFormat)
+
+            await(client.executePipeline(literal(emptyList()), null, ResultListener<Any> { elements.add(it) }))
+
+            assertEquals(emptyList<Any>(), elements)
+            assertTrue(transport.streamedBytes.get() > 0)
+        }
+    }
+
+    @Test
+    fun testFailsOnTruncatedBody() {
+        transport.truncatedBytes = 10
+        for (wireFormat in WIRE_FORMATS) {
+            val client = newClient(wireFormat)
+            val items = documents(1..5)
+
+            val failure = awaitFailure(client.executePipeline(literal(items), null, ResultListener<Any> { elements.add(it) }))
+
+            assertTrue(failure is IOException)
+            // The elements read in full before the body ended were handed out
+            assertTrue(elements.size < items.size)
+            assertEquals(items.take(elements.size), elements)
+        }
+    }
+
+    @Test
+    fun testFailsWhenListenerThrows() {
+        for (wireFormat in WIRE_FORMATS) {
+            val client = newClient(wireFormat)
+            val thrown = IllegalStateException("listener failed")
+
+            val failure = awaitFailure(client.executePipeline(literal(documents(1..5)), null, ResultListener<Any> {
+                elements.add(it)
+                if (elements.size == 2) {
+                    throw thrown
+                }
+            }))
+
+            // No element is handed out after the listener threw
+            assertEquals(thrown, failure)
+            assertEquals(documents(1..2), elements)
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.mongodb.stitch.android
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import android.util.Base64
+import com.mongodb.stitch.android.auth.anonymous.AnonymousAuthProvider
+import com.mongodb.stitch.android.services.mongodb.FakeStitchTransport
+import com.mongodb.stitch.android.services.mongodb.await
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test refreshing the access token in the background shortly before it expires.
+ */
+@RunWith(AndroidJUnit4::class)
+class TokenRefreshTest {
+    companion object {
+        const val BASE64_FLAGS = Base64.URL_SAFE or Base64.NO_PADDING or Base64.NO_WRAP
+    }
+
+    private val transport = FakeStitchTransport()
+
+    private fun jwt(expiresAtSeconds: Long): String {
+        val claims = "{\"exp\": $expiresAtSeconds}"
+        return "header.${Base64.encodeToString(claims.toByteArray(), BASE64_FLAGS)}.signature"
+    }
+
+    private fun newClient(skew: Long, unit: TimeUnit): StitchClient {
+        val client = StitchClient.Builder(InstrumentationRegistry.getContext())
+                .withAppId("test-app-" + UUID.randomUUID())
+                .withBaseUrl("https://stitch.test")
+                .withTransport(transport)
+                .withTokenRefreshSkew(skew, unit)
+                .build()
+        await(client.logInWithProvider(AnonymousAuthProvider()))
+        return client
+    }
+
+    private fun awaitAccessToken(client: StitchClient, accessToken: String) {
+        val deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(FakeStitchTransport.TIMEOUT_SECONDS)
+        while (client.auth.accessToken != accessToken && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertEquals(accessToken, client.auth.accessToken)
+    }
+
+    @Test
+    fun testComputesDelayFromSkew() {
+        val minute = TimeUnit.MINUTES.toMillis(1)
+        assertEquals(29 * minute, StitchClient.getTokenRefreshDelayMillis(30 * minute, minute))
+        assertEquals(0, StitchClient.getTokenRefreshDelayMillis(0, minute))
+
+        // A token that expires within twice the skew is refreshed halfway through its life
+        assertEquals(minute / 2, StitchClient.getTokenRefreshDelayMillis(minute, minute))
+        assertEquals(45 * 1000L, StitchClient.getTokenRefreshDelayMillis(90 * 1000L, minute))
+    }
+
+    @Test
+    fun testRefreshesBeforeExpiry() {
+        // The token expires in 3 to 4 seconds and is refreshed 2.5 seconds before then
+        val expiresAt = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 4
+        transport.accessToken = jwt(expiresAt)
+        val client = newClient(2500, TimeUnit.MILLISECONDS)
+
+        // The refreshed token does not expire, so no further refresh is scheduled
+        transport.accessToken = FakeStitchTransport.FAKE_ACCESS_TOKEN
+        Thread.sleep(250)
+        assertEquals(0, transport.tokenRefreshes.get())
+        awaitAccessToken(client, FakeStitchTransport.FAKE_ACCESS_TOKEN)
+        assertTrue(System.currentTimeMillis() < TimeUnit.SECONDS.toMillis(expiresAt))
+        assertEquals(1, transport.tokenRefreshes.get())
+        assertEquals(1, client.tokenRefreshCount)
+
+        Thread.sleep(250)
+        assertEquals(1, transport.tokenRefreshes.get())
+    }
+
+    @Test
+    fun testDoesNotRefreshTokenWithoutExpiry() {
+        val client = newClient(1, TimeUnit.HOURS)
+
+        Thread.sleep(250)
+        assertEquals(0, transport.tokenRefreshes.get())
+        assertEquals(0, client.tokenRefreshCount)
+    }
+}
@@ -0,0 +1,53 @@
+package com.mongodb.stitch.android.auth
+
+import android.support.test.runner.AndroidJUnit4
+import android.util.Base64
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Test reading when an access token expires from its claims.
+ */
+@RunWith(AndroidJUnit4::class)
+class AuthTest {
+    companion object {
+        const val EXPIRES_AT_SECONDS = 1500000000L
+        const val BASE64_FLAGS = Base64.URL_SAFE or Base64.NO_PADDING or Base64.NO_WRAP
+    }
+
+    private fun encode(part: String) = Base64.encodeToString(part.toByteArray(), BASE64_FLAGS)
+
+    private fun jwt(claims: String) = "${encode("{\"alg\": \"HS256\"}")}.${encode(claims)}.signature"
+
+    private fun auth(accessToken: String): Auth {
+        val json = JSONObject(mapOf("accessToken" to accessToken, "userId" to "user", "deviceId" to "device"))
+        return ObjectMapper().readValue(json.toString(), Auth::class.java)
+    }
+
+    @Test
+    fun testDecodesExpiration() {
+        val auth = auth(jwt("{\"sub\": \"user\", \"exp\": $EXPIRES_AT_SECONDS}"))
+
+        assertEquals(EXPIRES_AT_SECONDS * 1000, auth.accessTokenExpiresAt)
+        // A refreshed token is decoded again
+        assertEquals((EXPIRES_AT_SECONDS + 60) * 1000,
+                auth.withNewAccessToken(jwt("{\"exp\": ${EXPIRES_AT_SECONDS + 60}}")).accessTokenExpiresAt)
+    }
+
+    @Test
+    fun testIgnoresTokenWithoutExpiration() {
+        assertNull(auth(jwt("{\"sub\": \"user\"}")).accessTokenExpiresAt)
+        assertNull(auth("opaque-access-token").accessTokenExpiresAt)
+    }
+
+    @Test
+    fun testIgnoresMalformedToken() {
+        assertNull(auth("header.not base64!.signature").accessTokenExpiresAt)
+        assertNull(auth("${encode("{}")}.${encode("not json")}.signature").accessTokenExpiresAt)
+        assertNull(auth(jwt("{\"exp\": \"tomorrow\"}")).accessTokenExpiresAt)
+    }
+}
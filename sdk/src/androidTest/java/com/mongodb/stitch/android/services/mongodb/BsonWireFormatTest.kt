@@ -0,0 +1,89 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import com.mongodb.stitch.android.PipelineStage
+import com.mongodb.stitch.android.StitchClient
+import com.mongodb.stitch.android.WireFormat
+import com.mongodb.stitch.android.http.ContentTypes
+import org.bson.Document
+import org.bson.codecs.DocumentCodec
+import org.bson.types.Binary
+import org.bson.types.ObjectId
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.Date
+
+/**
+ * Test exchanging pipelines and their results with Stitch in binary BSON.
+ */
+@RunWith(AndroidJUnit4::class)
+class BsonWireFormatTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val transport = FakeStitchTransport()
+    private lateinit var client: StitchClient
+    private lateinit var collection: MongoClient.Collection
+
+    private val item = Document("_id", ObjectId())
+            .append("name", "first")
+            .append("count", 1)
+            .append("total", 1L shl 40)
+            .append("price", 2.5)
+            .append("at", Date(1000))
+            .append("data", Binary(byteArrayOf(1, 2, 3)))
+            .append("missing", null)
+            .append("tags", listOf("a", listOf(1, 2)))
+            .append("owner", Document("name", "ann"))
+
+    @Before
+    fun setup() {
+        client = transport.newClient(InstrumentationRegistry.getContext(), wireFormat = WireFormat.BSON)
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+    }
+
+    @Test
+    fun testRoundTripsPipeline() {
+        // Stage arguments are plain maps rather than documents
+        val args = HashMap<String, Any>()
+        args[PipelineStage.LiteralStage.PARAMETER_ITEMS] = listOf(item, "text", 7)
+        val result = await(client.executePipeline(PipelineStage(PipelineStage.LiteralStage.NAME, args)))
+
+        assertEquals(listOf(ContentTypes.APPLICATION_BSON), transport.pipelineContentTypes)
+        val stage = transport.pipelines.single().single()
+        assertEquals(PipelineStage.LiteralStage.NAME, stage["action"])
+        assertEquals(Document(PipelineStage.LiteralStage.PARAMETER_ITEMS, listOf(item, "text", 7)), stage["args"])
+
+        assertEquals(3, result.size)
+        val decoded = result[0] as Document
+        assertEquals(item.keys.toList(), decoded.keys.toList())
+        assertEquals(1L shl 40, decoded["total"])
+        assertEquals(Date(1000), decoded["at"])
+        assertArrayEquals(byteArrayOf(1, 2, 3), (decoded["data"] as Binary).data)
+        assertEquals(item.filterKeys { it != "data" }, decoded.filterKeys { it != "data" })
+        assertEquals(listOf("text", 7), result.drop(1))
+    }
+
+    @Test
+    fun testRoundTripsCollectionOperations() {
+        await(collection.insertOne(item))
+        await(collection.updateOne(Document("_id", item["_id"]), Document("\$inc", Document("count", 1))))
+
+        val found = await(collection.find(Document("name", "first"), FindOptions().withSort(Document("count", -1))))
+        assertEquals(2, found.single()["count"])
+        assertEquals(item["owner"], found.single()["owner"])
+
+        // Raw documents are slices of the response
+        val raw = await(collection.findRaw(Document()))
+        assertEquals(found, raw.map { it.decode(DocumentCodec()) })
+
+        assertEquals(1, await(collection.count(Document("tags", "a"))))
+        assertEquals(ContentTypes.APPLICATION_BSON, transport.pipelineContentTypes.distinct().single())
+        assertEquals(1, transport.documents(NAMESPACE).size)
+    }
+}
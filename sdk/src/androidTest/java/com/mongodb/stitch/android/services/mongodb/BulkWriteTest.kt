@@ -0,0 +1,81 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Test applying many write operations in as few requests as possible.
+ */
+@RunWith(AndroidJUnit4::class)
+class BulkWriteTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val transport = FakeStitchTransport()
+    private lateinit var collection: MongoClient.Collection
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(InstrumentationRegistry.getContext())
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+    }
+
+    @Test
+    fun testMergesAdjacentOperations() {
+        val results = await(collection.bulkWrite(listOf(
+                InsertOneModel(Document("_id", 1).append("type", "a")),
+                InsertOneModel(Document("_id", 2).append("type", "b")),
+                InsertOneModel(Document("_id", 3).append("type", "c")),
+                UpdateOneModel(Document("_id", 1), Document("\$set", Document("type", "b")), false),
+                DeleteManyModel(Document("type", "b")),
+                DeleteManyModel(Document("type", "c")))))
+
+        assertEquals(6, results.size)
+        assertTrue(results.all { it.isSuccessful })
+        // One request each for the inserts, the update and the deletes
+        assertEquals(3, transport.pipelines.size)
+        assertEquals(emptyList<Document>(), transport.documents(NAMESPACE))
+    }
+
+    @Test
+    fun testOrderedWriteStopsAtFirstFailure() {
+        transport.insert(NAMESPACE, Document("_id", 1))
+
+        val results = await(collection.bulkWrite(listOf(
+                UpdateOneModel(Document("_id", 1), Document("\$set", Document("name", "first")), false),
+                InsertOneModel(Document("_id", 1)),
+                UpdateOneModel(Document("_id", 1), Document("\$set", Document("name", "second")), false))))
+
+        assertTrue(results[0].isSuccessful)
+        assertTrue(results[1].wasAttempted())
+        assertFalse(results[1].isSuccessful)
+        assertFalse(results[2].wasAttempted())
+        assertEquals("first", transport.documents(NAMESPACE)[0]["name"])
+    }
+
+    @Test
+    fun testUnorderedWriteContinuesAfterFailure() {
+        transport.insert(NAMESPACE, Document("_id", 1))
+
+        val results = await(collection.bulkWrite(listOf(
+                InsertOneModel(Document("_id", 1)),
+                UpdateOneModel(Document("_id", 1), Document("\$set", Document("name", "first")), false),
+                DeleteManyModel(Document("_id", 2)),
+                InsertOneModel(Document("_id", 2))), false))
+
+        // The inserts are merged into one request, which fails as a whole
+        assertFalse(results[0].isSuccessful)
+        assertFalse(results[3].isSuccessful)
+        assertTrue(results[1].isSuccessful)
+        assertTrue(results[2].isSuccessful)
+        assertEquals(listOf(Document("_id", 1).append("name", "first")), transport.documents(NAMESPACE))
+    }
+}
@@ -0,0 +1,92 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Test running client work on the client's executor and delivering results on the caller's.
+ */
+@RunWith(AndroidJUnit4::class)
+class ClientExecutorTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+        const val CLIENT_THREAD = "client-thread"
+        const val CALLER_THREAD = "caller-thread"
+    }
+
+    private val transport = FakeStitchTransport()
+    private val clientThreads = namedExecutor(CLIENT_THREAD)
+    private val callerThreads = namedExecutor(CALLER_THREAD)
+    private val clientRuns = AtomicInteger()
+    private lateinit var collection: MongoClient.Collection
+
+    private fun namedExecutor(name: String): ExecutorService =
+            Executors.newSingleThreadExecutor { runnable -> Thread(runnable, name) }
+
+    @Before
+    fun setup() {
+        val clientExecutor = Executor { runnable ->
+            clientRuns.incrementAndGet()
+            clientThreads.execute(runnable)
+        }
+        val client = transport.newClient(InstrumentationRegistry.getContext(), clientExecutor)
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+        transport.insert(NAMESPACE, Document("_id", 1), Document("_id", 2))
+    }
+
+    @After
+    fun teardown() {
+        clientThreads.shutdown()
+        callerThreads.shutdown()
+    }
+
+    @Test
+    fun testDeliversResultsOnCallerExecutor() {
+        clientRuns.set(0)
+        val delivered = CountDownLatch(1)
+        val deliveredOn = AtomicReference<String>()
+        val result = AtomicReference<List<Document>>()
+
+        collection.find(Document()).addOnCompleteListener(callerThreads) { task ->
+            deliveredOn.set(Thread.currentThread().name)
+            result.set(task.result)
+            delivered.countDown()
+        }
+        assertTrue(delivered.await(FakeStitchTransport.TIMEOUT_SECONDS, TimeUnit.SECONDS))
+
+        assertEquals(CALLER_THREAD, deliveredOn.get())
+        assertEquals(listOf(Document("_id", 1), Document("_id", 2)), result.get())
+        // The request was serialized, sent and decoded on the client's executor
+        assertTrue(clientRuns.get() > 0)
+        assertEquals(CLIENT_THREAD, transport.pipelineThreads.last().name)
+    }
+
+    @Test
+    fun testDoesNotBlockCallingThread() {
+        // The client's only thread is busy, so nothing can have been sent yet
+        val release = CountDownLatch(1)
+        clientThreads.execute { release.await() }
+
+        val sent = transport.pipelines.size
+        val find = collection.find(Document())
+        assertEquals(sent, transport.pipelines.size)
+
+        release.countDown()
+        assertEquals(2, await(find).size)
+        assertEquals(sent + 1, transport.pipelines.size)
+    }
+}
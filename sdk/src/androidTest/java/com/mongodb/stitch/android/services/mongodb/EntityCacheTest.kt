@@ -0,0 +1,98 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import com.mongodb.stitch.android.StitchClient
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Test sharing a single instance per document across reads.
+ */
+@RunWith(AndroidJUnit4::class)
+class EntityCacheTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val cache = EntityCache(10)
+
+    private fun read(vararg json: String): List<Document> =
+            cache.resolve(NAMESPACE, json.map { Document.parse(it) }, cache.generation)
+
+    @Test
+    fun testSharesInstances() {
+        val first = read("{_id: 1, name: 'a'}", "{_id: 2, name: 'b'}")
+        val second = read("{_id: 2, name: 'b'}")
+
+        assertSame(first[1], second[0])
+        assertSame(first[0], cache.get(NAMESPACE, 1))
+        assertNull(cache.get("db.other", 1))
+    }
+
+    @Test(expected = UnsupportedOperationException::class)
+    fun testSharedInstancesAreUnmodifiable() {
+        read("{_id: 1, name: 'a'}")[0].put("name", "b")
+    }
+
+    @Test(expected = UnsupportedOperationException::class)
+    fun testNestedValuesAreUnmodifiable() {
+        @Suppress("UNCHECKED_CAST")
+        (read("{_id: 1, tags: ['a']}")[0]["tags"] as MutableList<Any>).add("b")
+    }
+
+    @Test
+    fun testChangedDocumentsAreReplaced() {
+        val changed = mutableListOf<Document>()
+        cache.addListener(NAMESPACE, DocumentListener { changed.add(it) })
+
+        val original = read("{_id: 1, name: 'a'}")[0]
+        read("{_id: 1, name: 'a'}")
+        assertEquals(0, changed.size)
+
+        val updated = read("{_id: 1, name: 'b'}")[0]
+        assertNotSame(original, updated)
+        assertEquals("a", original.getString("name"))
+        assertEquals(listOf(updated), changed)
+        assertSame(updated, cache.get(NAMESPACE, 1))
+    }
+
+    @Test
+    fun testInvalidate() {
+        read("{_id: 1}", "{_id: 2}")
+        cache.invalidate(NAMESPACE, Document("_id", 1))
+        assertNull(cache.get(NAMESPACE, 1))
+        assertEquals(2, cache.get(NAMESPACE, 2)["_id"])
+
+        // Reads started before an invalidation are not cached
+        val generation = cache.generation
+        cache.invalidate(NAMESPACE, Document("name", "a"))
+        assertNull(cache.get(NAMESPACE, 2))
+        cache.resolve(NAMESPACE, listOf(Document("_id", 3)), generation)
+        assertNull(cache.get(NAMESPACE, 3))
+    }
+
+    @Test
+    fun testCloseStopsListeningForLogout() {
+        val client = FakeStitchTransport().newClient(InstrumentationRegistry.getContext())
+        val field = StitchClient::class.java.getDeclaredField("_authListeners")
+        field.isAccessible = true
+        val listeners = field.get(client) as List<*>
+        val registered = listeners.size
+
+        val mongoClient = MongoClient(client, FakeStitchTransport.SERVICE)
+        val cached = mongoClient.withEntityCache(10)
+        assertEquals(registered + 1, listeners.size)
+
+        cached.close()
+        assertEquals(registered, listeners.size)
+        // A client without an entity cache has nothing to release
+        mongoClient.close()
+        assertEquals(registered, listeners.size)
+    }
+}
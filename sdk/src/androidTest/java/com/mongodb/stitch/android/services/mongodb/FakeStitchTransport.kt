@@ -0,0 +1,384 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.content.Context
+import com.google.android.gms.tasks.Task
+import com.google.android.gms.tasks.TaskCompletionSource
+import com.google.android.gms.tasks.Tasks
+import com.mongodb.stitch.android.PipelineStage
+import com.mongodb.stitch.android.StitchClient
+import com.mongodb.stitch.android.WireFormat
+import com.mongodb.stitch.android.auth.anonymous.AnonymousAuthProvider
+import com.mongodb.stitch.android.http.ContentTypes
+import com.mongodb.stitch.android.http.Headers
+import com.mongodb.stitch.android.http.HttpRequest
+import com.mongodb.stitch.android.http.HttpResponse
+import com.mongodb.stitch.android.http.HttpTransport
+import org.bson.BsonBinaryReader
+import org.bson.BsonBinaryWriter
+import org.bson.Document
+import org.bson.codecs.DecoderContext
+import org.bson.codecs.DocumentCodec
+import org.bson.codecs.EncoderContext
+import org.bson.io.BasicOutputBuffer
+import org.bson.types.ObjectId
+import java.io.ByteArrayInputStream
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.nio.ByteBuffer
+import java.util.UUID
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * An [HttpTransport] that answers requests from an in-memory Stitch app, so that collection
+ * features can be tested end to end without a server. Pipelines of the find, insert, update and
+ * delete stages of the MongoDB service are applied to in-memory collections, and every pipeline
+ * received is recorded. Pipelines sent as BSON are answered in BSON, and requests for a
+ * streaming response are answered with a body that counts the bytes read from it.
+ */
+class FakeStitchTransport : HttpTransport {
+    companion object {
+        const val FAKE_USER_ID = "fake-user-id"
+        const val SERVICE = "mongodb1"
+        const val TIMEOUT_SECONDS = 10L
+
+        const val FAKE_ACCESS_TOKEN = "fake-access-token"
+
+        private val JSON_HEADERS = mapOf(Headers.CONTENT_TYPE to ContentTypes.APPLICATION_JSON)
+        private val BSON_HEADERS = mapOf(Headers.CONTENT_TYPE to ContentTypes.APPLICATION_BSON)
+
+        private fun decodeBson(bytes: ByteArray): Document {
+            val reader = BsonBinaryReader(ByteBuffer.wrap(bytes))
+            reader.use { return DocumentCodec().decode(it, DecoderContext.builder().build()) }
+        }
+
+        private fun encodeBson(document: Document): ByteArray {
+            val buffer = BasicOutputBuffer()
+            BsonBinaryWriter(buffer).use { DocumentCodec().encode(it, document, EncoderContext.builder().build()) }
+            return buffer.toByteArray()
+        }
+    }
+
+    private val collections = HashMap<String, MutableList<Document>>()
+
+    /** The stages of every pipeline received, in order */
+    val pipelines: MutableList<List<Document>> = CopyOnWriteArrayList()
+
+    /** Whether or not requests fail as if there were no network */
+    @Volatile var offline = false
+
+    /** How many of the next pipelines are applied but have their response lost */
+    @Volatile var droppedResponses = 0
+
+    /** The responses to pipelines held back until [releaseResponses], or null if not holding */
+    private var heldResponses: MutableList<Pair<TaskCompletionSource<HttpResponse>, HttpResponse>>? = null
+
+    /** How many more responses to deliver before holding them back */
+    private var responsesBeforeHolding = 0
+
+    /** How many bytes to cut off the end of streamed response bodies, as if the connection dropped */
+    @Volatile var truncatedBytes = 0
+
+    /** The amount of bytes read from streamed response bodies */
+    val streamedBytes = AtomicInteger()
+
+    /** The access token handed out by logins and refreshes */
+    @Volatile var accessToken = FAKE_ACCESS_TOKEN
+
+    /** The amount of access token refreshes received */
+    val tokenRefreshes = AtomicInteger()
+
+    /** The threads that pipelines were sent from, in order */
+    val pipelineThreads: MutableList<Thread> = CopyOnWriteArrayList()
+
+    /** The content types that pipelines were sent with, in order */
+    val pipelineContentTypes: MutableList<String> = CopyOnWriteArrayList()
+
+    /**
+     * @param executor   The executor for the client to run its work on, or null for the default.
+     * @param wireFormat The format for the client to exchange pipelines in.
+     * @return A client of a new app that is logged in through this transport.
+     */
+    fun newClient(
+            context: Context,
+            executor: Executor? = null,
+            wireFormat: WireFormat = WireFormat.EXTENDED_JSON
+    ): StitchClient {
+        val builder = StitchClient.Builder(context)
+                .withAppId("test-app-" + UUID.randomUUID())
+                .withBaseUrl("https://stitch.test")
+                .withTransport(this)
+                .withWireFormat(wireFormat)
+        if (executor != null) {
+            builder.withExecutor(executor)
+        }
+        val client = builder.build()
+        await(client.logInWithProvider(AnonymousAuthProvider()))
+        return client
+    }
+
+    /**
+     * @return The pipelines received with a stage of the given action.
+     */
+    fun pipelinesWith(action: String): List<List<Document>> =
+            pipelines.filter { stages -> stages.any { it.getString("action") == action } }
+
+    @Synchronized
+    fun documents(namespace: String): List<Document> =
+            collection(namespace).map { UpdateApplier.copy(it) as Document }
+
+    @Synchronized
+    fun insert(namespace: String, vararg documents: Document) {
+        documents.forEach { collection(namespace).add(UpdateApplier.copy(it) as Document) }
+    }
+
+    @Synchronized
+    fun update(namespace: String, query: Document, update: Document) {
+        val documents = collection(namespace)
+        documents.forEachIndexed { i, document ->
+            if (QueryMatcher.matches(query, document)) {
+                documents[i] = UpdateApplier.apply(document, update)
+            }
+        }
+    }
+
+    override fun execute(request: HttpRequest): Task<HttpResponse> {
+        if (offline) {
+            return Tasks.forException(IOException("offline"))
+        }
+        val url = request.url
+        if (url.contains("/auth")) {
+            if (url.endsWith("/newAccessToken")) {
+                tokenRefreshes.incrementAndGet()
+            }
+            val auth = Document("accessToken", accessToken)
+                    .append("refreshToken", "fake-refresh-token")
+                    .append("userId", FAKE_USER_ID)
+                    .append("deviceId", "fake-device-id")
+            return Tasks.forResult(HttpResponse(200, JSON_HEADERS, auth.toJson().toByteArray()))
+        }
+        if (!url.endsWith("/pipeline")) {
+            return Tasks.forResult(HttpResponse(404, JSON_HEADERS, "{\"error\": \"not found\"}".toByteArray()))
+        }
+
+        // Pipelines sent as BSON are wrapped in a document, as BSON has no top level arrays
+        val bson = request.contentType == ContentTypes.APPLICATION_BSON
+        @Suppress("UNCHECKED_CAST")
+        val stages = if (bson) {
+            decodeBson(request.body)["pipeline"] as List<Document>
+        } else {
+            Document.parse("{\"stages\": ${String(request.body)}}")["stages"] as List<Document>
+        }
+        pipelines.add(stages)
+        pipelineThreads.add(Thread.currentThread())
+        pipelineContentTypes.add(request.contentType)
+        val response = try {
+            val result = Document("result", run(stages))
+            if (bson) {
+                HttpResponse(200, BSON_HEADERS, encodeBson(result))
+            } else {
+                HttpResponse(200, JSON_HEADERS, result.toJson().toByteArray())
+            }
+        } catch (e: IllegalArgumentException) {
+            HttpResponse(400, JSON_HEADERS, Document("error", e.message).toJson().toByteArray())
+        }
+        if (dropResponse()) {
+            return Tasks.forException(IOException("connection reset"))
+        }
+        if (request.isStreamingResponse && response.isSuccessful) {
+            val body = response.body
+            val stream = CountingInputStream(ByteArrayInputStream(body, 0, maxOf(0, body.size - truncatedBytes)))
+            return Tasks.forResult(HttpResponse(response.statusCode, response.headers, stream))
+        }
+        return holdResponse(response) ?: Tasks.forResult(response)
+    }
+
+    /**
+     * Holds back the responses to pipelines received from now on, as if they were still in
+     * flight. They are still applied when they are received.
+     *
+     * @param after How many responses to deliver before holding back the rest.
+     */
+    @Synchronized
+    fun holdResponses(after: Int = 0) {
+        if (heldResponses == null) {
+            heldResponses = ArrayList()
+        }
+        responsesBeforeHolding = after
+    }
+
+    /**
+     * Delivers every held response and stops holding them.
+     */
+    fun releaseResponses() {
+        val released = synchronized(this) {
+            val held = heldResponses ?: emptyList<Pair<TaskCompletionSource<HttpResponse>, HttpResponse>>()
+            heldResponses = null
+            held
+        }
+        released.forEach { (source, response) -> source.setResult(response) }
+    }
+
+    @Synchronized
+    private fun holdResponse(response: HttpResponse): Task<HttpResponse>? {
+        val held = heldResponses ?: return null
+        if (responsesBeforeHolding > 0) {
+            responsesBeforeHolding--
+            return null
+        }
+        val source = TaskCompletionSource<HttpResponse>()
+        held.add(Pair(source, response))
+        return source.task
+    }
+
+    /**
+     * A response body that adds the bytes read from it to [streamedBytes].
+     */
+    private inner class CountingInputStream(body: InputStream) : FilterInputStream(body) {
+        override fun read(): Int {
+            val read = super.read()
+            if (read != -1) {
+                streamedBytes.incrementAndGet()
+            }
+            return read
+        }
+
+        override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+            val read = super.read(buffer, offset, length)
+            if (read > 0) {
+                streamedBytes.addAndGet(read)
+            }
+            return read
+        }
+    }
+
+    override fun cancel(request: HttpRequest) {
+    }
+
+    override fun cancelAll(tag: Any?) {
+    }
+
+    @Synchronized
+    private fun dropResponse(): Boolean {
+        if (droppedResponses == 0) {
+            return false
+        }
+        droppedResponses--
+        return true
+    }
+
+    @Synchronized
+    private fun run(stages: List<Document>): List<Any?> {
+        var items: List<Any?> = emptyList()
+        for (stage in stages) {
+            val args = stage["args"] as Document
+            items = when (stage.getString("action")) {
+                PipelineStage.LiteralStage.NAME -> args[PipelineStage.LiteralStage.PARAMETER_ITEMS] as List<*>
+                "find" -> find(args)
+                "insert" -> insert(args, items)
+                "update" -> update(args)
+                "delete" -> delete(args)
+                else -> throw IllegalArgumentException("unsupported action ${stage["action"]}")
+            }
+        }
+        return items
+    }
+
+    private fun find(args: Document): List<Any?> {
+        val documents = collection(namespaceOf(args))
+        val options = FindOptions()
+        args.get("sort", Document::class.java)?.let { options.withSort(it) }
+        args.getInteger("skip")?.let { options.withSkip(it) }
+        val query = args.get("query", Document::class.java) ?: Document()
+        val limit = args.getInteger("limit")
+        if (args.getBoolean("count", false)) {
+            return listOf(QueryMatcher.count(documents, query, limit, options))
+        }
+        return QueryMatcher.find(documents, query, args.get("project", Document::class.java), limit, options)
+    }
+
+    private fun insert(args: Document, items: List<Any?>): List<Any?> {
+        val documents = collection(namespaceOf(args))
+        return items.map {
+            val document = UpdateApplier.copy(it) as Document
+            if (!document.containsKey("_id")) {
+                document["_id"] = ObjectId()
+            }
+            if (documents.any { existing -> existing["_id"] == document["_id"] }) {
+                throw IllegalArgumentException("E11000 duplicate key error")
+            }
+            documents.add(document)
+            document
+        }
+    }
+
+    private fun update(args: Document): List<Any?> {
+        val documents = collection(namespaceOf(args))
+        val query = args.get("query", Document::class.java)
+        val update = args.get("update", Document::class.java)
+        var matched = 0
+        for (i in documents.indices) {
+            if (QueryMatcher.matches(query, documents[i])) {
+                documents[i] = UpdateApplier.apply(documents[i], update)
+                matched++
+                if (!args.getBoolean("multi", false)) {
+                    break
+                }
+            }
+        }
+        if (matched == 0 && args.getBoolean("upsert", false)) {
+            val upserted = Document(query.filterValues { it !is Map<*, *> })
+            if (!upserted.containsKey("_id")) {
+                upserted["_id"] = ObjectId()
+            }
+            documents.add(UpdateApplier.apply(upserted, update))
+        }
+        return listOf(Document("matchedCount", matched))
+    }
+
+    private fun delete(args: Document): List<Any?> {
+        val documents = collection(namespaceOf(args))
+        val query = args.get("query", Document::class.java)
+        var deleted = 0
+        val iterator = documents.iterator()
+        while (iterator.hasNext()) {
+            if (QueryMatcher.matches(query, iterator.next())) {
+                iterator.remove()
+                deleted++
+                if (args.getBoolean("singleDoc", false)) {
+                    break
+                }
+            }
+        }
+        return listOf(Document("deletedCount", deleted))
+    }
+
+    private fun namespaceOf(args: Document) = "${args.getString("database")}.${args.getString("collection")}"
+
+    private fun collection(namespace: String) = collections.getOrPut(namespace) { ArrayList() }
+}
+
+/**
+ * Waits for a task to complete.
+ *
+ * @return The result of the task.
+ */
+fun <T> await(task: Task<T>): T = Tasks.await(task, FakeStitchTransport.TIMEOUT_SECONDS, TimeUnit.SECONDS)
+
+/**
+ * Waits for a task that is expected to fail.
+ *
+ * @return The exception the task failed with.
+ */
+fun awaitFailure(task: Task<*>): Exception {
+    try {
+        Tasks.await(task, FakeStitchTransport.TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    } catch (e: ExecutionException) {
+        return e.cause as Exception
+    }
+    throw AssertionError("task succeeded")
+}
@@ -0,0 +1,144 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Test iterating over the documents matching a query in batches.
+ */
+@RunWith(AndroidJUnit4::class)
+class FindCursorTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+        const val DOCUMENT_COUNT = 6
+    }
+
+    private val transport = FakeStitchTransport()
+    private lateinit var collection: MongoClient.Collection
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(InstrumentationRegistry.getContext())
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+        for (id in DOCUMENT_COUNT downTo 1) {
+            transport.insert(NAMESPACE, Document("_id", id).append("even", id % 2 == 0))
+        }
+    }
+
+    private fun findArgs() = transport.pipelinesWith("find").map { it[0]["args"] as Document }
+
+    /**
+     * Waits for the amount of finds sent to stop changing, so that prefetches have been sent.
+     */
+    private fun settledFindCount(): Int {
+        var count: Int
+        do {
+            count = findArgs().size
+            Thread.sleep(50)
+        } while (count != findArgs().size)
+        return count
+    }
+
+    @Test
+    fun testPagesByIdRanges() {
+        val cursor = collection.findCursor(Document(), 2)
+
+        assertEquals(listOf(1, 2), await(cursor.next()).map { it["_id"] })
+        assertEquals(listOf(3, 4), await(cursor.next()).map { it["_id"] })
+        assertEquals(listOf(5, 6), await(cursor.next()).map { it["_id"] })
+
+        val args = findArgs()
+        assertEquals(Document(), args[0]["query"])
+        assertEquals(Document("_id", Document("\$gt", 2)), args[1]["query"])
+        assertEquals(Document("_id", Document("\$gt", 4)), args[2]["query"])
+        args.forEach {
+            assertEquals(Document("_id", 1), it["sort"])
+            assertEquals(2, it["limit"])
+            assertFalse(it.containsKey("skip"))
+        }
+    }
+
+    @Test
+    fun testCombinesQueryWithIdRange() {
+        val cursor = collection.findCursor(Document("even", true), 2)
+
+        assertEquals(listOf(2, 4), await(cursor.next()).map { it["_id"] })
+        assertEquals(listOf(6), await(cursor.next()).map { it["_id"] })
+        assertTrue(cursor.isExhausted)
+        assertEquals(
+                Document("\$and", listOf(Document("even", true), Document("_id", Document("\$gt", 4)))),
+                findArgs()[1]["query"])
+    }
+
+    @Test
+    fun testEndsWithEmptyBatch() {
+        // A full last batch cannot be told apart from one with more after it
+        val cursor = collection.findCursor(Document(), 3)
+
+        assertEquals(3, await(cursor.next()).size)
+        assertEquals(3, await(cursor.next()).size)
+        assertFalse(cursor.isExhausted)
+        assertEquals(emptyList<Document>(), await(cursor.next()))
+        assertTrue(cursor.isExhausted)
+
+        // Once exhausted, nothing more is fetched
+        val sent = settledFindCount()
+        assertEquals(emptyList<Document>(), await(cursor.next()))
+        assertEquals(sent, findArgs().size)
+    }
+
+    @Test
+    fun testStripsIdWhenExcluded() {
+        val cursor = collection.findCursor(Document(), Document("_id", 0).append("even", 1), 4)
+
+        assertEquals((1..4).map { Document("even", it % 2 == 0) }, await(cursor.next()))
+        assertEquals((5..6).map { Document("even", it % 2 == 0) }, await(cursor.next()))
+        // The _id is still fetched to find the next batch
+        assertEquals(Document("even", 1), findArgs()[0]["project"])
+        assertEquals(Document("_id", Document("\$gt", 4)), findArgs()[1]["query"])
+    }
+
+    @Test
+    fun testPrefetchesNextBatch() {
+        val cursor = collection.findCursor(Document(), 2)
+        await(cursor.next())
+
+        assertEquals(2, settledFindCount())
+    }
+
+    @Test
+    fun testFetchesOnlyWhenAskedWithoutPrefetching() {
+        val cursor = FindCursor(collection, Document(), null, 2, false, collection.executor)
+        assertEquals(listOf(1, 2), await(cursor.next()).map { it["_id"] })
+        assertEquals(1, settledFindCount())
+
+        // Calls made before the previous batch arrives still get the batches in order
+        val second = cursor.next()
+        val third = cursor.next()
+        assertEquals(listOf(3, 4), await(second).map { it["_id"] })
+        assertEquals(listOf(5, 6), await(third).map { it["_id"] })
+        assertEquals(3, settledFindCount())
+    }
+
+    @Test
+    fun testStopsPrefetchingOnceClosed() {
+        val cursor = collection.findCursor(Document(), 2)
+        transport.holdResponses()
+        val first = cursor.next()
+        cursor.close()
+        transport.releaseResponses()
+
+        // The batch in flight is still handed out, but the one after it is not fetched
+        assertEquals(listOf(1, 2), await(first).map { it["_id"] })
+        assertEquals(1, settledFindCount())
+        assertEquals(emptyList<Document>(), await(cursor.next()))
+        assertEquals(1, findArgs().size)
+    }
+}
@@ -0,0 +1,82 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test sending the sort, skip, hint and time limit of a find to the server.
+ */
+@RunWith(AndroidJUnit4::class)
+class FindOptionsTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val transport = FakeStitchTransport()
+    private lateinit var collection: MongoClient.Collection
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(InstrumentationRegistry.getContext())
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+        for (id in 1..5) {
+            transport.insert(NAMESPACE, Document("_id", id).append("rank", id % 3))
+        }
+    }
+
+    private fun lastFindArgs() = transport.pipelinesWith("find").last()[0]["args"] as Document
+
+    @Test
+    fun testSendsOptionsInFindStage() {
+        val options = FindOptions()
+                .withSort(Document("rank", -1).append("_id", 1))
+                .withSkip(1)
+                .withHint(Document("rank", 1))
+                .withMaxTime(2, TimeUnit.SECONDS)
+        val found = await(collection.find(Document(), null, 2, options))
+
+        val args = lastFindArgs()
+        assertEquals(Document("rank", -1).append("_id", 1), args["sort"])
+        // The order of the sort keys is kept, even for _id
+        assertEquals(listOf("rank", "_id"), (args["sort"] as Document).keys.toList())
+        assertEquals(1, args["skip"])
+        assertEquals(Document("rank", 1), args["hint"])
+        assertEquals(2000L, (args["maxTimeMS"] as Number).toLong())
+        assertEquals(2, args["limit"])
+
+        // Sorted and paged by the server, not on the device
+        assertEquals(listOf(5, 1), found.map { it["_id"] })
+    }
+
+    @Test
+    fun testSendsIndexNameHint() {
+        await(collection.find(Document(), FindOptions().withHint("rank_1")))
+
+        assertEquals("rank_1", lastFindArgs()["hint"])
+    }
+
+    @Test
+    fun testSendsOptionsInCount() {
+        val count = await(collection.count(Document("rank", Document("\$gt", 0)), FindOptions().withSkip(1)))
+
+        val args = lastFindArgs()
+        assertEquals(true, args["count"])
+        assertEquals(1, args["skip"])
+        assertEquals(3, count)
+    }
+
+    @Test
+    fun testOmitsUnsetOptions() {
+        await(collection.find(Document(), FindOptions()))
+
+        val args = lastFindArgs()
+        listOf("sort", "skip", "hint", "maxTimeMS").forEach { assertFalse(args.containsKey(it)) }
+    }
+}
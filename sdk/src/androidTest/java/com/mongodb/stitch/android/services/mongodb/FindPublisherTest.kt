@@ -0,0 +1,178 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test publishing the documents of a find as a subscriber demands them.
+ */
+@RunWith(AndroidJUnit4::class)
+class FindPublisherTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+        const val DOCUMENT_COUNT = 5
+    }
+
+    private val transport = FakeStitchTransport()
+    private lateinit var collection: MongoClient.Collection
+
+    /**
+     * A subscriber that records every signal it receives and requests nothing by itself.
+     */
+    private class RecordingSubscriber : Subscriber<Document> {
+        val documents: MutableList<Document> = Collections.synchronizedList(ArrayList())
+        val terminated = CountDownLatch(1)
+        lateinit var subscription: Subscription
+        @Volatile var completed = false
+        @Volatile var error: Throwable? = null
+
+        override fun onSubscribe(subscription: Subscription) {
+            this.subscription = subscription
+        }
+
+        override fun onNext(document: Document) {
+            documents.add(document)
+        }
+
+        override fun onError(error: Throwable) {
+            this.error = error
+            terminated.countDown()
+        }
+
+        override fun onComplete() {
+            completed = true
+            terminated.countDown()
+        }
+
+        fun awaitTermination() {
+            assertTrue(terminated.await(FakeStitchTransport.TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        }
+
+        fun awaitDocuments(count: Int) {
+            val deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(FakeStitchTransport.TIMEOUT_SECONDS)
+            while (documents.size < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10)
+            }
+            assertEquals(count, documents.size)
+        }
+    }
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(InstrumentationRegistry.getContext())
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+        for (id in DOCUMENT_COUNT downTo 1) {
+            transport.insert(NAMESPACE, Document("_id", id).append("name", "item$id"))
+        }
+    }
+
+    private fun subscribe(projection: Document? = null): RecordingSubscriber {
+        val subscriber = RecordingSubscriber()
+        collection.findPublisher(Document(), projection, 2).subscribe(subscriber)
+        return subscriber
+    }
+
+    @Test
+    fun testPublishesEveryDocumentInOrder() {
+        val subscriber = subscribe()
+        subscriber.subscription.request(Long.MAX_VALUE)
+        subscriber.awaitTermination()
+
+        assertTrue(subscriber.completed)
+        assertNull(subscriber.error)
+        assertEquals((1..DOCUMENT_COUNT).toList(), subscriber.documents.map { it["_id"] })
+    }
+
+    @Test
+    fun testOnlyPublishesDemandedDocuments() {
+        val subscriber = subscribe()
+        assertEquals(0, transport.pipelinesWith("find").size)
+
+        subscriber.subscription.request(3)
+        subscriber.awaitDocuments(3)
+        Thread.sleep(100)
+        assertEquals(3, subscriber.documents.size)
+        assertFalse(subscriber.completed)
+
+        subscriber.subscription.request(10)
+        subscriber.awaitTermination()
+        assertTrue(subscriber.completed)
+        assertEquals((1..DOCUMENT_COUNT).toList(), subscriber.documents.map { it["_id"] })
+    }
+
+    @Test
+    fun testOnlyFetchesDemandedBatches() {
+        val subscriber = subscribe()
+        subscriber.subscription.request(1)
+        subscriber.awaitDocuments(1)
+
+        // The batch after the first is not fetched until documents beyond it are requested
+        Thread.sleep(100)
+        assertEquals(1, transport.pipelinesWith("find").size)
+        subscriber.subscription.request(1)
+        subscriber.awaitDocuments(2)
+        Thread.sleep(100)
+        assertEquals(1, transport.pipelinesWith("find").size)
+
+        subscriber.subscription.request(1)
+        subscriber.awaitDocuments(3)
+        Thread.sleep(100)
+        assertEquals(2, transport.pipelinesWith("find").size)
+    }
+
+    @Test
+    fun testStopsOnCancel() {
+        val subscriber = subscribe()
+        subscriber.subscription.request(1)
+        subscriber.awaitDocuments(1)
+        subscriber.subscription.cancel()
+        subscriber.subscription.request(10)
+
+        Thread.sleep(100)
+        assertEquals(1, subscriber.documents.size)
+        assertFalse(subscriber.completed)
+        assertNull(subscriber.error)
+    }
+
+    @Test
+    fun testExcludesIdWhenProjected() {
+        val subscriber = subscribe(Document("_id", 0).append("name", 1))
+        subscriber.subscription.request(Long.MAX_VALUE)
+        subscriber.awaitTermination()
+
+        assertEquals((1..DOCUMENT_COUNT).map { Document("name", "item$it") }, subscriber.documents)
+    }
+
+    @Test
+    fun testSignalsFailedFetch() {
+        transport.offline = true
+        val subscriber = subscribe()
+        subscriber.subscription.request(1)
+        subscriber.awaitTermination()
+
+        assertTrue(subscriber.error != null)
+        assertEquals(0, subscriber.documents.size)
+    }
+
+    @Test
+    fun testSignalsNonPositiveRequest() {
+        val subscriber = subscribe()
+        subscriber.subscription.request(0)
+        subscriber.awaitTermination()
+
+        assertTrue(subscriber.error is IllegalArgumentException)
+    }
+}
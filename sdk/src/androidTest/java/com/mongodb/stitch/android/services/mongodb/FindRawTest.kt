@@ -0,0 +1,80 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import com.mongodb.stitch.android.WireFormat
+import com.mongodb.stitch.android.http.ContentTypes
+import org.bson.Document
+import org.bson.RawBsonDocument
+import org.bson.codecs.DocumentCodec
+import org.bson.types.ObjectId
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.Date
+
+/**
+ * Test finding documents as raw BSON that is only decoded when read.
+ */
+@RunWith(AndroidJUnit4::class)
+class FindRawTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val transport = FakeStitchTransport()
+    private lateinit var collection: MongoClient.Collection
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(InstrumentationRegistry.getContext())
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+        transport.insert(NAMESPACE,
+                Document("_id", ObjectId()).append("name", "first").append("count", 1)
+                        .append("price", 2.5).append("at", Date(1000))
+                        .append("tags", listOf("a", "b")).append("owner", Document("name", "ann")),
+                Document("_id", ObjectId()).append("name", "second").append("count", 20L),
+                Document("_id", ObjectId()).append("name", "third").append("count", 3))
+    }
+
+    private fun decode(documents: List<RawBsonDocument>) = documents.map { it.decode(DocumentCodec()) }
+
+    @Test
+    fun testMatchesFind() {
+        assertEquals(3, await(collection.findRaw(Document())).size)
+        assertEquals(await(collection.find(Document())), decode(await(collection.findRaw(Document()))))
+
+        val query = Document("count", Document("\$lt", 10))
+        val projection = Document("_id", 0).append("name", 1).append("owner", 1)
+        val options = FindOptions().withSort(Document("name", -1))
+        assertEquals(
+                await(collection.find(query, projection, 1, options)),
+                decode(await(collection.findRaw(query, projection, 1, options))))
+    }
+
+    @Test
+    fun testReadsFieldsWithoutDecodingDocument() {
+        val raw = await(collection.findRaw(Document("name", "first")))[0]
+
+        assertEquals("first", raw.getString("name").value)
+        assertEquals(1, raw.getInt32("count").value)
+        assertEquals("ann", raw.getDocument("owner").getString("name").value)
+        assertEquals(2, raw.getArray("tags").size)
+    }
+
+    @Test
+    fun testMatchesFindOverBson() {
+        val client = transport.newClient(InstrumentationRegistry.getContext(), wireFormat = WireFormat.BSON)
+        val bson = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+
+        // Each raw document is a slice of the response
+        assertEquals(await(bson.find(Document())), decode(await(bson.findRaw(Document()))))
+        assertEquals(ContentTypes.APPLICATION_BSON, transport.pipelineContentTypes.last())
+    }
+
+    @Test
+    fun testFindsNothing() {
+        assertEquals(emptyList<RawBsonDocument>(), await(collection.findRaw(Document("name", "none"))))
+    }
+}
@@ -0,0 +1,83 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test merging single document inserts into batches.
+ */
+@RunWith(AndroidJUnit4::class)
+class InsertBatcherTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val transport = FakeStitchTransport()
+    private lateinit var collection: MongoClient.Collection
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(InstrumentationRegistry.getContext())
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+    }
+
+    @Test
+    fun testMergesInsertsWithinWindow() {
+        val batching = collection.withInsertBatching(50, TimeUnit.MILLISECONDS, 100)
+        val inserts = (1..3).map { batching.insertOne(Document("_id", it)) }
+        inserts.forEach { await(it) }
+
+        val sent = transport.pipelinesWith("insert")
+        assertEquals(1, sent.size)
+        assertEquals(3, ((sent[0][0]["args"] as Document)["items"] as List<*>).size)
+        assertEquals(listOf(1, 2, 3), transport.documents(NAMESPACE).map { it["_id"] })
+    }
+
+    @Test
+    fun testSendsFullBatchImmediately() {
+        val batching = collection.withInsertBatching(1, TimeUnit.HOURS, 2)
+        val first = batching.insertOne(Document("_id", 1))
+        assertFalse(first.isComplete)
+
+        // Would wait out the window if the full batch were not sent right away
+        await(batching.insertOne(Document("_id", 2)))
+        await(first)
+    }
+
+    @Test
+    fun testFlushesPendingBatch() {
+        val batching = collection.withInsertBatching(1, TimeUnit.HOURS, 100)
+        val insert = batching.insertOne(Document("_id", 1))
+        assertFalse(insert.isComplete)
+        assertEquals(0, transport.pipelinesWith("insert").size)
+
+        batching.flushInserts()
+        await(insert)
+        assertEquals(1, transport.documents(NAMESPACE).size)
+
+        // Nothing is left to send
+        batching.flushInserts()
+        assertEquals(1, transport.pipelinesWith("insert").size)
+    }
+
+    @Test
+    fun testFailsEveryInsertOfFailedBatch() {
+        transport.insert(NAMESPACE, Document("_id", 1))
+
+        val batching = collection.withInsertBatching(1, TimeUnit.HOURS, 100)
+        val duplicate = batching.insertOne(Document("_id", 1))
+        val other = batching.insertOne(Document("_id", 2))
+        batching.flushInserts()
+
+        awaitFailure(duplicate)
+        awaitFailure(other)
+        assertEquals(1, transport.pipelinesWith("insert").size)
+    }
+}
@@ -0,0 +1,129 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.BsonBinaryWriter
+import org.bson.Document
+import org.bson.codecs.DocumentCodec
+import org.bson.codecs.EncoderContext
+import org.bson.io.BasicOutputBuffer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Test inserting many documents in bounded batches.
+ */
+@RunWith(AndroidJUnit4::class)
+class InsertManyTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val transport = FakeStitchTransport()
+    private lateinit var collection: MongoClient.Collection
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(InstrumentationRegistry.getContext())
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+    }
+
+    private fun documents(ids: IntRange) = ids.map { Document("_id", it) }
+
+    private fun sentBatches() = transport.pipelinesWith("insert").map { stages ->
+        (stages[0]["args"] as Document)["items"] as List<*>
+    }
+
+    private fun encodedSize(document: Document): Int {
+        val buffer = BasicOutputBuffer()
+        DocumentCodec().encode(BsonBinaryWriter(buffer), document, EncoderContext.builder().build())
+        return buffer.position
+    }
+
+    /**
+     * Waits for the amount of inserts sent to stop changing.
+     */
+    private fun settledInsertCount(): Int {
+        var count: Int
+        do {
+            count = sentBatches().size
+            Thread.sleep(50)
+        } while (count != sentBatches().size)
+        return count
+    }
+
+    @Test
+    fun testSplitsByDocumentCount() {
+        val results = await(collection.insertMany(documents(1..5), InsertManyOptions().withMaxBatchDocuments(2)))
+
+        assertEquals(listOf(0, 2, 4), results.map { it.offset })
+        assertEquals(listOf(2, 2, 1), results.map { it.count })
+        assertTrue(results.all { it.isSuccessful })
+        assertEquals(listOf(2, 2, 1), sentBatches().map { it.size })
+        assertEquals(documents(1..5), transport.documents(NAMESPACE))
+    }
+
+    @Test
+    fun testSplitsByEncodedSize() {
+        val padding = "x".repeat(100)
+        val docs = (1..5).map { Document("_id", it).append("padding", padding) }
+        val small = Document("_id", 6)
+        val large = Document("_id", 7).append("padding", padding.repeat(5))
+        val size = encodedSize(docs[0])
+
+        // Two of the documents fit in a batch, and one too large for any batch gets its own
+        val options = InsertManyOptions().withMaxBatchBytes(2 * size + 1)
+        val results = await(collection.insertMany(docs + small + large, options))
+
+        assertEquals(listOf(2, 2, 2, 1), results.map { it.count })
+        assertTrue(results.all { it.isSuccessful })
+        assertTrue(encodedSize(large) > 2 * size + 1)
+        assertEquals(7, transport.documents(NAMESPACE).size)
+    }
+
+    @Test
+    fun testOrderedInsertStopsAtFirstFailedBatch() {
+        transport.insert(NAMESPACE, Document("_id", 3))
+
+        val results = await(collection.insertMany(documents(1..6), InsertManyOptions().withMaxBatchDocuments(2)))
+
+        assertTrue(results[0].isSuccessful)
+        assertTrue(results[1].wasAttempted())
+        assertFalse(results[1].isSuccessful)
+        assertTrue(results[1].exception != null)
+        assertFalse(results[2].wasAttempted())
+        assertEquals(4, results[2].offset)
+        assertEquals(2, sentBatches().size)
+        assertEquals(listOf(3, 1, 2), transport.documents(NAMESPACE).map { it["_id"] })
+
+        // Without options, the first failure fails the whole insert
+        awaitFailure(collection.insertMany(documents(3..4)))
+    }
+
+    @Test
+    fun testUnorderedInsertSendsBatchesConcurrently() {
+        transport.insert(NAMESPACE, Document("_id", 3))
+        val options = InsertManyOptions()
+                .withMaxBatchDocuments(2)
+                .withOrdered(false)
+                .withMaxConcurrentBatches(2)
+
+        // No more than two batches are in flight at once
+        transport.holdResponses()
+        val insert = collection.insertMany(documents(1..8), options)
+        assertEquals(2, settledInsertCount())
+        assertFalse(insert.isComplete)
+        transport.releaseResponses()
+
+        val results = await(insert)
+        assertEquals(4, sentBatches().size)
+        assertTrue(results.all { it.wasAttempted() })
+        // The failed batch does not stop the others
+        assertEquals(listOf(true, false, true, true), results.map { it.isSuccessful })
+        assertEquals(7, transport.documents(NAMESPACE).size)
+    }
+}
@@ -0,0 +1,180 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.content.Context
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Test answering finds and counts from an indexed local replica, and syncing it incrementally.
+ */
+@RunWith(AndroidJUnit4::class)
+class LocalReplicaTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val context: Context = InstrumentationRegistry.getContext()
+    private val transport = FakeStitchTransport()
+    private lateinit var collection: MongoClient.Collection
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(context)
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+        transport.insert(NAMESPACE,
+                Document("_id", 1).append("type", "a").append("price", 5).append("tags", listOf("x", "y")),
+                Document("_id", 2).append("type", "b").append("price", 15L).append("tags", listOf("y")),
+                Document("_id", 3).append("type", "a").append("price", 25.0),
+                Document("_id", 4).append("type", "c").append("price", 15).append("owner", Document("name", "ann")),
+                Document("_id", 5).append("price", 35))
+    }
+
+    private fun findsSent() = transport.pipelinesWith("find").size
+
+    private fun ids(query: Document, local: MongoClient.Collection) = await(local.find(query)).map { it["_id"] }
+
+    @Test
+    fun testAnswersFindsThroughIndexes() {
+        val replica = LocalReplica(context, collection)
+                .withHashIndex("type")
+                .withHashIndex("tags")
+                .withHashIndex("owner.name")
+                .withSortedIndex("price")
+        await(replica.start())
+        assertTrue(replica.isReady)
+        assertEquals(5, replica.documentCount)
+
+        val local = collection.withLocalReplica(replica)
+        val sent = findsSent()
+
+        assertEquals(listOf(1, 3), ids(Document("type", "a"), local))
+        assertEquals(listOf(1, 2, 4), ids(Document("type", Document("\$in", listOf("a", "b", "c"))).append("price", Document("\$lt", 20)), local))
+        assertEquals(listOf(1, 2), ids(Document("tags", "y"), local))
+        assertEquals(listOf(4), ids(Document("owner.name", "ann"), local))
+
+        // Numbers that compare equal are found through the index whatever their type
+        assertEquals(listOf(2, 4), ids(Document("price", 15.0), local))
+        assertEquals(listOf(2, 4), ids(Document("price", Document("\$gte", 15).append("\$lt", 25L)), local))
+        assertEquals(listOf(3, 5), ids(Document("price", Document("\$gt", 20)), local))
+        assertEquals(listOf(3), ids(Document("\$and", listOf(Document("type", "a"), Document("price", Document("\$gt", 20)))), local))
+
+        // Conditions no index can narrow are evaluated against every document
+        assertEquals(listOf(5), ids(Document("type", Document("\$exists", false)), local))
+        assertEquals(listOf(2, 3, 4, 5), ids(Document("price", Document("\$ne", 5)), local))
+        assertEquals(2, await(local.count(Document("type", "a"))))
+
+        assertEquals(sent, findsSent())
+    }
+
+    @Test
+    fun testOnlyAnswersFindsWithinReplicaQuery() {
+        val replica = LocalReplica(context, collection).withQuery(Document("type", "a"))
+        await(replica.start())
+        assertEquals(2, replica.documentCount)
+
+        val local = collection.withLocalReplica(replica)
+        val sent = findsSent()
+        assertEquals(listOf(3), ids(Document("type", "a").append("price", Document("\$gt", 10)), local))
+        assertEquals(sent, findsSent())
+
+        assertEquals(listOf(1, 2, 3, 4, 5), ids(Document(), local))
+        assertEquals(sent + 1, findsSent())
+    }
+
+    @Test
+    fun testRefreshesAfterWrites() {
+        val replica = LocalReplica(context, collection).withHashIndex("type")
+        await(replica.start())
+
+        // Finds never see the replica from before a write made through it
+        val local = collection.withLocalReplica(replica)
+        await(local.insertOne(Document("_id", 6).append("type", "a")))
+        assertEquals(listOf(1, 3, 6), ids(Document("type", "a"), local))
+        await(replica.refresh())
+        assertEquals(6, replica.documentCount)
+
+        // A delete makes the replica resync to drop the deleted document
+        await(local.deleteOne(Document("_id", 1)))
+        assertEquals(listOf(3, 6), ids(Document("type", "a"), local))
+        await(replica.refresh())
+        assertEquals(5, replica.documentCount)
+    }
+
+    @Test
+    fun testLoadsStoredCopy() {
+        val replica = LocalReplica(context, collection).withHashIndex("type")
+        await(replica.start())
+        replica.stop()
+
+        // The stored copy answers finds without reaching the server
+        transport.offline = true
+        val restarted = LocalReplica(context, collection).withHashIndex("type")
+        await(restarted.start())
+        assertTrue(restarted.isReady)
+        assertEquals(listOf(1, 3), ids(Document("type", "a"), collection.withLocalReplica(restarted)))
+        restarted.stop()
+    }
+
+    @Test
+    fun testMergesChangedDocuments() {
+        transport.update(NAMESPACE, Document(), Document("\$set", Document("updatedAt", 10)))
+        val replica = LocalReplica(context, collection)
+                .withHashIndex("type")
+                .withDeltaSync("updatedAt", 2)
+        await(replica.start())
+
+        // A changed document, a new one sharing the watermark and two newer ones
+        transport.update(NAMESPACE, Document("_id", 2), Document("\$set", Document("type", "a").append("updatedAt", 11)))
+        transport.insert(NAMESPACE,
+                Document("_id", 6).append("type", "a").append("updatedAt", 10),
+                Document("_id", 7).append("type", "b").append("updatedAt", 12),
+                Document("_id", 8).append("type", "a").append("updatedAt", 12))
+        val sent = findsSent()
+        await(replica.refresh())
+
+        // Three pages of at most two changes each, ordered by the delta field and _id
+        assertEquals(sent + 3, findsSent())
+        val page = transport.pipelines.last()[0]["args"] as Document
+        assertEquals(Document("updatedAt", 1).append("_id", 1), page["sort"])
+        assertEquals(2, page["limit"])
+
+        // Changed documents keep their place and new ones are appended
+        assertEquals(8, replica.documentCount)
+        val local = collection.withLocalReplica(replica)
+        assertEquals(listOf(1, 2, 3, 6, 8), ids(Document("type", "a"), local))
+        assertEquals(listOf(1, 2, 3, 4, 5, 6, 7, 8), ids(Document(), local))
+        assertEquals(sent + 3, findsSent())
+
+        // Nothing changed since
+        await(replica.refresh())
+        assertEquals(sent + 4, findsSent())
+        assertEquals(8, replica.documentCount)
+    }
+
+    @Test
+    fun testResyncDropsDeletedDocuments() {
+        val replica = LocalReplica(context, collection).withDeltaSync("_id", 10)
+        await(replica.start())
+
+        transport.insert(NAMESPACE, Document("_id", 6))
+        await(replica.refresh())
+        assertEquals(6, replica.documentCount)
+        val page = transport.pipelines.last()[0]["args"] as Document
+        assertEquals(Document("_id", Document("\$gt", 5)), page["query"])
+
+        // Deletions made elsewhere are only seen by a full resync
+        await(collection.deleteMany(Document("_id", Document("\$gt", 4))))
+        await(replica.refresh())
+        assertEquals(6, replica.documentCount)
+
+        await(replica.resync())
+        assertEquals(4, replica.documentCount)
+        assertEquals(listOf(1, 2, 3, 4), ids(Document(), collection.withLocalReplica(replica)))
+    }
+}
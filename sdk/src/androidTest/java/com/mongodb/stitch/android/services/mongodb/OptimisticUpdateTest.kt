@@ -0,0 +1,100 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Test applying updates on the device and to cached documents ahead of the server.
+ */
+@RunWith(AndroidJUnit4::class)
+class OptimisticUpdateTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val cache = EntityCache(10)
+
+    private fun cached(id: Int): Document = cache.get(NAMESPACE, id)
+
+    private fun assertCached(json: String, id: Int) {
+        // Copied, as a plain document never equals a shared one
+        assertEquals(Document.parse(json), Document(cached(id)))
+    }
+
+    private fun read(vararg json: String) {
+        cache.resolve(NAMESPACE, json.map { Document.parse(it) }, cache.generation)
+    }
+
+    @Test
+    fun testApply() {
+        val doc = Document.parse("{_id: 1, n: 1, tags: ['a'], address: {city: 'London'}}")
+        val updated = UpdateApplier.apply(doc, Document.parse(
+                "{\$inc: {n: 2}, \$push: {tags: {\$each: ['b', 'c']}}, \$set: {'address.zip': 'N1'}, \$unset: {missing: ''}}"))
+
+        assertEquals(
+                Document.parse("{_id: 1, n: 3, tags: ['a', 'b', 'c'], address: {city: 'London', zip: 'N1'}}"),
+                updated)
+        assertEquals(Document.parse("{_id: 1, n: 1, tags: ['a'], address: {city: 'London'}}"), doc)
+
+        assertTrue(UpdateApplier.isSupported(Document.parse("{\$set: {a: 1}}")))
+        assertFalse(UpdateApplier.isSupported(Document.parse("{\$rename: {a: 'b'}}")))
+        assertFalse(UpdateApplier.isSupported(Document.parse("{a: 1}")))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testRejectsIdUpdates() {
+        UpdateApplier.apply(Document("_id", 1), Document.parse("{\$set: {_id: 2}}"))
+    }
+
+    @Test
+    fun testConfirm() {
+        read("{_id: 1, n: 1}")
+        val changed = mutableListOf<Document>()
+        cache.addListener(NAMESPACE, DocumentListener { changed.add(it) })
+
+        val applied = cache.applyOptimistic(NAMESPACE, Document("_id", 1), Document.parse("{\$inc: {n: 1}}"), false)
+        assertEquals(2, cached(1)["n"])
+        assertEquals(1, changed.size)
+
+        // A read while the update is in flight keeps it applied
+        read("{_id: 1, n: 1}")
+        assertEquals(2, cached(1)["n"])
+
+        assertEquals(listOf<Any>(1), cache.confirm(applied))
+        assertEquals(2, cached(1)["n"])
+    }
+
+    @Test
+    fun testRollback() {
+        read("{_id: 1, n: 1}", "{_id: 2, n: 5}", "{_id: 3, n: 10}")
+
+        val first = cache.applyOptimistic(NAMESPACE, Document.parse("{n: {\$lt: 10}}"), Document.parse("{\$inc: {n: 1}}"), true)
+        val second = cache.applyOptimistic(NAMESPACE, Document("_id", 1), Document.parse("{\$set: {s: 'x'}}"), false)
+        assertCached("{_id: 1, n: 2, s: 'x'}", 1)
+        assertEquals(6, cached(2)["n"])
+        assertEquals(10, cached(3)["n"])
+
+        // The other update in flight is replayed on top of the confirmed contents
+        cache.rollback(first)
+        assertCached("{_id: 1, n: 1, s: 'x'}", 1)
+        assertEquals(5, cached(2)["n"])
+
+        cache.confirm(second)
+        assertCached("{_id: 1, n: 1, s: 'x'}", 1)
+    }
+
+    @Test
+    fun testSkipsUpdatesThatCannotBeApplied() {
+        read("{_id: 1, n: 1}")
+        assertNull(cache.applyOptimistic(NAMESPACE, Document("_id", 1), Document.parse("{\$rename: {n: 'm'}}"), false))
+        assertNull(cache.applyOptimistic(NAMESPACE, Document("_id", 2), Document.parse("{\$inc: {n: 1}}"), false))
+        assertNull(cache.applyOptimistic(NAMESPACE, Document("n", 1), Document.parse("{\$inc: {n: 1}}"), false))
+        assertEquals(1, cached(1)["n"])
+    }
+}
@@ -0,0 +1,51 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Test evaluating query specifiers and projections on the device.
+ */
+@RunWith(AndroidJUnit4::class)
+class QueryMatcherTest {
+    private val doc = Document.parse("""
+        {"_id": 1, "name": "ada", "age": 36, "tags": ["math", "poetry"],
+         "address": {"city": "London"}, "langs": [{"name": "en"}, {"name": "fr"}]}
+    """)
+
+    @Test
+    fun testMatches() {
+        assertTrue(QueryMatcher.matches(Document.parse("{}"), doc))
+        assertTrue(QueryMatcher.matches(Document.parse("{name: 'ada', age: {\$gte: 36.0}}"), doc))
+        assertFalse(QueryMatcher.matches(Document.parse("{age: {\$gt: 36}}"), doc))
+        assertTrue(QueryMatcher.matches(Document.parse("{tags: 'math'}"), doc))
+        assertTrue(QueryMatcher.matches(Document.parse("{'address.city': {\$in: ['Paris', 'London']}}"), doc))
+        assertTrue(QueryMatcher.matches(Document.parse("{'langs.name': 'fr'}"), doc))
+        assertTrue(QueryMatcher.matches(Document.parse("{missing: null, 'tags.1': 'poetry'}"), doc))
+        assertFalse(QueryMatcher.matches(Document.parse("{missing: {\$exists: true}}"), doc))
+        assertTrue(QueryMatcher.matches(Document.parse("{\$or: [{age: {\$lt: 10}}, {name: {\$ne: 'bob'}}]}"), doc))
+        assertFalse(QueryMatcher.matches(Document.parse("{\$and: [{age: 36}, {name: 'bob'}]}"), doc))
+        assertFalse(QueryMatcher.matches(Document.parse("{age: {\$gt: '1'}}"), doc))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testUnsupportedOperator() {
+        QueryMatcher.matches(Document.parse("{\$where: 'true'}"), doc)
+    }
+
+    @Test
+    fun testProject() {
+        assertEquals(
+                Document.parse("{_id: 1, address: {city: 'London'}}"),
+                QueryMatcher.project(doc, Document.parse("{'address.city': 1}")))
+        assertEquals(
+                Document.parse("{name: 'ada'}"),
+                QueryMatcher.project(doc, Document.parse("{_id: 0, name: 1}")))
+        assertFalse(QueryMatcher.project(doc, Document.parse("{tags: 0}")).containsKey("tags"))
+    }
+}
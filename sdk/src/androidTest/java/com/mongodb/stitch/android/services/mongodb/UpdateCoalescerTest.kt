@@ -0,0 +1,116 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test merging single document updates to the same query specifier.
+ */
+@RunWith(AndroidJUnit4::class)
+class UpdateCoalescerTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val transport = FakeStitchTransport()
+    private lateinit var coalescing: MongoClient.Collection
+
+    private val byId = Document("_id", 1)
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(InstrumentationRegistry.getContext())
+        coalescing = MongoClient(client, FakeStitchTransport.SERVICE)
+                .getDatabase("db")
+                .getCollection("items")
+                .withUpdateCoalescing(1, TimeUnit.HOURS)
+        transport.insert(NAMESPACE, Document("_id", 1).append("name", "first").append("count", 1))
+    }
+
+    private fun sentUpdates() = transport.pipelinesWith("update").map { (it[0]["args"] as Document)["update"] }
+
+    private fun stored() = transport.documents(NAMESPACE)[0]
+
+    @Test
+    fun testMergesUpdatesToSameQuery() {
+        val updates = listOf(
+                coalescing.updateOne(byId, Document("\$set", Document("name", "second"))),
+                coalescing.updateOne(byId, Document("\$inc", Document("count", 2))),
+                coalescing.updateOne(byId, Document("\$inc", Document("count", 3))),
+                coalescing.updateOne(byId, Document("\$set", Document("name", "third"))))
+        assertFalse(updates[0].isComplete)
+
+        coalescing.flushUpdates()
+        updates.forEach { await(it) }
+
+        assertEquals(listOf(Document("\$set", Document("name", "third")).append("\$inc", Document("count", 5))), sentUpdates())
+        assertEquals(Document("_id", 1).append("name", "third").append("count", 6), stored())
+    }
+
+    @Test
+    fun testMergesIncrementIntoSet() {
+        coalescing.updateOne(byId, Document("\$set", Document("count", 10)))
+        val last = coalescing.updateOne(byId, Document("\$inc", Document("count", 1)))
+        coalescing.flushUpdates()
+        await(last)
+
+        assertEquals(listOf(Document("\$set", Document("count", 11))), sentUpdates())
+        assertEquals(11, stored()["count"])
+    }
+
+    @Test
+    fun testSendsDifferentQueriesSeparately() {
+        transport.insert(NAMESPACE, Document("_id", 2).append("count", 1))
+
+        val first = coalescing.updateOne(byId, Document("\$inc", Document("count", 1)))
+        val second = coalescing.updateOne(Document("_id", 2), Document("\$inc", Document("count", 1)))
+        coalescing.flushUpdates()
+        await(first)
+        await(second)
+
+        assertEquals(2, sentUpdates().size)
+        assertEquals(listOf(2, 2), transport.documents(NAMESPACE).map { it["count"] })
+    }
+
+    @Test
+    fun testKeepsOrderOfUpdatesThatCannotBeMerged() {
+        coalescing.updateOne(byId, Document("\$set", Document("tags", listOf("a"))))
+        // $push cannot be merged, so it is sent after the pending update
+        coalescing.updateOne(byId, Document("\$push", Document("tags", "b")))
+        // Overlapping paths cannot be merged either
+        coalescing.updateOne(byId, Document("\$set", Document("meta", Document("x", 1))))
+        val last = coalescing.updateOne(byId, Document("\$set", Document("meta.y", 2)))
+        coalescing.flushUpdates()
+        await(last)
+
+        assertEquals(4, sentUpdates().size)
+        assertEquals(listOf("a", "b"), stored()["tags"])
+        assertEquals(Document("x", 1).append("y", 2), stored()["meta"])
+    }
+
+    @Test
+    fun testFailsEveryMergedUpdateOfFailedRequest() {
+        // The server cannot increment a string
+        val first = coalescing.updateOne(byId, Document("\$inc", Document("name", 1)))
+        val second = coalescing.updateOne(byId, Document("\$inc", Document("count", 1)))
+        coalescing.flushUpdates()
+
+        awaitFailure(first)
+        awaitFailure(second)
+        assertEquals(1, sentUpdates().size)
+        assertEquals(1, stored()["count"])
+
+        // Later updates are sent regardless
+        val next = coalescing.updateOne(byId, Document("\$inc", Document("count", 1)))
+        coalescing.flushUpdates()
+        await(next)
+        assertEquals(2, stored()["count"])
+    }
+}
@@ -0,0 +1,172 @@
+package com.mongodb.stitch.android.services.mongodb
+
+import android.content.Context
+import android.support.test.InstrumentationRegistry
+import android.support.test.runner.AndroidJUnit4
+import org.bson.Document
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.Collections
+import java.util.concurrent.TimeUnit
+
+/**
+ * Test recording writes on the device and sending them to Stitch in the background.
+ */
+@RunWith(AndroidJUnit4::class)
+class WriteJournalTest {
+    companion object {
+        const val NAMESPACE = "db.items"
+    }
+
+    private val context: Context = InstrumentationRegistry.getContext()
+    private val transport = FakeStitchTransport()
+    private lateinit var collection: MongoClient.Collection
+
+    private val applied: MutableList<Long> = Collections.synchronizedList(ArrayList())
+    private val rejected: MutableList<Long> = Collections.synchronizedList(ArrayList())
+
+    private val listener = object : WriteJournal.Listener {
+        override fun onApplied(entry: JournalEntry) {
+            applied.add(entry.sequence)
+        }
+
+        override fun onRejected(entry: JournalEntry, exception: Exception) {
+            rejected.add(entry.sequence)
+        }
+    }
+
+    @Before
+    fun setup() {
+        val client = transport.newClient(context)
+        collection = MongoClient(client, FakeStitchTransport.SERVICE).getDatabase("db").getCollection("items")
+    }
+
+    private fun newJournal(): WriteJournal {
+        val journal = WriteJournal(context, collection)
+        journal.addListener(listener)
+        await(journal.start())
+        return journal
+    }
+
+    /**
+     * Waits for an amount of updates to have been sent, and for no more to follow.
+     */
+    private fun awaitUpdateCount(count: Int) {
+        val deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(FakeStitchTransport.TIMEOUT_SECONDS)
+        while (transport.pipelinesWith("update").size < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        Thread.sleep(50)
+        assertEquals(count, transport.pipelinesWith("update").size)
+    }
+
+    @Test
+    fun testSendsWritesInOrder() {
+        val journal = newJournal()
+        val writing = collection.withWriteBehind(journal)
+        await(writing.insertOne(Document("_id", 1).append("count", 1)))
+        await(writing.insertOne(Document("_id", 2).append("count", 1)))
+        await(writing.updateOne(Document("_id", 1), Document("\$inc", Document("count", 1))))
+        await(writing.deleteOne(Document("_id", 2)))
+        await(writing.insertOne(Document("count", 5)))
+        await(journal.flush())
+
+        assertEquals(0, journal.pendingCount)
+        assertEquals(listOf(1L, 2L, 3L, 4L, 5L), applied)
+        val stored = transport.documents(NAMESPACE)
+        assertEquals(Document("_id", 1).append("count", 2), stored[0])
+        // Documents are given an _id when they are recorded
+        assertEquals(2, stored.size)
+        assertTrue(stored[1].containsKey("_id"))
+        journal.stop()
+    }
+
+    @Test
+    fun testResumesAfterRestart() {
+        transport.offline = true
+        val journal = newJournal()
+        val writing = collection.withWriteBehind(journal)
+        await(writing.insertOne(Document("_id", 1).append("count", 1)))
+        await(writing.updateOne(Document("_id", 1), Document("\$inc", Document("count", 1))))
+        assertEquals(2, journal.pendingCount)
+        journal.stop()
+
+        // The writes recorded before the app stopped are sent once it starts again
+        transport.offline = false
+        val restarted = newJournal()
+        await(restarted.flush())
+
+        assertEquals(0, restarted.pendingCount)
+        assertEquals(listOf(Document("_id", 1).append("count", 2)), transport.documents(NAMESPACE))
+        assertEquals(1, transport.pipelinesWith("insert").size)
+        restarted.stop()
+
+        // Applied writes are not sent again
+        val again = newJournal()
+        assertEquals(0, again.pendingCount)
+        again.stop()
+    }
+
+    @Test
+    fun testAppliesInsertWhoseResponseWasLost() {
+        val journal = newJournal()
+        transport.droppedResponses = 1
+        await(collection.withWriteBehind(journal).insertOne(Document("_id", 1).append("name", "mine")))
+        await(journal.flush())
+
+        // The insert was sent again and found already applied
+        assertEquals(2, transport.pipelinesWith("insert").size)
+        assertEquals(listOf(1L), applied)
+        assertEquals(emptyList<Long>(), rejected)
+        assertEquals(listOf(Document("_id", 1).append("name", "mine")), transport.documents(NAMESPACE))
+        journal.stop()
+    }
+
+    @Test
+    fun testRecordsNonIdempotentUpdatesAsSentOneByOne() {
+        transport.insert(NAMESPACE, Document("_id", 1).append("count", 0))
+        transport.offline = true
+        val journal = newJournal()
+        val writing = collection.withWriteBehind(journal)
+        await(writing.updateOne(Document("_id", 1), Document("\$inc", Document("count", 1))))
+        await(writing.updateOne(Document("_id", 1), Document("\$inc", Document("count", 1))))
+        journal.stop()
+
+        // The app stops again while the second increment is in flight
+        transport.offline = false
+        transport.holdResponses(after = 1)
+        val interrupted = newJournal()
+        awaitUpdateCount(2)
+        interrupted.stop()
+
+        // Only the increment whose response was not received is sent again, and is applied twice
+        val restarted = newJournal()
+        assertEquals(1, restarted.pendingCount)
+        transport.releaseResponses()
+        await(restarted.flush())
+        assertEquals(3, transport.documents(NAMESPACE).single()["count"])
+        restarted.stop()
+    }
+
+    @Test
+    fun testReportsRejectedWritesAndContinues() {
+        transport.insert(NAMESPACE, Document("_id", 1).append("name", "theirs"))
+
+        val journal = newJournal()
+        val writing = collection.withWriteBehind(journal)
+        // A document with the same _id already exists, and a string cannot be incremented
+        await(writing.insertOne(Document("_id", 1).append("name", "mine")))
+        await(writing.updateOne(Document("_id", 1), Document("\$inc", Document("name", 1))))
+        await(writing.insertOne(Document("_id", 2).append("name", "mine")))
+        await(journal.flush())
+
+        assertEquals(listOf(1L, 2L), rejected)
+        assertEquals(listOf(3L), applied)
+        assertEquals(0, journal.pendingCount)
+        assertEquals(listOf("theirs", "mine"), transport.documents(NAMESPACE).map { it["name"] })
+        journal.stop()
+    }
+}
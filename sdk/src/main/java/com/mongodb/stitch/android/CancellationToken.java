@@ -0,0 +1,146 @@
+package com.mongodb.stitch.android;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A CancellationToken lets a caller abandon requests it no longer needs. Cancelling the token
+ * aborts every request made with it that is still in flight, and their tasks fail with a
+ * {@link StitchException.StitchCancelledException}. A token cannot be reset once cancelled.
+ */
+public class CancellationToken {
+
+    // Guarded by this
+    private final List<Runnable> _listeners = new ArrayList<>();
+    private boolean _cancelled;
+    private boolean _deadlineExceeded;
+
+    // Only set on tokens linked to a single call
+    private CancellationToken _parent;
+    private Runnable _parentListener;
+    private ScheduledFuture<?> _deadline;
+
+    /**
+     * Cancels every request made with this token that is still in flight, and every request
+     * made with it from now on.
+     */
+    public void cancel() {
+        cancel(false);
+    }
+
+    /**
+     * @return Whether or not this token has been cancelled.
+     */
+    public synchronized boolean isCancelled() {
+        return _cancelled;
+    }
+
+    /**
+     * @return Whether or not this token was cancelled because its call ran past its deadline.
+     */
+    synchronized boolean isDeadlineExceeded() {
+        return _deadlineExceeded;
+    }
+
+    /**
+     * @return An exception describing why requests made with this token were abandoned.
+     */
+    StitchException.StitchCancelledException newCancelledException() {
+        return new StitchException.StitchCancelledException(isDeadlineExceeded()
+                ? "Request exceeded its deadline"
+                : "Request was cancelled");
+    }
+
+    /**
+     * Adds a listener to run when this token is cancelled. The listener runs immediately on the
+     * calling thread if the token is already cancelled.
+     *
+     * @param listener The listener to run.
+     */
+    void addListener(final Runnable listener) {
+        synchronized (this) {
+            if (!_cancelled) {
+                _listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * @param listener A listener previously added to this token.
+     */
+    synchronized void removeListener(final Runnable listener) {
+        _listeners.remove(listener);
+    }
+
+    private void cancel(final boolean deadlineExceeded) {
+        final List<Runnable> listeners;
+        synchronized (this) {
+            if (_cancelled) {
+                return;
+            }
+            _cancelled = true;
+            _deadlineExceeded = deadlineExceeded;
+            listeners = new ArrayList<>(_listeners);
+            _listeners.clear();
+        }
+        for (final Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Makes a token for a single call that is cancelled when the caller's token is cancelled or
+     * when the call's timeout elapses. The token must be released once the call completes.
+     *
+     * @param options   The options the call was made with, if any.
+     * @param scheduler The scheduler to time the deadline with.
+     * @return A token for the call, or null if the call can be neither cancelled nor time out.
+     */
+    static CancellationToken forCall(
+            final RequestOptions options,
+            final ScheduledExecutorService scheduler
+    ) {
+        if (options == null
+                || (options.getCancellationToken() == null && options.getTimeoutMillis() == null)) {
+            return null;
+        }
+
+        final CancellationToken token = new CancellationToken();
+        if (options.getTimeoutMillis() != null) {
+            token._deadline = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    token.cancel(true);
+                }
+            }, options.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (options.getCancellationToken() != null) {
+            token._parent = options.getCancellationToken();
+            token._parentListener = new Runnable() {
+                @Override
+                public void run() {
+                    token.cancel(false);
+                }
+            };
+            token._parent.addListener(token._parentListener);
+        }
+        return token;
+    }
+
+    /**
+     * Detaches a token made by {@link #forCall} from the caller's token and stops its deadline.
+     */
+    void release() {
+        if (_deadline != null) {
+            _deadline.cancel(false);
+        }
+        if (_parent != null) {
+            _parent.removeListener(_parentListener);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.mongodb.stitch.android;
+
+import static com.mongodb.stitch.android.StitchException.StitchRequestException;
+
+/**
+ * A CircuitBreaker tracks the health of a single endpoint. After enough consecutive transient
+ * failures it opens and requests fail without being sent. Once it has been open long enough a
+ * single request is let through; if that request succeeds the breaker closes, otherwise it opens
+ * again.
+ */
+class CircuitBreaker {
+
+    private final String _endpoint;
+    private final int _failureThreshold;
+    private final long _openMillis;
+
+    // Guarded by this
+    private int _failures;
+    private long _openUntil;
+    private boolean _probing;
+
+    /**
+     * @param endpoint         The endpoint this breaker tracks.
+     * @param failureThreshold The amount of consecutive failures that open the breaker, or zero
+     *                         to never open it.
+     * @param openMillis       How long the breaker stays open before probing.
+     */
+    CircuitBreaker(final String endpoint, final int failureThreshold, final long openMillis) {
+        _endpoint = endpoint;
+        _failureThreshold = failureThreshold;
+        _openMillis = openMillis;
+    }
+
+    /**
+     * @return Whether or not a request may be sent now. If this lets a probing request through,
+     * its outcome must be reported.
+     */
+    synchronized boolean allowRequest() {
+        if (_failureThreshold == 0 || _failures < _failureThreshold) {
+            return true;
+        }
+        if (_probing || System.currentTimeMillis() < _openUntil) {
+            return false;
+        }
+        _probing = true;
+        return true;
+    }
+
+    /**
+     * Records that a request got a response that does not indicate a transient failure.
+     */
+    synchronized void onSuccess() {
+        _failures = 0;
+        _probing = false;
+    }
+
+    /**
+     * Records that a request was abandoned before its outcome was known.
+     */
+    synchronized void onCancelled() {
+        _probing = false;
+    }
+
+    /**
+     * Records that a request failed transiently.
+     */
+    synchronized void onFailure() {
+        _failures++;
+        _probing = false;
+        if (_failureThreshold != 0 && _failures >= _failureThreshold) {
+            _openUntil = System.currentTimeMillis() + _openMillis;
+        }
+    }
+
+    /**
+     * @return An exception for a request that was not sent because this breaker is open.
+     */
+    synchronized StitchRequestException newOpenException() {
+        final long remaining = Math.max(0, _openUntil - System.currentTimeMillis());
+        return new StitchRequestException(
+                String.format("Requests to %s are failing; not sending for %dms", _endpoint, remaining),
+                true,
+                remaining);
+    }
+}
@@ -7,11 +7,15 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
 import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
 import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
 import org.bson.json.JsonWriterSettings;
 import org.bson.types.ObjectId;
 
 import java.io.IOException;
+import java.io.StringWriter;
 
 /**
  * CustomObjectMapper is responsible for handling the serialization and deserialization of JSON
@@ -33,9 +37,16 @@ class CustomObjectMapper {
                             final JsonGenerator jsonGenerator,
                             final SerializerProvider provider
                     ) throws IOException {
+                        // Not encoded as a collectible document, which would move any _id field
+                        // first and so change the meaning of sort and hint specifications
                         final JsonWriterSettings writerSettings =
                                 JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
-                        jsonGenerator.writeRawValue(value.toJson(writerSettings));
+                        final StringWriter json = new StringWriter();
+                        new DocumentCodec().encode(
+                                new JsonWriter(json, writerSettings),
+                                value,
+                                EncoderContext.builder().isEncodingCollectibleDocument(false).build());
+                        jsonGenerator.writeRawValue(json.toString());
                     }
                 })
                 .addSerializer(ObjectId.class, new JsonSerializer<ObjectId>() {
@@ -0,0 +1,333 @@
+package com.mongodb.stitch.android;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PipelineBsonCodec is responsible for encoding pipelines to and decoding pipeline results from
+ * binary BSON for use with {@link WireFormat#BSON}.
+ */
+class PipelineBsonCodec {
+
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    /**
+     * Encodes a pipeline as a BSON document of the form {@code {pipeline: [stage, ...]}} since
+     * BSON does not permit a top level array.
+     *
+     * @param pipeline The pipeline to encode.
+     * @return The encoded pipeline.
+     */
+    static byte[] encodePipeline(final List<PipelineStage> pipeline) {
+        final List<Document> stages = new ArrayList<>(pipeline.size());
+        for (final PipelineStage stage : pipeline) {
+            stages.add(toDocument(stage));
+        }
+
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+        final BsonBinaryWriter writer = new BsonBinaryWriter(buffer);
+        try {
+            DOCUMENT_CODEC.encode(
+                    writer,
+                    new Document(Fields.PIPELINE, stages),
+                    EncoderContext.builder().build());
+        } finally {
+            writer.close();
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Decodes the result of a pipeline directly from a BSON response body.
+     *
+     * @param bytes The response body.
+     * @return The result of the pipeline.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> decodeResult(final byte[] bytes) {
+        final BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes));
+        try {
+            final Document doc = DOCUMENT_CODEC.decode(reader, DecoderContext.builder().build());
+            return (List<Object>) doc.get(Fields.RESULT);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Decodes the result of a pipeline from a BSON response body while it is read, one element
+     * at a time. Only the element being decoded is held in memory, rather than the whole body.
+     *
+     * @param body     The response body.
+     * @param listener The listener to hand every element of the result to as it is decoded.
+     * @throws IOException If the body cannot be read or is not a pipeline result.
+     */
+    static void decodeResult(final InputStream body, final ResultListener<Object> listener) throws IOException {
+        final DataInputStream input = new DataInputStream(body);
+        readInt32(input);
+        byte type;
+        while ((type = input.readByte()) != BsonType.END_OF_DOCUMENT.getValue()) {
+            final String name = readCString(input);
+            if (!name.equals(Fields.RESULT) || type != BsonType.ARRAY.getValue()) {
+                readValue(input, type);
+                continue;
+            }
+            readInt32(input);
+            byte elementType;
+            while ((elementType = input.readByte()) != BsonType.END_OF_DOCUMENT.getValue()) {
+                readCString(input);
+                listener.onResult(decodeElement(elementType, readValue(input, elementType)));
+            }
+        }
+    }
+
+    /**
+     * @param type  The BSON type of an element.
+     * @param value The encoded value of the element.
+     * @return The decoded element.
+     */
+    private static Object decodeElement(final byte type, final byte[] value) {
+        if (type == BsonType.DOCUMENT.getValue()) {
+            return decodeDocument(value);
+        }
+
+        // Wrapped as {v: value} so that elements that are not documents decode the same way
+        final ByteBuffer wrapper = ByteBuffer.allocate(4 + 1 + 2 + value.length + 1).order(ByteOrder.LITTLE_ENDIAN);
+        wrapper.putInt(wrapper.capacity());
+        wrapper.put(type);
+        wrapper.put((byte) 'v').put((byte) 0);
+        wrapper.put(value);
+        wrapper.put((byte) 0);
+        return decodeDocument(wrapper.array()).get("v");
+    }
+
+    private static Document decodeDocument(final byte[] bytes) {
+        final BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes));
+        try {
+            return DOCUMENT_CODEC.decode(reader, DecoderContext.builder().build());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @param input The stream positioned at the value of an element.
+     * @param type  The BSON type of the element.
+     * @return The encoded value.
+     */
+    private static byte[] readValue(final DataInputStream input, final byte type) throws IOException {
+        final ByteArrayOutputStream value = new ByteArrayOutputStream();
+        final BsonType bsonType = BsonType.findByValue(type);
+        if (bsonType == null) {
+            throw new IOException(String.format("Unknown BSON type 0x%02x", type));
+        }
+        switch (bsonType) {
+            case UNDEFINED:
+            case NULL:
+            case MIN_KEY:
+            case MAX_KEY:
+                break;
+            case BOOLEAN:
+                copy(input, value, 1);
+                break;
+            case INT32:
+                copy(input, value, 4);
+                break;
+            case DOUBLE:
+            case DATE_TIME:
+            case TIMESTAMP:
+            case INT64:
+                copy(input, value, 8);
+                break;
+            case OBJECT_ID:
+                copy(input, value, 12);
+                break;
+            case DECIMAL128:
+                copy(input, value, 16);
+                break;
+            case STRING:
+            case JAVASCRIPT:
+            case SYMBOL:
+                copyLengthPrefixed(input, value, 0);
+                break;
+            case BINARY:
+                copyLengthPrefixed(input, value, 1);
+                break;
+            case DB_POINTER:
+                copyLengthPrefixed(input, value, 0);
+                copy(input, value, 12);
+                break;
+            case REGULAR_EXPRESSION:
+                copyCString(input, value);
+                copyCString(input, value);
+                break;
+            case DOCUMENT:
+            case ARRAY:
+            case JAVASCRIPT_WITH_SCOPE:
+                // The length includes itself
+                copyLengthPrefixed(input, value, -4);
+                break;
+            default:
+                throw new IOException(String.format("Unexpected BSON type %d", type));
+        }
+        return value.toByteArray();
+    }
+
+    /**
+     * Copies a value starting with its little endian length, followed by the given amount of
+     * bytes more than the length.
+     */
+    private static void copyLengthPrefixed(
+            final DataInputStream input,
+            final ByteArrayOutputStream value,
+            final int extra
+    ) throws IOException {
+        final int length = readInt32(input);
+        if (length + extra < 0) {
+            throw new IOException("Invalid BSON length");
+        }
+        value.write(length & 0xFF);
+        value.write((length >> 8) & 0xFF);
+        value.write((length >> 16) & 0xFF);
+        value.write((length >> 24) & 0xFF);
+        copy(input, value, length + extra);
+    }
+
+    private static void copy(final DataInputStream input, final ByteArrayOutputStream value, final int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        value.write(bytes, 0, length);
+    }
+
+    private static void copyCString(final DataInputStream input, final ByteArrayOutputStream value) throws IOException {
+        byte b;
+        do {
+            b = input.readByte();
+            value.write(b);
+        } while (b != 0);
+    }
+
+    private static String readCString(final DataInputStream input) throws IOException {
+        final ByteArrayOutputStream name = new ByteArrayOutputStream();
+        byte b;
+        while ((b = input.readByte()) != 0) {
+            name.write(b);
+        }
+        return new String(name.toByteArray(), "UTF-8");
+    }
+
+    private static int readInt32(final DataInputStream input) throws IOException {
+        return Integer.reverseBytes(input.readInt());
+    }
+
+    /**
+     * Decodes the result of a pipeline consisting of documents from a BSON response body without
+     * decoding any of the documents themselves. Each document is a slice of the response body.
+     *
+     * @param bytes The response body.
+     * @return The result of the pipeline as raw documents sharing the response body.
+     */
+    static List<RawBsonDocument> decodeRawResult(final byte[] bytes) {
+        final BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes));
+        try {
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                if (!reader.readName().equals(Fields.RESULT)) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                final List<RawBsonDocument> docs = new ArrayList<>();
+                reader.readStartArray();
+                // The reader skips the names of array elements itself
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    if (reader.getCurrentBsonType() != BsonType.DOCUMENT) {
+                        throw new StitchException.StitchClientException(String.format(
+                                "Expected pipeline result to only contain documents but found %s",
+                                reader.getCurrentBsonType()));
+                    }
+                    final int offset = reader.getBsonInput().getPosition();
+                    reader.skipValue();
+                    docs.add(new RawBsonDocument(bytes, offset, reader.getBsonInput().getPosition() - offset));
+                }
+                reader.readEndArray();
+                return docs;
+            }
+            return Collections.emptyList();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Encodes already decoded documents into raw documents that all share one contiguous buffer.
+     *
+     * @param result The result of a pipeline consisting of documents.
+     * @return The documents as raw documents.
+     */
+    static List<RawBsonDocument> encodeRawResult(final List<Object> result) {
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+        final int[] offsets = new int[result.size() + 1];
+        for (int i = 0; i < result.size(); i++) {
+            final Object obj = result.get(i);
+            if (!(obj instanceof Document)) {
+                throw new StitchException.StitchClientException(String.format(
+                        "Expected pipeline result to only contain documents but found %s", obj));
+            }
+            offsets[i] = buffer.getPosition();
+            DOCUMENT_CODEC.encode(new BsonBinaryWriter(buffer), (Document) obj, EncoderContext.builder().build());
+        }
+        offsets[result.size()] = buffer.getPosition();
+
+        final byte[] bytes = buffer.toByteArray();
+        final List<RawBsonDocument> docs = new ArrayList<>(result.size());
+        for (int i = 0; i < result.size(); i++) {
+            docs.add(new RawBsonDocument(bytes, offsets[i], offsets[i + 1] - offsets[i]));
+        }
+        return docs;
+    }
+
+    /**
+     * @param stage The stage to convert.
+     * @return The stage as a document with the same fields it is serialized with as JSON.
+     */
+    private static Document toDocument(final PipelineStage stage) {
+        final Document doc = new Document(Fields.ACTION, stage.getAction());
+        if (stage.getService() != null) {
+            doc.put(Fields.SERVICE, stage.getService());
+        }
+        if (stage.getArgs() != null) {
+            doc.put(Fields.ARGS, stage.getArgs());
+        }
+        if (stage.getLet() != null) {
+            doc.put(Fields.LET, stage.getLet());
+        }
+        return doc;
+    }
+
+    private static class Fields {
+        private static final String PIPELINE = "pipeline";
+        private static final String RESULT = "result";
+        private static final String ACTION = "action";
+        private static final String SERVICE = "service";
+        private static final String ARGS = "args";
+        private static final String LET = "let";
+    }
+}
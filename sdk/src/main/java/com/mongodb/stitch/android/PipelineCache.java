@@ -0,0 +1,616 @@
+package com.mongodb.stitch.android;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.mongodb.stitch.android.http.HttpResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mongodb.stitch.android.http.Headers.CONTENT_TYPE;
+
+/**
+ * A PipelineCache keeps the results of read-only pipelines in memory and on disk so that they
+ * can be served without a network call. Results are cached per user, for a time to live, after
+ * which they can optionally still be served while they are refreshed in the background. Any
+ * write pipeline executed by the client invalidates the results read from the collections it
+ * writes to. Configure the cache before passing it to {@link StitchClient.Builder}.
+ */
+public class PipelineCache {
+
+    private static final String TAG = "Stitch.PipelineCache";
+    private static final String DIRECTORY_NAME = "stitch-pipeline-cache";
+    private static final String NAMESPACES_FILE_NAME = "namespaces";
+    private static final String NO_NAMESPACE = "none";
+    private static final int FORMAT_VERSION = 1;
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+
+    private static final int DEFAULT_MEMORY_BUDGET_BYTES = 2 * 1024 * 1024;
+    private static final long DEFAULT_DISK_BUDGET_BYTES = 10 * 1024 * 1024;
+    private static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final File _directory;
+    private final Object _diskLock = new Object();
+
+    // Bumped by every invalidation so that results fetched across one are not stored
+    private final AtomicLong _generation = new AtomicLong();
+
+    // When each namespace was last invalidated, so that disk entries stored before then are not
+    // used while their deletion is still pending
+    private final Map<String, Long> _invalidatedAt = new ConcurrentHashMap<>();
+
+    private LruCache<String, Entry> _memory;
+    private long _diskBudgetBytes = DEFAULT_DISK_BUDGET_BYTES;
+    private long _timeToLiveMillis = DEFAULT_TIME_TO_LIVE_MILLIS;
+    private long _staleWhileRevalidateMillis;
+
+    // Guarded by _diskLock; -1 until first measured
+    private long _diskBytes = -1;
+
+    /**
+     * @param context The Android {@link Context} whose cache directory holds the disk tier.
+     */
+    public PipelineCache(final Context context) {
+        _directory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        _memory = newMemoryCache(DEFAULT_MEMORY_BUDGET_BYTES);
+    }
+
+    /**
+     * @param bytes The maximum amount of result bytes to keep in memory.
+     * @return This cache.
+     */
+    public PipelineCache withMemoryBudget(final int bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("memory budget must be positive");
+        }
+        _memory = newMemoryCache(bytes);
+        return this;
+    }
+
+    /**
+     * @param bytes The maximum amount of result bytes to keep on disk. Zero disables the disk
+     *              tier.
+     * @return This cache.
+     */
+    public PipelineCache withDiskBudget(final long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("disk budget must not be negative");
+        }
+        _diskBudgetBytes = bytes;
+        return this;
+    }
+
+    /**
+     * @param timeToLive How long a result is served from the cache without asking the server.
+     * @param unit       The unit of {@code timeToLive}.
+     * @return This cache.
+     */
+    public PipelineCache withTimeToLive(final long timeToLive, final TimeUnit unit) {
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("time to live must not be negative");
+        }
+        _timeToLiveMillis = unit.toMillis(timeToLive);
+        return this;
+    }
+
+    /**
+     * @param staleWindow How long after its time to live a result is still served, while a
+     *                    fresh one is fetched in the background. Zero, the default, always
+     *                    waits for the server once a result has expired.
+     * @param unit        The unit of {@code staleWindow}.
+     * @return This cache.
+     */
+    public PipelineCache withStaleWhileRevalidate(final long staleWindow, final TimeUnit unit) {
+        if (staleWindow < 0) {
+            throw new IllegalArgumentException("stale window must not be negative");
+        }
+        _staleWhileRevalidateMillis = unit.toMillis(staleWindow);
+        return this;
+    }
+
+    /**
+     * Discards every cached result read from a collection. This performs disk I/O and should
+     * not be called on the main thread.
+     *
+     * @param service    The name of the MongoDB service.
+     * @param database   The name of the database.
+     * @param collection The name of the collection.
+     */
+    public void invalidate(final String service, final String database, final String collection) {
+        final Set<String> namespaces = Collections.singleton(namespace(service, database, collection));
+        evict(namespaces);
+        deleteFromDisk(namespaces);
+    }
+
+    /**
+     * Discards every cached result. This performs disk I/O and should not be called on the main
+     * thread.
+     */
+    public void clear() {
+        _generation.incrementAndGet();
+        _memory.evictAll();
+        synchronized (_diskLock) {
+            deleteRecursively(_directory);
+            _diskBytes = 0;
+        }
+    }
+
+    /**
+     * Gets the result of a read-only pipeline, from the cache if it holds a usable one.
+     *
+     * @param scope       The app and user the result belongs to.
+     * @param body        The encoded pipeline.
+     * @param contentType The content type of the encoded pipeline.
+     * @param namespaces  The namespaces the pipeline reads from.
+     * @param fetcher     Fetches the result from the server.
+     * @param executor    The executor to do disk I/O and process results on.
+     * @return A task containing the successful response that can be resolved once it is found
+     * in the cache or fetched.
+     */
+    Task<HttpResponse> get(
+            final String scope,
+            final byte[] body,
+            final String contentType,
+            final Set<String> namespaces,
+            final Fetcher fetcher,
+            final Executor executor
+    ) {
+        final String key = hash(
+                scope.getBytes(StandardCharsets.UTF_8),
+                contentType.getBytes(StandardCharsets.UTF_8),
+                body);
+        return Tasks.call(executor, new Callable<Entry>() {
+            @Override
+            public Entry call() throws Exception {
+                return lookup(key, namespaces);
+            }
+        }).continueWithTask(executor, new Continuation<Entry, Task<HttpResponse>>() {
+            @Override
+            public Task<HttpResponse> then(@NonNull final Task<Entry> task) throws Exception {
+                final Entry entry = task.isSuccessful() ? task.getResult() : null;
+                if (entry == null) {
+                    return fetchAndStore(key, namespaces, fetcher, executor);
+                }
+
+                final long age = System.currentTimeMillis() - entry._storedAt;
+                if (age >= 0 && age <= _timeToLiveMillis) {
+                    return Tasks.forResult(entry.toResponse());
+                }
+                if (age >= 0 && age <= _timeToLiveMillis + _staleWhileRevalidateMillis) {
+                    fetchAndStore(key, namespaces, fetcher, executor).addOnCompleteListener(executor, new OnCompleteListener<HttpResponse>() {
+                        @Override
+                        public void onComplete(@NonNull final Task<HttpResponse> task) {
+                            if (!task.isSuccessful()) {
+                                Log.d(TAG, "Error revalidating cached pipeline result", task.getException());
+                            }
+                        }
+                    });
+                    return Tasks.forResult(entry.toResponse());
+                }
+                return fetchAndStore(key, namespaces, fetcher, executor);
+            }
+        });
+    }
+
+    /**
+     * Discards every cached result read from any of the namespaces. Results in memory are
+     * discarded right away, and those on disk stop being used right away but are deleted on the
+     * executor, so that this can be called from any thread.
+     *
+     * @param namespaces The namespaces that were written to.
+     * @param executor   The executor to delete results from disk on.
+     */
+    void invalidate(final Set<String> namespaces, final Executor executor) {
+        if (namespaces.isEmpty()) {
+            return;
+        }
+        evict(namespaces);
+        if (_diskBudgetBytes == 0) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteFromDisk(namespaces);
+            }
+        });
+    }
+
+    /**
+     * Discards the results in memory read from any of the namespaces, and marks those on disk
+     * as unusable.
+     */
+    private void evict(final Set<String> namespaces) {
+        _generation.incrementAndGet();
+        final Long now = System.currentTimeMillis();
+        for (final String namespace : namespaces) {
+            _invalidatedAt.put(namespace, now);
+        }
+
+        for (final Map.Entry<String, Entry> cached : _memory.snapshot().entrySet()) {
+            if (!Collections.disjoint(cached.getValue()._namespaces, namespaces)) {
+                _memory.remove(cached.getKey());
+            }
+        }
+    }
+
+    private void deleteFromDisk(final Set<String> namespaces) {
+        synchronized (_diskLock) {
+            final File[] directories = _directory.listFiles();
+            if (directories == null) {
+                return;
+            }
+            for (final File directory : directories) {
+                if (!Collections.disjoint(readNamespaces(directory), namespaces)) {
+                    final long size = sizeOf(directory);
+                    deleteRecursively(directory);
+                    if (_diskBytes >= 0) {
+                        _diskBytes = Math.max(0, _diskBytes - size);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param pipeline The stages of a pipeline.
+     * @return The namespaces of every stage that targets a MongoDB collection.
+     */
+    static Set<String> namespacesOf(final List<PipelineStage> pipeline) {
+        final Set<String> namespaces = new TreeSet<>();
+        for (final PipelineStage stage : pipeline) {
+            final Map<String, Object> args = stage.getArgs();
+            if (stage.getService() == null || args == null) {
+                continue;
+            }
+            final Object database = args.get(Args.DATABASE);
+            final Object collection = args.get(Args.COLLECTION);
+            if (database instanceof String && collection instanceof String) {
+                namespaces.add(namespace(stage.getService(), (String) database, (String) collection));
+            }
+        }
+        return namespaces;
+    }
+
+    private static String namespace(final String service, final String database, final String collection) {
+        return String.format("%s/%s.%s", service, database, collection);
+    }
+
+    private Task<HttpResponse> fetchAndStore(
+            final String key,
+            final Set<String> namespaces,
+            final Fetcher fetcher,
+            final Executor executor
+    ) {
+        final long generation = _generation.get();
+        return fetcher.fetch().continueWith(executor, new Continuation<HttpResponse, HttpResponse>() {
+            @Override
+            public HttpResponse then(@NonNull final Task<HttpResponse> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                final HttpResponse response = task.getResult();
+                if (_generation.get() == generation) {
+                    store(key, new Entry(
+                            System.currentTimeMillis(),
+                            response.getHeader(CONTENT_TYPE),
+                            response.getBody(),
+                            namespaces));
+                }
+                return response;
+            }
+        });
+    }
+
+    private Entry lookup(final String key, final Set<String> namespaces) {
+        final Entry cached = _memory.get(key);
+        if (cached != null || _diskBudgetBytes == 0) {
+            return cached;
+        }
+
+        synchronized (_diskLock) {
+            final File file = new File(directoryOf(namespaces), key);
+            if (!file.isFile()) {
+                return null;
+            }
+            try {
+                final Entry entry = readEntry(file, namespaces);
+                if (isInvalidated(entry)) {
+                    file.delete();
+                    return null;
+                }
+                file.setLastModified(System.currentTimeMillis());
+                _memory.put(key, entry);
+                return entry;
+            } catch (final IOException e) {
+                Log.d(TAG, "Discarding unreadable cache entry", e);
+                file.delete();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return Whether or not the entry was stored no later than an invalidation of one of its
+     * namespaces.
+     */
+    private boolean isInvalidated(final Entry entry) {
+        for (final String namespace : entry._namespaces) {
+            final Long invalidatedAt = _invalidatedAt.get(namespace);
+            if (invalidatedAt != null && entry._storedAt <= invalidatedAt) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void store(final String key, final Entry entry) {
+        _memory.put(key, entry);
+        if (_diskBudgetBytes == 0) {
+            return;
+        }
+
+        synchronized (_diskLock) {
+            final File directory = directoryOf(entry._namespaces);
+            final File file = new File(directory, key);
+            final File temp = new File(directory, key + ".tmp");
+            try {
+                if (!directory.isDirectory()) {
+                    if (!directory.mkdirs()) {
+                        throw new IOException("Could not create " + directory);
+                    }
+                    writeNamespaces(directory, entry._namespaces);
+                }
+                final long previousSize = file.length();
+                writeEntry(temp, entry);
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Could not replace " + file);
+                }
+                if (_diskBytes < 0) {
+                    _diskBytes = sizeOf(_directory);
+                } else {
+                    _diskBytes += file.length() - previousSize;
+                }
+                trimDisk();
+            } catch (final IOException e) {
+                Log.d(TAG, "Error writing cache entry", e);
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the disk tier is within its budget.
+     * Must be called while holding the disk lock.
+     */
+    private void trimDisk() {
+        if (_diskBytes <= _diskBudgetBytes) {
+            return;
+        }
+
+        final List<File> files = new ArrayList<>();
+        final File[] directories = _directory.listFiles();
+        if (directories != null) {
+            for (final File directory : directories) {
+                final File[] entries = directory.listFiles();
+                if (entries == null) {
+                    continue;
+                }
+                for (final File entry : entries) {
+                    if (!entry.getName().equals(NAMESPACES_FILE_NAME)) {
+                        files.add(entry);
+                    }
+                }
+            }
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File left, final File right) {
+                final long difference = left.lastModified() - right.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+
+        for (final File file : files) {
+            if (_diskBytes <= _diskBudgetBytes) {
+                break;
+            }
+            final long size = file.length();
+            if (file.delete()) {
+                _diskBytes -= size;
+            }
+        }
+    }
+
+    private File directoryOf(final Set<String> namespaces) {
+        if (namespaces.isEmpty()) {
+            return new File(_directory, NO_NAMESPACE);
+        }
+        final StringBuilder joined = new StringBuilder();
+        for (final String namespace : new TreeSet<>(namespaces)) {
+            joined.append(namespace).append('\n');
+        }
+        return new File(_directory, hash(joined.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void writeNamespaces(final File directory, final Set<String> namespaces) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(directory, NAMESPACES_FILE_NAME))));
+        try {
+            out.writeInt(namespaces.size());
+            for (final String namespace : namespaces) {
+                out.writeUTF(namespace);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Set<String> readNamespaces(final File directory) {
+        final Set<String> namespaces = new TreeSet<>();
+        final File file = new File(directory, NAMESPACES_FILE_NAME);
+        if (!file.isFile()) {
+            return namespaces;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                final int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    namespaces.add(in.readUTF());
+                }
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            Log.d(TAG, "Error reading cached namespaces", e);
+        }
+        return namespaces;
+    }
+
+    private static void writeEntry(final File file, final Entry entry) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(entry._storedAt);
+            out.writeUTF(entry._contentType == null ? "" : entry._contentType);
+            out.writeInt(entry._body.length);
+            out.write(entry._body);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Entry readEntry(final File file, final Set<String> namespaces) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown cache entry format");
+            }
+            final long storedAt = in.readLong();
+            final String contentType = in.readUTF();
+            final byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(storedAt, contentType.isEmpty() ? null : contentType, body, namespaces);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long sizeOf(final File file) {
+        final File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (final File child : children) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String hash(final byte[]... parts) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new StitchException(e);
+        }
+        for (final byte[] part : parts) {
+            digest.update(part);
+            digest.update((byte) 0);
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (final byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static LruCache<String, Entry> newMemoryCache(final int budgetBytes) {
+        return new LruCache<String, Entry>(budgetBytes) {
+            @Override
+            protected int sizeOf(final String key, final Entry entry) {
+                return entry._body.length + ENTRY_OVERHEAD_BYTES;
+            }
+        };
+    }
+
+    /**
+     * A Fetcher fetches a pipeline result from the server.
+     */
+    interface Fetcher {
+        Task<HttpResponse> fetch();
+    }
+
+    private static final class Entry {
+        private final long _storedAt;
+        private final String _contentType;
+        private final byte[] _body;
+        private final Set<String> _namespaces;
+
+        Entry(
+                final long storedAt,
+                final String contentType,
+                final byte[] body,
+                final Set<String> namespaces
+        ) {
+            _storedAt = storedAt;
+            _contentType = contentType;
+            _body = body;
+            _namespaces = namespaces;
+        }
+
+        HttpResponse toResponse() {
+            final Map<String, String> headers = new HashMap<>();
+            if (_contentType != null) {
+                headers.put(CONTENT_TYPE, _contentType);
+            }
+            return new HttpResponse(200, headers, _body);
+        }
+    }
+
+    private static class Args {
+        private static final String DATABASE = "database";
+        private static final String COLLECTION = "collection";
+    }
+}
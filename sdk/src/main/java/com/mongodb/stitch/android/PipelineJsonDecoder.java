@@ -0,0 +1,76 @@
+package com.mongodb.stitch.android;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import org.bson.Document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+
+/**
+ * PipelineJsonDecoder decodes the result of a pipeline from a JSON response body of the form
+ * {@code {result: [element, ...]}} while it is read, one element at a time. Only the element
+ * being decoded is held in memory, rather than the whole body.
+ */
+class PipelineJsonDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private PipelineJsonDecoder() {
+    }
+
+    /**
+     * @param body     The response body.
+     * @param listener The listener to hand every element of the result to as it is decoded.
+     * @throws IOException If the body cannot be read or is not a pipeline result.
+     */
+    static void decodeResult(final InputStream body, final ResultListener<Object> listener) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createJsonParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected pipeline result to be an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (!name.equals(Fields.RESULT) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    listener.onResult(decodeElement(parser));
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * @param parser A parser positioned at the first token of an element.
+     * @return The element decoded as extended JSON.
+     */
+    private static Object decodeElement(final JsonParser parser) throws IOException {
+        final StringWriter element = new StringWriter();
+        final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(element);
+        try {
+            // Wrapped so that elements that are not documents decode the same way
+            generator.writeStartObject();
+            generator.writeFieldName(Fields.VALUE);
+            generator.copyCurrentStructure(parser);
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+        return Document.parse(element.toString()).get(Fields.VALUE);
+    }
+
+    private static class Fields {
+        private static final String RESULT = "result";
+        private static final String VALUE = "v";
+    }
+}
@@ -113,6 +113,34 @@ public class PipelineStage {
         this(action, service, args, null);
     }
 
+    /**
+     * @return The action that represents this stage.
+     */
+    String getAction() {
+        return _action;
+    }
+
+    /**
+     * @return The service that can handle the action, or null if the action is builtin.
+     */
+    String getService() {
+        return _service;
+    }
+
+    /**
+     * @return The arguments to invoke the action with.
+     */
+    Map<String, Object> getArgs() {
+        return _args;
+    }
+
+    /**
+     * @return The expression to evaluate for use within the arguments via expansion.
+     */
+    Object getLet() {
+        return _let;
+    }
+
     public static class LiteralStage {
         public static final String NAME = "literal";
         public static final String PARAMETER_ITEMS = "items";
@@ -0,0 +1,121 @@
+package com.mongodb.stitch.android;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.mongodb.stitch.android.http.HttpMethod;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A RequestDeduplicator lets identical idempotent requests that are in flight at the same time
+ * share a single network call. Requests are identical if they have the same method, resource
+ * and body bytes. Bodies are compared exactly rather than after reordering their keys, since
+ * key order is meaningful in documents such as sort specifiers.
+ */
+class RequestDeduplicator {
+
+    private final Executor _executor;
+
+    // Guarded by this
+    private final Map<Key, Task<?>> _inFlight = new HashMap<>();
+
+    /**
+     * @param executor The executor to forget completed requests on.
+     */
+    RequestDeduplicator(final Executor executor) {
+        _executor = executor;
+    }
+
+    /**
+     * Joins the identical request already in flight, or starts a new one.
+     *
+     * @param method   The HTTP method of the request.
+     * @param resource The resource or URL the request targets.
+     * @param body     The body of the request, if any.
+     * @param starter  Starts the request if there is no identical one in flight.
+     * @param <T>      The result type of the request. Results are shared between every caller
+     *                 and must not be modified.
+     * @return The task of the request.
+     */
+    @SuppressWarnings("unchecked")
+    <T> Task<T> execute(
+            final HttpMethod method,
+            final String resource,
+            final byte[] body,
+            final Starter<T> starter
+    ) {
+        final Key key = new Key(method, resource, body);
+        final Task<T> task;
+        synchronized (this) {
+            final Task<?> existing = _inFlight.get(key);
+            if (existing != null) {
+                return (Task<T>) existing;
+            }
+            task = starter.start();
+            if (task.isComplete()) {
+                return task;
+            }
+            _inFlight.put(key, task);
+        }
+
+        task.addOnCompleteListener(_executor, new OnCompleteListener<T>() {
+            @Override
+            public void onComplete(@NonNull final Task<T> ignored) {
+                synchronized (RequestDeduplicator.this) {
+                    if (_inFlight.get(key) == task) {
+                        _inFlight.remove(key);
+                    }
+                }
+            }
+        });
+        return task;
+    }
+
+    /**
+     * A Starter starts a request.
+     *
+     * @param <T> The result type of the request.
+     */
+    interface Starter<T> {
+        Task<T> start();
+    }
+
+    private static final class Key {
+        private final HttpMethod _method;
+        private final String _resource;
+        private final byte[] _body;
+        private final int _hashCode;
+
+        Key(final HttpMethod method, final String resource, final byte[] body) {
+            _method = method;
+            _resource = resource;
+            _body = body;
+            _hashCode = 31 * (31 * method.hashCode() + resource.hashCode()) + Arrays.hashCode(body);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return _hashCode == key._hashCode
+                    && _method == key._method
+                    && _resource.equals(key._resource)
+                    && Arrays.equals(_body, key._body);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hashCode;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.mongodb.stitch.android;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RequestOptions bound how long a call to Stitch may take and let the caller cancel it.
+ */
+public class RequestOptions {
+
+    private CancellationToken _cancellationToken;
+    private Long _timeoutMillis;
+
+    /**
+     * @param cancellationToken The token that cancels the call.
+     * @return These options.
+     */
+    public RequestOptions withCancellationToken(final CancellationToken cancellationToken) {
+        _cancellationToken = cancellationToken;
+        return this;
+    }
+
+    /**
+     * @param timeout How long the call may take in total, including any retries, before it is
+     *                cancelled.
+     * @param unit    The unit of {@code timeout}.
+     * @return These options.
+     */
+    public RequestOptions withTimeout(final long timeout, final TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        _timeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * @return The token that cancels the call, or null if there is none.
+     */
+    public CancellationToken getCancellationToken() {
+        return _cancellationToken;
+    }
+
+    /**
+     * @return How long the call may take in milliseconds, or null if there is no limit.
+     */
+    public Long getTimeoutMillis() {
+        return _timeoutMillis;
+    }
+}
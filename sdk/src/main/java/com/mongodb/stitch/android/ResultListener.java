@@ -0,0 +1,18 @@
+package com.mongodb.stitch.android;
+
+/**
+ * A ResultListener is handed the elements of a result one at a time as they are decoded, so
+ * that a large result never has to be held in memory as a whole.
+ *
+ * @param <T> The type of the elements of the result.
+ */
+public interface ResultListener<T> {
+
+    /**
+     * Called on a background thread for every element of the result, in order. An
+     * exception thrown by the listener stops the decoding and fails the execution.
+     *
+     * @param element The next element of the result.
+     */
+    void onResult(final T element);
+}
@@ -0,0 +1,146 @@
+package com.mongodb.stitch.android;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.stitch.android.StitchException.StitchRequestException;
+
+/**
+ * A RetryPolicy decides whether and when a {@link StitchClient} sends an idempotent request again
+ * after a transient failure, and when it stops sending requests to an endpoint that keeps
+ * failing. Only GET requests and pipelines that only read are retried. Pipelines that write are
+ * never retried, as they cannot be retried safely: a write whose response was lost may already
+ * have been applied, and Stitch has no way to recognize a retry of it and apply it only once.
+ */
+public class RetryPolicy {
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 250;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final double DEFAULT_BACKOFF_MULTIPLIER = 2;
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Random _random = new Random();
+
+    private int _maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long _initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private long _maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+    private double _backoffMultiplier = DEFAULT_BACKOFF_MULTIPLIER;
+    private int _failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long _openMillis = DEFAULT_OPEN_MILLIS;
+
+    /**
+     * @return A policy that never retries and never stops sending requests.
+     */
+    public static RetryPolicy none() {
+        return new RetryPolicy().withMaxAttempts(1).withCircuitBreaker(0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxAttempts The maximum amount of times to send a request, including the first.
+     * @return This policy.
+     */
+    public RetryPolicy withMaxAttempts(final int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        _maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * @param initialBackoff The upper bound of the wait before the first retry. Each wait is
+     *                       chosen at random below its bound.
+     * @param maxBackoff     The upper bound that the wait grows to and the longest Retry-After
+     *                       that is honored; a server asking for a longer wait fails the request.
+     * @param multiplier     How much the bound grows with each retry.
+     * @param unit           The unit of {@code initialBackoff} and {@code maxBackoff}.
+     * @return This policy.
+     */
+    public RetryPolicy withBackoff(
+            final long initialBackoff,
+            final long maxBackoff,
+            final double multiplier,
+            final TimeUnit unit
+    ) {
+        if (initialBackoff < 0 || maxBackoff < initialBackoff || multiplier < 1) {
+            throw new IllegalArgumentException("invalid backoff");
+        }
+        _initialBackoffMillis = unit.toMillis(initialBackoff);
+        _maxBackoffMillis = unit.toMillis(maxBackoff);
+        _backoffMultiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * @param failureThreshold The amount of consecutive transient failures of an endpoint after
+     *                         which requests to it fail immediately. Zero disables the breaker.
+     * @param openDuration     How long requests to the endpoint fail immediately before a single
+     *                         request is let through to probe it.
+     * @param unit             The unit of {@code openDuration}.
+     * @return This policy.
+     */
+    public RetryPolicy withCircuitBreaker(
+            final int failureThreshold,
+            final long openDuration,
+            final TimeUnit unit
+    ) {
+        if (failureThreshold < 0 || openDuration < 0) {
+            throw new IllegalArgumentException("invalid circuit breaker");
+        }
+        _failureThreshold = failureThreshold;
+        _openMillis = unit.toMillis(openDuration);
+        return this;
+    }
+
+    /**
+     * @return The maximum amount of times to send a request, including the first.
+     */
+    public int getMaxAttempts() {
+        return _maxAttempts;
+    }
+
+    /**
+     * @return The amount of consecutive transient failures of an endpoint after which requests
+     * to it fail immediately, or zero if they never do.
+     */
+    public int getFailureThreshold() {
+        return _failureThreshold;
+    }
+
+    /**
+     * @return How long requests to a failing endpoint fail immediately, in milliseconds.
+     */
+    public long getOpenMillis() {
+        return _openMillis;
+    }
+
+    /**
+     * @param attempt The attempt that failed, starting at 1.
+     * @param error   The failure.
+     * @return How long to wait before the next attempt in milliseconds, or -1 if the request
+     * should not be sent again.
+     */
+    long getRetryDelayMillis(final int attempt, final Exception error) {
+        if (attempt >= _maxAttempts || !(error instanceof StitchRequestException)) {
+            return -1;
+        }
+        final StitchRequestException requestError = (StitchRequestException) error;
+        if (!requestError.isRetryable()) {
+            return -1;
+        }
+
+        final Long retryAfter = requestError.getRetryAfterMillis();
+        if (retryAfter != null) {
+            return retryAfter <= _maxBackoffMillis ? retryAfter : -1;
+        }
+
+        final double bound = Math.min(
+                _maxBackoffMillis,
+                _initialBackoffMillis * Math.pow(_backoffMultiplier, attempt - 1));
+        synchronized (_random) {
+            return (long) (_random.nextDouble() * bound);
+        }
+    }
+}
@@ -5,15 +5,10 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Process;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.android.gms.tasks.Continuation;
 import com.google.android.gms.tasks.OnCompleteListener;
@@ -31,28 +26,49 @@ import com.mongodb.stitch.android.auth.anonymous.AnonymousAuthProviderInfo;
 import com.mongodb.stitch.android.auth.oauth2.facebook.FacebookAuthProviderInfo;
 import com.mongodb.stitch.android.auth.oauth2.google.GoogleAuthProviderInfo;
 import com.mongodb.stitch.android.http.Headers;
-import com.mongodb.stitch.android.http.Volley.AuthenticatedJsonStringRequest;
-import com.mongodb.stitch.android.http.Volley.JsonStringRequest;
+import com.mongodb.stitch.android.http.HttpMethod;
+import com.mongodb.stitch.android.http.HttpRequest;
+import com.mongodb.stitch.android.http.HttpResponse;
+import com.mongodb.stitch.android.http.HttpTransport;
+import com.mongodb.stitch.android.http.VolleyTransport;
 import com.mongodb.stitch.android.push.AvailablePushProviders;
 import com.mongodb.stitch.android.push.PushClient;
 import com.mongodb.stitch.android.push.PushManager;
 
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.mongodb.stitch.android.StitchError.ErrorCode;
 import static com.mongodb.stitch.android.StitchError.parseRequestError;
 import static com.mongodb.stitch.android.StitchException.StitchAuthException;
+import static com.mongodb.stitch.android.http.ContentTypes.APPLICATION_BSON;
+import static com.mongodb.stitch.android.http.ContentTypes.APPLICATION_JSON_UTF8;
 import static com.mongodb.stitch.android.http.Headers.GetAuthorizationBearer;
 
 /**
@@ -63,6 +79,14 @@ public class StitchClient {
     private static final String PLATFORM = "android";
     private static final String TAG = "Stitch";
     private static final String DEFAULT_BASE_URL = "https://stitch.mongodb.com";
+    private static final int DEFAULT_EXECUTOR_THREADS =
+            Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+    private static final long DEFAULT_EXECUTOR_KEEP_ALIVE_SECONDS = 30;
+    private static final long DEFAULT_TOKEN_REFRESH_SKEW_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    // Pipeline actions that never modify data and so can be safely retried
+    private static final Set<String> READ_ONLY_ACTIONS = new HashSet<>(Arrays.asList(
+            PipelineStage.LiteralStage.NAME, "find", "aggregate"));
 
     // Properties
     private static final String STITCH_PROPERTIES_FILE_NAME = "stitch.properties";
@@ -80,13 +104,28 @@ public class StitchClient {
     private final Context _context;
     private final String _baseUrl;
     private final String _clientAppId;
-    private final RequestQueue _queue;
+    private final Executor _executor;
+    private final Executor _streamExecutor;
+    private final ScheduledExecutorService _scheduler;
+    private final HttpTransport _transport;
+    private final WireFormat _wireFormat;
+    private final long _tokenRefreshSkewMillis;
+    private final RetryPolicy _retryPolicy;
+    private final ConcurrentHashMap<String, CircuitBreaker> _circuitBreakers = new ConcurrentHashMap<>();
+    private final RequestDeduplicator _deduplicator;
+    private final PipelineCache _pipelineCache;
     private final ObjectMapper _objMapper;
     private final SharedPreferences _preferences;
     private final PushManager _pushManager;
     private final List<AuthListener> _authListeners;
 
-    private Auth _auth;
+    private volatile Auth _auth;
+
+    // The access token refresh in progress, shared by every request that needs it
+    private final Object _refreshLock = new Object();
+    private Task<Void> _refreshTask;
+    private ScheduledFuture<?> _scheduledRefresh;
+    private final AtomicInteger _refreshCount = new AtomicInteger();
     private UserProfile _userProfile;
 
     /**
@@ -95,8 +134,27 @@ public class StitchClient {
      * @param baseUrl     The base URL of the Stitch Client API server.
      */
     public StitchClient(final Context context, final String clientAppId, final String baseUrl) {
+        this(new Builder(context).withAppId(clientAppId).withBaseUrl(baseUrl));
+    }
+
+    /**
+     * @param builder The builder holding the configuration of this client.
+     */
+    private StitchClient(final Builder builder) {
+        final Context context = builder._context;
+        final String clientAppId = builder._clientAppId;
+        final String baseUrl = builder._baseUrl;
+
         _context = context;
-        _queue = Volley.newRequestQueue(context);
+        _executor = builder._executor != null ? builder._executor : newDefaultExecutor();
+        _streamExecutor = newStreamExecutor();
+        _scheduler = newScheduler();
+        _deduplicator = new RequestDeduplicator(_executor);
+        _transport = builder._transport != null ? builder._transport : new VolleyTransport(_executor);
+        _wireFormat = builder._wireFormat;
+        _tokenRefreshSkewMillis = builder._tokenRefreshSkewMillis;
+        _retryPolicy = builder._retryPolicy != null ? builder._retryPolicy : new RetryPolicy();
+        _pipelineCache = builder._pipelineCache;
         _objMapper = CustomObjectMapper.createObjectMapper();
 
         final String prefPath = String.format(SHARED_PREFERENCES_NAME, clientAppId);
@@ -164,6 +222,31 @@ public class StitchClient {
         return _context;
     }
 
+    /**
+     * @return The {@link Executor} that this client serializes requests, decodes responses and
+     * runs task continuations on.
+     */
+    public Executor getExecutor() {
+        return _executor;
+    }
+
+    /**
+     * @return The {@link ScheduledExecutorService} that this client times delayed work with.
+     * Scheduled work should only hand off to {@link #getExecutor()} rather than run on it.
+     */
+    public ScheduledExecutorService getScheduler() {
+        return _scheduler;
+    }
+
+    /**
+     * @return The number of access token refreshes this client has sent. Requests that find
+     * their access token expired while a refresh is already in progress wait for it instead of
+     * sending another one.
+     */
+    public int getTokenRefreshCount() {
+        return _refreshCount.get();
+    }
+
     // Auth Methods
 
     /**
@@ -193,6 +276,7 @@ public class StitchClient {
             } catch (final IOException e) {
                 throw new StitchException(e);
             }
+            scheduleTokenRefresh();
             onLogin();
             return true;
         }
@@ -209,7 +293,7 @@ public class StitchClient {
         if (!isAuthenticated()) {
             return Tasks.forResult(null);
         }
-        return executeRequest(Request.Method.DELETE, Paths.AUTH, null, false, true).continueWith(new Continuation<String, Void>() {
+        return executeRequest(HttpMethod.DELETE, Paths.AUTH, null, false, true).continueWith(_executor, new Continuation<String, Void>() {
             @Override
             public Void then(@NonNull final Task<String> task) throws Exception {
                 if (task.isSuccessful()) {
@@ -233,7 +317,7 @@ public class StitchClient {
             );
         }
 
-        return executeRequest(Request.Method.GET, Paths.USER_PROFILE).continueWith(new Continuation<String, UserProfile>() {
+        return executeRequest(HttpMethod.GET, Paths.USER_PROFILE).continueWith(_executor, new Continuation<String, UserProfile>() {
             @Override
             public UserProfile then(@NonNull Task<String> task) throws Exception {
                 if (!task.isSuccessful()) {
@@ -265,20 +349,22 @@ public class StitchClient {
             return Tasks.forResult(_auth);
         }
 
-        final TaskCompletionSource<Auth> future = new TaskCompletionSource<>();
         final String url = String.format(
                 "%s/%s/%s",
                 getResourcePath(Paths.AUTH),
                 authProvider.getType(),
                 authProvider.getName());
 
-        final JsonStringRequest request = new JsonStringRequest(
-                Request.Method.POST,
-                url,
-                getAuthRequest(authProvider).toJson(),
-                new Response.Listener<String>() {
+        return executeUnauthenticatedRequest(HttpMethod.POST, url, getAuthRequest(authProvider).toJson())
+                .continueWith(_executor, new Continuation<String, Auth>() {
                     @Override
-                    public void onResponse(final String response) {
+                    public Auth then(@NonNull final Task<String> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            Log.e(TAG, "Error while logging in with auth provider", task.getException());
+                            throw task.getException();
+                        }
+
+                        final String response = task.getResult();
                         try {
                             _auth = _objMapper.readValue(response, Auth.class);
                             final RefreshTokenHolder refreshToken =
@@ -286,25 +372,15 @@ public class StitchClient {
                             _preferences.edit().putString(PREF_AUTH_JWT_NAME, response).apply();
                             _preferences.edit().putString(PREF_AUTH_REFRESH_TOKEN_NAME, refreshToken.getToken()).apply();
                             _preferences.edit().putString(PREF_DEVICE_ID_NAME, _auth.getDeviceId()).apply();
-                            future.setResult(_auth);
-                            onLogin();
                         } catch (final IOException e) {
                             Log.e(TAG, "Error parsing auth response", e);
-                            future.setException(new StitchException(e));
+                            throw new StitchException(e);
                         }
-                    }
-                },
-                new Response.ErrorListener() {
-                    @Override
-                    public void onErrorResponse(final VolleyError error) {
-                        Log.e(TAG, "Error while logging in with auth provider", error);
-                        future.setException(parseRequestError(error));
+                        scheduleTokenRefresh();
+                        onLogin();
+                        return _auth;
                     }
                 });
-        request.setTag(this);
-        _queue.add(request);
-
-        return future.getTask();
     }
 
     /**
@@ -317,7 +393,6 @@ public class StitchClient {
     public Task<Boolean> register(@NonNull String email, @NonNull String password) {
         final EmailPasswordAuthProvider provider = new EmailPasswordAuthProvider(email, password);
 
-        final TaskCompletionSource<Boolean> future = new TaskCompletionSource<>();
         final String url = String.format(
                 "%s/%s/%s",
                 getResourcePath(Paths.AUTH),
@@ -325,29 +400,17 @@ public class StitchClient {
                 Paths.USERPASS_REGISTER
         );
 
-        final JsonStringRequest request = new JsonStringRequest(
-                Request.Method.POST,
-                url,
-                getAuthRequest(provider.getRegistrationPayload()).toJson(),
-                new Response.Listener<String>() {
+        return executeUnauthenticatedRequest(HttpMethod.POST, url, getAuthRequest(provider.getRegistrationPayload()).toJson())
+                .continueWith(_executor, new Continuation<String, Boolean>() {
                     @Override
-                    public void onResponse(final String response) {
-                        future.setResult(response != null);
-                    }
-                },
-                new Response.ErrorListener() {
-                    @Override
-                    public void onErrorResponse(final VolleyError error) {
-                        Log.e(TAG, "Error while logging in with auth provider", error);
-                        future.setException(parseRequestError(error));
+                    public Boolean then(@NonNull final Task<String> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            Log.e(TAG, "Error while logging in with auth provider", task.getException());
+                            throw task.getException();
+                        }
+                        return task.getResult() != null;
                     }
-                }
-        );
-
-        request.setTag(this);
-        _queue.add(request);
-
-        return future.getTask();
+                });
     }
 
     /**
@@ -357,8 +420,6 @@ public class StitchClient {
      * @return A task containing whether or not the email was confirmed successfully
      */
     public Task<Boolean> emailConfirm(@NonNull final String token, @NonNull final String tokenId) {
-        final TaskCompletionSource<Boolean> future = new TaskCompletionSource<>();
-
         final String url = String.format(
                 "%s/%s/%s",
                 getResourcePath(Paths.AUTH),
@@ -371,29 +432,17 @@ public class StitchClient {
         params.put("token", token);
         params.put("tokenId", tokenId);
 
-        final JsonStringRequest request = new JsonStringRequest(
-                Request.Method.POST,
-                url,
-                params.toJson(),
-                new Response.Listener<String>() {
+        return executeUnauthenticatedRequest(HttpMethod.POST, url, params.toJson())
+                .continueWith(_executor, new Continuation<String, Boolean>() {
                     @Override
-                    public void onResponse(final String response) {
-                        future.setResult(response != null);
-                    }
-                },
-                new Response.ErrorListener() {
-                    @Override
-                    public void onErrorResponse(final VolleyError error) {
-                        Log.e(TAG, "Error while confirming email", error);
-                        future.setException(parseRequestError(error));
+                    public Boolean then(@NonNull final Task<String> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            Log.e(TAG, "Error while confirming email", task.getException());
+                            throw task.getException();
+                        }
+                        return task.getResult() != null;
                     }
-                }
-        );
-
-        request.setTag(this);
-        _queue.add(request);
-
-        return future.getTask();
+                });
     }
 
     /**
@@ -402,8 +451,6 @@ public class StitchClient {
      * @return A task containing whether or not the email was sent successfully.
      */
     public Task<Boolean> sendEmailConfirm(@NonNull final String email) {
-        final TaskCompletionSource<Boolean> future = new TaskCompletionSource<>();
-
         final String url = String.format(
                 "%s/%s/%s",
                 getResourcePath(Paths.AUTH),
@@ -411,29 +458,17 @@ public class StitchClient {
                 Paths.USERPASS_CONFIRM_SEND
         );
 
-        final JsonStringRequest request = new JsonStringRequest(
-                Request.Method.POST,
-                url,
-                new Document("email", email).toJson(),
-                new Response.Listener<String>() {
+        return executeUnauthenticatedRequest(HttpMethod.POST, url, new Document("email", email).toJson())
+                .continueWith(_executor, new Continuation<String, Boolean>() {
                     @Override
-                    public void onResponse(final String response) {
-                        future.setResult(response != null);
-                    }
-                },
-                new Response.ErrorListener() {
-                    @Override
-                    public void onErrorResponse(final VolleyError error) {
-                        Log.e(TAG, "Error while sending confirmation email", error);
-                        future.setException(parseRequestError(error));
+                    public Boolean then(@NonNull final Task<String> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            Log.e(TAG, "Error while sending confirmation email", task.getException());
+                            throw task.getException();
+                        }
+                        return task.getResult() != null;
                     }
-                }
-        );
-
-        request.setTag(this);
-        _queue.add(request);
-
-        return future.getTask();
+                });
     }
 
     /**
@@ -443,8 +478,6 @@ public class StitchClient {
      * @return A task containing whether or not the reset was successful
      */
     public Task<Boolean> resetPassword(@NonNull final String token, @NonNull final String tokenId) {
-        final TaskCompletionSource<Boolean> future = new TaskCompletionSource<>();
-
         final String url = String.format(
                 "%s/%s/%s",
                 getResourcePath(Paths.AUTH),
@@ -457,29 +490,17 @@ public class StitchClient {
         params.put(RegistrationFields.TOKEN, token);
         params.put(RegistrationFields.TOKEN_ID, tokenId);
 
-        final JsonStringRequest request = new JsonStringRequest(
-                Request.Method.POST,
-                url,
-                params.toJson(),
-                new Response.Listener<String>() {
+        return executeUnauthenticatedRequest(HttpMethod.POST, url, params.toJson())
+                .continueWith(_executor, new Continuation<String, Boolean>() {
                     @Override
-                    public void onResponse(final String response) {
-                        future.setResult(response != null);
-                    }
-                },
-                new Response.ErrorListener() {
-                    @Override
-                    public void onErrorResponse(final VolleyError error) {
-                        Log.e(TAG, "Error while reseting password", error);
-                        future.setException(parseRequestError(error));
+                    public Boolean then(@NonNull final Task<String> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            Log.e(TAG, "Error while reseting password", task.getException());
+                            throw task.getException();
+                        }
+                        return task.getResult() != null;
                     }
-                }
-        );
-
-        request.setTag(this);
-        _queue.add(request);
-
-        return future.getTask();
+                });
     }
 
     /**
@@ -488,8 +509,6 @@ public class StitchClient {
      * @return A task containing whether or not the reset email was sent successfully
      */
     public Task<Boolean> sendResetPassword(@NonNull final String email) {
-        final TaskCompletionSource<Boolean> future = new TaskCompletionSource<>();
-
         final String url = String.format(
                 "%s/%s/%s",
                 getResourcePath(Paths.AUTH),
@@ -497,29 +516,17 @@ public class StitchClient {
                 Paths.USERPASS_RESET_SEND
         );
 
-        final JsonStringRequest request = new JsonStringRequest(
-                Request.Method.POST,
-                url,
-                new Document("email", email).toJson(),
-                new Response.Listener<String>() {
+        return executeUnauthenticatedRequest(HttpMethod.POST, url, new Document("email", email).toJson())
+                .continueWith(_executor, new Continuation<String, Boolean>() {
                     @Override
-                    public void onResponse(final String response) {
-                        future.setResult(response != null);
-                    }
-                },
-                new Response.ErrorListener() {
-                    @Override
-                    public void onErrorResponse(final VolleyError error) {
-                        Log.e(TAG, "Error while sending reset password email", error);
-                        future.setException(parseRequestError(error));
+                    public Boolean then(@NonNull final Task<String> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            Log.e(TAG, "Error while sending reset password email", task.getException());
+                            throw task.getException();
+                        }
+                        return task.getResult() != null;
                     }
-                }
-        );
-
-        request.setTag(this);
-        _queue.add(request);
-
-        return future.getTask();
+                });
     }
 
     /**
@@ -548,15 +555,24 @@ public class StitchClient {
      */
     public Task<AvailableAuthProviders> getAuthProviders() {
 
-        final TaskCompletionSource<AvailableAuthProviders> future = new TaskCompletionSource<>();
         final String url = getResourcePath(Paths.AUTH);
 
-        final JsonObjectRequest request = new JsonObjectRequest(
-                Request.Method.GET,
-                url,
-                new Response.Listener<JSONObject>() {
+        return executeUnauthenticatedRequest(HttpMethod.GET, url, null)
+                .continueWith(_executor, new Continuation<String, AvailableAuthProviders>() {
                     @Override
-                    public void onResponse(final JSONObject response) {
+                    public AvailableAuthProviders then(@NonNull final Task<String> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            Log.e(TAG, "Error while getting auth provider info", task.getException());
+                            throw task.getException();
+                        }
+
+                        final JSONObject response;
+                        try {
+                            response = new JSONObject(task.getResult());
+                        } catch (final JSONException e) {
+                            Log.e(TAG, "Error while getting auth provider info", e);
+                            throw e;
+                        }
 
                         final AvailableAuthProviders.Builder builder = new AvailableAuthProviders.Builder();
                         // Build provider info
@@ -594,28 +610,67 @@ public class StitchClient {
                                         TAG,
                                         String.format("Error while getting auth provider info for %s", authProviderName),
                                         e);
-                                future.setException(e);
-                                return;
+                                throw e;
                             }
                         }
-                        future.setResult(builder.build());
-                    }
-                },
-                new Response.ErrorListener() {
-                    @Override
-                    public void onErrorResponse(final VolleyError error) {
-                        Log.e(TAG, "Error while getting auth provider info", error);
-                        future.setException(parseRequestError(error));
+                        return builder.build();
                     }
                 });
-        request.setTag(this);
-        _queue.add(request);
-
-        return future.getTask();
     }
 
     // Pipelines
 
+    /**
+     * Sends an encoded pipeline to Stitch. Read-only pipelines are answered from the pipeline
+     * cache when one is configured, and any other pipeline invalidates the cached results of the
+     * collections it targets.
+     *
+     * @param pipeline     The pipeline that was encoded.
+     * @param body         The encoded pipeline.
+     * @param contentType  The content type of the encoded pipeline.
+     * @param cancellation The token that cancels the request, if any.
+     * @return A task containing the response that can be resolved on completion of the request.
+     */
+    private Task<HttpResponse> executePipelineRequest(
+            final List<PipelineStage> pipeline,
+            final byte[] body,
+            final String contentType,
+            final CancellationToken cancellation
+    ) {
+        final boolean readOnly = isReadOnly(pipeline);
+        final PipelineCache cache = _pipelineCache;
+        if (cache == null) {
+            return executeRequest(
+                    HttpMethod.POST, Paths.PIPELINE, body, contentType, true, false, readOnly, cancellation);
+        }
+
+        final Set<String> namespaces = PipelineCache.namespacesOf(pipeline);
+        if (!readOnly) {
+            // Invalidate before sending so that reads racing the write are not cached, and
+            // again afterwards so that reads made while it was in flight are not kept either.
+            cache.invalidate(namespaces, _executor);
+            final Task<HttpResponse> write = executeRequest(
+                    HttpMethod.POST, Paths.PIPELINE, body, contentType, true, false, false, cancellation);
+            write.addOnCompleteListener(_executor, new OnCompleteListener<HttpResponse>() {
+                @Override
+                public void onComplete(@NonNull final Task<HttpResponse> task) {
+                    cache.invalidate(namespaces, _executor);
+                }
+            });
+            return write;
+        }
+
+        final Auth auth = _auth;
+        final String scope = String.format("%s/%s", _clientAppId, auth == null ? "" : auth.getUserId());
+        return cache.get(scope, body, contentType, namespaces, new PipelineCache.Fetcher() {
+            @Override
+            public Task<HttpResponse> fetch() {
+                return executeRequest(
+                        HttpMethod.POST, Paths.PIPELINE, body, contentType, true, false, true, cancellation);
+            }
+        }, _executor);
+    }
+
     /**
      * Executes a pipeline with the current app.
      *
@@ -623,21 +678,64 @@ public class StitchClient {
      * @return A task containing the result of the pipeline that can be resolved on completion
      * of the execution.
      */
-    @SuppressWarnings("unchecked")
     public Task<List<Object>> executePipeline(final List<PipelineStage> pipeline) {
+        return executePipeline(pipeline, null);
+    }
+
+    /**
+     * Executes a pipeline with the current app.
+     *
+     * @param pipeline The pipeline to execute.
+     * @param options  The deadline and cancellation token of the execution, if any.
+     * @return A task containing the result of the pipeline that can be resolved on completion
+     * of the execution. The task fails with a
+     * {@link StitchException.StitchCancelledException} if the execution is cancelled or runs
+     * past its deadline.
+     */
+    public Task<List<Object>> executePipeline(
+            final List<PipelineStage> pipeline,
+            final RequestOptions options
+    ) {
         ensureAuthenticated();
-        final String pipeStr;
-        try {
-            pipeStr = _objMapper.writeValueAsString(pipeline);
-        } catch (final IOException e) {
-            return Tasks.forException(e);
-        }
+        final CancellationToken cancellation = CancellationToken.forCall(options, _scheduler);
+        return releaseWhenComplete(runPipeline(pipeline, cancellation), cancellation);
+    }
 
-        return executeRequest(Request.Method.POST, Paths.PIPELINE, pipeStr).continueWith(new Continuation<String, List<Object>>() {
+    private Task<List<Object>> runPipeline(
+            final List<PipelineStage> pipeline,
+            final CancellationToken cancellation
+    ) {
+        if (_wireFormat == WireFormat.BSON) {
+            return executeBsonPipeline(pipeline, cancellation).continueWith(_executor, new Continuation<HttpResponse, List<Object>>() {
+                @Override
+                public List<Object> then(@NonNull final Task<HttpResponse> task) throws Exception {
+                    if (!task.isSuccessful()) {
+                        Log.e(TAG, "Error while executing pipeline", task.getException());
+                        throw task.getException();
+                    }
+                    return PipelineBsonCodec.decodeResult(task.getResult().getBody());
+                }
+            });
+        }
+        return Tasks.call(_executor, new Callable<String>() {
             @Override
-            public List<Object> then(@NonNull final Task<String> task) throws Exception {
+            public String call() throws Exception {
+                return _objMapper.writeValueAsString(pipeline);
+            }
+        }).continueWithTask(_executor, new Continuation<String, Task<HttpResponse>>() {
+            @Override
+            public Task<HttpResponse> then(@NonNull final Task<String> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                return executePipelineRequest(pipeline, toBytes(task.getResult()), APPLICATION_JSON_UTF8, cancellation);
+            }
+        }).continueWith(_executor, new Continuation<HttpResponse, List<Object>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Object> then(@NonNull final Task<HttpResponse> task) throws Exception {
                 if (task.isSuccessful()) {
-                    final Document doc = Document.parse(task.getResult());
+                    final Document doc = Document.parse(task.getResult().getBodyAsString());
                     return (List<Object>) doc.get(PipelineResponseFields.RESULT);
                 } else {
                     Log.e(TAG, "Error while executing pipeline", task.getException());
@@ -647,6 +745,229 @@ public class StitchClient {
         });
     }
 
+    /**
+     * Executes a pipeline whose result consists only of documents with the current app. The
+     * documents are returned as {@link RawBsonDocument}s that decode each field only when it is
+     * accessed and that share a single contiguous buffer. With {@link WireFormat#BSON} that
+     * buffer is the response body itself. With {@link WireFormat#EXTENDED_JSON} the result is
+     * first decoded in full and then encoded again into that buffer, which takes more CPU time
+     * and memory than {@link #executePipeline(List)}.
+     *
+     * @param pipeline The pipeline to execute.
+     * @return A task containing the documents resulting from the pipeline that can be resolved on
+     * completion of the execution.
+     */
+    public Task<List<RawBsonDocument>> executeRawPipeline(final List<PipelineStage> pipeline) {
+        return executeRawPipeline(pipeline, null);
+    }
+
+    /**
+     * Executes a pipeline whose result consists only of documents with the current app.
+     *
+     * @param pipeline The pipeline to execute.
+     * @param options  The deadline and cancellation token of the execution, if any.
+     * @return A task containing the documents resulting from the pipeline that can be resolved on
+     * completion of the execution. The task fails with a
+     * {@link StitchException.StitchCancelledException} if the execution is cancelled or runs
+     * past its deadline.
+     * @see #executeRawPipeline(List)
+     */
+    public Task<List<RawBsonDocument>> executeRawPipeline(
+            final List<PipelineStage> pipeline,
+            final RequestOptions options
+    ) {
+        ensureAuthenticated();
+        final CancellationToken cancellation = CancellationToken.forCall(options, _scheduler);
+        return releaseWhenComplete(runRawPipeline(pipeline, cancellation), cancellation);
+    }
+
+    private Task<List<RawBsonDocument>> runRawPipeline(
+            final List<PipelineStage> pipeline,
+            final CancellationToken cancellation
+    ) {
+        if (_wireFormat == WireFormat.BSON) {
+            return executeBsonPipeline(pipeline, cancellation).continueWith(_executor, new Continuation<HttpResponse, List<RawBsonDocument>>() {
+                @Override
+                public List<RawBsonDocument> then(@NonNull final Task<HttpResponse> task) throws Exception {
+                    if (!task.isSuccessful()) {
+                        Log.e(TAG, "Error while executing pipeline", task.getException());
+                        throw task.getException();
+                    }
+                    return PipelineBsonCodec.decodeRawResult(task.getResult().getBody());
+                }
+            });
+        }
+
+        return runPipeline(pipeline, cancellation).continueWith(_executor, new Continuation<List<Object>, List<RawBsonDocument>>() {
+            @Override
+            public List<RawBsonDocument> then(@NonNull final Task<List<Object>> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                return PipelineBsonCodec.encodeRawResult(task.getResult());
+            }
+        });
+    }
+
+    /**
+     * Executes a pipeline whose result consists only of documents with the current app.
+     *
+     * @param stages The stages to execute as a contiguous pipeline.
+     * @return A task containing the documents resulting from the pipeline that can be resolved on
+     * completion of the execution.
+     * @see #executeRawPipeline(List)
+     */
+    public Task<List<RawBsonDocument>> executeRawPipeline(final PipelineStage... stages) {
+        return executeRawPipeline(Arrays.asList(stages));
+    }
+
+    /**
+     * Executes a pipeline with the current app, handing each element of its result to a listener
+     * as soon as it is decoded rather than once the whole result has been decoded. With a
+     * transport that streams responses, such as
+     * {@link com.mongodb.stitch.android.http.OkHttpTransport}, a pipeline that only reads has its
+     * result decoded while it is downloaded, and only the element being decoded is held in
+     * memory. Such pipelines bypass the pipeline cache. Other pipelines are executed as usual and
+     * their result is handed out once it has arrived.
+     *
+     * @param pipeline The pipeline to execute.
+     * @param options  The deadline and cancellation token of the execution, if any.
+     * @param listener The listener to hand each element of the result to.
+     * @return A task that can be resolved once every element of the result has been handed to
+     * the listener. The task fails with a {@link StitchException.StitchCancelledException} if the
+     * execution is cancelled or runs past its deadline, even after some elements were handed out.
+     */
+    public Task<Void> executePipeline(
+            final List<PipelineStage> pipeline,
+            final RequestOptions options,
+            final ResultListener<Object> listener
+    ) {
+        ensureAuthenticated();
+        final CancellationToken cancellation = CancellationToken.forCall(options, _scheduler);
+        return releaseWhenComplete(
+                streamPipeline(pipeline, cancellation, listener), cancellation);
+    }
+
+    private Task<Void> streamPipeline(
+            final List<PipelineStage> pipeline,
+            final CancellationToken cancellation,
+            final ResultListener<Object> listener
+    ) {
+        if (!isReadOnly(pipeline)) {
+            return runPipeline(pipeline, cancellation).continueWith(_executor, new Continuation<List<Object>, Void>() {
+                @Override
+                public Void then(@NonNull final Task<List<Object>> task) throws Exception {
+                    if (!task.isSuccessful()) {
+                        throw task.getException();
+                    }
+                    for (final Object element : task.getResult()) {
+                        listener.onResult(element);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        final boolean bson = _wireFormat == WireFormat.BSON;
+        return Tasks.call(_executor, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return bson
+                        ? PipelineBsonCodec.encodePipeline(pipeline)
+                        : toBytes(_objMapper.writeValueAsString(pipeline));
+            }
+        }).continueWithTask(_executor, new Continuation<byte[], Task<HttpResponse>>() {
+            @Override
+            public Task<HttpResponse> then(@NonNull final Task<byte[]> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                return startRequest(
+                        HttpMethod.POST,
+                        Paths.PIPELINE,
+                        task.getResult(),
+                        bson ? APPLICATION_BSON : APPLICATION_JSON_UTF8,
+                        true,
+                        false,
+                        true,
+                        cancellation,
+                        true);
+            }
+        }).continueWith(_streamExecutor, new Continuation<HttpResponse, Void>() {
+            @Override
+            public Void then(@NonNull final Task<HttpResponse> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    Log.e(TAG, "Error while executing pipeline", task.getException());
+                    throw task.getException();
+                }
+
+                // Decoded on a thread of its own, as it blocks for the whole download
+                final InputStream body = task.getResult().getBodyStream();
+                // Closing the body aborts a download that is cancelled while being decoded
+                final Runnable abort = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            body.close();
+                        } catch (final IOException ignored) {
+                        }
+                    }
+                };
+                if (cancellation != null) {
+                    cancellation.addListener(abort);
+                }
+                try {
+                    if (bson) {
+                        PipelineBsonCodec.decodeResult(body, listener);
+                    } else {
+                        PipelineJsonDecoder.decodeResult(body, listener);
+                    }
+                } catch (final IOException e) {
+                    if (cancellation != null && cancellation.isCancelled()) {
+                        throw cancellation.newCancelledException();
+                    }
+                    Log.e(TAG, "Error while decoding pipeline result", e);
+                    throw e;
+                } finally {
+                    if (cancellation != null) {
+                        cancellation.removeListener(abort);
+                    }
+                    body.close();
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Executes a pipeline with the current app, exchanging the pipeline and its result as
+     * binary BSON.
+     *
+     * @param pipeline     The pipeline to execute.
+     * @param cancellation The token that abandons the execution, if any.
+     * @return A task containing the successful response that can be resolved on completion
+     * of the execution.
+     */
+    private Task<HttpResponse> executeBsonPipeline(
+            final List<PipelineStage> pipeline,
+            final CancellationToken cancellation
+    ) {
+        return Tasks.call(_executor, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return PipelineBsonCodec.encodePipeline(pipeline);
+            }
+        }).continueWithTask(_executor, new Continuation<byte[], Task<HttpResponse>>() {
+            @Override
+            public Task<HttpResponse> then(@NonNull final Task<byte[]> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                return executePipelineRequest(pipeline, task.getResult(), APPLICATION_BSON, cancellation);
+            }
+        });
+    }
+
     /**
      * Executes a pipeline with the current app.
      *
@@ -658,6 +979,24 @@ public class StitchClient {
         return executePipeline(Arrays.asList(stages));
     }
 
+    /**
+     * @param task         The task of a call.
+     * @param cancellation The token made for the call, if any.
+     * @param <T>          The result type of the call.
+     * @return The task, after arranging for the token to be released once it completes.
+     */
+    private <T> Task<T> releaseWhenComplete(final Task<T> task, final CancellationToken cancellation) {
+        if (cancellation != null) {
+            task.addOnCompleteListener(_executor, new OnCompleteListener<T>() {
+                @Override
+                public void onComplete(@NonNull final Task<T> ignored) {
+                    cancellation.release();
+                }
+            });
+        }
+        return task;
+    }
+
     // Network
 
     private static class Paths {
@@ -683,37 +1022,130 @@ public class StitchClient {
     }
 
     /**
-     * Executes a network request against the app. The request will be retried if there
-     * is an access token expiration.
-     *
-     * @param method   The HTTP method to use.
-     * @param resource The resource to target.
-     * @return A task containing the body of the network response that can be resolved on completion
-     * of the network request.
+     * @param method The HTTP method to use.
+     * @param url    The URL to target.
+     * @param body   The JSON body to include in the request.
+     * @return A builder for a request tagged with this client.
      */
-    private Task<String> executeRequest(
-            final int method,
-            final String resource
-    ) {
-        return executeRequest(method, resource, null, true, false);
+    private HttpRequest.Builder newRequest(final HttpMethod method, final String url, final String body) {
+        return newRequest(method, url, toBytes(body), APPLICATION_JSON_UTF8);
     }
 
     /**
-     * Executes a network request against the app. The request will be retried if there
-     * is an access token expiration.
-     *
-     * @param method   The HTTP method to use.
-     * @param resource The resource to target.
-     * @param body     The JSON body to include in the request.
-     * @return A task containing the body of the network response that can be resolved on completion
-     * of the network request.
+     * @param method      The HTTP method to use.
+     * @param url         The URL to target.
+     * @param body        The body to include in the request.
+     * @param contentType The content type of the body. Responses are requested in the same type.
+     * @return A builder for a request tagged with this client.
      */
-    private Task<String> executeRequest(
-            final int method,
-            final String resource,
-            final String body
+    private HttpRequest.Builder newRequest(
+            final HttpMethod method,
+            final String url,
+            final byte[] body,
+            final String contentType
     ) {
-        return executeRequest(method, resource, body, true, false);
+        final HttpRequest.Builder builder = new HttpRequest.Builder(method, url).withTag(this);
+        if (body != null) {
+            builder.withBody(body, contentType);
+        }
+        if (APPLICATION_BSON.equals(contentType)) {
+            builder.withHeader(Headers.ACCEPT, APPLICATION_BSON);
+        }
+        return builder;
+    }
+
+    /**
+     * @param body A JSON body.
+     * @return The body encoded as UTF-8 or null if there is no body.
+     */
+    private static byte[] toBytes(final String body) {
+        return body == null ? null : body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Executes a network request against the app that does not require authentication. GET
+     * requests share a single call with any identical request already in flight.
+     *
+     * @param method The HTTP method to use.
+     * @param url    The URL to target.
+     * @param body   The JSON body to include in the request.
+     * @return A task containing the body of the network response that can be resolved on completion
+     * of the network request.
+     */
+    private Task<String> executeUnauthenticatedRequest(
+            final HttpMethod method,
+            final String url,
+            final String body
+    ) {
+        if (method != HttpMethod.GET) {
+            return sendUnauthenticatedRequest(method, url, body);
+        }
+        return _deduplicator.execute(method, url, toBytes(body), new RequestDeduplicator.Starter<String>() {
+            @Override
+            public Task<String> start() {
+                return sendUnauthenticatedRequest(method, url, body);
+            }
+        });
+    }
+
+    private Task<String> sendUnauthenticatedRequest(
+            final HttpMethod method,
+            final String url,
+            final String body
+    ) {
+        final TaskCompletionSource<String> future = new TaskCompletionSource<>();
+        _transport.execute(newRequest(method, url, body).build()).addOnCompleteListener(_executor, new OnCompleteListener<HttpResponse>() {
+            @Override
+            public void onComplete(@NonNull final Task<HttpResponse> task) {
+                if (!task.isSuccessful()) {
+                    future.setException(parseRequestError(task.getException()));
+                    return;
+                }
+
+                final HttpResponse response = task.getResult();
+                if (!response.isSuccessful()) {
+                    future.setException(parseRequestError(response));
+                    return;
+                }
+                future.setResult(response.getBodyAsString());
+            }
+        });
+
+        return future.getTask();
+    }
+
+    /**
+     * Executes a network request against the app. The request will be retried if there
+     * is an access token expiration.
+     *
+     * @param method   The HTTP method to use.
+     * @param resource The resource to target.
+     * @return A task containing the body of the network response that can be resolved on completion
+     * of the network request.
+     */
+    private Task<String> executeRequest(
+            final HttpMethod method,
+            final String resource
+    ) {
+        return executeRequest(method, resource, null, true, false);
+    }
+
+    /**
+     * Executes a network request against the app. The request will be retried if there
+     * is an access token expiration.
+     *
+     * @param method   The HTTP method to use.
+     * @param resource The resource to target.
+     * @param body     The JSON body to include in the request.
+     * @return A task containing the body of the network response that can be resolved on completion
+     * of the network request.
+     */
+    private Task<String> executeRequest(
+            final HttpMethod method,
+            final String resource,
+            final String body
+    ) {
+        return executeRequest(method, resource, body, true, false);
     }
 
     /**
@@ -728,49 +1160,340 @@ public class StitchClient {
      * of the network request.
      */
     private Task<String> executeRequest(
-            final int method,
+            final HttpMethod method,
             final String resource,
             final String body,
             final boolean refreshOnFailure,
             final boolean useRefreshToken
     ) {
-        ensureAuthenticated();
-        final String url = getResourcePath(resource);
-        final String token = useRefreshToken ? getRefreshToken() : _auth.getAccessToken();
-        final TaskCompletionSource<String> future = new TaskCompletionSource<>();
-        final AuthenticatedJsonStringRequest request = new AuthenticatedJsonStringRequest(
+        return executeRequest(method, resource, toBytes(body), APPLICATION_JSON_UTF8, refreshOnFailure, useRefreshToken)
+                .continueWith(_executor, new Continuation<HttpResponse, String>() {
+                    @Override
+                    public String then(@NonNull final Task<HttpResponse> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            throw task.getException();
+                        }
+                        return task.getResult().getBodyAsString();
+                    }
+                });
+    }
+
+    /**
+     * Executes a network request against the app, retrying it according to the retry policy
+     * if it is a GET request.
+     *
+     * @param method           The HTTP method to use.
+     * @param resource         The resource to target.
+     * @param body             The body to include in the request.
+     * @param contentType      The content type of the body.
+     * @param refreshOnFailure Whether or not to refresh the access token if it expires.
+     * @param useRefreshToken  Whether or not to use the refresh token over the access token.
+     * @return A task containing the successful network response that can be resolved on completion
+     * of the network request.
+     */
+    private Task<HttpResponse> executeRequest(
+            final HttpMethod method,
+            final String resource,
+            final byte[] body,
+            final String contentType,
+            final boolean refreshOnFailure,
+            final boolean useRefreshToken
+    ) {
+        return executeRequest(
                 method,
-                url,
+                resource,
                 body,
-                Collections.singletonMap(
-                        Headers.AUTHORIZATION,
-                        GetAuthorizationBearer(token)),
-                new Response.Listener<String>() {
-                    @Override
-                    public void onResponse(final String response) {
-                        future.setResult(response);
+                contentType,
+                refreshOnFailure,
+                useRefreshToken,
+                method == HttpMethod.GET,
+                null);
+    }
+
+    /**
+     * Executes a network request against the app. Requests to an endpoint whose circuit breaker
+     * is open fail without being sent. Idempotent requests that cannot be cancelled share a
+     * single call with any identical request already in flight.
+     *
+     * @param method           The HTTP method to use.
+     * @param resource         The resource to target.
+     * @param body             The body to include in the request.
+     * @param contentType      The content type of the body.
+     * @param refreshOnFailure Whether or not to refresh the access token if it expires.
+     * @param useRefreshToken  Whether or not to use the refresh token over the access token.
+     * @param idempotent       Whether or not the request may be sent again after a transient
+     *                         failure.
+     * @param cancellation     The token that abandons the request, if any.
+     * @return A task containing the successful network response that can be resolved on completion
+     * of the network request.
+     */
+    private Task<HttpResponse> executeRequest(
+            final HttpMethod method,
+            final String resource,
+            final byte[] body,
+            final String contentType,
+            final boolean refreshOnFailure,
+            final boolean useRefreshToken,
+            final boolean idempotent,
+            final CancellationToken cancellation
+    ) {
+        ensureAuthenticated();
+        if (idempotent && cancellation == null) {
+            // Identical reads in flight at the same time share one call; a call that can be
+            // cancelled by one caller is never shared with others
+            return _deduplicator.execute(method, resource, body, new RequestDeduplicator.Starter<HttpResponse>() {
+                @Override
+                public Task<HttpResponse> start() {
+                    return startRequest(method, resource, body, contentType, refreshOnFailure, useRefreshToken, true, null, false);
+                }
+            });
+        }
+        return startRequest(method, resource, body, contentType, refreshOnFailure, useRefreshToken, idempotent, cancellation, false);
+    }
+
+    private Task<HttpResponse> startRequest(
+            final HttpMethod method,
+            final String resource,
+            final byte[] body,
+            final String contentType,
+            final boolean refreshOnFailure,
+            final boolean useRefreshToken,
+            final boolean idempotent,
+            final CancellationToken cancellation,
+            final boolean streamingResponse
+    ) {
+        final RequestFuture future = new RequestFuture();
+        if (cancellation != null) {
+            // Complete right away even if the request is waiting to be retried
+            final Runnable onCancel = new Runnable() {
+                @Override
+                public void run() {
+                    future.setException(cancellation.newCancelledException());
+                }
+            };
+            cancellation.addListener(onCancel);
+            future.getTask().addOnCompleteListener(_executor, new OnCompleteListener<HttpResponse>() {
+                @Override
+                public void onComplete(@NonNull final Task<HttpResponse> task) {
+                    cancellation.removeListener(onCancel);
+                }
+            });
+        }
+        attemptRequest(1, method, resource, body, contentType, refreshOnFailure, useRefreshToken, idempotent, cancellation, streamingResponse, future);
+        return future.getTask();
+    }
+
+    private void attemptRequest(
+            final int attempt,
+            final HttpMethod method,
+            final String resource,
+            final byte[] body,
+            final String contentType,
+            final boolean refreshOnFailure,
+            final boolean useRefreshToken,
+            final boolean idempotent,
+            final CancellationToken cancellation,
+            final boolean streamingResponse,
+            final RequestFuture future
+    ) {
+        if (future.isCompleted()) {
+            return;
+        }
+
+        final CircuitBreaker breaker = getCircuitBreaker(method, resource);
+        final boolean sent = breaker.allowRequest();
+        final Task<HttpResponse> request;
+        if (!sent) {
+            request = Tasks.forException(breaker.newOpenException());
+        } else {
+            Task<HttpResponse> started;
+            try {
+                started = sendRequest(method, resource, body, contentType, refreshOnFailure, useRefreshToken, cancellation, streamingResponse);
+            } catch (final RuntimeException e) {
+                started = Tasks.forException(e);
+            }
+            request = started;
+        }
+
+        request.addOnCompleteListener(_executor, new OnCompleteListener<HttpResponse>() {
+            @Override
+            public void onComplete(@NonNull final Task<HttpResponse> task) {
+                if (task.isSuccessful()) {
+                    if (sent) {
+                        breaker.onSuccess();
+                    }
+                    future.setResult(task.getResult());
+                    return;
+                }
+
+                final Exception error = task.getException();
+                if (error instanceof StitchException.StitchCancelledException) {
+                    // An abandoned request says nothing about the health of the endpoint
+                    if (sent) {
+                        breaker.onCancelled();
+                    }
+                    future.setException(error);
+                    return;
+                }
+
+                final boolean transientError = error instanceof StitchException.StitchRequestException
+                        && ((StitchException.StitchRequestException) error).isRetryable();
+                if (sent) {
+                    if (transientError) {
+                        breaker.onFailure();
+                    } else {
+                        breaker.onSuccess();
                     }
-                },
-                new Response.ErrorListener() {
+                }
+
+                final long delay = idempotent ? _retryPolicy.getRetryDelayMillis(attempt, error) : -1;
+                if (delay < 0) {
+                    future.setException(error);
+                    return;
+                }
+
+                Log.d(TAG, String.format("Retrying %s %s in %dms", method, resource, delay), error);
+                _scheduler.schedule(new Runnable() {
                     @Override
-                    public void onErrorResponse(final VolleyError error) {
-                        final StitchException.StitchRequestException e = parseRequestError(error);
-                        if (e instanceof StitchException.StitchServiceException) {
-                            if (((StitchException.StitchServiceException) e).getErrorCode() == ErrorCode.INVALID_SESSION) {
-                                if (!refreshOnFailure) {
-                                    clearAuth();
-                                    future.setException(e);
-                                    return;
-                                }
-                                handleInvalidSession(method, resource, body, future);
-                                return;
+                    public void run() {
+                        _executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                attemptRequest(attempt + 1, method, resource, body, contentType, refreshOnFailure, useRefreshToken, idempotent, cancellation, streamingResponse, future);
                             }
+                        });
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * @param method   The HTTP method of a request.
+     * @param resource The resource a request targets.
+     * @return The circuit breaker tracking the endpoint.
+     */
+    private CircuitBreaker getCircuitBreaker(final HttpMethod method, final String resource) {
+        final String endpoint = String.format("%s %s", method, resource);
+        final CircuitBreaker existing = _circuitBreakers.get(endpoint);
+        if (existing != null) {
+            return existing;
+        }
+        final CircuitBreaker breaker = new CircuitBreaker(
+                endpoint,
+                _retryPolicy.getFailureThreshold(),
+                _retryPolicy.getOpenMillis());
+        final CircuitBreaker raced = _circuitBreakers.putIfAbsent(endpoint, breaker);
+        return raced != null ? raced : breaker;
+    }
+
+    /**
+     * @param pipeline The stages of a pipeline.
+     * @return Whether or not every stage of the pipeline only reads data.
+     */
+    private static boolean isReadOnly(final List<PipelineStage> pipeline) {
+        for (final PipelineStage stage : pipeline) {
+            if (!READ_ONLY_ACTIONS.contains(stage.getAction())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes a single attempt of a network request against the app.
+     *
+     * @param method           The HTTP method to use.
+     * @param resource         The resource to target.
+     * @param body             The body to include in the request.
+     * @param contentType      The content type of the body.
+     * @param refreshOnFailure Whether or not to refresh the access token if it expires.
+     * @param useRefreshToken  Whether or not to use the refresh token over the access token.
+     * @param cancellation     The token that aborts the request, if any.
+     * @param streamingResponse Whether or not the body of a successful response may be read as
+     *                          it arrives.
+     * @return A task containing the successful network response that can be resolved on completion
+     * of the network request.
+     */
+    private Task<HttpResponse> sendRequest(
+            final HttpMethod method,
+            final String resource,
+            final byte[] body,
+            final String contentType,
+            final boolean refreshOnFailure,
+            final boolean useRefreshToken,
+            final CancellationToken cancellation,
+            final boolean streamingResponse
+    ) {
+        ensureAuthenticated();
+        if (cancellation != null && cancellation.isCancelled()) {
+            return Tasks.forException(cancellation.newCancelledException());
+        }
+        if (!useRefreshToken) {
+            // Hold the request until the access token in use is replaced
+            final Task<Void> refresh;
+            synchronized (_refreshLock) {
+                refresh = _refreshTask;
+            }
+            if (refresh != null) {
+                return refresh.continueWithTask(_executor, new Continuation<Void, Task<HttpResponse>>() {
+                    @Override
+                    public Task<HttpResponse> then(@NonNull final Task<Void> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            throw task.getException();
                         }
-                        future.setException(e);
+                        return sendRequest(method, resource, body, contentType, refreshOnFailure, false, cancellation, streamingResponse);
                     }
                 });
-        request.setTag(this);
-        _queue.add(request);
+            }
+        }
+
+        final String url = getResourcePath(resource);
+        final String token = useRefreshToken ? getRefreshToken() : _auth.getAccessToken();
+        final TaskCompletionSource<HttpResponse> future = new TaskCompletionSource<>();
+        final HttpRequest.Builder builder = newRequest(method, url, body, contentType)
+                .withHeader(Headers.AUTHORIZATION, GetAuthorizationBearer(token));
+        if (streamingResponse) {
+            builder.withStreamingResponse();
+        }
+        final HttpRequest request = builder.build();
+        final Runnable abort = new Runnable() {
+            @Override
+            public void run() {
+                _transport.cancel(request);
+            }
+        };
+        _transport.execute(request).addOnCompleteListener(_executor, new OnCompleteListener<HttpResponse>() {
+            @Override
+            public void onComplete(@NonNull final Task<HttpResponse> task) {
+                if (cancellation != null) {
+                    cancellation.removeListener(abort);
+                }
+                if (task.isSuccessful() && task.getResult().isSuccessful()) {
+                    future.setResult(task.getResult());
+                    return;
+                }
+
+                final StitchException.StitchRequestException e = task.isSuccessful()
+                        ? parseRequestError(task.getResult())
+                        : parseRequestError(task.getException());
+                if (e instanceof StitchException.StitchServiceException) {
+                    if (((StitchException.StitchServiceException) e).getErrorCode() == ErrorCode.INVALID_SESSION) {
+                        if (!refreshOnFailure) {
+                            clearAuth();
+                            future.setException(e);
+                            return;
+                        }
+                        handleInvalidSession(method, resource, body, contentType, token, cancellation, streamingResponse, future);
+                        return;
+                    }
+                }
+                future.setException(e);
+            }
+        });
+        if (cancellation != null) {
+            cancellation.addListener(abort);
+        }
 
         return future.getTask();
     }
@@ -798,7 +1521,7 @@ public class StitchClient {
      */
     public Task<AvailablePushProviders> getPushProviders() {
 
-        return executeRequest(Request.Method.GET, Paths.PUSH).continueWith(new Continuation<String, AvailablePushProviders>() {
+        return executeRequest(HttpMethod.GET, Paths.PUSH).continueWith(_executor, new Continuation<String, AvailablePushProviders>() {
             @Override
             public AvailablePushProviders then(@NonNull final Task<String> task) throws Exception {
                 return AvailablePushProviders.fromQuery(task.getResult());
@@ -817,6 +1540,75 @@ public class StitchClient {
 
     // Private Methods
 
+    /**
+     * @return A bounded pool of low priority background threads.
+     */
+    private static Executor newDefaultExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                DEFAULT_EXECUTOR_THREADS,
+                DEFAULT_EXECUTOR_THREADS,
+                DEFAULT_EXECUTOR_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                newBackgroundThreadFactory(TAG));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return An unbounded pool of low priority background threads, one per streamed result
+     * being decoded, that exit when idle.
+     */
+    private static Executor newStreamExecutor() {
+        return new ThreadPoolExecutor(
+                0,
+                Integer.MAX_VALUE,
+                DEFAULT_EXECUTOR_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                newBackgroundThreadFactory(String.format("%s-Stream", TAG)));
+    }
+
+    /**
+     * @param name The prefix of the names of the threads.
+     * @return A factory of low priority daemon threads.
+     */
+    private static ThreadFactory newBackgroundThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger _threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, String.format("%s-%d", name, _threadCount.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * @return A single daemon thread for timing delayed work that exits when idle.
+     */
+    private static ScheduledExecutorService newScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, String.format("%s-Scheduler", TAG));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.setKeepAliveTime(DEFAULT_EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        scheduler.allowCoreThreadTimeOut(true);
+        return scheduler;
+    }
+
     // Auth
 
     /**
@@ -866,9 +1658,24 @@ public class StitchClient {
         }
         final String lastProvider = _auth.getProvider();
         _auth = null;
+        synchronized (_refreshLock) {
+            if (_scheduledRefresh != null) {
+                _scheduledRefresh.cancel(false);
+                _scheduledRefresh = null;
+            }
+        }
         _preferences.edit().remove(PREF_AUTH_JWT_NAME).apply();
         _preferences.edit().remove(PREF_AUTH_REFRESH_TOKEN_NAME).apply();
-        _queue.cancelAll(this);
+        _transport.cancelAll(this);
+        if (_pipelineCache != null) {
+            final PipelineCache cache = _pipelineCache;
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    cache.clear();
+                }
+            });
+        }
         onLogout(lastProvider);
     }
 
@@ -876,18 +1683,27 @@ public class StitchClient {
      * Handles an invalid session error from Stitch by refreshing the access token and
      * retrying the original request.
      *
-     * @param method   The original HTTP method.
-     * @param resource The original resource.
-     * @param body     The original body.
-     * @param future   The task to resolve upon completion of this handler.
+     * @param method       The original HTTP method.
+     * @param resource     The original resource.
+     * @param body         The original body.
+     * @param contentType  The content type of the original body.
+     * @param expiredToken The access token the original request was rejected with.
+     * @param cancellation The token that aborts the original request, if any.
+     * @param streamingResponse Whether or not the original request asked for a streaming
+     *                          response.
+     * @param future       The task to resolve upon completion of this handler.
      */
     private void handleInvalidSession(
-            final int method,
+            final HttpMethod method,
             final String resource,
-            final String body,
-            final TaskCompletionSource<String> future
+            final byte[] body,
+            final String contentType,
+            final String expiredToken,
+            final CancellationToken cancellation,
+            final boolean streamingResponse,
+            final TaskCompletionSource<HttpResponse> future
     ) {
-        refreshAccessToken().addOnCompleteListener(new OnCompleteListener<Void>() {
+        refreshAccessToken(expiredToken).addOnCompleteListener(_executor, new OnCompleteListener<Void>() {
             @Override
             public void onComplete(@NonNull final Task<Void> task) {
                 if (!task.isSuccessful()) {
@@ -896,9 +1712,9 @@ public class StitchClient {
                 }
 
                 // Retry one more time
-                executeRequest(method, resource, body, false, false).addOnCompleteListener(new OnCompleteListener<String>() {
+                sendRequest(method, resource, body, contentType, false, false, cancellation, streamingResponse).addOnCompleteListener(_executor, new OnCompleteListener<HttpResponse>() {
                     @Override
-                    public void onComplete(@NonNull final Task<String> task) {
+                    public void onComplete(@NonNull final Task<HttpResponse> task) {
                         if (task.isSuccessful()) {
                             future.setResult(task.getResult());
                             return;
@@ -912,13 +1728,107 @@ public class StitchClient {
     }
 
     /**
-     * Refreshes the current access token using the current refresh token.
+     * Refreshes the current access token using the current refresh token. At most one refresh
+     * is in flight at a time; callers that arrive while one is in progress share it.
      *
+     * @param expiredToken The access token that was rejected. No refresh is sent if it has
+     *                     already been replaced.
      * @return A task that can resolved upon completion of refreshing the access token.
      */
-    private Task<Void> refreshAccessToken() {
-        return executeRequest(Request.Method.POST, Paths.NEW_ACCESS_TOKEN, null, false, true)
-                .continueWith(new Continuation<String, Void>() {
+    private Task<Void> refreshAccessToken(final String expiredToken) {
+        synchronized (_refreshLock) {
+            if (_refreshTask != null) {
+                return _refreshTask;
+            }
+
+            // Another request already replaced the token this request was sent with
+            final Auth auth = _auth;
+            if (auth != null && !auth.getAccessToken().equals(expiredToken)) {
+                return Tasks.forResult(null);
+            }
+
+            _refreshCount.incrementAndGet();
+            final Task<Void> refresh = sendRefreshRequest();
+            _refreshTask = refresh;
+            refresh.addOnCompleteListener(_executor, new OnCompleteListener<Void>() {
+                @Override
+                public void onComplete(@NonNull final Task<Void> task) {
+                    synchronized (_refreshLock) {
+                        if (_refreshTask == refresh) {
+                            _refreshTask = null;
+                        }
+                    }
+                }
+            });
+            return refresh;
+        }
+    }
+
+    /**
+     * Schedules a refresh of the current access token shortly before it expires, replacing any
+     * previously scheduled refresh. Does nothing if the token does not state when it expires or
+     * has already expired, in which case the next rejected request refreshes it.
+     */
+    private void scheduleTokenRefresh() {
+        final Auth auth = _auth;
+        if (auth == null || auth.getAccessTokenExpiresAt() == null) {
+            return;
+        }
+
+        final long remaining = auth.getAccessTokenExpiresAt() - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return;
+        }
+        final long delay = getTokenRefreshDelayMillis(remaining, _tokenRefreshSkewMillis);
+        final String accessToken = auth.getAccessToken();
+
+        synchronized (_refreshLock) {
+            if (_scheduledRefresh != null) {
+                _scheduledRefresh.cancel(false);
+            }
+            _scheduledRefresh = _scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    _executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (_auth == null) {
+                                return;
+                            }
+                            refreshAccessToken(accessToken).addOnCompleteListener(_executor, new OnCompleteListener<Void>() {
+                                @Override
+                                public void onComplete(@NonNull final Task<Void> task) {
+                                    if (!task.isSuccessful()) {
+                                        Log.d(TAG, "Error refreshing access token ahead of expiry", task.getException());
+                                    }
+                                }
+                            });
+                        }
+                    });
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param remainingMillis How long the access token remains valid for, in milliseconds.
+     * @param skewMillis      How long before the access token expires to refresh it, in
+     *                        milliseconds.
+     * @return How long to wait before refreshing the access token, in milliseconds.
+     */
+    static long getTokenRefreshDelayMillis(final long remainingMillis, final long skewMillis) {
+        // Never refresh a short-lived token more often than every half of its remaining life
+        return Math.max(remainingMillis - skewMillis, remainingMillis / 2);
+    }
+
+    /**
+     * Sends a request for a new access token and stores it.
+     *
+     * @return A task that can be resolved upon completion of the request.
+     */
+    private Task<Void> sendRefreshRequest() {
+        return executeRequest(HttpMethod.POST, Paths.NEW_ACCESS_TOKEN, null, false, true)
+                .continueWith(_executor, new Continuation<String, Void>() {
                     @Override
                     public Void then(@NonNull Task<String> task) throws Exception {
                         if (!task.isSuccessful()) {
@@ -945,6 +1855,7 @@ public class StitchClient {
                         }
 
                         _preferences.edit().putString(PREF_AUTH_JWT_NAME, authJson).apply();
+                        scheduleTokenRefresh();
                         return null;
                     }
                 });
@@ -1034,4 +1945,151 @@ public class StitchClient {
         static final String PLATFORM = "platform";
         static final String PLATFORM_VERSION = "platformVersion";
     }
+
+    /**
+     * A RequestFuture completes a request's task exactly once, whichever of its attempts or its
+     * cancellation gets there first.
+     */
+    private static final class RequestFuture {
+        private final TaskCompletionSource<HttpResponse> _source = new TaskCompletionSource<>();
+        private final AtomicBoolean _completed = new AtomicBoolean();
+
+        Task<HttpResponse> getTask() {
+            return _source.getTask();
+        }
+
+        boolean isCompleted() {
+            return _completed.get();
+        }
+
+        void setResult(final HttpResponse response) {
+            if (_completed.compareAndSet(false, true)) {
+                _source.setResult(response);
+            }
+        }
+
+        void setException(final Exception e) {
+            if (_completed.compareAndSet(false, true)) {
+                _source.setException(e);
+            }
+        }
+    }
+
+    /**
+     * Builder is used to configure and create {@link StitchClient}s.
+     */
+    public static class Builder {
+        private final Context _context;
+        private String _clientAppId;
+        private String _baseUrl;
+        private HttpTransport _transport;
+        private Executor _executor;
+        private WireFormat _wireFormat = WireFormat.EXTENDED_JSON;
+        private long _tokenRefreshSkewMillis = DEFAULT_TOKEN_REFRESH_SKEW_MILLIS;
+        private RetryPolicy _retryPolicy;
+        private PipelineCache _pipelineCache;
+
+        /**
+         * @param context The Android {@link Context} that the client should be bound to.
+         */
+        public Builder(final Context context) {
+            _context = context;
+        }
+
+        /**
+         * @param clientAppId The App ID for the Stitch app. If not set, the App ID is read from
+         *                    the properties file.
+         * @return This builder.
+         */
+        public Builder withAppId(final String clientAppId) {
+            _clientAppId = clientAppId;
+            return this;
+        }
+
+        /**
+         * @param baseUrl The base URL of the Stitch Client API server. If not set, the base URL is
+         *                read from the properties file or the default is used.
+         * @return This builder.
+         */
+        public Builder withBaseUrl(final String baseUrl) {
+            _baseUrl = baseUrl;
+            return this;
+        }
+
+        /**
+         * @param transport The transport to execute all requests to Stitch with. Defaults to a
+         *                  {@link VolleyTransport}.
+         * @return This builder.
+         */
+        public Builder withTransport(final HttpTransport transport) {
+            _transport = transport;
+            return this;
+        }
+
+        /**
+         * @param executor The executor to serialize requests, decode responses and run task
+         *                 continuations on. Defaults to a bounded pool of background threads.
+         *                 Results are delivered to listeners on the executor they were added with.
+         * @return This builder.
+         */
+        public Builder withExecutor(final Executor executor) {
+            _executor = executor;
+            return this;
+        }
+
+        /**
+         * @param wireFormat The format to exchange pipelines and their results with Stitch in.
+         *                   Defaults to {@link WireFormat#EXTENDED_JSON}. {@link WireFormat#BSON}
+         *                   requires a Stitch server that accepts {@code application/bson}.
+         * @return This builder.
+         */
+        public Builder withWireFormat(final WireFormat wireFormat) {
+            _wireFormat = wireFormat;
+            return this;
+        }
+
+        /**
+         * @param skew How long before its access token expires the client refreshes it in the
+         *             background. Defaults to one minute. A larger skew tolerates more clock
+         *             drift between the device and Stitch.
+         * @param unit The unit of {@code skew}.
+         * @return This builder.
+         */
+        public Builder withTokenRefreshSkew(final long skew, final TimeUnit unit) {
+            if (skew < 0) {
+                throw new IllegalArgumentException("skew must not be negative");
+            }
+            _tokenRefreshSkewMillis = unit.toMillis(skew);
+            return this;
+        }
+
+        /**
+         * @param retryPolicy The policy for retrying idempotent requests after transient
+         *                    failures and for failing fast on unhealthy endpoints. Defaults to
+         *                    a {@link RetryPolicy} with its default settings; use
+         *                    {@link RetryPolicy#none()} to send every request exactly once.
+         * @return This builder.
+         */
+        public Builder withRetryPolicy(final RetryPolicy retryPolicy) {
+            _retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * @param pipelineCache The cache to answer read-only pipelines from. Results are cached
+         *                      per user and discarded on logout. By default nothing is cached.
+         * @return This builder.
+         */
+        public Builder withPipelineCache(final PipelineCache pipelineCache) {
+            _pipelineCache = pipelineCache;
+            return this;
+        }
+
+        /**
+         * @return A new client with this builder's configuration.
+         */
+        public StitchClient build() {
+            return new StitchClient(this);
+        }
+    }
 }
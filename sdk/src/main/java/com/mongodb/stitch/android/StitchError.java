@@ -1,70 +1,129 @@
 package com.mongodb.stitch.android;
 
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.HttpHeaderParser;
+import com.mongodb.stitch.android.http.HttpResponse;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
+import static com.mongodb.stitch.android.StitchException.StitchCancelledException;
 import static com.mongodb.stitch.android.StitchException.StitchRequestException;
 import static com.mongodb.stitch.android.http.ContentTypes.APPLICATION_JSON;
 import static com.mongodb.stitch.android.http.Headers.CONTENT_TYPE;
+import static com.mongodb.stitch.android.http.Headers.RETRY_AFTER;
 
 class StitchError {
 
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
     /**
-     * Parses a network request error, looking for any embedded errors or codes.
+     * Parses a network request error that happened before any response was received. Such
+     * errors are retryable since the server may never have seen the request, unless the request
+     * was cancelled.
      *
      * @param error The network error.
      * @return An exception describing the network error.
      */
-    static StitchRequestException parseRequestError(final VolleyError error) {
-
-        if (error.networkResponse == null) {
-            return new StitchRequestException(error);
+    static StitchRequestException parseRequestError(final Exception error) {
+        if (error instanceof StitchRequestException) {
+            return (StitchRequestException) error;
         }
-
-        final String data;
-        try {
-            data = new String(
-                    error.networkResponse.data,
-                    HttpHeaderParser.parseCharset(
-                            error.networkResponse.headers,
-                            StandardCharsets.UTF_8.displayName())
-                    );
-        } catch (final UnsupportedEncodingException e) {
-            throw new StitchRequestException(e);
+        if (error instanceof CancellationException) {
+            return new StitchCancelledException("Request was cancelled");
         }
+        return new StitchRequestException(error, true);
+    }
 
+    /**
+     * Parses an unsuccessful response, looking for any embedded errors or codes. A JSON body
+     * that is not a Stitch error is described by its raw content.
+     *
+     * @param response The unsuccessful response.
+     * @return An exception describing the network error.
+     */
+    static StitchRequestException parseRequestError(final HttpResponse response) {
+
+        final int statusCode = response.getStatusCode();
+        final boolean retryable = isRetryableStatus(statusCode);
+        final Long retryAfterMillis = retryable ? parseRetryAfter(response.getHeader(RETRY_AFTER)) : null;
+
+        final String data = response.getBodyAsString();
         final String errorMsg;
 
         // Look for rich error message
-        if (error.networkResponse.headers.containsKey(CONTENT_TYPE) &&
-                error.networkResponse.headers.get(CONTENT_TYPE).equals(APPLICATION_JSON)) {
+        final String contentType = response.getHeader(CONTENT_TYPE);
+        if (contentType != null && contentType.startsWith(APPLICATION_JSON)) {
             try {
                 final JSONObject obj = new JSONObject(data);
                 errorMsg = obj.getString(Fields.ERROR);
                 if (obj.has(Fields.ERROR_CODE)) {
                     final String errorCode = obj.getString(Fields.ERROR_CODE);
-                    return new StitchException.StitchServiceException(errorMsg, ErrorCode.fromCodeName(errorCode));
+                    return new StitchException.StitchServiceException(
+                            errorMsg, ErrorCode.fromCodeName(errorCode), retryable, retryAfterMillis);
                 }
             } catch (final JSONException e) {
-                throw new StitchRequestException(e);
+                // Not a Stitch error, such as one from a gateway in front of Stitch
+                return new StitchRequestException(data, retryable, retryAfterMillis);
             }
         } else {
             errorMsg = data;
         }
 
-        if (error.networkResponse.statusCode >= 400 && error.networkResponse.statusCode < 600) {
-            return new StitchException.StitchServiceException(errorMsg);
+        if (statusCode >= 400 && statusCode < 600) {
+            return new StitchException.StitchServiceException(
+                    errorMsg, ErrorCode.UNKNOWN, retryable, retryAfterMillis);
+        }
+
+        return new StitchException.StitchRequestException(errorMsg, retryable, retryAfterMillis);
+    }
+
+    /**
+     * @param statusCode The status code of an unsuccessful response.
+     * @return Whether or not the status code indicates a transient condition.
+     */
+    private static boolean isRetryableStatus(final int statusCode) {
+        switch (statusCode) {
+            case 408: // Request Timeout
+            case 429: // Too Many Requests
+            case 502: // Bad Gateway
+            case 503: // Service Unavailable
+            case 504: // Gateway Timeout
+                return true;
+            default:
+                return false;
         }
+    }
 
-        return new StitchException.StitchRequestException(error);
+    /**
+     * @param retryAfter The value of a Retry-After header, either a number of seconds or an
+     *                   HTTP date.
+     * @return The time to wait in milliseconds, or null if there is no usable value.
+     */
+    private static Long parseRetryAfter(final String retryAfter) {
+        if (retryAfter == null) {
+            return null;
+        }
+        final String value = retryAfter.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (final NumberFormatException ignored) {
+        }
+
+        final SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+        } catch (final ParseException ignored) {
+            return null;
+        }
     }
 
     /**
@@ -29,11 +29,58 @@ public class StitchException extends RuntimeException {
      * servers.
      */
     public static class StitchRequestException extends StitchException {
+
+        private final boolean _retryable;
+        private final Long _retryAfterMillis;
+
         public StitchRequestException(final Throwable t) {
-            super(t);
+            this(t, false);
         }
 
         public StitchRequestException(final String message) {
+            this(message, false, null);
+        }
+
+        public StitchRequestException(final Throwable t, final boolean retryable) {
+            super(t);
+            _retryable = retryable;
+            _retryAfterMillis = null;
+        }
+
+        public StitchRequestException(
+                final String message,
+                final boolean retryable,
+                final Long retryAfterMillis
+        ) {
+            super(message);
+            _retryable = retryable;
+            _retryAfterMillis = retryAfterMillis;
+        }
+
+        /**
+         * @return Whether or not the failure is likely transient, such that sending the same
+         * request again later may succeed.
+         */
+        public boolean isRetryable() {
+            return _retryable;
+        }
+
+        /**
+         * @return How long the server asked to wait before sending the request again, in
+         * milliseconds, or null if it did not say.
+         */
+        public Long getRetryAfterMillis() {
+            return _retryAfterMillis;
+        }
+    }
+
+    /**
+     * A StitchCancelledException is an exception that happens when a request to Stitch servers
+     * is abandoned before it completes, either because it was cancelled or because it ran past
+     * its deadline.
+     */
+    public static class StitchCancelledException extends StitchRequestException {
+        public StitchCancelledException(final String message) {
             super(message);
         }
     }
@@ -61,6 +108,16 @@ public class StitchException extends RuntimeException {
             _errorCode = errorCode;
         }
 
+        public StitchServiceException(
+                final String message,
+                final ErrorCode errorCode,
+                final boolean retryable,
+                final Long retryAfterMillis
+        ) {
+            super(message, retryable, retryAfterMillis);
+            _errorCode = errorCode;
+        }
+
         /**
          * @return The {@link ErrorCode} associated with the request.
          */
@@ -0,0 +1,18 @@
+package com.mongodb.stitch.android;
+
+/**
+ * WireFormat is the encoding that pipelines and their results are exchanged with Stitch in.
+ */
+public enum WireFormat {
+
+    /**
+     * Pipelines and their results are sent as MongoDB Extended JSON.
+     */
+    EXTENDED_JSON,
+
+    /**
+     * Pipelines and their results are sent as binary BSON and decoded straight from the
+     * response bytes.
+     */
+    BSON
+}
@@ -1,9 +1,17 @@
 package com.mongodb.stitch.android.auth;
 
+import android.util.Base64;
+
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
 /**
  * Auth represents a session on Stitch for a specific user.
  */
@@ -14,6 +22,7 @@ public class Auth {
     private final String _userId;
     private final String _deviceId;
     private final String _provider;
+    private final Long _accessTokenExpiresAt;
 
     @JsonCreator
     private Auth(
@@ -33,6 +42,7 @@ public class Auth {
         _userId = userId;
         _provider = provider;
         _deviceId = deviceId;
+        _accessTokenExpiresAt = decodeExpiration(accessToken);
     }
 
     /**
@@ -67,6 +77,15 @@ public class Auth {
         return _deviceId;
     }
 
+    /**
+     * @return The time at which the current access token expires in milliseconds since the
+     * epoch, or null if the token does not state when it expires.
+     */
+    @JsonIgnore
+    public Long getAccessTokenExpiresAt() {
+        return _accessTokenExpiresAt;
+    }
+
     /**
      * @param newAccessToken The new access token to use.
      * @return A new session with a fresh access token.
@@ -75,6 +94,36 @@ public class Auth {
         return new Auth(newAccessToken, _provider, _deviceId, _userId);
     }
 
+    /**
+     * @param token A JSON Web Token.
+     * @return The {@code exp} claim of the token in milliseconds since the epoch, or null if the
+     * token has no such claim or cannot be decoded.
+     */
+    private static Long decodeExpiration(final String token) {
+        if (token == null) {
+            return null;
+        }
+        final String[] parts = token.split("\\.");
+        if (parts.length < 2) {
+            return null;
+        }
+
+        try {
+            final byte[] payload = Base64.decode(parts[1], Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+            final JSONObject claims = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+            if (!claims.has(Claims.EXPIRATION)) {
+                return null;
+            }
+            return claims.getLong(Claims.EXPIRATION) * 1000;
+        } catch (final IllegalArgumentException | JSONException e) {
+            return null;
+        }
+    }
+
+    private static class Claims {
+        private static final String EXPIRATION = "exp";
+    }
+
     private static class Fields {
         private static final String ACCESS_TOKEN = "accessToken";
         private static final String USER_ID = "userId";
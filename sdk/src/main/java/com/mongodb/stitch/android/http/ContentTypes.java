@@ -5,4 +5,6 @@ package com.mongodb.stitch.android.http;
  */
 public class ContentTypes {
     public static final String APPLICATION_JSON = "application/json";
+    public static final String APPLICATION_JSON_UTF8 = APPLICATION_JSON + "; charset=utf-8";
+    public static final String APPLICATION_BSON = "application/bson";
 }
@@ -5,8 +5,10 @@ package com.mongodb.stitch.android.http;
  */
 public class Headers {
     public static final String CONTENT_TYPE = "Content-Type";
+    public static final String ACCEPT = "Accept";
     public static final String AUTHORIZATION = "Authorization";
     public static final String AUTHORIZATION_BEARER = "Bearer";
+    public static final String RETRY_AFTER = "Retry-After";
 
     /**
      * @param value The bearer value
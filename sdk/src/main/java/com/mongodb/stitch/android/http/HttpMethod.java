@@ -0,0 +1,11 @@
+package com.mongodb.stitch.android.http;
+
+/**
+ * HTTP methods used when talking to Stitch.
+ */
+public enum HttpMethod {
+    GET,
+    POST,
+    PUT,
+    DELETE
+}
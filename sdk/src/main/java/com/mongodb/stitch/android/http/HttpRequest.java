@@ -0,0 +1,123 @@
+package com.mongodb.stitch.android.http;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An HttpRequest describes a single request to be executed by an {@link HttpTransport}.
+ */
+public class HttpRequest {
+
+    private final HttpMethod _method;
+    private final String _url;
+    private final Map<String, String> _headers;
+    private final byte[] _body;
+    private final String _contentType;
+    private final Object _tag;
+    private final boolean _streamingResponse;
+
+    private HttpRequest(final Builder builder) {
+        _method = builder._method;
+        _url = builder._url;
+        _headers = Collections.unmodifiableMap(new HashMap<>(builder._headers));
+        _body = builder._body;
+        _contentType = builder._contentType;
+        _tag = builder._tag;
+        _streamingResponse = builder._streamingResponse;
+    }
+
+    /**
+     * @return The HTTP method to use.
+     */
+    public HttpMethod getMethod() {
+        return _method;
+    }
+
+    /**
+     * @return The URL to request.
+     */
+    public String getUrl() {
+        return _url;
+    }
+
+    /**
+     * @return The headers to set on the request.
+     */
+    public Map<String, String> getHeaders() {
+        return _headers;
+    }
+
+    /**
+     * @return The body of the request, or null if there is none.
+     */
+    public byte[] getBody() {
+        return _body;
+    }
+
+    /**
+     * @return The content type of the body, or null if there is no body.
+     */
+    public String getContentType() {
+        return _contentType;
+    }
+
+    /**
+     * @return The tag this request can be cancelled by.
+     */
+    public Object getTag() {
+        return _tag;
+    }
+
+    /**
+     * @return Whether or not the body of a successful response may be handed back as a stream
+     * that is read as it arrives. Transports that cannot stream buffer the body instead.
+     */
+    public boolean isStreamingResponse() {
+        return _streamingResponse;
+    }
+
+    public static class Builder {
+        private final HttpMethod _method;
+        private final String _url;
+        private final Map<String, String> _headers = new HashMap<>();
+        private byte[] _body;
+        private String _contentType;
+        private Object _tag;
+        private boolean _streamingResponse;
+
+        /**
+         * @param method The HTTP method to use.
+         * @param url    The URL to request.
+         */
+        public Builder(final HttpMethod method, final String url) {
+            _method = method;
+            _url = url;
+        }
+
+        public Builder withHeader(final String name, final String value) {
+            _headers.put(name, value);
+            return this;
+        }
+
+        public Builder withBody(final byte[] body, final String contentType) {
+            _body = body;
+            _contentType = contentType;
+            return this;
+        }
+
+        public Builder withTag(final Object tag) {
+            _tag = tag;
+            return this;
+        }
+
+        public Builder withStreamingResponse() {
+            _streamingResponse = true;
+            return this;
+        }
+
+        public HttpRequest build() {
+            return new HttpRequest(this);
+        }
+    }
+}
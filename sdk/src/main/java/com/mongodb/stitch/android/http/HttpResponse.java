@@ -0,0 +1,173 @@
+package com.mongodb.stitch.android.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.mongodb.stitch.android.http.Headers.CONTENT_TYPE;
+
+/**
+ * An HttpResponse is the result of executing an {@link HttpRequest} with an {@link HttpTransport}.
+ * The body of a response to a request for a streaming response may still be arriving; it is read
+ * from {@link #getBodyStream()}, or buffered in full by the first call to {@link #getBody()}.
+ */
+public class HttpResponse {
+
+    private static final String CHARSET_PARAMETER = "charset=";
+
+    private final int _statusCode;
+    private final Map<String, String> _headers;
+    private final Object _bodyLock = new Object();
+    private byte[] _body;
+    private InputStream _bodyStream;
+
+    /**
+     * @param statusCode The HTTP status code of the response.
+     * @param headers    The headers of the response.
+     * @param body       The body of the response.
+     */
+    public HttpResponse(final int statusCode, final Map<String, String> headers, final byte[] body) {
+        _statusCode = statusCode;
+        _headers = toCaseInsensitive(headers);
+        _body = body == null ? new byte[0] : body;
+    }
+
+    /**
+     * @param statusCode The HTTP status code of the response.
+     * @param headers    The headers of the response.
+     * @param bodyStream The body of the response as it arrives. It is closed by whoever reads it.
+     */
+    public HttpResponse(final int statusCode, final Map<String, String> headers, final InputStream bodyStream) {
+        _statusCode = statusCode;
+        _headers = toCaseInsensitive(headers);
+        _bodyStream = bodyStream;
+    }
+
+    private static Map<String, String> toCaseInsensitive(final Map<String, String> headers) {
+        final Map<String, String> caseInsensitiveHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) {
+            caseInsensitiveHeaders.putAll(headers);
+        }
+        return Collections.unmodifiableMap(caseInsensitiveHeaders);
+    }
+
+    /**
+     * @return The HTTP status code of the response.
+     */
+    public int getStatusCode() {
+        return _statusCode;
+    }
+
+    /**
+     * @return Whether or not the status code of the response indicates success.
+     */
+    public boolean isSuccessful() {
+        return _statusCode >= 200 && _statusCode < 300;
+    }
+
+    /**
+     * @return The headers of the response, keyed case insensitively.
+     */
+    public Map<String, String> getHeaders() {
+        return _headers;
+    }
+
+    /**
+     * @param name The name of the header.
+     * @return The value of the header or null if it is not present.
+     */
+    public String getHeader(final String name) {
+        return _headers.get(name);
+    }
+
+    /**
+     * @return The raw body of the response. A streaming body is read in full and closed; if that
+     * fails, the body is empty.
+     */
+    public byte[] getBody() {
+        synchronized (_bodyLock) {
+            if (_body == null) {
+                final InputStream stream = _bodyStream;
+                _bodyStream = null;
+                _body = readFully(stream);
+            }
+            return _body;
+        }
+    }
+
+    /**
+     * Gets the body of the response as a stream. A streaming body can only be taken once, and
+     * the caller is responsible for closing it.
+     *
+     * @return The body of the response.
+     * @throws IllegalStateException If the streaming body was already taken.
+     */
+    public InputStream getBodyStream() {
+        synchronized (_bodyLock) {
+            if (_body != null) {
+                return new ByteArrayInputStream(_body);
+            }
+            if (_bodyStream == null) {
+                throw new IllegalStateException("body stream was already taken");
+            }
+            final InputStream stream = _bodyStream;
+            _bodyStream = null;
+            return stream;
+        }
+    }
+
+    private static byte[] readFully(final InputStream stream) {
+        if (stream == null) {
+            return new byte[0];
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        try {
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (final IOException e) {
+            return new byte[0];
+        } finally {
+            try {
+                stream.close();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @return The body of the response decoded with the charset from its content type, or UTF-8
+     * if none is specified.
+     */
+    public String getBodyAsString() {
+        return new String(getBody(), getCharset());
+    }
+
+    private Charset getCharset() {
+        final String contentType = getHeader(CONTENT_TYPE);
+        if (contentType == null) {
+            return StandardCharsets.UTF_8;
+        }
+
+        for (final String param : contentType.split(";")) {
+            final String trimmed = param.trim();
+            if (trimmed.regionMatches(true, 0, CHARSET_PARAMETER, 0, CHARSET_PARAMETER.length())) {
+                try {
+                    return Charset.forName(trimmed.substring(CHARSET_PARAMETER.length()));
+                } catch (final IllegalArgumentException ignored) {
+                    break;
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+}
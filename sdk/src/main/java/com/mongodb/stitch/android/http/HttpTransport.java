@@ -0,0 +1,36 @@
+package com.mongodb.stitch.android.http;
+
+import com.google.android.gms.tasks.Task;
+
+/**
+ * An HttpTransport is responsible for moving {@link HttpRequest}s to Stitch and bringing back
+ * their {@link HttpResponse}s. Every network call made by a
+ * {@link com.mongodb.stitch.android.StitchClient} goes through its transport.
+ */
+public interface HttpTransport {
+
+    /**
+     * Executes a request.
+     *
+     * @param request The request to execute.
+     * @return A task containing the response that can be resolved upon completion of the
+     * request. The task only fails if no response could be retrieved at all; responses with
+     * error status codes are returned as results. The task of a cancelled request fails with a
+     * {@link java.util.concurrent.CancellationException}.
+     */
+    Task<HttpResponse> execute(final HttpRequest request);
+
+    /**
+     * Aborts a request if it is still pending, so that it spends no more bandwidth or CPU.
+     *
+     * @param request The request to abort, as passed to {@link #execute(HttpRequest)}.
+     */
+    void cancel(final HttpRequest request);
+
+    /**
+     * Aborts all pending requests that were made with the given tag.
+     *
+     * @param tag The tag the requests were made with.
+     */
+    void cancelAll(final Object tag);
+}
@@ -0,0 +1,175 @@
+package com.mongodb.stitch.android.http;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * OkHttpTransport is an {@link HttpTransport} backed by OkHttp. Connections are pooled and kept
+ * alive between requests, and concurrent requests to Stitch are multiplexed over a single HTTP/2
+ * connection when the server supports it. Successful responses to requests for a streaming
+ * response are handed back as soon as their headers arrive, with a body that is read from the
+ * connection as it is consumed.
+ */
+public class OkHttpTransport implements HttpTransport {
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_KEEP_ALIVE_MINUTES = 5;
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 32;
+
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private final OkHttpClient _client;
+    private final Map<HttpRequest, Call> _calls = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a transport with a default pooled, HTTP/2 capable client.
+     */
+    public OkHttpTransport() {
+        this(newDefaultClient());
+    }
+
+    /**
+     * @param client The client to execute requests with.
+     */
+    public OkHttpTransport(final OkHttpClient client) {
+        _client = client;
+    }
+
+    /**
+     * @return A client with a keep-alive connection pool that prefers HTTP/2 and allows enough
+     * concurrent requests to Stitch for pipelines not to queue behind each other.
+     */
+    public static OkHttpClient newDefaultClient() {
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(DEFAULT_MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(DEFAULT_MAX_REQUESTS_PER_HOST);
+
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(
+                        DEFAULT_MAX_IDLE_CONNECTIONS,
+                        DEFAULT_KEEP_ALIVE_MINUTES,
+                        TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .dispatcher(dispatcher)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    @Override
+    public Task<HttpResponse> execute(final HttpRequest request) {
+        final TaskCompletionSource<HttpResponse> future = new TaskCompletionSource<>();
+
+        final Request.Builder builder = new Request.Builder()
+                .url(request.getUrl())
+                .tag(request.getTag());
+        for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        builder.method(request.getMethod().name(), getRequestBody(request));
+
+        final Call newCall = _client.newCall(builder.build());
+        _calls.put(request, newCall);
+        newCall.enqueue(new Callback() {
+            @Override
+            public void onFailure(final Call call, final IOException e) {
+                _calls.remove(request);
+                future.setException(call.isCanceled()
+                        ? new CancellationException("Request was cancelled")
+                        : e);
+            }
+
+            @Override
+            public void onResponse(final Call call, final Response response) {
+                _calls.remove(request);
+                final ResponseBody body = response.body();
+                final Map<String, String> headers = new HashMap<>();
+                final okhttp3.Headers responseHeaders = response.headers();
+                for (int i = 0; i < responseHeaders.size(); i++) {
+                    headers.put(responseHeaders.name(i), responseHeaders.value(i));
+                }
+                if (request.isStreamingResponse() && response.isSuccessful() && body != null) {
+                    // Closing the stream releases the connection
+                    future.setResult(new HttpResponse(response.code(), headers, body.byteStream()));
+                    return;
+                }
+                try {
+                    future.setResult(new HttpResponse(
+                            response.code(),
+                            headers,
+                            body == null ? EMPTY_BODY : body.bytes()));
+                } catch (final IOException e) {
+                    future.setException(call.isCanceled()
+                            ? new CancellationException("Request was cancelled")
+                            : e);
+                } finally {
+                    response.close();
+                }
+            }
+        });
+
+        return future.getTask();
+    }
+
+    @Override
+    public void cancel(final HttpRequest request) {
+        final Call call = _calls.get(request);
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public void cancelAll(final Object tag) {
+        for (final Call call : _client.dispatcher().queuedCalls()) {
+            if (tag.equals(call.request().tag())) {
+                call.cancel();
+            }
+        }
+        for (final Call call : _client.dispatcher().runningCalls()) {
+            if (tag.equals(call.request().tag())) {
+                call.cancel();
+            }
+        }
+    }
+
+    /**
+     * @param request The request to get a body for.
+     * @return The OkHttp body for the request. Methods that require a body get an empty one if
+     * the request has none.
+     */
+    private static RequestBody getRequestBody(final HttpRequest request) {
+        final MediaType mediaType =
+                request.getContentType() == null ? null : MediaType.parse(request.getContentType());
+        if (request.getBody() != null) {
+            return RequestBody.create(mediaType, request.getBody());
+        }
+        switch (request.getMethod()) {
+            case POST:
+            case PUT:
+                return RequestBody.create(mediaType, EMPTY_BODY);
+            default:
+                return null;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.mongodb.stitch.android.http;
 
+import com.android.volley.AuthFailureError;
 import com.android.volley.NetworkResponse;
 import com.android.volley.ParseError;
+import com.android.volley.Request;
 import com.android.volley.Response;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.JsonRequest;
@@ -89,4 +91,76 @@ public class Volley {
             }
         }
     }
+
+    /**
+     * A TransportRequest is a Volley request that carries a transport agnostic {@link HttpRequest}
+     * and delivers the raw {@link HttpResponse}.
+     */
+    public static class TransportRequest extends Request<HttpResponse> {
+
+        private final HttpRequest _request;
+        private final Response.Listener<HttpResponse> _listener;
+
+        /**
+         * @param request       The request to execute.
+         * @param listener      Listener to receive the response.
+         * @param errorListener Error listener, or null to ignore errors.
+         */
+        public TransportRequest(
+                final HttpRequest request,
+                final Response.Listener<HttpResponse> listener,
+                final Response.ErrorListener errorListener
+        ) {
+            super(toVolleyMethod(request.getMethod()), request.getUrl(), errorListener);
+            _request = request;
+            _listener = listener;
+            setShouldCache(false);
+            setTag(request.getTag());
+        }
+
+        @Override
+        public Map<String, String> getHeaders() throws AuthFailureError {
+            return _request.getHeaders();
+        }
+
+        @Override
+        public String getBodyContentType() {
+            if (_request.getContentType() == null) {
+                return super.getBodyContentType();
+            }
+            return _request.getContentType();
+        }
+
+        @Override
+        public byte[] getBody() throws AuthFailureError {
+            return _request.getBody();
+        }
+
+        @Override
+        protected Response<HttpResponse> parseNetworkResponse(final NetworkResponse response) {
+            return Response.success(
+                    new HttpResponse(response.statusCode, response.headers, response.data),
+                    null);
+        }
+
+        @Override
+        protected void deliverResponse(final HttpResponse response) {
+            _listener.onResponse(response);
+        }
+
+        private static int toVolleyMethod(final HttpMethod method) {
+            switch (method) {
+                case GET:
+                    return Method.GET;
+                case POST:
+                    return Method.POST;
+                case PUT:
+                    return Method.PUT;
+                case DELETE:
+                    return Method.DELETE;
+                default:
+                    throw new IllegalArgumentException("Unsupported HTTP method " + method);
+            }
+        }
+    }
 }
@@ -0,0 +1,139 @@
+package com.mongodb.stitch.android.http;
+
+import android.content.Context;
+
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.NoCache;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * VolleyTransport is the default {@link HttpTransport} and executes requests on a Volley
+ * {@link RequestQueue}.
+ */
+public class VolleyTransport implements HttpTransport {
+
+    private static final int DEFAULT_NETWORK_THREAD_POOL_SIZE = 4;
+
+    private final RequestQueue _queue;
+
+    // Volley never delivers anything for a cancelled request, so pending tasks are tracked here
+    // in order to complete them on cancellation. Whoever removes an entry completes its task.
+    private final Map<HttpRequest, Pending> _pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param context The Android {@link Context} to create the request queue with.
+     */
+    public VolleyTransport(final Context context) {
+        this(com.android.volley.toolbox.Volley.newRequestQueue(context));
+    }
+
+    /**
+     * @param delivery The executor that responses are delivered on instead of the main thread.
+     */
+    public VolleyTransport(final Executor delivery) {
+        this(newRequestQueue(delivery));
+    }
+
+    /**
+     * @param queue The request queue to execute requests on.
+     */
+    public VolleyTransport(final RequestQueue queue) {
+        _queue = queue;
+    }
+
+    @Override
+    public Task<HttpResponse> execute(final HttpRequest request) {
+        final TaskCompletionSource<HttpResponse> future = new TaskCompletionSource<>();
+        final Volley.TransportRequest volleyRequest = new Volley.TransportRequest(
+                request,
+                new Response.Listener<HttpResponse>() {
+                    @Override
+                    public void onResponse(final HttpResponse response) {
+                        if (_pending.remove(request) != null) {
+                            future.setResult(response);
+                        }
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(final VolleyError error) {
+                        if (_pending.remove(request) == null) {
+                            return;
+                        }
+                        if (error.networkResponse != null) {
+                            future.setResult(new HttpResponse(
+                                    error.networkResponse.statusCode,
+                                    error.networkResponse.headers,
+                                    error.networkResponse.data));
+                            return;
+                        }
+                        future.setException(error);
+                    }
+                });
+        _pending.put(request, new Pending(volleyRequest, future));
+        _queue.add(volleyRequest);
+
+        return future.getTask();
+    }
+
+    @Override
+    public void cancel(final HttpRequest request) {
+        final Pending pending = _pending.remove(request);
+        if (pending != null) {
+            pending.cancel();
+        }
+    }
+
+    @Override
+    public void cancelAll(final Object tag) {
+        for (final HttpRequest request : _pending.keySet()) {
+            if (tag.equals(request.getTag())) {
+                cancel(request);
+            }
+        }
+    }
+
+    /**
+     * @param delivery The executor that responses should be delivered on.
+     * @return A started request queue that does not cache and delivers responses on the
+     * given executor.
+     */
+    private static RequestQueue newRequestQueue(final Executor delivery) {
+        final RequestQueue queue = new RequestQueue(
+                new NoCache(),
+                new BasicNetwork(new HurlStack()),
+                DEFAULT_NETWORK_THREAD_POOL_SIZE,
+                new ExecutorDelivery(delivery));
+        queue.start();
+        return queue;
+    }
+
+    private static final class Pending {
+        private final Volley.TransportRequest _request;
+        private final TaskCompletionSource<HttpResponse> _future;
+
+        Pending(
+                final Volley.TransportRequest request,
+                final TaskCompletionSource<HttpResponse> future
+        ) {
+            _request = request;
+            _future = future;
+        }
+
+        void cancel() {
+            _request.cancel();
+            _future.setException(new CancellationException("Request was cancelled"));
+        }
+    }
+}
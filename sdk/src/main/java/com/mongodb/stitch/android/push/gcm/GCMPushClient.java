@@ -303,7 +303,7 @@ public class GCMPushClient extends PushClient {
         final Map<String, Object> request = getRegisterPushDeviceRequest(registrationToken);
         return getStitchClient().executePipeline(new PipelineStage(
                 Actions.REGISTER_PUSH, request))
-                .continueWith(new Continuation<List<Object>, Void>() {
+                .continueWith(getStitchClient().getExecutor(), new Continuation<List<Object>, Void>() {
                     @Override
                     public Void then(@NonNull Task<List<Object>> task) throws Exception {
                         if (!task.isSuccessful()) {
@@ -325,7 +325,7 @@ public class GCMPushClient extends PushClient {
         final Map<String, Object> request = getDeregisterPushDeviceRequest();
         return getStitchClient().executePipeline(new PipelineStage(
                 Actions.DEREGISTER_PUSH, request))
-                .continueWith(new Continuation<List<Object>, Void>() {
+                .continueWith(getStitchClient().getExecutor(), new Continuation<List<Object>, Void>() {
                     @Override
                     public Void then(@NonNull Task<List<Object>> task) throws Exception {
                         if (!task.isSuccessful()) {
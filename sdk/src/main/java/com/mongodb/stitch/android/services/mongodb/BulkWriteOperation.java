@@ -0,0 +1,245 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.mongodb.stitch.android.PipelineStage;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A BulkWriteOperation sends a list of write models in as few pipeline requests as it can.
+ * Inserts are merged into a single insert stage and deleteMany operations into a single delete
+ * stage; when the write is ordered only adjacent operations are merged. Every other operation
+ * is its own request. Requests of an unordered write are sent concurrently.
+ */
+class BulkWriteOperation {
+
+    private static final String TAG = "Stitch.BulkWrite";
+    private static final int MAX_MERGED_OPERATIONS = 1000;
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    private final MongoClient.Collection _collection;
+    private final List<? extends WriteModel> _models;
+    private final boolean _ordered;
+    private final Executor _executor;
+
+    // Guarded by this
+    private List<Group> _groups;
+    private WriteResult[] _results;
+    private int _nextGroup;
+    private int _inFlight;
+    private int _remaining;
+    private boolean _stopped;
+
+    private final TaskCompletionSource<List<WriteResult>> _future = new TaskCompletionSource<>();
+
+    /**
+     * @param collection The collection to write to.
+     * @param models     The write operations to apply.
+     * @param ordered    Whether or not the operations must be applied in order, stopping at the
+     *                   first one that fails.
+     * @param executor   The executor to process results on.
+     */
+    BulkWriteOperation(
+            final MongoClient.Collection collection,
+            final List<? extends WriteModel> models,
+            final boolean ordered,
+            final Executor executor
+    ) {
+        _collection = collection;
+        _models = models;
+        _ordered = ordered;
+        _executor = executor;
+    }
+
+    /**
+     * Starts applying the write operations.
+     *
+     * @return A task containing the result of every operation, in input order, that can be
+     * resolved once every operation has completed or been skipped.
+     */
+    Task<List<WriteResult>> execute() {
+        final List<Group> groups = group();
+        synchronized (this) {
+            _groups = groups;
+            _results = new WriteResult[_models.size()];
+            _remaining = groups.size();
+        }
+        if (groups.isEmpty()) {
+            _future.setResult(Collections.<WriteResult>emptyList());
+            return _future.getTask();
+        }
+
+        final int concurrency = _ordered ? 1 : MAX_CONCURRENT_REQUESTS;
+        for (int i = 0; i < concurrency; i++) {
+            sendNext();
+        }
+        return _future.getTask();
+    }
+
+    private List<Group> group() {
+        final List<Group> groups = new ArrayList<>();
+        Group inserts = null;
+        Group deletes = null;
+        for (int i = 0; i < _models.size(); i++) {
+            final WriteModel model = _models.get(i);
+            if (model == null) {
+                throw new IllegalArgumentException("write models must not be null");
+            }
+
+            final Group group;
+            if (model instanceof InsertOneModel) {
+                if (inserts == null || inserts.size() == MAX_MERGED_OPERATIONS) {
+                    inserts = new Group();
+                    groups.add(inserts);
+                }
+                group = inserts;
+            } else if (model instanceof DeleteManyModel) {
+                if (deletes == null || deletes.size() == MAX_MERGED_OPERATIONS) {
+                    deletes = new Group();
+                    groups.add(deletes);
+                }
+                group = deletes;
+            } else {
+                group = new Group();
+                groups.add(group);
+            }
+            group.add(i, model);
+
+            if (_ordered) {
+                // Only operations that are next to each other can be merged without reordering
+                if (group != inserts) {
+                    inserts = null;
+                }
+                if (group != deletes) {
+                    deletes = null;
+                }
+            }
+        }
+        return groups;
+    }
+
+    private List<PipelineStage> makeStages(final Group group) {
+        final WriteModel first = group._models.get(0);
+        if (first instanceof InsertOneModel) {
+            final List<Document> documents = new ArrayList<>(group.size());
+            for (final WriteModel model : group._models) {
+                documents.add(((InsertOneModel) model).getDocument());
+            }
+            return _collection.makeInsertStage(documents);
+        }
+        if (first instanceof DeleteManyModel) {
+            if (group.size() == 1) {
+                return Collections.singletonList(
+                        _collection.makeDeleteStage(((DeleteManyModel) first).getQuery(), false));
+            }
+            final List<Document> queries = new ArrayList<>(group.size());
+            for (final WriteModel model : group._models) {
+                queries.add(((DeleteManyModel) model).getQuery());
+            }
+            return Collections.singletonList(
+                    _collection.makeDeleteStage(new Document("$or", queries), false));
+        }
+        if (first instanceof DeleteOneModel) {
+            return Collections.singletonList(
+                    _collection.makeDeleteStage(((DeleteOneModel) first).getQuery(), true));
+        }
+        if (first instanceof UpdateOneModel) {
+            final UpdateOneModel update = (UpdateOneModel) first;
+            return Collections.singletonList(_collection.makeUpdateStage(
+                    update.getQuery(), update.getUpdate(), update.isUpsert(), false));
+        }
+        if (first instanceof UpdateManyModel) {
+            final UpdateManyModel update = (UpdateManyModel) first;
+            return Collections.singletonList(_collection.makeUpdateStage(
+                    update.getQuery(), update.getUpdate(), update.isUpsert(), true));
+        }
+        throw new IllegalArgumentException("unsupported write model " + first.getClass().getName());
+    }
+
+    private void sendNext() {
+        final Group group;
+        synchronized (this) {
+            if (_stopped || _nextGroup == _groups.size()) {
+                return;
+            }
+            group = _groups.get(_nextGroup++);
+            _inFlight++;
+        }
+
+        final Task<List<Object>> request;
+        try {
+            request = _collection.executeWrite(makeStages(group));
+        } catch (final RuntimeException e) {
+            onGroupComplete(group, e);
+            return;
+        }
+        request.continueWith(_executor, new Continuation<List<Object>, Void>() {
+            @Override
+            public Void then(@NonNull final Task<List<Object>> task) throws Exception {
+                onGroupComplete(group, task.isSuccessful() ? null : task.getException());
+                return null;
+            }
+        });
+    }
+
+    private void onGroupComplete(final Group group, final Exception exception) {
+        if (exception != null) {
+            Log.d(TAG, "Error applying " + group.size() + " write operation(s)", exception);
+        }
+
+        final List<WriteResult> results;
+        synchronized (this) {
+            final WriteResult result = new WriteResult(true, exception);
+            for (final int index : group._indexes) {
+                _results[index] = result;
+            }
+            _inFlight--;
+            _remaining--;
+            if (exception != null && _ordered) {
+                _stopped = true;
+            }
+            if (_remaining > 0 && (_inFlight > 0 || !_stopped)) {
+                results = null;
+            } else {
+                final WriteResult skipped = new WriteResult(false, null);
+                for (int i = 0; i < _results.length; i++) {
+                    if (_results[i] == null) {
+                        _results[i] = skipped;
+                    }
+                }
+                results = Arrays.asList(_results);
+            }
+        }
+
+        if (results != null) {
+            _future.setResult(results);
+        } else {
+            sendNext();
+        }
+    }
+
+    private static final class Group {
+        private final List<Integer> _indexes = new ArrayList<>();
+        private final List<WriteModel> _models = new ArrayList<>();
+
+        void add(final int index, final WriteModel model) {
+            _indexes.add(index);
+            _models.add(model);
+        }
+
+        int size() {
+            return _models.size();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import com.google.android.gms.tasks.Task;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A CollectionSnapshot holds every document of a collection that matched a query at the time it
+ * was fetched. Finds whose query specifier is at least as narrow as the snapshot's can be
+ * answered from it on the device, see {@link MongoClient.Collection#withSnapshot}. A snapshot
+ * is never refreshed; writes made through a collection reference using it mark it stale, after
+ * which finds go to the server again.
+ */
+public class CollectionSnapshot {
+
+    private final String _namespace;
+    private final Document _query;
+    private final List<Document> _documents;
+    private final long _fetchedAt;
+    private volatile boolean _stale;
+
+    /**
+     * @param namespace The namespace the documents were read from.
+     * @param query     The query specifier the documents were read with.
+     * @param documents The full documents that matched.
+     */
+    CollectionSnapshot(final String namespace, final Document query, final List<Document> documents) {
+        _namespace = namespace;
+        _query = query == null ? new Document() : query;
+        _documents = Collections.unmodifiableList(new ArrayList<>(documents));
+        _fetchedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return The query specifier the snapshot was fetched with.
+     */
+    public Document getQuery() {
+        return _query;
+    }
+
+    /**
+     * @return The documents in the snapshot.
+     */
+    public List<Document> getDocuments() {
+        return _documents;
+    }
+
+    /**
+     * @return The time the snapshot was fetched at, in milliseconds since the epoch.
+     */
+    public long getFetchedAt() {
+        return _fetchedAt;
+    }
+
+    /**
+     * @return Whether or not a write has been made since the snapshot was fetched.
+     */
+    public boolean isStale() {
+        return _stale;
+    }
+
+    /**
+     * Marks the snapshot as no longer reflecting the collection.
+     */
+    public void markStale() {
+        _stale = true;
+    }
+
+    /**
+     * @return The snapshot as a source to answer finds from.
+     */
+    LocalSource asLocalSource() {
+        return new LocalSource() {
+            @Override
+            public String getNamespace() {
+                return _namespace;
+            }
+
+            @Override
+            public boolean covers(final Document query) {
+                return !_stale && QueryMatcher.isNarrowerThan(query, _query);
+            }
+
+            @Override
+            public List<Document> find(
+                    final Document query,
+                    final Document projection,
+                    final Integer limit,
+                    final FindOptions options
+            ) {
+                return QueryMatcher.find(_documents, query, projection, limit, options);
+            }
+
+            @Override
+            public int count(final Document query, final Integer limit, final FindOptions options) {
+                return QueryMatcher.count(_documents, query, limit, options);
+            }
+
+            @Override
+            public void onWrite(final Task<List<Object>> write, final boolean removesDocuments) {
+                markStale();
+            }
+        };
+    }
+}
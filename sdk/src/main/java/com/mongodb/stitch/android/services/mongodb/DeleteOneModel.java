@@ -0,0 +1,25 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import org.bson.Document;
+
+/**
+ * A DeleteOneModel deletes a single document matching a query specifier.
+ */
+public class DeleteOneModel extends WriteModel {
+
+    private final Document _query;
+
+    /**
+     * @param query The query specifier.
+     */
+    public DeleteOneModel(final Document query) {
+        _query = query;
+    }
+
+    /**
+     * @return The query specifier.
+     */
+    public Document getQuery() {
+        return _query;
+    }
+}
@@ -0,0 +1,19 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import org.bson.Document;
+
+/**
+ * A DocumentListener provides an observer interface for users to listen in on changes to the
+ * shared documents of a collection, such as optimistic updates, their rollback, and their
+ * reconciliation with the server.
+ */
+public interface DocumentListener {
+
+    /**
+     * Called on the thread that made the change after a shared document was replaced by a
+     * changed one.
+     *
+     * @param document The new, unmodifiable shared instance of the document.
+     */
+    void onDocumentChanged(final Document document);
+}
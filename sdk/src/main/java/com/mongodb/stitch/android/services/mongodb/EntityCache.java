@@ -0,0 +1,514 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import android.util.LruCache;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An EntityCache is an identity map of the documents read through the collections of a
+ * {@link MongoClient}, keyed by namespace and {@code _id}. Every full document read is resolved
+ * to a single shared instance per {@code _id}, so that overlapping query results refer to the
+ * same document instead of holding separate copies of it. Shared instances are unmodifiable and
+ * are never changed once handed out: when a later read or update changes a document, a new
+ * shared instance takes its place and is passed to the {@link DocumentListener}s of its
+ * namespace.
+ *
+ * Updates can be applied to the shared instances optimistically, before the server confirms
+ * them. The last confirmed contents of such a document are kept alongside its pending updates,
+ * so that a failed update can be rolled back by replaying the others on top of them.
+ */
+class EntityCache {
+
+    private static final String ID_FIELD = "_id";
+
+    private final LruCache<Key, Document> _documents;
+
+    // Bumped by every invalidation so that results read across one are not cached
+    private final AtomicLong _generation = new AtomicLong();
+
+    // Documents with optimistic updates in flight; guarded by this
+    private final Map<Key, Optimistic> _optimistic = new HashMap<>();
+
+    private final ConcurrentHashMap<String, List<DocumentListener>> _listeners =
+            new ConcurrentHashMap<>();
+
+    /**
+     * @param maxEntries The maximum amount of documents to keep.
+     */
+    EntityCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        _documents = new LruCache<>(maxEntries);
+    }
+
+    /**
+     * @return A marker to pass to {@link #resolve} for the results of a read started now.
+     */
+    long getGeneration() {
+        return _generation.get();
+    }
+
+    /**
+     * @param namespace The namespace the document is in.
+     * @param id        The {@code _id} of the document.
+     * @return The cached document, or {@code null} if it is not cached.
+     */
+    synchronized Document get(final String namespace, final Object id) {
+        return getShared(new Key(namespace, id));
+    }
+
+    /**
+     * Resolves freshly read documents to their shared instances. Documents not yet cached or
+     * whose contents changed get a new shared instance; the others keep theirs. Nothing is
+     * cached if the namespace was invalidated since the read started.
+     *
+     * @param namespace  The namespace the documents were read from.
+     * @param documents  The full documents that were read.
+     * @param generation The marker obtained when the read started.
+     * @return The shared instances of the documents, in the same order.
+     */
+    List<Document> resolve(final String namespace, final List<Document> documents, final long generation) {
+        final List<Document> resolved = new ArrayList<>(documents.size());
+        for (final Document document : documents) {
+            if (!document.containsKey(ID_FIELD) || _generation.get() != generation) {
+                resolved.add(document);
+                continue;
+            }
+
+            final Key key = new Key(namespace, document.get(ID_FIELD));
+            final Document shared;
+            synchronized (this) {
+                final Optimistic optimistic = _optimistic.get(key);
+                if (optimistic != null) {
+                    // Pending updates are replayed on top of the freshly confirmed contents
+                    optimistic._base = document;
+                    final Document replayed = optimistic.replay();
+                    if (optimistic._shared.equals(replayed)) {
+                        resolved.add(optimistic._shared);
+                        continue;
+                    }
+                    shared = freeze(replayed);
+                    optimistic._shared = shared;
+                } else {
+                    final Document cached = _documents.get(key);
+                    if (cached != null && cached.equals(document)) {
+                        resolved.add(cached);
+                        continue;
+                    }
+                    shared = freeze(document);
+                    _documents.put(key, shared);
+                    if (cached == null) {
+                        resolved.add(shared);
+                        continue;
+                    }
+                }
+            }
+            resolved.add(shared);
+            notifyChanged(namespace, shared);
+        }
+        return resolved;
+    }
+
+    /**
+     * Applies an update to the cached documents it targets before it is sent: the document with
+     * the given {@code _id} if the query specifier matches on {@code _id} only, and, for
+     * updates of many documents, every cached document of the namespace that the query specifier
+     * matches. Nothing is applied if the update or query specifier cannot be evaluated locally.
+     *
+     * @param namespace The namespace written to.
+     * @param query     The query specifier of the update.
+     * @param update    The update specifier.
+     * @param multi     Whether or not the update may change more than one document.
+     * @return The applied update to pass to {@link #confirm} or {@link #rollback}, or
+     * {@code null} if no cached document was changed.
+     */
+    OptimisticUpdate applyOptimistic(
+            final String namespace,
+            final Document query,
+            final Document update,
+            final boolean multi
+    ) {
+        if (!UpdateApplier.isSupported(update)) {
+            return null;
+        }
+
+        final OptimisticUpdate applied = new OptimisticUpdate(namespace, update);
+        final List<Document> changed = new ArrayList<>();
+        synchronized (this) {
+            final Map<Key, Document> targets = new HashMap<>();
+            if (query.size() == 1 && query.containsKey(ID_FIELD)
+                    && !isOperatorExpression(query.get(ID_FIELD))) {
+                final Key key = new Key(namespace, query.get(ID_FIELD));
+                final Document shared = getShared(key);
+                if (shared != null) {
+                    targets.put(key, shared);
+                }
+            } else if (multi) {
+                final Map<Key, Document> candidates = new HashMap<>(_documents.snapshot());
+                for (final Map.Entry<Key, Optimistic> optimistic : _optimistic.entrySet()) {
+                    candidates.put(optimistic.getKey(), optimistic.getValue()._shared);
+                }
+                try {
+                    for (final Map.Entry<Key, Document> candidate : candidates.entrySet()) {
+                        if (candidate.getKey()._namespace.equals(namespace)
+                                && QueryMatcher.matches(query, candidate.getValue())) {
+                            targets.put(candidate.getKey(), candidate.getValue());
+                        }
+                    }
+                } catch (final IllegalArgumentException e) {
+                    return null;
+                }
+            }
+
+            // Every target is updated or none is
+            final Map<Key, Document> updated = new HashMap<>();
+            try {
+                for (final Map.Entry<Key, Document> target : targets.entrySet()) {
+                    updated.put(target.getKey(), UpdateApplier.apply(target.getValue(), update));
+                }
+            } catch (final IllegalArgumentException e) {
+                return null;
+            }
+
+            for (final Map.Entry<Key, Document> target : targets.entrySet()) {
+                Optimistic optimistic = _optimistic.get(target.getKey());
+                if (optimistic == null) {
+                    optimistic = new Optimistic(target.getValue());
+                    _optimistic.put(target.getKey(), optimistic);
+                }
+                optimistic._pending.add(applied);
+                applied._keys.add(target.getKey());
+                if (!optimistic._shared.equals(updated.get(target.getKey()))) {
+                    optimistic._shared = freeze(updated.get(target.getKey()));
+                    changed.add(optimistic._shared);
+                }
+            }
+        }
+
+        for (final Document document : changed) {
+            notifyChanged(namespace, document);
+        }
+        return applied._keys.isEmpty() ? null : applied;
+    }
+
+    /**
+     * Records that the server applied an optimistic update, folding it into the last confirmed
+     * contents of the documents it changed.
+     *
+     * @param applied The update returned by {@link #applyOptimistic}.
+     * @return The {@code _id}s of the documents that no longer have updates in flight, which
+     * should be read again to reconcile them with the server.
+     */
+    synchronized List<Object> confirm(final OptimisticUpdate applied) {
+        final List<Object> settled = new ArrayList<>();
+        for (final Key key : applied._keys) {
+            final Optimistic optimistic = _optimistic.get(key);
+            if (optimistic == null || !optimistic._pending.remove(applied)) {
+                continue;
+            }
+            try {
+                optimistic._base = UpdateApplier.apply(optimistic._base, applied._update);
+            } catch (final IllegalArgumentException e) {
+                // The server accepted what could not be replayed here; reconciling corrects it
+            }
+            if (optimistic._pending.isEmpty()) {
+                _optimistic.remove(key);
+                _documents.put(key, optimistic._shared);
+                settled.add(key._id);
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * Reverts an optimistic update that the server did not apply, replaying any other updates
+     * still in flight on top of the last confirmed contents of the documents.
+     *
+     * @param applied The update returned by {@link #applyOptimistic}.
+     */
+    void rollback(final OptimisticUpdate applied) {
+        final List<Document> changed = new ArrayList<>();
+        synchronized (this) {
+            for (final Key key : applied._keys) {
+                final Optimistic optimistic = _optimistic.get(key);
+                if (optimistic == null || !optimistic._pending.remove(applied)) {
+                    continue;
+                }
+                final Document replayed = optimistic.replay();
+                if (!optimistic._shared.equals(replayed)) {
+                    optimistic._shared = freeze(replayed);
+                    changed.add(optimistic._shared);
+                }
+                if (optimistic._pending.isEmpty()) {
+                    _optimistic.remove(key);
+                    _documents.put(key, optimistic._shared);
+                }
+            }
+        }
+        for (final Document document : changed) {
+            notifyChanged(applied._namespace, document);
+        }
+    }
+
+    /**
+     * @param namespace The namespace to listen to changes in.
+     * @param listener  The listener to notify.
+     */
+    void addListener(final String namespace, final DocumentListener listener) {
+        List<DocumentListener> listeners = _listeners.get(namespace);
+        if (listeners == null) {
+            listeners = new CopyOnWriteArrayList<>();
+            final List<DocumentListener> existing = _listeners.putIfAbsent(namespace, listeners);
+            if (existing != null) {
+                listeners = existing;
+            }
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * @param namespace The namespace the listener was added for.
+     * @param listener  The listener to stop notifying.
+     */
+    void removeListener(final String namespace, final DocumentListener listener) {
+        final List<DocumentListener> listeners = _listeners.get(namespace);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    private void notifyChanged(final String namespace, final Document document) {
+        final List<DocumentListener> listeners = _listeners.get(namespace);
+        if (listeners == null) {
+            return;
+        }
+        for (final DocumentListener listener : listeners) {
+            listener.onDocumentChanged(document);
+        }
+    }
+
+    private Document getShared(final Key key) {
+        final Optimistic optimistic = _optimistic.get(key);
+        return optimistic != null ? optimistic._shared : _documents.get(key);
+    }
+
+    /**
+     * @return An unmodifiable deep copy of the document to share.
+     */
+    private static Document freeze(final Document document) {
+        return (Document) freezeValue(document);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object freezeValue(final Object value) {
+        if (value instanceof FrozenDocument) {
+            return value;
+        }
+        if (value instanceof Map) {
+            final Map<String, Object> frozen = new LinkedHashMap<>();
+            for (final Map.Entry<String, Object> field : ((Map<String, Object>) value).entrySet()) {
+                frozen.put(field.getKey(), freezeValue(field.getValue()));
+            }
+            return new FrozenDocument(frozen);
+        }
+        if (value instanceof List) {
+            final List<Object> frozen = new ArrayList<>(((List<?>) value).size());
+            for (final Object element : (List<?>) value) {
+                frozen.add(freezeValue(element));
+            }
+            return Collections.unmodifiableList(frozen);
+        }
+        return value;
+    }
+
+    /**
+     * Evicts the documents a write could have changed: the document with the given
+     * {@code _id} if the query specifier matches on {@code _id} only, and every document in
+     * the namespace otherwise. Documents with optimistic updates in flight are kept, as they
+     * are reconciled once their updates complete.
+     *
+     * @param namespace The namespace written to.
+     * @param query     The query specifier of the write, or {@code null} if unknown.
+     */
+    synchronized void invalidate(final String namespace, final Document query) {
+        _generation.incrementAndGet();
+        if (query != null && query.size() == 1 && query.containsKey(ID_FIELD)
+                && !isOperatorExpression(query.get(ID_FIELD))) {
+            _documents.remove(new Key(namespace, query.get(ID_FIELD)));
+            return;
+        }
+        for (final Key key : _documents.snapshot().keySet()) {
+            if (key._namespace.equals(namespace)) {
+                _documents.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Evicts every document.
+     */
+    synchronized void clear() {
+        _generation.incrementAndGet();
+        _documents.evictAll();
+        _optimistic.clear();
+    }
+
+    private static boolean isOperatorExpression(final Object value) {
+        if (!(value instanceof Map)) {
+            return false;
+        }
+        for (final Object key : ((Map<?, ?>) value).keySet()) {
+            if (key instanceof String && ((String) key).startsWith("$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An update applied to cached documents ahead of the server.
+     */
+    static final class OptimisticUpdate {
+        private final String _namespace;
+        private final Document _update;
+        private final List<Key> _keys = new ArrayList<>();
+
+        OptimisticUpdate(final String namespace, final Document update) {
+            _namespace = namespace;
+            _update = update;
+        }
+    }
+
+    private static final class Optimistic {
+        private final List<OptimisticUpdate> _pending = new ArrayList<>();
+        private Document _shared;
+        private Document _base;
+
+        Optimistic(final Document shared) {
+            _shared = shared;
+            _base = shared;
+        }
+
+        /**
+         * @return The last confirmed contents with the pending updates applied in order. Updates
+         * that no longer apply are skipped.
+         */
+        Document replay() {
+            Document contents = _base;
+            for (final OptimisticUpdate pending : _pending) {
+                try {
+                    contents = UpdateApplier.apply(contents, pending._update);
+                } catch (final IllegalArgumentException e) {
+                    // Left for the server's response to settle
+                }
+            }
+            return contents;
+        }
+    }
+
+    /**
+     * A shared document, which throws on any attempt to modify it. Copy it with
+     * {@code new Document(document)} to make changes. It equals any document with the same
+     * fields, but a plain document never equals it, as {@link Document#equals} compares
+     * classes.
+     */
+    private static final class FrozenDocument extends Document {
+        private static final long serialVersionUID = 1L;
+
+        // Backs the views so that their entries cannot be set either
+        private final Map<String, Object> _view;
+
+        FrozenDocument(final Map<String, Object> fields) {
+            super(fields);
+            _view = Collections.unmodifiableMap(fields);
+        }
+
+        @Override
+        public Document append(final String key, final Object value) {
+            throw new UnsupportedOperationException("shared documents cannot be modified");
+        }
+
+        @Override
+        public Object put(final String key, final Object value) {
+            throw new UnsupportedOperationException("shared documents cannot be modified");
+        }
+
+        @Override
+        public Object remove(final Object key) {
+            throw new UnsupportedOperationException("shared documents cannot be modified");
+        }
+
+        @Override
+        public void putAll(final Map<? extends String, ?> map) {
+            throw new UnsupportedOperationException("shared documents cannot be modified");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("shared documents cannot be modified");
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return _view.keySet();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return this == other || (other instanceof Document && _view.equals(other));
+        }
+
+        @Override
+        public int hashCode() {
+            return _view.hashCode();
+        }
+
+        @Override
+        public Collection<Object> values() {
+            return _view.values();
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return _view.entrySet();
+        }
+    }
+
+    private static final class Key {
+        private final String _namespace;
+        private final Object _id;
+
+        Key(final String namespace, final Object id) {
+            _namespace = namespace;
+            _id = id;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return _namespace.equals(key._namespace)
+                    && (_id == null ? key._id == null : _id.equals(key._id));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * _namespace.hashCode() + (_id == null ? 0 : _id.hashCode());
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A FindCursor iterates over the documents matching a query in batches. Batches are fetched by
+ * ascending {@code _id} ranges rather than by skipping. A prefetching cursor fetches the batch
+ * after the one most recently handed out in the background while it is being consumed, and holds
+ * at most about two batches at any time. Other cursors only fetch a batch when it is asked for.
+ */
+public class FindCursor {
+
+    private static final String ID_FIELD = "_id";
+
+    private final MongoClient.Collection _collection;
+    private final Document _query;
+    private final Document _projection;
+    private final boolean _excludeId;
+    private final int _batchSize;
+    private final boolean _prefetch;
+    private final Executor _executor;
+
+    // The prefetched next batch, if any
+    private Task<Batch> _pending;
+    // The batch most recently asked for, which the next one follows when not prefetching
+    private Task<Batch> _previous;
+    private Object _resumeAfterId;
+    private boolean _exhausted;
+    private boolean _closed;
+
+    /**
+     * @param collection The collection to find documents in.
+     * @param query      The query specifier.
+     * @param projection The projection document.
+     * @param batchSize  The maximum amount of documents to fetch per batch.
+     * @param prefetch   Whether or not to fetch the next batch as soon as the previous one is
+     *                   available rather than once it is asked for.
+     * @param executor   The executor to process batches on.
+     */
+    FindCursor(
+            final MongoClient.Collection collection,
+            final Document query,
+            final Document projection,
+            final int batchSize,
+            final boolean prefetch,
+            final Executor executor
+    ) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        _collection = collection;
+        _query = query;
+        _batchSize = batchSize;
+        _prefetch = prefetch;
+        _executor = executor;
+
+        // The _id of the last document in a batch is needed to fetch the batch after it
+        if (projection != null && projection.containsKey(ID_FIELD) && isExclusion(projection.get(ID_FIELD))) {
+            _projection = new Document(projection);
+            _projection.remove(ID_FIELD);
+            _excludeId = true;
+        } else {
+            _projection = projection;
+            _excludeId = false;
+        }
+    }
+
+    /**
+     * Gets the next batch of documents. If the cursor prefetches, the batch after it starts being
+     * fetched as soon as this batch is available.
+     *
+     * @return A task containing the next batch of documents that can be resolved upon completion
+     * of the request. The batch is empty once the cursor is exhausted.
+     */
+    public synchronized Task<List<Document>> next() {
+        if (_exhausted) {
+            return Tasks.forResult(Collections.<Document>emptyList());
+        }
+        final Task<Batch> current;
+        if (_pending != null) {
+            current = _pending;
+        } else if (_previous != null) {
+            current = fetchBatchAfter(_previous);
+        } else {
+            current = fetchBatch(_resumeAfterId);
+        }
+        _previous = current;
+        _pending = _prefetch ? fetchBatchAfter(current) : null;
+
+        return current.continueWith(_executor, new Continuation<Batch, List<Document>>() {
+            @Override
+            public List<Document> then(@NonNull final Task<Batch> task) throws Exception {
+                synchronized (FindCursor.this) {
+                    if (!task.isSuccessful()) {
+                        // Resume from the last batch handed out on the next call
+                        _pending = null;
+                        _previous = null;
+                        throw task.getException();
+                    }
+                    final Batch batch = task.getResult();
+                    _resumeAfterId = batch._lastId;
+                    if (batch._last) {
+                        _exhausted = true;
+                        _pending = null;
+                        _previous = null;
+                    }
+                    return batch._docs;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return Whether or not all batches have been handed out.
+     */
+    public synchronized boolean isExhausted() {
+        return _exhausted;
+    }
+
+    /**
+     * Closes the cursor, releasing any prefetched batch. A batch that is still being fetched is
+     * not followed by a prefetch of the one after it.
+     */
+    public synchronized void close() {
+        _closed = true;
+        _exhausted = true;
+        _pending = null;
+        _previous = null;
+    }
+
+    /**
+     * @param previous The batch to fetch the batch after.
+     * @return A task containing the batch after the previous one that can be resolved upon
+     * completion of the request. The batch is empty and last if the previous one was last.
+     */
+    private Task<Batch> fetchBatchAfter(final Task<Batch> previous) {
+        return previous.continueWithTask(_executor, new Continuation<Batch, Task<Batch>>() {
+            @Override
+            public Task<Batch> then(@NonNull final Task<Batch> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                final Batch batch = task.getResult();
+                synchronized (FindCursor.this) {
+                    if (batch._last || _closed) {
+                        // A call made before this batch is handed out must not get it again
+                        return Tasks.forResult(new Batch(Collections.<Document>emptyList(), batch._lastId, true));
+                    }
+                }
+                return fetchBatch(batch._lastId);
+            }
+        });
+    }
+
+    /**
+     * @param afterId The _id after which the batch starts, or null for the first batch.
+     * @return A task containing the batch that can be resolved upon completion of the request.
+     */
+    private Task<Batch> fetchBatch(final Object afterId) {
+        final Document query;
+        if (afterId == null) {
+            query = _query;
+        } else {
+            final Document idRange = new Document(ID_FIELD, new Document(Operators.GT, afterId));
+            query = _query == null || _query.isEmpty()
+                    ? idRange
+                    : new Document(Operators.AND, Arrays.asList(_query, idRange));
+        }
+
+        return _collection.find(query, _projection, _batchSize, new FindOptions().withSort(new Document(ID_FIELD, 1)))
+                .continueWith(_executor, new Continuation<List<Document>, Batch>() {
+                    @Override
+                    public Batch then(@NonNull final Task<List<Document>> task) throws Exception {
+                        if (!task.isSuccessful()) {
+                            throw task.getException();
+                        }
+                        final List<Document> docs = task.getResult();
+                        final Object lastId = docs.isEmpty() ? afterId : docs.get(docs.size() - 1).get(ID_FIELD);
+                        if (!_excludeId) {
+                            return new Batch(docs, lastId, docs.size() < _batchSize);
+                        }
+
+                        // Results may be shared by the entity cache or a local source, so the
+                        // _id is stripped from copies of them
+                        final List<Document> stripped = new ArrayList<>(docs.size());
+                        for (final Document doc : docs) {
+                            final Document copy = new Document(doc);
+                            copy.remove(ID_FIELD);
+                            stripped.add(copy);
+                        }
+                        return new Batch(stripped, lastId, docs.size() < _batchSize);
+                    }
+                });
+    }
+
+    /**
+     * @param value A projection value.
+     * @return Whether or not the value excludes the field.
+     */
+    private static boolean isExclusion(final Object value) {
+        if (value instanceof Boolean) {
+            return !((Boolean) value);
+        }
+        return value instanceof Number && ((Number) value).intValue() == 0;
+    }
+
+    private static class Batch {
+        private final List<Document> _docs;
+        private final Object _lastId;
+        private final boolean _last;
+
+        Batch(final List<Document> docs, final Object lastId, final boolean last) {
+            _docs = docs;
+            _lastId = lastId;
+            _last = last;
+        }
+    }
+
+    private static class Operators {
+        private static final String GT = "$gt";
+        private static final String AND = "$and";
+    }
+}
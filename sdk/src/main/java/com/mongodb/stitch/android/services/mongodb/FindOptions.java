@@ -0,0 +1,92 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import org.bson.Document;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FindOptions are additional options for find and count operations that are applied by the
+ * server before any documents are returned.
+ */
+public class FindOptions {
+
+    private Document _sort;
+    private Integer _skip;
+    private Object _hint;
+    private Long _maxTimeMS;
+
+    /**
+     * @param sort The sort specifier.
+     * @return These options.
+     */
+    public FindOptions withSort(final Document sort) {
+        _sort = sort;
+        return this;
+    }
+
+    /**
+     * @param skip The number of matching documents to skip.
+     * @return These options.
+     */
+    public FindOptions withSkip(final int skip) {
+        _skip = skip;
+        return this;
+    }
+
+    /**
+     * @param hint The index specifier document to use.
+     * @return These options.
+     */
+    public FindOptions withHint(final Document hint) {
+        _hint = hint;
+        return this;
+    }
+
+    /**
+     * @param indexName The name of the index to use.
+     * @return These options.
+     */
+    public FindOptions withHint(final String indexName) {
+        _hint = indexName;
+        return this;
+    }
+
+    /**
+     * @param maxTime  The maximum amount of time the server may spend on the operation.
+     * @param timeUnit The unit of {@code maxTime}.
+     * @return These options.
+     */
+    public FindOptions withMaxTime(final long maxTime, final TimeUnit timeUnit) {
+        _maxTimeMS = timeUnit.toMillis(maxTime);
+        return this;
+    }
+
+    /**
+     * @return The sort specifier, or null if there is none.
+     */
+    public Document getSort() {
+        return _sort;
+    }
+
+    /**
+     * @return The number of matching documents to skip, or null if none are skipped.
+     */
+    public Integer getSkip() {
+        return _skip;
+    }
+
+    /**
+     * @return The index specifier document or index name to use, or null if there is none.
+     */
+    public Object getHint() {
+        return _hint;
+    }
+
+    /**
+     * @return The maximum amount of time in milliseconds the server may spend on the operation,
+     * or null if there is no limit.
+     */
+    public Long getMaxTimeMS() {
+        return _maxTimeMS;
+    }
+}
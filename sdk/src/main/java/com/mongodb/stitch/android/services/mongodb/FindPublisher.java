@@ -0,0 +1,209 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+
+import org.bson.Document;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A FindPublisher is a Reactive Streams {@link Publisher} of the documents matching a query.
+ * Every subscriber gets its own {@link FindCursor} that does not prefetch, and a batch is only
+ * fetched once the subscriber has requested more documents than are left of the previous one.
+ * Documents are delivered one by one, so at most one batch is held per subscriber no matter how
+ * large the result is.
+ */
+public class FindPublisher implements Publisher<Document> {
+
+    private static final String TAG = "Stitch-MongoDB";
+
+    private final MongoClient.Collection _collection;
+    private final Document _query;
+    private final Document _projection;
+    private final int _batchSize;
+    private final Executor _executor;
+
+    /**
+     * @param collection The collection to find documents in.
+     * @param query      The query specifier.
+     * @param projection The projection document.
+     * @param batchSize  The maximum amount of documents to fetch per batch.
+     * @param executor   The executor to process batches on.
+     */
+    FindPublisher(
+            final MongoClient.Collection collection,
+            final Document query,
+            final Document projection,
+            final int batchSize,
+            final Executor executor
+    ) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        _collection = collection;
+        _query = query;
+        _projection = projection;
+        _batchSize = batchSize;
+        _executor = executor;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super Document> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber must not be null");
+        }
+        final FindSubscription subscription = new FindSubscription(
+                subscriber,
+                new FindCursor(_collection, _query, _projection, _batchSize, false, _executor));
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * A FindSubscription delivers the documents of a cursor to a subscriber as it demands them.
+     * Signals are only sent from within {@link #drain}, which a single thread runs at a time.
+     */
+    private final class FindSubscription implements Subscription {
+        private final Subscriber<? super Document> _subscriber;
+        private final FindCursor _cursor;
+        private final Queue<Document> _buffer = new ConcurrentLinkedQueue<>();
+        private final AtomicLong _requested = new AtomicLong();
+
+        // The amount of times drain was called while it was already running
+        private final AtomicInteger _missed = new AtomicInteger();
+
+        private volatile boolean _cancelled;
+        private volatile boolean _fetching;
+        private volatile boolean _exhausted;
+        private volatile Exception _error;
+
+        // Only accessed from within drain
+        private boolean _terminated;
+
+        FindSubscription(final Subscriber<? super Document> subscriber, final FindCursor cursor) {
+            _subscriber = subscriber;
+            _cursor = cursor;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                _error = new IllegalArgumentException("the amount of documents requested must be positive");
+                _buffer.clear();
+                _cursor.close();
+            } else {
+                long current;
+                long next;
+                do {
+                    current = _requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!_requested.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            _cancelled = true;
+            _cursor.close();
+            drain();
+        }
+
+        private void drain() {
+            if (_missed.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                emit();
+                missed = _missed.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (_terminated) {
+                return;
+            }
+            if (_cancelled) {
+                _terminated = true;
+                _buffer.clear();
+                return;
+            }
+
+            long emitted = 0;
+            final long requested = _requested.get();
+            while (emitted != requested && !_cancelled) {
+                final Document document = _buffer.poll();
+                if (document == null) {
+                    break;
+                }
+                try {
+                    _subscriber.onNext(document);
+                } catch (final RuntimeException e) {
+                    Log.d(TAG, "Subscriber failed to handle a document; cancelling", e);
+                    cancel();
+                    return;
+                }
+                emitted++;
+            }
+            if (emitted != 0 && requested != Long.MAX_VALUE) {
+                _requested.addAndGet(-emitted);
+            }
+
+            if (!_buffer.isEmpty() || _cancelled || _fetching) {
+                return;
+            }
+            if (_error != null) {
+                _terminated = true;
+                _subscriber.onError(_error);
+            } else if (_exhausted) {
+                _terminated = true;
+                _subscriber.onComplete();
+            } else if (_requested.get() > 0) {
+                fetch();
+            }
+        }
+
+        private void fetch() {
+            _fetching = true;
+            final Task<List<Document>> next;
+            try {
+                next = _cursor.next();
+            } catch (final RuntimeException e) {
+                // Signalled to the subscriber by the drain loop this is called from, rather than
+                // thrown from request
+                Log.d(TAG, "Error fetching documents", e);
+                _error = e;
+                _fetching = false;
+                drain();
+                return;
+            }
+            next.addOnCompleteListener(_executor, new OnCompleteListener<List<Document>>() {
+                @Override
+                public void onComplete(@NonNull final Task<List<Document>> task) {
+                    if (task.isSuccessful()) {
+                        if (_error == null && !_cancelled) {
+                            _buffer.addAll(task.getResult());
+                        }
+                        _exhausted = _cursor.isExhausted() || task.getResult().isEmpty();
+                    } else if (!_cancelled) {
+                        _error = task.getException();
+                    }
+                    _fetching = false;
+                    drain();
+                }
+            });
+        }
+    }
+}
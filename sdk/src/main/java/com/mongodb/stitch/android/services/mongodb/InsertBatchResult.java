@@ -0,0 +1,66 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+/**
+ * An InsertBatchResult describes the outcome of inserting one batch of a chunked insertMany.
+ */
+public class InsertBatchResult {
+
+    private final int _offset;
+    private final int _count;
+    private final boolean _attempted;
+    private final Exception _exception;
+
+    /**
+     * @param offset    The index of the first document of the batch in the input list.
+     * @param count     The amount of documents in the batch.
+     * @param attempted Whether or not the batch was sent.
+     * @param exception The reason the batch failed, or null if it did not.
+     */
+    InsertBatchResult(
+            final int offset,
+            final int count,
+            final boolean attempted,
+            final Exception exception
+    ) {
+        _offset = offset;
+        _count = count;
+        _attempted = attempted;
+        _exception = exception;
+    }
+
+    /**
+     * @return The index of the first document of the batch in the input list.
+     */
+    public int getOffset() {
+        return _offset;
+    }
+
+    /**
+     * @return The amount of documents in the batch.
+     */
+    public int getCount() {
+        return _count;
+    }
+
+    /**
+     * @return Whether or not the batch was sent. An ordered insert does not send the batches
+     * after one that failed.
+     */
+    public boolean wasAttempted() {
+        return _attempted;
+    }
+
+    /**
+     * @return Whether or not the batch was inserted.
+     */
+    public boolean isSuccessful() {
+        return _attempted && _exception == null;
+    }
+
+    /**
+     * @return The reason the batch failed, or null if it was inserted or not attempted.
+     */
+    public Exception getException() {
+        return _exception;
+    }
+}
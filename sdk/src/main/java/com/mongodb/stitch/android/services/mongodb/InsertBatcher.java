@@ -0,0 +1,139 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An InsertBatcher merges single document inserts that arrive within a short window into one
+ * insert request. The window starts with the first insert after a request is sent, and the
+ * batch is sent early once it holds the maximum amount of documents.
+ */
+class InsertBatcher {
+
+    private final MongoClient.Collection _collection;
+    private final long _windowMillis;
+    private final int _maxDocuments;
+    private final Executor _executor;
+    private final ScheduledExecutorService _scheduler;
+
+    // Guarded by this
+    private List<Document> _documents = new ArrayList<>();
+    private List<TaskCompletionSource<Void>> _waiters = new ArrayList<>();
+    private ScheduledFuture<?> _scheduledFlush;
+
+    /**
+     * @param collection   The collection to insert into.
+     * @param windowMillis How long to wait for more documents after the first one of a batch.
+     * @param maxDocuments The maximum amount of documents in a batch.
+     * @param executor     The executor to complete tasks on.
+     * @param scheduler    The scheduler to time the window with.
+     */
+    InsertBatcher(
+            final MongoClient.Collection collection,
+            final long windowMillis,
+            final int maxDocuments,
+            final Executor executor,
+            final ScheduledExecutorService scheduler
+    ) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("window must not be negative");
+        }
+        if (maxDocuments <= 0) {
+            throw new IllegalArgumentException("maxDocuments must be positive");
+        }
+        _collection = collection;
+        _windowMillis = windowMillis;
+        _maxDocuments = maxDocuments;
+        _executor = executor;
+        _scheduler = scheduler;
+    }
+
+    /**
+     * Adds a document to the current batch.
+     *
+     * @param document The document to insert.
+     * @return A task that can be resolved once the batch containing the document is inserted.
+     * The task fails if any document of the batch could not be inserted.
+     */
+    Task<Void> insert(final Document document) {
+        final TaskCompletionSource<Void> waiter = new TaskCompletionSource<>();
+        final boolean full;
+        synchronized (this) {
+            _documents.add(document);
+            _waiters.add(waiter);
+            full = _documents.size() >= _maxDocuments;
+            if (!full && _scheduledFlush == null) {
+                _scheduledFlush = _scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        _executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                flush();
+                            }
+                        });
+                    }
+                }, _windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            flush();
+        }
+        return waiter.getTask();
+    }
+
+    /**
+     * Sends the current batch, if any, without waiting for the window to end.
+     */
+    void flush() {
+        final List<Document> documents;
+        final List<TaskCompletionSource<Void>> waiters;
+        synchronized (this) {
+            if (_scheduledFlush != null) {
+                _scheduledFlush.cancel(false);
+                _scheduledFlush = null;
+            }
+            if (_documents.isEmpty()) {
+                return;
+            }
+            documents = _documents;
+            waiters = _waiters;
+            _documents = new ArrayList<>();
+            _waiters = new ArrayList<>();
+        }
+
+        final Task<Void> request;
+        try {
+            request = _collection.insertBatch(documents);
+        } catch (final RuntimeException e) {
+            for (final TaskCompletionSource<Void> waiter : waiters) {
+                waiter.setException(e);
+            }
+            return;
+        }
+        request.addOnCompleteListener(_executor, new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull final Task<Void> task) {
+                for (final TaskCompletionSource<Void> waiter : waiters) {
+                    if (task.isSuccessful()) {
+                        waiter.setResult(null);
+                    } else {
+                        waiter.setException(task.getException());
+                    }
+                }
+            }
+        });
+    }
+}
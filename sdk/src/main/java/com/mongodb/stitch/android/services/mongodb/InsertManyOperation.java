@@ -0,0 +1,201 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * An InsertManyOperation splits a list of documents into batches bounded by document count and
+ * encoded size, and inserts them either one after another or with bounded concurrency.
+ */
+class InsertManyOperation {
+
+    private static final String TAG = "Stitch.InsertMany";
+
+    private final MongoClient.Collection _collection;
+    private final List<Document> _documents;
+    private final InsertManyOptions _options;
+    private final Executor _executor;
+
+    // Guarded by this
+    private List<int[]> _batches;
+    private InsertBatchResult[] _results;
+    private int _nextBatch;
+    private int _inFlight;
+    private boolean _stopped;
+
+    private final TaskCompletionSource<List<InsertBatchResult>> _future =
+            new TaskCompletionSource<>();
+
+    /**
+     * @param collection The collection to insert into.
+     * @param documents  The documents to insert.
+     * @param options    How to batch and send the documents.
+     * @param executor   The executor to split batches and process results on.
+     */
+    InsertManyOperation(
+            final MongoClient.Collection collection,
+            final List<Document> documents,
+            final InsertManyOptions options,
+            final Executor executor
+    ) {
+        _collection = collection;
+        _documents = documents;
+        _options = options;
+        _executor = executor;
+    }
+
+    /**
+     * Starts inserting the documents.
+     *
+     * @return A task containing the result of every batch, in input order, that can be resolved
+     * once every batch has completed or been skipped. The task itself only fails if the
+     * documents could not be split into batches.
+     */
+    Task<List<InsertBatchResult>> execute() {
+        Tasks.call(_executor, new Callable<List<int[]>>() {
+            @Override
+            public List<int[]> call() throws Exception {
+                return split();
+            }
+        }).addOnCompleteListener(_executor, new OnCompleteListener<List<int[]>>() {
+            @Override
+            public void onComplete(@NonNull final Task<List<int[]>> task) {
+                if (!task.isSuccessful()) {
+                    Log.e(TAG, "Error splitting documents into batches", task.getException());
+                    _future.setException(task.getException());
+                    return;
+                }
+                start(task.getResult());
+            }
+        });
+        return _future.getTask();
+    }
+
+    /**
+     * @return The [offset, count] of each batch.
+     */
+    private List<int[]> split() {
+        final List<int[]> batches = new ArrayList<>();
+        final int maxDocuments = _options.getMaxBatchDocuments();
+        final int maxBytes = _options.getMaxBatchBytes();
+        final DocumentCodec codec = new DocumentCodec();
+        final EncoderContext context = EncoderContext.builder().build();
+        final BasicOutputBuffer buffer = new BasicOutputBuffer();
+
+        int offset = 0;
+        int count = 0;
+        long bytes = 0;
+        for (int i = 0; i < _documents.size(); i++) {
+            buffer.truncateToPosition(0);
+            codec.encode(new BsonBinaryWriter(buffer), _documents.get(i), context);
+            final int size = buffer.getPosition();
+
+            if (count > 0 && (count == maxDocuments || bytes + size > maxBytes)) {
+                batches.add(new int[]{offset, count});
+                offset = i;
+                count = 0;
+                bytes = 0;
+            }
+            count++;
+            bytes += size;
+        }
+        if (count > 0) {
+            batches.add(new int[]{offset, count});
+        }
+        return batches;
+    }
+
+    private void start(final List<int[]> batches) {
+        final int concurrency = _options.isOrdered() ? 1 : _options.getMaxConcurrentBatches();
+        synchronized (this) {
+            _batches = batches;
+            _results = new InsertBatchResult[batches.size()];
+            if (batches.isEmpty()) {
+                _future.setResult(new ArrayList<InsertBatchResult>());
+                return;
+            }
+        }
+        for (int i = 0; i < concurrency; i++) {
+            sendNext();
+        }
+    }
+
+    private void sendNext() {
+        final int index;
+        synchronized (this) {
+            if (_stopped || _nextBatch == _batches.size()) {
+                return;
+            }
+            index = _nextBatch++;
+            _inFlight++;
+        }
+
+        final int[] batch = _batches.get(index);
+        final List<Document> documents = _documents.subList(batch[0], batch[0] + batch[1]);
+        final Task<Void> request;
+        try {
+            request = _collection.insertBatch(documents);
+        } catch (final RuntimeException e) {
+            onBatchComplete(index, e);
+            return;
+        }
+        request.continueWith(_executor, new Continuation<Void, Void>() {
+            @Override
+            public Void then(@NonNull final Task<Void> task) throws Exception {
+                onBatchComplete(index, task.isSuccessful() ? null : task.getException());
+                return null;
+            }
+        });
+    }
+
+    private void onBatchComplete(final int index, final Exception exception) {
+        final int[] batch = _batches.get(index);
+        if (exception != null) {
+            Log.d(TAG, "Error inserting batch at offset " + batch[0], exception);
+        }
+
+        final List<InsertBatchResult> results;
+        synchronized (this) {
+            _results[index] = new InsertBatchResult(batch[0], batch[1], true, exception);
+            _inFlight--;
+            if (exception != null && _options.isOrdered()) {
+                _stopped = true;
+            }
+            if (_inFlight > 0 || (!_stopped && _nextBatch < _batches.size())) {
+                results = null;
+            } else {
+                for (int i = 0; i < _results.length; i++) {
+                    if (_results[i] == null) {
+                        final int[] skipped = _batches.get(i);
+                        _results[i] = new InsertBatchResult(skipped[0], skipped[1], false, null);
+                    }
+                }
+                results = Arrays.asList(_results);
+            }
+        }
+
+        if (results != null) {
+            _future.setResult(results);
+        } else {
+            sendNext();
+        }
+    }
+}
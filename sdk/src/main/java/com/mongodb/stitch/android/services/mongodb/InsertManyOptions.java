@@ -0,0 +1,94 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+/**
+ * InsertManyOptions control how a large list of documents is split into batches and how those
+ * batches are sent.
+ */
+public class InsertManyOptions {
+
+    private static final int DEFAULT_MAX_BATCH_DOCUMENTS = 1000;
+    private static final int DEFAULT_MAX_BATCH_BYTES = 2 * 1024 * 1024;
+    private static final int DEFAULT_MAX_CONCURRENT_BATCHES = 4;
+
+    private int _maxBatchDocuments = DEFAULT_MAX_BATCH_DOCUMENTS;
+    private int _maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private int _maxConcurrentBatches = DEFAULT_MAX_CONCURRENT_BATCHES;
+    private boolean _ordered = true;
+
+    /**
+     * @param maxBatchDocuments The maximum amount of documents to send in a single batch.
+     * @return These options.
+     */
+    public InsertManyOptions withMaxBatchDocuments(final int maxBatchDocuments) {
+        if (maxBatchDocuments <= 0) {
+            throw new IllegalArgumentException("maxBatchDocuments must be positive");
+        }
+        _maxBatchDocuments = maxBatchDocuments;
+        return this;
+    }
+
+    /**
+     * @param maxBatchBytes The maximum encoded size of a single batch. A document larger than
+     *                      this is sent in a batch of its own.
+     * @return These options.
+     */
+    public InsertManyOptions withMaxBatchBytes(final int maxBatchBytes) {
+        if (maxBatchBytes <= 0) {
+            throw new IllegalArgumentException("maxBatchBytes must be positive");
+        }
+        _maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    /**
+     * @param maxConcurrentBatches The maximum amount of batches in flight at once when the
+     *                             insert is unordered.
+     * @return These options.
+     */
+    public InsertManyOptions withMaxConcurrentBatches(final int maxConcurrentBatches) {
+        if (maxConcurrentBatches <= 0) {
+            throw new IllegalArgumentException("maxConcurrentBatches must be positive");
+        }
+        _maxConcurrentBatches = maxConcurrentBatches;
+        return this;
+    }
+
+    /**
+     * @param ordered Whether or not batches must be inserted one after another, stopping at the
+     *                first batch that fails. Unordered batches are sent concurrently and a
+     *                failed batch does not stop the others.
+     * @return These options.
+     */
+    public InsertManyOptions withOrdered(final boolean ordered) {
+        _ordered = ordered;
+        return this;
+    }
+
+    /**
+     * @return The maximum amount of documents to send in a single batch.
+     */
+    public int getMaxBatchDocuments() {
+        return _maxBatchDocuments;
+    }
+
+    /**
+     * @return The maximum encoded size of a single batch.
+     */
+    public int getMaxBatchBytes() {
+        return _maxBatchBytes;
+    }
+
+    /**
+     * @return The maximum amount of batches in flight at once when the insert is unordered.
+     */
+    public int getMaxConcurrentBatches() {
+        return _maxConcurrentBatches;
+    }
+
+    /**
+     * @return Whether or not batches must be inserted one after another.
+     */
+    public boolean isOrdered() {
+        return _ordered;
+    }
+}
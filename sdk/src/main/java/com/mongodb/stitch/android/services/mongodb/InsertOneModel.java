@@ -0,0 +1,25 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import org.bson.Document;
+
+/**
+ * An InsertOneModel inserts a single document.
+ */
+public class InsertOneModel extends WriteModel {
+
+    private final Document _document;
+
+    /**
+     * @param document The document to insert.
+     */
+    public InsertOneModel(final Document document) {
+        _document = document;
+    }
+
+    /**
+     * @return The document to insert.
+     */
+    public Document getDocument() {
+        return _document;
+    }
+}
@@ -0,0 +1,32 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+/**
+ * A JournalEntry is a write recorded in a {@link WriteJournal} to be sent to Stitch later.
+ */
+public class JournalEntry {
+    private final long _sequence;
+    private final WriteModel _model;
+
+    /**
+     * @param sequence The position of the write in the journal.
+     * @param model    The write.
+     */
+    JournalEntry(final long sequence, final WriteModel model) {
+        _sequence = sequence;
+        _model = model;
+    }
+
+    /**
+     * @return The position of the write in the journal; writes are sent in this order.
+     */
+    public long getSequence() {
+        return _sequence;
+    }
+
+    /**
+     * @return The write.
+     */
+    public WriteModel getModel() {
+        return _model;
+    }
+}
@@ -0,0 +1,903 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.mongodb.stitch.android.AuthListener;
+import com.mongodb.stitch.android.StitchClient;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A LocalReplica keeps a copy of the documents of a collection, or of those matching a query, in
+ * app storage and refreshes it from the server in the background. Finds and counts through a
+ * collection reference using the replica, see {@link MongoClient.Collection#withLocalReplica},
+ * are answered from it without a network call. Equality conditions on fields with a hash index
+ * and equality and range conditions on fields with a sorted index narrow the documents to
+ * evaluate through the index instead of scanning them all.
+ * <p>
+ * With delta sync, a refresh only fetches the documents whose modification field is newer than
+ * the newest one already in the replica, in pages ordered by that field and {@code _id}, and
+ * merges them in. Deletions on the server, and documents that stop matching the replica's
+ * query, are only seen by a full {@link #resync()}, which a delete made through a collection
+ * reference using the replica triggers.
+ * <p>
+ * Configure the replica, then {@link #start()} it. The stored copy belongs to the user that was
+ * logged in when the replica was started and is deleted when they log out.
+ */
+public class LocalReplica {
+
+    private static final String TAG = "Stitch-LocalReplica";
+    private static final String DIRECTORY_NAME = "stitch-replicas";
+    private static final int FORMAT_VERSION = 1;
+    private static final long DEFAULT_REFRESH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final String ID_FIELD = "_id";
+
+    private final MongoClient.Collection _collection;
+    private final StitchClient _stitchClient;
+    private final File _directory;
+    private final Executor _executor;
+    private final ScheduledExecutorService _scheduler;
+    private final Set<String> _hashIndexFields = new LinkedHashSet<>();
+    private final Set<String> _sortedIndexFields = new LinkedHashSet<>();
+    private Document _query = new Document();
+    private long _refreshIntervalMillis = DEFAULT_REFRESH_INTERVAL_MILLIS;
+    private String _deltaField;
+    private int _deltaPageSize;
+
+    // Writes sent through a collection reference that have not been followed by a refresh yet
+    private final AtomicInteger _pendingWrites = new AtomicInteger();
+
+    private final Object _lock = new Object();
+    private volatile State _state;
+    private File _file;
+    private boolean _started;
+    private ScheduledFuture<?> _scheduledRefresh;
+    private AuthListener _authListener;
+
+    // The most recent refresh, and the one waiting for it to complete before starting, if any
+    private Task<Void> _latestRefresh;
+    private Task<Void> _queuedRefresh;
+    private boolean _queuedResync;
+
+    /**
+     * @param context    The Android {@link Context} whose files directory holds the replica.
+     * @param collection The collection to replicate.
+     */
+    public LocalReplica(final Context context, final MongoClient.Collection collection) {
+        _collection = collection;
+        _stitchClient = collection.getStitchClient();
+        _directory = new File(context.getFilesDir(), DIRECTORY_NAME);
+        _executor = collection.getExecutor();
+        _scheduler = _stitchClient.getScheduler();
+    }
+
+    /**
+     * @param field A dotted path to keep a hash index on, for equality and {@code $in}
+     *              conditions.
+     * @return This replica.
+     */
+    public LocalReplica withHashIndex(final String field) {
+        checkNotStarted();
+        _hashIndexFields.add(field);
+        return this;
+    }
+
+    /**
+     * @param field A dotted path to keep a sorted index on, for equality and range conditions.
+     * @return This replica.
+     */
+    public LocalReplica withSortedIndex(final String field) {
+        checkNotStarted();
+        _sortedIndexFields.add(field);
+        return this;
+    }
+
+    /**
+     * @param query The query specifier of the documents to replicate. Defaults to every
+     *              document of the collection. Only finds at least as narrow as this query
+     *              specifier are answered from the replica.
+     * @return This replica.
+     */
+    public LocalReplica withQuery(final Document query) {
+        checkNotStarted();
+        _query = query == null ? new Document() : query;
+        return this;
+    }
+
+    /**
+     * @param interval How long to wait between background refreshes. Defaults to fifteen
+     *                 minutes.
+     * @param unit     The unit of {@code interval}.
+     * @return This replica.
+     */
+    public LocalReplica withRefreshInterval(final long interval, final TimeUnit unit) {
+        checkNotStarted();
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        _refreshIntervalMillis = unit.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * @param field    The dotted path of a field that the server sets to an increasing value,
+     *                 such as a modification time, whenever a document is inserted or updated.
+     *                 Use {@code _id} to only fetch new documents by their ObjectId. Documents
+     *                 without the field are only fetched by a full resync.
+     * @param pageSize The maximum amount of changed documents to fetch per request.
+     * @return This replica.
+     */
+    public LocalReplica withDeltaSync(final String field, final int pageSize) {
+        checkNotStarted();
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        _deltaField = field;
+        _deltaPageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Loads the stored copy of the replica, if there is one, and starts refreshing it in the
+     * background. The client must be authenticated.
+     *
+     * @return A task that completes once the replica can answer queries: right after loading a
+     * stored copy, or after the first refresh otherwise.
+     */
+    public Task<Void> start() {
+        final String userId = _stitchClient.getAuth().getUserId();
+        synchronized (_lock) {
+            if (_started) {
+                throw new IllegalStateException("replica already started");
+            }
+            _started = true;
+            _file = new File(_directory, fileName(userId));
+            _authListener = new AuthListener() {
+                @Override
+                public void onLogin() {
+                }
+
+                @Override
+                public void onLogout(final String lastProvider) {
+                    discard();
+                }
+            };
+            _stitchClient.addAuthListener(_authListener);
+            _scheduledRefresh = _scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, _refreshIntervalMillis, _refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        final File file = _file;
+        return Tasks.call(_executor, new Callable<State>() {
+            @Override
+            public State call() throws Exception {
+                return load(file);
+            }
+        }).continueWithTask(_executor, new Continuation<State, Task<Void>>() {
+            @Override
+            public Task<Void> then(@NonNull final Task<State> task) throws Exception {
+                final State stored = task.isSuccessful() ? task.getResult() : null;
+                if (!task.isSuccessful()) {
+                    Log.d(TAG, "Error loading stored replica", task.getException());
+                }
+                synchronized (_lock) {
+                    if (stored != null && _started && _state == null) {
+                        _state = stored;
+                    }
+                }
+                final Task<Void> refresh = refresh();
+                return stored != null ? Tasks.<Void>forResult(null) : refresh;
+            }
+        });
+    }
+
+    /**
+     * Stops refreshing the replica. The stored copy is kept for the next start.
+     */
+    public void stop() {
+        synchronized (_lock) {
+            if (!_started) {
+                return;
+            }
+            _started = false;
+            _scheduledRefresh.cancel(false);
+            _scheduledRefresh = null;
+            _stitchClient.removeAuthListener(_authListener);
+            _authListener = null;
+            _state = null;
+        }
+    }
+
+    /**
+     * Brings the replica up to date with the server: with delta sync, by fetching the changed
+     * documents, and otherwise by fetching every replicated document. A refresh requested while
+     * another is in progress runs once it completes.
+     *
+     * @return A task that completes once a refresh started after this call has completed.
+     */
+    public Task<Void> refresh() {
+        return refresh(false);
+    }
+
+    /**
+     * Fetches every replicated document from the server and replaces the replica with them,
+     * dropping the documents that were deleted on the server.
+     *
+     * @return A task that completes once a resync started after this call has completed.
+     */
+    public Task<Void> resync() {
+        return refresh(true);
+    }
+
+    private Task<Void> refresh(final boolean resync) {
+        synchronized (_lock) {
+            if (_queuedRefresh != null) {
+                _queuedResync |= resync;
+                return _queuedRefresh;
+            }
+            _queuedResync = resync;
+            final Task<Void> previous = _latestRefresh != null ? _latestRefresh : Tasks.<Void>forResult(null);
+            _queuedRefresh = previous.continueWithTask(_executor, new Continuation<Void, Task<Void>>() {
+                @Override
+                public Task<Void> then(@NonNull final Task<Void> task) throws Exception {
+                    // Only the queued refresh can start, so later requests must queue anew
+                    final boolean resync;
+                    synchronized (_lock) {
+                        _queuedRefresh = null;
+                        resync = _queuedResync;
+                    }
+                    return fetch(resync);
+                }
+            });
+            _latestRefresh = _queuedRefresh;
+            return _queuedRefresh;
+        }
+    }
+
+    /**
+     * @return Whether or not the replica holds documents to answer queries from.
+     */
+    public boolean isReady() {
+        return _state != null;
+    }
+
+    /**
+     * @return The time the replica was last fetched from the server, in milliseconds since the
+     * epoch, or {@code null} if it is not ready.
+     */
+    public Long getRefreshedAt() {
+        final State state = _state;
+        return state == null ? null : state._refreshedAt;
+    }
+
+    /**
+     * @return The amount of documents in the replica.
+     */
+    public int getDocumentCount() {
+        final State state = _state;
+        return state == null ? 0 : state._documents.size();
+    }
+
+    /**
+     * @return The replica as a source to answer finds and counts from.
+     */
+    LocalSource asLocalSource() {
+        return new LocalSource() {
+            @Override
+            public String getNamespace() {
+                return _collection.getNamespace();
+            }
+
+            @Override
+            public boolean covers(final Document query) {
+                return _state != null
+                        && _pendingWrites.get() == 0
+                        && QueryMatcher.isNarrowerThan(query, _query);
+            }
+
+            @Override
+            public List<Document> find(
+                    final Document query,
+                    final Document projection,
+                    final Integer limit,
+                    final FindOptions options
+            ) {
+                return QueryMatcher.find(candidates(query), query, projection, limit, options);
+            }
+
+            @Override
+            public int count(final Document query, final Integer limit, final FindOptions options) {
+                return QueryMatcher.count(candidates(query), query, limit, options);
+            }
+
+            @Override
+            public void onWrite(final Task<List<Object>> write, final boolean removesDocuments) {
+                _pendingWrites.incrementAndGet();
+                write.addOnCompleteListener(_executor, new OnCompleteListener<List<Object>>() {
+                    @Override
+                    public void onComplete(@NonNull final Task<List<Object>> task) {
+                        refresh(removesDocuments).addOnCompleteListener(_executor, new OnCompleteListener<Void>() {
+                            @Override
+                            public void onComplete(@NonNull final Task<Void> task) {
+                                _pendingWrites.decrementAndGet();
+                            }
+                        });
+                    }
+                });
+            }
+        };
+    }
+
+    private Task<Void> fetch(final boolean resync) {
+        final File file;
+        final State base;
+        synchronized (_lock) {
+            if (!_started) {
+                return Tasks.forResult(null);
+            }
+            file = _file;
+            base = _state;
+        }
+
+        final boolean delta = !resync && _deltaField != null && base != null && base._watermarkId != null;
+        final Task<List<Document>> fetched = delta
+                ? fetchChanges(base._watermark, base._watermarkId, new ArrayList<Document>())
+                : _collection.fetchAll(_query);
+        return fetched.continueWith(_executor, new Continuation<List<Document>, Void>() {
+            @Override
+            public Void then(@NonNull final Task<List<Document>> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    Log.d(TAG, "Error refreshing replica", task.getException());
+                    throw task.getException();
+                }
+                if (delta && task.getResult().isEmpty()) {
+                    return null;
+                }
+                final State state = delta
+                        ? base.merge(task.getResult())
+                        : new State(task.getResult(), System.currentTimeMillis());
+                synchronized (_lock) {
+                    if (!_started || !file.equals(_file) || (delta && _state != base)) {
+                        return null;
+                    }
+                    _state = state;
+                }
+                try {
+                    store(file, state);
+                } catch (final IOException e) {
+                    Log.d(TAG, "Error storing replica", e);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Fetches the documents changed after a watermark, a page at a time.
+     *
+     * @param watermark   The value of the delta field of the newest document known.
+     * @param watermarkId The {@code _id} of the newest document known.
+     * @param changes     The changed documents fetched so far.
+     * @return A task containing every changed document, oldest first.
+     */
+    private Task<List<Document>> fetchChanges(
+            final Object watermark,
+            final Object watermarkId,
+            final List<Document> changes
+    ) {
+        final Document newer;
+        final Document sort;
+        if (_deltaField.equals(ID_FIELD)) {
+            newer = new Document(ID_FIELD, new Document(Operators.GT, watermarkId));
+            sort = new Document(ID_FIELD, 1);
+        } else {
+            // Keyset pagination: documents sharing the watermark's value are ordered by _id
+            newer = new Document(Operators.OR, Arrays.asList(
+                    new Document(_deltaField, new Document(Operators.GT, watermark)),
+                    new Document(_deltaField, watermark)
+                            .append(ID_FIELD, new Document(Operators.GT, watermarkId))));
+            sort = new Document(_deltaField, 1).append(ID_FIELD, 1);
+        }
+        final Document query = _query.isEmpty()
+                ? newer
+                : new Document(Operators.AND, Arrays.asList(_query, newer));
+
+        return _collection.fetchPage(query, sort, _deltaPageSize).continueWithTask(_executor, new Continuation<List<Document>, Task<List<Document>>>() {
+            @Override
+            public Task<List<Document>> then(@NonNull final Task<List<Document>> task) throws Exception {
+                if (!task.isSuccessful()) {
+                    throw task.getException();
+                }
+                final List<Document> page = task.getResult();
+                changes.addAll(page);
+                if (page.size() < _deltaPageSize) {
+                    return Tasks.forResult(changes);
+                }
+                final Document last = page.get(page.size() - 1);
+                return fetchChanges(deltaValue(last), last.get(ID_FIELD), changes);
+            }
+        });
+    }
+
+    /**
+     * @return The value of the delta field of a document, or {@code null} if it has none.
+     */
+    private Object deltaValue(final Document document) {
+        for (final Object value : QueryMatcher.valuesAt(document, _deltaField)) {
+            if (isIndexable(value)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stops the replica and deletes its stored copy. Called while the client notifies auth
+     * listeners, so the listener is removed afterwards on the executor.
+     */
+    private void discard() {
+        final File file;
+        synchronized (_lock) {
+            file = _file;
+            _state = null;
+        }
+        _executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                stop();
+                if (file != null) {
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Narrows the documents to evaluate a query specifier against using the indexes. Every
+     * document that can match is returned; the query specifier must still be evaluated.
+     *
+     * @param query The query specifier.
+     * @return The documents to evaluate, in natural order.
+     */
+    private List<Document> candidates(final Document query) {
+        final State state = _state;
+        if (state == null) {
+            throw new IllegalStateException("replica is not ready");
+        }
+
+        SortedSet<Integer> best = null;
+        if (query != null) {
+            final List<Map.Entry<String, Object>> conditions = new ArrayList<>(query.entrySet());
+            final Object and = query.get(Operators.AND);
+            if (and instanceof List) {
+                for (final Object subQuery : (List<?>) and) {
+                    if (subQuery instanceof Document) {
+                        conditions.addAll(((Document) subQuery).entrySet());
+                    }
+                }
+            }
+            for (final Map.Entry<String, Object> condition : conditions) {
+                final SortedSet<Integer> positions = state.lookup(condition.getKey(), condition.getValue());
+                if (positions != null && (best == null || positions.size() < best.size())) {
+                    best = positions;
+                }
+            }
+        }
+        if (best == null) {
+            return state._documents;
+        }
+
+        final List<Integer> positions = new ArrayList<>(best);
+        return new AbstractList<Document>() {
+            @Override
+            public Document get(final int index) {
+                return state._documents.get(positions.get(index));
+            }
+
+            @Override
+            public int size() {
+                return positions.size();
+            }
+        };
+    }
+
+    private State load(final File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            final Document header = readDocument(in);
+            if (header == null
+                    || !Integer.valueOf(FORMAT_VERSION).equals(header.get(Fields.VERSION))
+                    || !_query.equals(header.get(Fields.QUERY))) {
+                return null;
+            }
+            final List<Document> documents = new ArrayList<>();
+            for (Document document = readDocument(in); document != null; document = readDocument(in)) {
+                documents.add(document);
+            }
+            return new State(documents, header.getLong(Fields.REFRESHED_AT));
+        } finally {
+            in.close();
+        }
+    }
+
+    private void store(final File file, final State state) throws IOException {
+        if (!_directory.isDirectory() && !_directory.mkdirs()) {
+            throw new IOException("Could not create " + _directory);
+        }
+        final File temp = new File(file.getPath() + ".tmp");
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+        try {
+            final DocumentCodec codec = new DocumentCodec();
+            final EncoderContext context = EncoderContext.builder().build();
+            final BasicOutputBuffer buffer = new BasicOutputBuffer();
+            writeDocument(out, codec, context, buffer, new Document(Fields.VERSION, FORMAT_VERSION)
+                    .append(Fields.QUERY, _query)
+                    .append(Fields.REFRESHED_AT, state._refreshedAt));
+            for (final Document document : state._documents) {
+                writeDocument(out, codec, context, buffer, document);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static void writeDocument(
+            final OutputStream out,
+            final DocumentCodec codec,
+            final EncoderContext context,
+            final BasicOutputBuffer buffer,
+            final Document document
+    ) throws IOException {
+        buffer.truncateToPosition(0);
+        codec.encode(new BsonBinaryWriter(buffer), document, context);
+        buffer.pipe(out);
+    }
+
+    /**
+     * @return The next BSON document in the stream, or {@code null} at its end.
+     */
+    private static Document readDocument(final DataInputStream in) throws IOException {
+        final byte[] length = new byte[4];
+        try {
+            in.readFully(length);
+        } catch (final EOFException e) {
+            return null;
+        }
+        final int size = (length[0] & 0xff)
+                | (length[1] & 0xff) << 8
+                | (length[2] & 0xff) << 16
+                | (length[3] & 0xff) << 24;
+        if (size < length.length) {
+            throw new IOException("Corrupt replica");
+        }
+        final byte[] bytes = new byte[size];
+        System.arraycopy(length, 0, bytes, 0, length.length);
+        in.readFully(bytes, length.length, size - length.length);
+        return new RawBsonDocument(bytes).decode(new DocumentCodec());
+    }
+
+    private String fileName(final String userId) {
+        try {
+            return URLEncoder.encode(String.format(
+                    "%s.%s.%s.%s",
+                    _stitchClient.getAppId(),
+                    userId,
+                    _collection.getService(),
+                    _collection.getNamespace()), "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void checkNotStarted() {
+        synchronized (_lock) {
+            if (_started) {
+                throw new IllegalStateException("replica must be configured before it is started");
+            }
+        }
+    }
+
+    /**
+     * @param value A value from a document or a query specifier.
+     * @return The value to key a hash index with, so that numbers that compare equal share a key.
+     */
+    private static Object hashKey(final Object value) {
+        if (value instanceof Number) {
+            final double asDouble = ((Number) value).doubleValue();
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                return ((Number) value).longValue();
+            }
+            if (asDouble == Math.rint(asDouble) && Math.abs(asDouble) < Long.MAX_VALUE) {
+                return (long) asDouble;
+            }
+            return asDouble;
+        }
+        return value;
+    }
+
+    /**
+     * @return Whether or not a value can be looked up in an index; embedded documents, arrays,
+     * patterns and {@code null}, which also matches missing fields, cannot.
+     */
+    private static boolean isIndexable(final Object value) {
+        return value != null && !(value instanceof Map) && !(value instanceof List)
+                && !(value instanceof java.util.regex.Pattern);
+    }
+
+    private static boolean isOperatorExpression(final Object value) {
+        if (!(value instanceof Map) || ((Map<?, ?>) value).isEmpty()) {
+            return false;
+        }
+        for (final Object key : ((Map<?, ?>) value).keySet()) {
+            if (!(key instanceof String) || !((String) key).startsWith("$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The documents of a refresh along with their indexes, which are never modified after
+     * they are built.
+     */
+    private final class State {
+        private final List<Document> _documents;
+        private final long _refreshedAt;
+        private final Map<Object, Integer> _positionsById = new HashMap<>();
+
+        // The delta field value and _id of the newest document, if delta sync is used
+        private Object _watermark;
+        private Object _watermarkId;
+        private final Map<String, Map<Object, SortedSet<Integer>>> _hashIndexes = new HashMap<>();
+        private final Map<String, NavigableMap<Object, SortedSet<Integer>>> _sortedIndexes = new HashMap<>();
+
+        State(final List<Document> documents, final long refreshedAt) {
+            _documents = Collections.unmodifiableList(new ArrayList<>(documents));
+            _refreshedAt = refreshedAt;
+
+            for (int i = 0; i < _documents.size(); i++) {
+                final Document document = _documents.get(i);
+                if (document.containsKey(ID_FIELD)) {
+                    _positionsById.put(hashKey(document.get(ID_FIELD)), i);
+                }
+                if (_deltaField != null) {
+                    advanceWatermark(document);
+                }
+            }
+
+            for (final String field : _hashIndexFields) {
+                final Map<Object, SortedSet<Integer>> index = new HashMap<>();
+                for (int i = 0; i < _documents.size(); i++) {
+                    for (final Object value : QueryMatcher.valuesAt(_documents.get(i), field)) {
+                        if (isIndexable(value)) {
+                            add(index, hashKey(value), i);
+                        }
+                    }
+                }
+                _hashIndexes.put(field, index);
+            }
+
+            for (final String field : _sortedIndexFields) {
+                final NavigableMap<Object, SortedSet<Integer>> index = new TreeMap<>(new Comparator<Object>() {
+                    @Override
+                    public int compare(final Object left, final Object right) {
+                        return QueryMatcher.compareValues(left, right);
+                    }
+                });
+                for (int i = 0; i < _documents.size(); i++) {
+                    for (final Object value : QueryMatcher.valuesAt(_documents.get(i), field)) {
+                        if (isIndexable(value)) {
+                            add(index, value, i);
+                        }
+                    }
+                }
+                _sortedIndexes.put(field, index);
+            }
+        }
+
+        /**
+         * @param changes Documents that were inserted or updated since this state was fetched.
+         * @return A new state with the changed documents replacing the ones with the same
+         * {@code _id}, and new documents appended.
+         */
+        State merge(final List<Document> changes) {
+            final List<Document> documents = new ArrayList<>(_documents);
+            final Map<Object, Integer> appended = new HashMap<>();
+            for (final Document change : changes) {
+                final Object id = hashKey(change.get(ID_FIELD));
+                Integer position = _positionsById.get(id);
+                if (position == null) {
+                    position = appended.get(id);
+                }
+                if (position != null) {
+                    documents.set(position, change);
+                } else {
+                    appended.put(id, documents.size());
+                    documents.add(change);
+                }
+            }
+            return new State(documents, System.currentTimeMillis());
+        }
+
+        private void advanceWatermark(final Document document) {
+            final Object id = document.get(ID_FIELD);
+            final Object value = _deltaField.equals(ID_FIELD) ? id : deltaValue(document);
+            if (id == null || value == null) {
+                return;
+            }
+            if (_watermarkId != null) {
+                final int byValue = QueryMatcher.compareValues(value, _watermark);
+                if (byValue < 0 || (byValue == 0 && QueryMatcher.compareValues(id, _watermarkId) <= 0)) {
+                    return;
+                }
+            }
+            _watermark = value;
+            _watermarkId = id;
+        }
+
+        /**
+         * @param field     The field of a condition.
+         * @param condition The condition on the field.
+         * @return The positions of every document that can satisfy the condition, or
+         * {@code null} if no index can narrow them.
+         */
+        SortedSet<Integer> lookup(final String field, final Object condition) {
+            final Map<Object, SortedSet<Integer>> hashIndex = _hashIndexes.get(field);
+            final NavigableMap<Object, SortedSet<Integer>> sortedIndex = _sortedIndexes.get(field);
+            if (hashIndex == null && sortedIndex == null) {
+                return null;
+            }
+
+            if (!isOperatorExpression(condition)) {
+                return isIndexable(condition) ? equalTo(hashIndex, sortedIndex, condition) : null;
+            }
+
+            final Map<?, ?> operators = (Map<?, ?>) condition;
+            if (operators.containsKey(Operators.EQ)) {
+                final Object operand = operators.get(Operators.EQ);
+                return isIndexable(operand) ? equalTo(hashIndex, sortedIndex, operand) : null;
+            }
+            if (operators.containsKey(Operators.IN) && operators.get(Operators.IN) instanceof List) {
+                final SortedSet<Integer> positions = new TreeSet<>();
+                for (final Object operand : (List<?>) operators.get(Operators.IN)) {
+                    if (!isIndexable(operand)) {
+                        return null;
+                    }
+                    positions.addAll(equalTo(hashIndex, sortedIndex, operand));
+                }
+                return positions;
+            }
+            if (sortedIndex == null) {
+                return null;
+            }
+
+            NavigableMap<Object, SortedSet<Integer>> range = sortedIndex;
+            boolean bounded = false;
+            for (final Map.Entry<?, ?> operator : operators.entrySet()) {
+                final Object operand = operator.getValue();
+                if (!isIndexable(operand)) {
+                    continue;
+                }
+                switch ((String) operator.getKey()) {
+                    case Operators.GT:
+                        range = range.tailMap(operand, false);
+                        bounded = true;
+                        break;
+                    case Operators.GTE:
+                        range = range.tailMap(operand, true);
+                        bounded = true;
+                        break;
+                    case Operators.LT:
+                        range = range.headMap(operand, false);
+                        bounded = true;
+                        break;
+                    case Operators.LTE:
+                        range = range.headMap(operand, true);
+                        bounded = true;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (!bounded) {
+                return null;
+            }
+            final SortedSet<Integer> positions = new TreeSet<>();
+            for (final SortedSet<Integer> entry : range.values()) {
+                positions.addAll(entry);
+            }
+            return positions;
+        }
+
+        private SortedSet<Integer> equalTo(
+                final Map<Object, SortedSet<Integer>> hashIndex,
+                final NavigableMap<Object, SortedSet<Integer>> sortedIndex,
+                final Object value
+        ) {
+            final SortedSet<Integer> positions = hashIndex != null
+                    ? hashIndex.get(hashKey(value))
+                    : sortedIndex.get(value);
+            return positions != null ? positions : new TreeSet<Integer>();
+        }
+
+        private void add(final Map<Object, SortedSet<Integer>> index, final Object key, final int position) {
+            SortedSet<Integer> positions = index.get(key);
+            if (positions == null) {
+                positions = new TreeSet<>();
+                index.put(key, positions);
+            }
+            positions.add(position);
+        }
+    }
+
+    private static class Fields {
+        private static final String VERSION = "version";
+        private static final String QUERY = "query";
+        private static final String REFRESHED_AT = "refreshedAt";
+    }
+
+    private static class Operators {
+        private static final String AND = "$and";
+        private static final String OR = "$or";
+        private static final String EQ = "$eq";
+        private static final String IN = "$in";
+        private static final String GT = "$gt";
+        private static final String GTE = "$gte";
+        private static final String LT = "$lt";
+        private static final String LTE = "$lte";
+    }
+}
@@ -0,0 +1,53 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import com.google.android.gms.tasks.Task;
+
+import org.bson.Document;
+
+import java.util.List;
+
+/**
+ * A LocalSource holds documents of a collection on the device that finds and counts can be
+ * answered from without a network call.
+ */
+interface LocalSource {
+
+    /**
+     * @return The namespace the documents are from.
+     */
+    String getNamespace();
+
+    /**
+     * @param query The query specifier.
+     * @return Whether or not every document matching the query specifier is held and up to
+     * date, so that it can be answered locally.
+     */
+    boolean covers(Document query);
+
+    /**
+     * @param query      The query specifier.
+     * @param projection The projection document.
+     * @param limit      The maximum amount of matching documents to accept.
+     * @param options    The sort and skip to apply; other options are ignored.
+     * @return The matched and projected documents.
+     * @throws IllegalArgumentException If the query cannot be evaluated on the device.
+     */
+    List<Document> find(Document query, Document projection, Integer limit, FindOptions options);
+
+    /**
+     * @param query   The query specifier.
+     * @param limit   The maximum amount of matching documents to count.
+     * @param options The skip to apply; other options are ignored.
+     * @return The number of matched documents.
+     * @throws IllegalArgumentException If the query cannot be evaluated on the device.
+     */
+    int count(Document query, Integer limit, FindOptions options);
+
+    /**
+     * Called when a write to the collection is sent.
+     *
+     * @param write            The task of the write, completing once the server has applied it.
+     * @param removesDocuments Whether or not the write can delete documents.
+     */
+    void onWrite(Task<List<Object>> write, boolean removesDocuments);
+}
@@ -4,17 +4,28 @@ import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.mongodb.stitch.android.AuthListener;
+import com.mongodb.stitch.android.CancellationToken;
 import com.mongodb.stitch.android.StitchClient;
 import com.mongodb.stitch.android.PipelineStage;
+import com.mongodb.stitch.android.RequestOptions;
+import com.mongodb.stitch.android.ResultListener;
 
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * MongoClient provides a simple wrapper around pipelines to enable CRUD usage of
@@ -23,16 +34,82 @@ import java.util.Map;
 public class MongoClient {
     private static final String TAG = "Stitch-MongoDB";
 
+    private static final String ID_FIELD = "_id";
+
     private final StitchClient _stitchClient;
     private final String _service;
+    private final EntityCache _entityCache;
+    private final AuthListener _entityCacheListener;
 
     /**
      * @param stitchClient The client to execute with.
      * @param service    The name of the MongoDB service.
      */
     public MongoClient(final StitchClient stitchClient, final String service) {
+        this(stitchClient, service, null, null);
+    }
+
+    /**
+     * @param stitchClient        The client to execute with.
+     * @param service             The name of the MongoDB service.
+     * @param entityCache         The identity map that reads populate, if any.
+     * @param entityCacheListener The listener that clears the identity map on logout, if any.
+     */
+    private MongoClient(
+            final StitchClient stitchClient,
+            final String service,
+            final EntityCache entityCache,
+            final AuthListener entityCacheListener
+    ) {
         _stitchClient = stitchClient;
         _service = service;
+        _entityCache = entityCache;
+        _entityCacheListener = entityCacheListener;
+    }
+
+    /**
+     * Gets a client for the same service whose collections share a single instance of every
+     * document they read, keyed by namespace and {@code _id}. Full documents returned by finds
+     * through the returned client are that shared instance, and
+     * {@link Collection#findById(Object)} answers from it without a network call. Shared
+     * documents are unmodifiable and must be copied to make changes; when a later read or
+     * update changes a document, a new shared instance replaces it and is passed to the
+     * listeners added with {@link Collection#addDocumentListener}. Writes through the
+     * collections evict the documents they may change, and logging out evicts every document.
+     * Every call creates a new identity map that the {@link StitchClient} holds on to until the
+     * returned client is closed with {@link #close()}.
+     *
+     * @param maxEntries The maximum amount of documents to keep; the least recently used are
+     *                   evicted first.
+     * @return A client whose reads populate an identity map.
+     */
+    public MongoClient withEntityCache(final int maxEntries) {
+        final EntityCache entityCache = new EntityCache(maxEntries);
+        final AuthListener listener = new AuthListener() {
+            @Override
+            public void onLogin() {
+            }
+
+            @Override
+            public void onLogout(final String lastProvider) {
+                entityCache.clear();
+            }
+        };
+        _stitchClient.addAuthListener(listener);
+        return new MongoClient(_stitchClient, _service, entityCache, listener);
+    }
+
+    /**
+     * Releases the identity map of a client returned by {@link #withEntityCache(int)}, evicting
+     * every document and no longer clearing it on logout. The client and its collections must
+     * not be used once closed. Does nothing for a client without an identity map.
+     */
+    public void close() {
+        if (_entityCacheListener == null) {
+            return;
+        }
+        _stitchClient.removeAuthListener(_entityCacheListener);
+        _entityCache.clear();
     }
 
     /**
@@ -78,14 +155,277 @@ public class MongoClient {
     public static class Collection {
         private final Database _database;
         private final String _collName;
+        private final InsertBatcher _insertBatcher;
+        private final UpdateCoalescer _updateCoalescer;
+        private final RequestOptions _requestOptions;
+        private final LocalSource _localSource;
+        private final WriteJournal _writeJournal;
+        private final boolean _optimisticUpdates;
 
         /**
          * @param database The database to which this collection is contained in.
          * @param collName The name of the collection.
          */
         public Collection(final Database database, final String collName) {
+            this(database, collName, null, null, null, null, null, false);
+        }
+
+        /**
+         * @param database        The database to which this collection is contained in.
+         * @param collName        The name of the collection.
+         * @param insertBatcher   The batcher to send single document inserts through, if any.
+         * @param updateCoalescer The coalescer to send single document updates through, if any.
+         * @param requestOptions  The deadline and cancellation token of every call, if any.
+         * @param localSource     The documents on the device to answer covered finds from, if any.
+         * @param writeJournal    The journal to record writes in instead of sending them, if any.
+         * @param optimisticUpdates Whether or not to apply updates to shared documents before
+         *                          they are sent.
+         */
+        private Collection(
+                final Database database,
+                final String collName,
+                final InsertBatcher insertBatcher,
+                final UpdateCoalescer updateCoalescer,
+                final RequestOptions requestOptions,
+                final LocalSource localSource,
+                final WriteJournal writeJournal,
+                final boolean optimisticUpdates
+        ) {
             _database = database;
             _collName = collName;
+            _insertBatcher = insertBatcher;
+            _updateCoalescer = updateCoalescer;
+            _requestOptions = requestOptions;
+            _localSource = localSource;
+            _writeJournal = writeJournal;
+            _optimisticUpdates = optimisticUpdates;
+        }
+
+        /**
+         * Gets a reference to this collection whose calls are made with the given options. Each
+         * call gets its own deadline. Batched inserts and coalesced updates follow the options of
+         * the reference they were set up on.
+         *
+         * @param requestOptions The deadline and cancellation token of every call.
+         * @return A reference to the collection whose calls use the options.
+         */
+        public Collection withRequestOptions(final RequestOptions requestOptions) {
+            return new Collection(_database, _collName, _insertBatcher, _updateCoalescer, requestOptions, _localSource, _writeJournal, _optimisticUpdates);
+        }
+
+        /**
+         * Gets a reference to this collection whose calls fail with a
+         * {@link com.mongodb.stitch.android.StitchException.StitchCancelledException} if they
+         * take longer than the timeout.
+         *
+         * @param timeout How long each call may take.
+         * @param unit    The unit of {@code timeout}.
+         * @return A reference to the collection whose calls time out.
+         */
+        public Collection withTimeout(final long timeout, final TimeUnit unit) {
+            final RequestOptions options = new RequestOptions().withTimeout(timeout, unit);
+            if (_requestOptions != null) {
+                options.withCancellationToken(_requestOptions.getCancellationToken());
+            }
+            return withRequestOptions(options);
+        }
+
+        /**
+         * Gets a reference to this collection whose calls are abandoned when the token is
+         * cancelled, failing with a
+         * {@link com.mongodb.stitch.android.StitchException.StitchCancelledException}.
+         *
+         * @param cancellationToken The token that cancels the calls.
+         * @return A reference to the collection whose calls can be cancelled.
+         */
+        public Collection withCancellationToken(final CancellationToken cancellationToken) {
+            final RequestOptions options = new RequestOptions().withCancellationToken(cancellationToken);
+            if (_requestOptions != null && _requestOptions.getTimeoutMillis() != null) {
+                options.withTimeout(_requestOptions.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            }
+            return withRequestOptions(options);
+        }
+
+        /**
+         * Gets a reference to this collection whose single document inserts are merged into
+         * batches. Inserts made through the returned reference within the window are sent as a
+         * single request, and a failed request fails every insert in it.
+         *
+         * @param window       How long to wait for more inserts after the first one of a batch.
+         * @param unit         The unit of {@code window}.
+         * @param maxDocuments The maximum amount of documents in a batch; a full batch is sent
+         *                     immediately.
+         * @return A reference to the collection that batches inserts.
+         */
+        public Collection withInsertBatching(final long window, final TimeUnit unit, final int maxDocuments) {
+            final StitchClient client = _database._client._stitchClient;
+            return new Collection(_database, _collName, new InsertBatcher(
+                    this,
+                    unit.toMillis(window),
+                    maxDocuments,
+                    client.getExecutor(),
+                    client.getScheduler()), _updateCoalescer, _requestOptions, _localSource, _writeJournal, _optimisticUpdates);
+        }
+
+        /**
+         * Gets a reference to this collection whose single document updates to the same query
+         * specifier are merged. Updates made through the returned reference that only use
+         * {@code $set}, {@code $unset} and {@code $inc} are merged with the other such updates
+         * to the same query specifier within the window and sent as a single request; a failed
+         * request fails every update in it. Updates to the same query specifier are applied in
+         * the order they were made.
+         *
+         * @param window How long to wait for more updates after the first one of a batch.
+         * @param unit   The unit of {@code window}.
+         * @return A reference to the collection that coalesces updates.
+         */
+        public Collection withUpdateCoalescing(final long window, final TimeUnit unit) {
+            final StitchClient client = _database._client._stitchClient;
+            return new Collection(_database, _collName, _insertBatcher, new UpdateCoalescer(
+                    this,
+                    unit.toMillis(window),
+                    client.getExecutor(),
+                    client.getScheduler()), _requestOptions, _localSource, _writeJournal, _optimisticUpdates);
+        }
+
+        /**
+         * Gets a reference to this collection whose finds are answered from a snapshot on the
+         * device, without a network call, whenever their query specifier keeps every condition
+         * of the snapshot's query specifier. Other finds, finds the device cannot evaluate and
+         * every find after a write through the returned reference go to the server.
+         *
+         * @param snapshot A snapshot fetched from this collection.
+         * @return A reference to the collection that answers finds from the snapshot.
+         */
+        public Collection withSnapshot(final CollectionSnapshot snapshot) {
+            return withLocalSource(snapshot.asLocalSource());
+        }
+
+        /**
+         * Gets a reference to this collection whose finds and counts are answered from a
+         * replica on the device, without a network call, whenever the replica is up to date and
+         * holds every document the query specifier can match. Writes through the returned
+         * reference are sent to the server and followed by a refresh of the replica; until it
+         * completes, finds go to the server.
+         *
+         * @param replica A replica of this collection.
+         * @return A reference to the collection that answers finds and counts from the replica.
+         */
+        public Collection withLocalReplica(final LocalReplica replica) {
+            return withLocalSource(replica.asLocalSource());
+        }
+
+        /**
+         * Gets a reference to this collection whose {@link #insertOne}, {@link #updateOne},
+         * {@link #updateMany}, {@link #deleteOne} and {@link #deleteMany} writes are recorded in
+         * a journal on the device and sent to Stitch in the background. Their tasks complete
+         * once the write is durably recorded, before Stitch has applied it; the outcome is
+         * reported to the journal's listeners. Writes are applied in the order they were made
+         * through references using the same journal. {@link #insertMany} and
+         * {@link #bulkWrite} are not journaled and are sent right away.
+         * <p>
+         * Journaled writes are delivered at least once: a write whose response is lost, or that
+         * was being sent when the app stopped, is sent again. Inserts are reconciled by
+         * {@code _id}, but updates using operators such as {@code $inc} or {@code $push} may
+         * then be applied twice.
+         *
+         * @param journal A started journal of this collection.
+         * @return A reference to the collection that writes behind.
+         */
+        public Collection withWriteBehind(final WriteJournal journal) {
+            return new Collection(_database, _collName, _insertBatcher, _updateCoalescer, _requestOptions, _localSource, journal, _optimisticUpdates);
+        }
+
+        /**
+         * Gets a reference to this collection whose updates are applied to the shared documents
+         * of the client's entity cache as soon as they are made, before they are sent. Single
+         * document updates apply to the cached document if their query specifier matches on
+         * {@code _id} only, and many document updates apply to every cached document their
+         * query specifier matches. Only updates made of {@code $set}, {@code $inc},
+         * {@code $push} and {@code $unset} are applied. Once the server confirms an update, the
+         * documents it changed are read again to reconcile them; if it fails, the update is
+         * rolled back. Listeners added with {@link #addDocumentListener} are notified of every
+         * change. With write-behind, updates are confirmed once recorded in the journal.
+         *
+         * @return A reference to the collection that updates optimistically.
+         * @throws IllegalStateException If the client has no entity cache.
+         */
+        public Collection withOptimisticUpdates() {
+            if (_database._client._entityCache == null) {
+                throw new IllegalStateException("optimistic updates require an entity cache");
+            }
+            return new Collection(_database, _collName, _insertBatcher, _updateCoalescer, _requestOptions, _localSource, _writeJournal, true);
+        }
+
+        /**
+         * Adds a listener that is notified whenever a shared document of this collection is
+         * replaced by a changed one.
+         *
+         * @param listener The listener to notify.
+         * @throws IllegalStateException If the client has no entity cache.
+         */
+        public void addDocumentListener(final DocumentListener listener) {
+            if (_database._client._entityCache == null) {
+                throw new IllegalStateException("document listeners require an entity cache");
+            }
+            _database._client._entityCache.addListener(getNamespace(), listener);
+        }
+
+        /**
+         * Removes a listener added with {@link #addDocumentListener}.
+         *
+         * @param listener The listener to stop notifying.
+         */
+        public void removeDocumentListener(final DocumentListener listener) {
+            if (_database._client._entityCache != null) {
+                _database._client._entityCache.removeListener(getNamespace(), listener);
+            }
+        }
+
+        private Collection withLocalSource(final LocalSource localSource) {
+            if (!localSource.getNamespace().equals(getNamespace())) {
+                throw new IllegalArgumentException("local documents are of a different collection");
+            }
+            return new Collection(_database, _collName, _insertBatcher, _updateCoalescer, _requestOptions, localSource, _writeJournal, _optimisticUpdates);
+        }
+
+        /**
+         * Fetches every document matching a query to answer later finds from.
+         *
+         * @param query The query specifier; narrower finds can be answered from the snapshot.
+         * @return A task containing the snapshot that can be resolved upon completion of the
+         * request.
+         */
+        public Task<CollectionSnapshot> fetchSnapshot(final Document query) {
+            return fetchAll(query).continueWith(getExecutor(), new Continuation<List<Document>, CollectionSnapshot>() {
+                @Override
+                public CollectionSnapshot then(@NonNull final Task<List<Document>> task) throws Exception {
+                    if (!task.isSuccessful()) {
+                        throw task.getException();
+                    }
+                    return new CollectionSnapshot(getNamespace(), query, task.getResult());
+                }
+            });
+        }
+
+        /**
+         * Sends any inserts waiting in the current batch without waiting for the window to end.
+         * Does nothing if this reference does not batch inserts.
+         */
+        public void flushInserts() {
+            if (_insertBatcher != null) {
+                _insertBatcher.flush();
+            }
+        }
+
+        /**
+         * Sends any updates waiting to be merged without waiting for their window to end.
+         * Does nothing if this reference does not coalesce updates.
+         */
+        public void flushUpdates() {
+            if (_updateCoalescer != null) {
+                _updateCoalescer.flush();
+            }
         }
 
         /**
@@ -102,6 +442,26 @@ public class MongoClient {
                 final Document projection,
                 final Integer limit,
                 final Boolean count
+        ) {
+            return makeFindStage(query, projection, limit, count, null);
+        }
+
+        /**
+         * Makes a stage that executes a find on the collection with additional options.
+         *
+         * @param query      The query specifier.
+         * @param projection The projection document.
+         * @param limit      The maximum amount of matching documents to accept.
+         * @param count      Whether or not to output a count of documents matching the query.
+         * @param options    The sort, skip, hint and time limit to apply on the server.
+         * @return A stage representing this CRUD action.
+         */
+        public PipelineStage makeFindStage(
+                final Document query,
+                final Document projection,
+                final Integer limit,
+                final Boolean count,
+                final FindOptions options
         ) {
             final Map<String, Object> args = new HashMap<>();
             args.put(Parameters.DATABASE, _database._dbName);
@@ -117,6 +477,20 @@ public class MongoClient {
             if (count != null) {
                 args.put(Parameters.COUNT, count);
             }
+            if (options != null) {
+                if (options.getSort() != null) {
+                    args.put(Parameters.SORT, options.getSort());
+                }
+                if (options.getSkip() != null) {
+                    args.put(Parameters.SKIP, options.getSkip());
+                }
+                if (options.getHint() != null) {
+                    args.put(Parameters.HINT, options.getHint());
+                }
+                if (options.getMaxTimeMS() != null) {
+                    args.put(Parameters.MAX_TIME_MS, options.getMaxTimeMS());
+                }
+            }
 
             return new PipelineStage(
                     Stages.FIND,
@@ -210,7 +584,7 @@ public class MongoClient {
          * of the request.
          */
         public Task<List<Document>> find(final Document query) {
-            return convertToDocuments(_database._client._stitchClient.executePipeline(makeFindStage(query, null, null, null)));
+            return findDocuments(query, null, null, null);
         }
 
         /**
@@ -222,7 +596,7 @@ public class MongoClient {
          * of the request.
          */
         public Task<List<Document>> find(final Document query, final Integer limit) {
-            return convertToDocuments(_database._client._stitchClient.executePipeline(makeFindStage(query, null, limit, null)));
+            return findDocuments(query, null, limit, null);
         }
 
         /**
@@ -234,7 +608,7 @@ public class MongoClient {
          * of the request.
          */
         public Task<List<Document>> find(final Document query, final Document projection) {
-            return convertToDocuments(_database._client._stitchClient.executePipeline(makeFindStage(query, projection, null, null)));
+            return findDocuments(query, projection, null, null);
         }
 
         /**
@@ -247,34 +621,231 @@ public class MongoClient {
          * of the request.
          */
         public Task<List<Document>> find(final Document query, final Document projection, final Integer limit) {
-            return convertToDocuments(_database._client._stitchClient.executePipeline(makeFindStage(query, projection, limit, null)));
+            return findDocuments(query, projection, limit, null);
         }
 
         /**
-         * Counts the number of documents matching a query.
+         * Finds documents matching a query with additional options applied on the server.
+         *
+         * @param query   The query specifier.
+         * @param options The sort, skip, hint and time limit to apply on the server.
+         * @return A task containing the matched documents that can be resolved upon completion
+         * of the request.
+         */
+        public Task<List<Document>> find(final Document query, final FindOptions options) {
+            return find(query, null, null, options);
+        }
+
+        /**
+         * Finds and projects documents matching a query up to the specified limit with additional
+         * options applied on the server.
          *
          * @param query      The query specifier.
-         * @return A task containing the number of matched documents that can be resolved upon completion
+         * @param projection The projection document.
+         * @param limit      The maximum amount of matching documents to accept.
+         * @param options    The sort, skip, hint and time limit to apply on the server.
+         * @return A task containing the matched and projected documents that can be resolved upon completion
          * of the request.
          */
-        public Task<Integer> count(final Document query) {
-            return _database._client._stitchClient.executePipeline(makeFindStage(query, null, null, true)).continueWith(new Continuation<List<Object>, Integer>() {
+        public Task<List<Document>> find(
+                final Document query,
+                final Document projection,
+                final Integer limit,
+                final FindOptions options
+        ) {
+            return findDocuments(query, projection, limit, options);
+        }
+
+        /**
+         * Finds and projects documents matching a query, handing each document to a listener as
+         * soon as it is decoded from the response. Documents are decoded while they download if
+         * the transport streams responses, so the result never has to fit in memory as a whole.
+         * The documents are always read from the server and are not resolved through the
+         * entity cache.
+         *
+         * @param query      The query specifier.
+         * @param projection The projection document.
+         * @param limit      The maximum amount of matching documents to accept.
+         * @param options    The sort, skip, hint and time limit to apply on the server.
+         * @param listener   The listener to hand each matched and projected document to.
+         * @return A task that can be resolved once every document has been handed to the
+         * listener.
+         */
+        public Task<Void> find(
+                final Document query,
+                final Document projection,
+                final Integer limit,
+                final FindOptions options,
+                final ResultListener<Document> listener
+        ) {
+            return _database._client._stitchClient.executePipeline(
+                    Collections.singletonList(makeFindStage(query, projection, limit, null, options)),
+                    _requestOptions,
+                    new ResultListener<Object>() {
+                        @Override
+                        public void onResult(final Object element) {
+                            listener.onResult((Document) element);
+                        }
+                    });
+        }
+
+        /**
+         * Finds a document by its {@code _id}. If the client has an entity cache holding the
+         * document, it is returned without a network call.
+         *
+         * @param id The {@code _id} of the document.
+         * @return A task containing the document, or {@code null} if there is none, that can be
+         * resolved upon completion of the request.
+         */
+        public Task<Document> findById(final Object id) {
+            final EntityCache entityCache = _database._client._entityCache;
+            if (entityCache != null) {
+                final Document cached = entityCache.get(getNamespace(), id);
+                if (cached != null) {
+                    return Tasks.forResult(cached);
+                }
+            }
+            return findDocuments(new Document(ID_FIELD, id), null, 1, null).continueWith(getExecutor(), new Continuation<List<Document>, Document>() {
                 @Override
-                public Integer then(@NonNull final Task<List<Object>> task) throws Exception {
-                    if (task.isSuccessful()) {
-                        return (Integer) task.getResult().get(0);
-                    } else {
-                        Log.d(
-                                TAG,
-                                "Error getting pipeline results",
-                                task.getException()
-                        );
+                public Document then(@NonNull final Task<List<Document>> task) throws Exception {
+                    if (!task.isSuccessful()) {
                         throw task.getException();
                     }
+                    final List<Document> documents = task.getResult();
+                    return documents.isEmpty() ? null : documents.get(0);
                 }
             });
         }
 
+        /**
+         * Opens a cursor over the documents matching a query that fetches them in batches.
+         *
+         * @param query     The query specifier.
+         * @param batchSize The maximum amount of documents to fetch per batch.
+         * @return A cursor over the matched documents.
+         */
+        public FindCursor findCursor(final Document query, final int batchSize) {
+            return findCursor(query, null, batchSize);
+        }
+
+        /**
+         * Opens a cursor over the projected documents matching a query that fetches them in
+         * batches ordered by {@code _id}. The batch after the one most recently handed out is
+         * fetched while it is being consumed.
+         *
+         * @param query      The query specifier.
+         * @param projection The projection document.
+         * @param batchSize  The maximum amount of documents to fetch per batch.
+         * @return A cursor over the matched and projected documents.
+         */
+        public FindCursor findCursor(final Document query, final Document projection, final int batchSize) {
+            return new FindCursor(this, query, projection, batchSize, true, getExecutor());
+        }
+
+        /**
+         * Finds documents matching a query as a Reactive Streams {@link org.reactivestreams.Publisher}
+         * that fetches them in batches as its subscribers demand them.
+         *
+         * @param query     The query specifier.
+         * @param batchSize The maximum amount of documents to fetch per batch.
+         * @return A publisher of the matched documents.
+         */
+        public FindPublisher findPublisher(final Document query, final int batchSize) {
+            return findPublisher(query, null, batchSize);
+        }
+
+        /**
+         * Finds and projects documents matching a query as a Reactive Streams
+         * {@link org.reactivestreams.Publisher}. Every subscriber gets its own cursor, ordered by
+         * {@code _id}, whose next batch is only fetched once the subscriber has requested more
+         * documents than are left of the previous one.
+         *
+         * @param query      The query specifier.
+         * @param projection The projection document.
+         * @param batchSize  The maximum amount of documents to fetch per batch.
+         * @return A publisher of the matched and projected documents.
+         */
+        public FindPublisher findPublisher(final Document query, final Document projection, final int batchSize) {
+            return new FindPublisher(this, query, projection, batchSize, getExecutor());
+        }
+
+        /**
+         * Finds documents matching a query. The documents are backed by their raw BSON and
+         * only decode a field when it is accessed. This only saves memory if the client uses
+         * {@link com.mongodb.stitch.android.WireFormat#BSON}; with extended JSON the result is
+         * decoded in full and then encoded again, which costs more CPU time and memory than
+         * {@link #find(Document)}.
+         *
+         * @param query The query specifier.
+         * @return A task containing the matched raw documents that can be resolved upon completion
+         * of the request.
+         */
+        public Task<List<RawBsonDocument>> findRaw(final Document query) {
+            return executeRawPipeline(makeFindStage(query, null, null, null));
+        }
+
+        /**
+         * Finds and projects documents matching a query. The documents are backed by their raw
+         * BSON and only decode a field when it is accessed. See {@link #findRaw(Document)} for
+         * when this saves memory.
+         *
+         * @param query      The query specifier.
+         * @param projection The projection document.
+         * @return A task containing the matched and projected raw documents that can be resolved
+         * upon completion of the request.
+         */
+        public Task<List<RawBsonDocument>> findRaw(final Document query, final Document projection) {
+            return executeRawPipeline(makeFindStage(query, projection, null, null));
+        }
+
+        /**
+         * Finds and projects documents matching a query up to the specified limit. The documents
+         * are backed by their raw BSON and only decode a field when it is accessed. See
+         * {@link #findRaw(Document)} for when this saves memory.
+         *
+         * @param query      The query specifier.
+         * @param projection The projection document.
+         * @param limit      The maximum amount of matching documents to accept.
+         * @return A task containing the matched and projected raw documents that can be resolved
+         * upon completion of the request.
+         */
+        public Task<List<RawBsonDocument>> findRaw(final Document query, final Document projection, final Integer limit) {
+            return executeRawPipeline(makeFindStage(query, projection, limit, null));
+        }
+
+        /**
+         * Finds and projects documents matching a query up to the specified limit with additional
+         * options applied on the server. The documents are backed by their raw BSON and only
+         * decode a field when it is accessed. See {@link #findRaw(Document)} for when this
+         * saves memory.
+         *
+         * @param query      The query specifier.
+         * @param projection The projection document.
+         * @param limit      The maximum amount of matching documents to accept.
+         * @param options    The sort, skip, hint and time limit to apply on the server.
+         * @return A task containing the matched and projected raw documents that can be resolved
+         * upon completion of the request.
+         */
+        public Task<List<RawBsonDocument>> findRaw(
+                final Document query,
+                final Document projection,
+                final Integer limit,
+                final FindOptions options
+        ) {
+            return executeRawPipeline(makeFindStage(query, projection, limit, null, options));
+        }
+
+        /**
+         * Counts the number of documents matching a query.
+         *
+         * @param query      The query specifier.
+         * @return A task containing the number of matched documents that can be resolved upon completion
+         * of the request.
+         */
+        public Task<Integer> count(final Document query) {
+            return count(query, null, null);
+        }
+
         /**
          * Counts the number of documents matching a query up to the specified limit.
          *
@@ -284,7 +855,55 @@ public class MongoClient {
          * of the request.
          */
         public Task<Integer> count(final Document query, final Integer limit) {
-            return _database._client._stitchClient.executePipeline(makeFindStage(query, null, limit, true)).continueWith(new Continuation<List<Object>, Integer>() {
+            return count(query, limit, null);
+        }
+
+        /**
+         * Counts the number of documents matching a query with additional options applied on
+         * the server.
+         *
+         * @param query   The query specifier.
+         * @param options The skip, hint and time limit to apply on the server.
+         * @return A task containing the number of matched documents that can be resolved upon completion
+         * of the request.
+         */
+        public Task<Integer> count(final Document query, final FindOptions options) {
+            return count(query, null, options);
+        }
+
+        /**
+         * Counts the number of documents matching a query up to the specified limit with
+         * additional options applied on the server.
+         *
+         * @param query   The query specifier.
+         * @param limit   The maximum amount of matching documents to accept.
+         * @param options The skip, hint and time limit to apply on the server.
+         * @return A task containing the number of matched documents that can be resolved upon completion
+         * of the request.
+         */
+        public Task<Integer> count(final Document query, final Integer limit, final FindOptions options) {
+            if (_localSource != null && _localSource.covers(query)) {
+                return Tasks.call(getExecutor(), new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return _localSource.count(query, limit, options);
+                    }
+                }).continueWithTask(getExecutor(), new Continuation<Integer, Task<Integer>>() {
+                    @Override
+                    public Task<Integer> then(@NonNull final Task<Integer> task) throws Exception {
+                        if (task.isSuccessful()) {
+                            return task;
+                        }
+                        Log.d(TAG, "Counting on the server instead of locally", task.getException());
+                        return countOnServer(query, limit, options);
+                    }
+                });
+            }
+            return countOnServer(query, limit, options);
+        }
+
+        private Task<Integer> countOnServer(final Document query, final Integer limit, final FindOptions options) {
+            return executePipeline(makeFindStage(query, null, limit, true, options)).continueWith(getExecutor(), new Continuation<List<Object>, Integer>() {
                 @Override
                 public Integer then(@NonNull final Task<List<Object>> task) throws Exception {
                     if (task.isSuccessful()) {
@@ -321,7 +940,28 @@ public class MongoClient {
          * @return A task that can be resolved upon completion of the request.
          */
         public Task<Void> updateOne(final Document query, final Document update, final boolean upsert) {
-            return _database._client._stitchClient.executePipeline(makeUpdateStage(query, update, upsert, false)).continueWith(new Continuation<List<Object>, Void>() {
+            final EntityCache.OptimisticUpdate applied = applyOptimistic(query, update, false);
+            final Task<Void> write;
+            if (_writeJournal != null) {
+                write = _writeJournal.append(new UpdateOneModel(query, update, upsert));
+            } else if (_updateCoalescer != null) {
+                write = _updateCoalescer.update(query, update, upsert);
+            } else {
+                write = sendUpdateOne(query, update, upsert);
+            }
+            return settleOptimistic(applied, write);
+        }
+
+        /**
+         * Updates a single document matching the query specifier in its own request.
+         *
+         * @param query  The query specifier.
+         * @param update The update specifier.
+         * @param upsert Whether or not to upsert if the query matches no documents.
+         * @return A task that can be resolved upon completion of the request.
+         */
+        Task<Void> sendUpdateOne(final Document query, final Document update, final boolean upsert) {
+            return executeWrite(makeUpdateStage(query, update, upsert, false), query, false).continueWith(getExecutor(), new Continuation<List<Object>, Void>() {
                 @Override
                 public Void then(@NonNull final Task<List<Object>> task) throws Exception {
                     if (task.isSuccessful()) {
@@ -357,7 +997,11 @@ public class MongoClient {
          * @return A task that can be resolved upon completion of the request.
          */
         public Task<Void> updateMany(final Document query, final Document update, final boolean upsert) {
-            return _database._client._stitchClient.executePipeline(makeUpdateStage(query, update, upsert, true)).continueWith(new Continuation<List<Object>, Void>() {
+            final EntityCache.OptimisticUpdate applied = applyOptimistic(query, update, true);
+            if (_writeJournal != null) {
+                return settleOptimistic(applied, _writeJournal.append(new UpdateManyModel(query, update, upsert)));
+            }
+            return settleOptimistic(applied, executeWrite(makeUpdateStage(query, update, upsert, true), query, false).continueWith(getExecutor(), new Continuation<List<Object>, Void>() {
                 @Override
                 public Void then(@NonNull final Task<List<Object>> task) throws Exception {
                     if (task.isSuccessful()) {
@@ -370,17 +1014,24 @@ public class MongoClient {
                     );
                     throw task.getException();
                 }
-            });
+            }));
         }
 
         /**
-         * Inserts a single document.
+         * Inserts a single document. If this reference batches inserts, the document is sent
+         * along with the other inserts of the current batch.
          *
          * @param document The document to insert.
          * @return A task that can be resolved upon completion of the request.
          */
         public Task<Void> insertOne(final Document document) {
-            return _database._client._stitchClient.executePipeline(makeInsertStage(Collections.singletonList(document))).continueWith(new Continuation<List<Object>, Void>() {
+            if (_writeJournal != null) {
+                return _writeJournal.append(new InsertOneModel(document));
+            }
+            if (_insertBatcher != null) {
+                return _insertBatcher.insert(document);
+            }
+            return executeWrite(makeInsertStage(Collections.singletonList(document)), idQueries(Collections.singletonList(document)), false).continueWith(getExecutor(), new Continuation<List<Object>, Void>() {
                 @Override
                 public Void then(@NonNull final Task<List<Object>> task) throws Exception {
                     if (task.isSuccessful()) {
@@ -397,13 +1048,180 @@ public class MongoClient {
         }
 
         /**
-         * Inserts many documents.
+         * Inserts many documents. Large lists are split into batches that are inserted one after
+         * another.
          *
          * @param documents The list of documents to insert.
-         * @return A task that can be resolved upon completion of the request.
+         * @return A task that can be resolved upon completion of the request. The task fails with
+         * the error of the first batch that could not be inserted.
          */
         public Task<Void> insertMany(final List<Document> documents) {
-            return _database._client._stitchClient.executePipeline(makeInsertStage(documents)).continueWith(new Continuation<List<Object>, Void>() {
+            return insertMany(documents, new InsertManyOptions()).continueWith(getExecutor(), new Continuation<List<InsertBatchResult>, Void>() {
+                @Override
+                public Void then(@NonNull final Task<List<InsertBatchResult>> task) throws Exception {
+                    if (!task.isSuccessful()) {
+                        throw task.getException();
+                    }
+                    for (final InsertBatchResult result : task.getResult()) {
+                        if (result.getException() != null) {
+                            throw result.getException();
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        /**
+         * Inserts many documents in batches bounded by document count and encoded size.
+         *
+         * @param documents The list of documents to insert.
+         * @param options   How to batch and send the documents.
+         * @return A task containing the result of every batch, in input order, that can be
+         * resolved once every batch has completed or been skipped.
+         */
+        public Task<List<InsertBatchResult>> insertMany(
+                final List<Document> documents,
+                final InsertManyOptions options
+        ) {
+            return new InsertManyOperation(this, documents, options, getExecutor()).execute();
+        }
+
+        /**
+         * Applies many write operations in order, using as few requests as possible. Adjacent
+         * inserts and adjacent deleteMany operations are each sent as a single request. The
+         * operations after the first one that fails are not applied.
+         *
+         * @param models The write operations to apply.
+         * @return A task containing the result of every operation, in input order, that can be
+         * resolved once every operation has completed or been skipped.
+         */
+        public Task<List<WriteResult>> bulkWrite(final List<? extends WriteModel> models) {
+            return bulkWrite(models, true);
+        }
+
+        /**
+         * Applies many write operations using as few requests as possible. Inserts and
+         * deleteMany operations are each merged into a single request, only where they are
+         * adjacent if the write is ordered. The requests of an unordered write are sent
+         * concurrently and a failed request does not stop the others.
+         *
+         * @param models  The write operations to apply.
+         * @param ordered Whether or not the operations must be applied in order, stopping at the
+         *                first one that fails.
+         * @return A task containing the result of every operation, in input order, that can be
+         * resolved once every operation has completed or been skipped.
+         */
+        public Task<List<WriteResult>> bulkWrite(
+                final List<? extends WriteModel> models,
+                final boolean ordered
+        ) {
+            return new BulkWriteOperation(this, models, ordered, getExecutor()).execute();
+        }
+
+        /**
+         * Executes a pipeline that writes to the collection.
+         *
+         * @param pipeline The stages of the write.
+         * @return A task containing the result of the pipeline that can be resolved upon
+         * completion of the request.
+         */
+        Task<List<Object>> executeWrite(final List<PipelineStage> pipeline) {
+            return executeWrite(pipeline, null, true);
+        }
+
+        /**
+         * Executes a single stage pipeline that writes to the documents matching a query.
+         *
+         * @param stage            The stage of the write.
+         * @param query            The query specifier of the write.
+         * @param removesDocuments Whether or not the write can delete documents.
+         * @return A task containing the result of the pipeline that can be resolved upon
+         * completion of the request.
+         */
+        private Task<List<Object>> executeWrite(
+                final PipelineStage stage,
+                final Document query,
+                final boolean removesDocuments
+        ) {
+            return executeWrite(Collections.singletonList(stage), Collections.singletonList(query), removesDocuments);
+        }
+
+        /**
+         * Executes a pipeline that writes to the collection, evicting the documents it may
+         * change from the entity cache both before it is sent and once it completes.
+         *
+         * @param pipeline The stages of the write.
+         * @param queries          The query specifiers of the documents written to, or
+         *                         {@code null} if any document in the collection may be
+         *                         written to.
+         * @param removesDocuments Whether or not the write can delete documents.
+         * @return A task containing the result of the pipeline that can be resolved upon
+         * completion of the request.
+         */
+        private Task<List<Object>> executeWrite(
+                final List<PipelineStage> pipeline,
+                final List<Document> queries,
+                final boolean removesDocuments
+        ) {
+            final EntityCache entityCache = _database._client._entityCache;
+            if (entityCache == null) {
+                return notifyLocalSource(executePipeline(pipeline), removesDocuments);
+            }
+
+            evictEntities(entityCache, queries);
+            final Task<List<Object>> write = notifyLocalSource(executePipeline(pipeline), removesDocuments);
+            write.addOnCompleteListener(getExecutor(), new OnCompleteListener<List<Object>>() {
+                @Override
+                public void onComplete(@NonNull final Task<List<Object>> task) {
+                    evictEntities(entityCache, queries);
+                }
+            });
+            return write;
+        }
+
+        private Task<List<Object>> notifyLocalSource(
+                final Task<List<Object>> write,
+                final boolean removesDocuments
+        ) {
+            if (_localSource != null) {
+                _localSource.onWrite(write, removesDocuments);
+            }
+            return write;
+        }
+
+        private void evictEntities(final EntityCache entityCache, final List<Document> queries) {
+            if (queries == null) {
+                entityCache.invalidate(getNamespace(), null);
+                return;
+            }
+            for (final Document query : queries) {
+                entityCache.invalidate(getNamespace(), query);
+            }
+        }
+
+        /**
+         * @param documents The documents being inserted.
+         * @return A query specifier on {@code _id} for every document that has one.
+         */
+        private static List<Document> idQueries(final List<Document> documents) {
+            final List<Document> queries = new ArrayList<>();
+            for (final Document document : documents) {
+                if (document.containsKey(ID_FIELD)) {
+                    queries.add(new Document(ID_FIELD, document.get(ID_FIELD)));
+                }
+            }
+            return queries;
+        }
+
+        /**
+         * Inserts a single batch of documents in one request.
+         *
+         * @param documents The list of documents to insert.
+         * @return A task that can be resolved upon completion of the request.
+         */
+        Task<Void> insertBatch(final List<Document> documents) {
+            return executeWrite(makeInsertStage(documents), idQueries(documents), false).continueWith(getExecutor(), new Continuation<List<Object>, Void>() {
                 @Override
                 public Void then(@NonNull final Task<List<Object>> task) throws Exception {
                     if (task.isSuccessful()) {
@@ -426,7 +1244,10 @@ public class MongoClient {
          * @return A task that can be resolved upon completion of the request.
          */
         public Task<Void> deleteOne(final Document query) {
-            return _database._client._stitchClient.executePipeline(makeDeleteStage(query, true)).continueWith(new Continuation<List<Object>, Void>() {
+            if (_writeJournal != null) {
+                return _writeJournal.append(new DeleteOneModel(query));
+            }
+            return executeWrite(makeDeleteStage(query, true), query, true).continueWith(getExecutor(), new Continuation<List<Object>, Void>() {
                 @Override
                 public Void then(@NonNull final Task<List<Object>> task) throws Exception {
                     if (task.isSuccessful()) {
@@ -449,7 +1270,10 @@ public class MongoClient {
          * @return A task that can be resolved upon completion of the request.
          */
         public Task<Void> deleteMany(final Document query) {
-            return _database._client._stitchClient.executePipeline(makeDeleteStage(query, false)).continueWith(new Continuation<List<Object>, Void>() {
+            if (_writeJournal != null) {
+                return _writeJournal.append(new DeleteManyModel(query));
+            }
+            return executeWrite(makeDeleteStage(query, false), query, true).continueWith(getExecutor(), new Continuation<List<Object>, Void>() {
                 @Override
                 public Void then(@NonNull final Task<List<Object>> task) throws Exception {
                     if (task.isSuccessful()) {
@@ -465,6 +1289,190 @@ public class MongoClient {
             });
         }
 
+        /**
+         * Fetches every full document matching a query from the server.
+         *
+         * @param query The query specifier.
+         * @return A task containing the matched documents that can be resolved upon completion
+         * of the request.
+         */
+        Task<List<Document>> fetchAll(final Document query) {
+            return convertToDocuments(executePipeline(makeFindStage(query, null, null, null)));
+        }
+
+        /**
+         * Fetches a page of full documents matching a query from the server.
+         *
+         * @param query The query specifier.
+         * @param sort  The order of the documents.
+         * @param limit The maximum amount of documents in the page.
+         * @return A task containing the matched documents that can be resolved upon completion
+         * of the request.
+         */
+        Task<List<Document>> fetchPage(final Document query, final Document sort, final int limit) {
+            return convertToDocuments(executePipeline(
+                    makeFindStage(query, null, limit, null, new FindOptions().withSort(sort))));
+        }
+
+        /**
+         * @return The client the collection is accessed through.
+         */
+        StitchClient getStitchClient() {
+            return _database._client._stitchClient;
+        }
+
+        /**
+         * @return The name of the MongoDB service the collection is accessed through.
+         */
+        String getService() {
+            return _database._client._service;
+        }
+
+        /**
+         * @return The executor that pipeline results are processed on.
+         */
+        Executor getExecutor() {
+            return _database._client._stitchClient.getExecutor();
+        }
+
+        private Task<List<Object>> executePipeline(final PipelineStage stage) {
+            return executePipeline(Collections.singletonList(stage));
+        }
+
+        private Task<List<Object>> executePipeline(final List<PipelineStage> pipeline) {
+            return _database._client._stitchClient.executePipeline(pipeline, _requestOptions);
+        }
+
+        private Task<List<RawBsonDocument>> executeRawPipeline(final PipelineStage stage) {
+            return _database._client._stitchClient.executeRawPipeline(
+                    Collections.singletonList(stage), _requestOptions);
+        }
+
+        /**
+         * Finds documents, answering from the local documents of this reference when they cover the
+         * query specifier and resolving full documents to their shared instances if the client
+         * has an entity cache.
+         *
+         * @param query      The query specifier.
+         * @param projection The projection document.
+         * @param limit      The maximum amount of matching documents to accept.
+         * @param options    The sort, skip, hint and time limit to apply on the server.
+         * @return A task containing the matched documents that can be resolved upon completion
+         * of the request.
+         */
+        private Task<List<Document>> findDocuments(
+                final Document query,
+                final Document projection,
+                final Integer limit,
+                final FindOptions options
+        ) {
+            if (_localSource != null && _localSource.covers(query)) {
+                return Tasks.call(getExecutor(), new Callable<List<Document>>() {
+                    @Override
+                    public List<Document> call() throws Exception {
+                        return _localSource.find(query, projection, limit, options);
+                    }
+                }).continueWithTask(getExecutor(), new Continuation<List<Document>, Task<List<Document>>>() {
+                    @Override
+                    public Task<List<Document>> then(@NonNull final Task<List<Document>> task) throws Exception {
+                        if (task.isSuccessful()) {
+                            return task;
+                        }
+                        Log.d(TAG, "Finding on the server instead of locally", task.getException());
+                        return findOnServer(query, projection, limit, options);
+                    }
+                });
+            }
+            return findOnServer(query, projection, limit, options);
+        }
+
+        /**
+         * Applies an update to the shared documents it targets if this reference updates
+         * optimistically.
+         *
+         * @return The applied update, or {@code null} if nothing was applied.
+         */
+        private EntityCache.OptimisticUpdate applyOptimistic(
+                final Document query,
+                final Document update,
+                final boolean multi
+        ) {
+            if (!_optimisticUpdates) {
+                return null;
+            }
+            return _database._client._entityCache.applyOptimistic(getNamespace(), query, update, multi);
+        }
+
+        /**
+         * Confirms an optimistic update and reconciles the documents it changed once the write
+         * succeeds, or rolls it back once the write fails.
+         *
+         * @param applied The applied update, if any.
+         * @param write   The task of the write.
+         * @return The task of the write.
+         */
+        private Task<Void> settleOptimistic(final EntityCache.OptimisticUpdate applied, final Task<Void> write) {
+            if (applied == null) {
+                return write;
+            }
+            final EntityCache entityCache = _database._client._entityCache;
+            write.addOnCompleteListener(getExecutor(), new OnCompleteListener<Void>() {
+                @Override
+                public void onComplete(@NonNull final Task<Void> task) {
+                    if (!task.isSuccessful()) {
+                        entityCache.rollback(applied);
+                        return;
+                    }
+                    final List<Object> settled = entityCache.confirm(applied);
+                    // Journaled writes have not reached the server yet; they evict once sent
+                    if (settled.isEmpty() || _writeJournal != null) {
+                        return;
+                    }
+                    findOnServer(new Document(ID_FIELD, new Document("$in", settled)), null, null, null)
+                            .addOnFailureListener(getExecutor(), new OnFailureListener() {
+                                @Override
+                                public void onFailure(@NonNull final Exception e) {
+                                    Log.d(TAG, "Error reconciling updated documents", e);
+                                }
+                            });
+                }
+            });
+            return write;
+        }
+
+        private Task<List<Document>> findOnServer(
+                final Document query,
+                final Document projection,
+                final Integer limit,
+                final FindOptions options
+        ) {
+            final EntityCache entityCache = _database._client._entityCache;
+            final long generation = entityCache == null ? 0 : entityCache.getGeneration();
+            final Task<List<Document>> documents =
+                    convertToDocuments(executePipeline(makeFindStage(query, projection, limit, null, options)));
+
+            // Projected documents are partial and are not cached
+            if (entityCache == null || (projection != null && !projection.isEmpty())) {
+                return documents;
+            }
+            return documents.continueWith(getExecutor(), new Continuation<List<Document>, List<Document>>() {
+                @Override
+                public List<Document> then(@NonNull final Task<List<Document>> task) throws Exception {
+                    if (!task.isSuccessful()) {
+                        throw task.getException();
+                    }
+                    return entityCache.resolve(getNamespace(), task.getResult(), generation);
+                }
+            });
+        }
+
+        /**
+         * @return The namespace of the collection.
+         */
+        String getNamespace() {
+            return String.format("%s.%s", _database._dbName, _collName);
+        }
+
         /**
          * Converts a series of documents into their concrete {@link Document} format.
          *
@@ -473,7 +1481,7 @@ public class MongoClient {
          * upon completion of the pipeline result.
          */
         private Task<List<Document>> convertToDocuments(final Task<List<Object>> pipelineResult) {
-            return pipelineResult.continueWith(new Continuation<List<Object>, List<Document>>() {
+            return pipelineResult.continueWith(getExecutor(), new Continuation<List<Object>, List<Document>>() {
                 @Override
                 public List<Document> then(@NonNull final Task<List<Object>> task) throws Exception {
                     if (task.isSuccessful()) {
@@ -514,6 +1522,10 @@ public class MongoClient {
             private static final String SINGLE_DOCUMENT = "singleDoc";
             private static final String LIMIT = "limit";
             private static final String COUNT = "count";
+            private static final String SORT = "sort";
+            private static final String SKIP = "skip";
+            private static final String HINT = "hint";
+            private static final String MAX_TIME_MS = "maxTimeMS";
         }
     }
 }
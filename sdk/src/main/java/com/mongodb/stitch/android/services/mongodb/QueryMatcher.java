@@ -0,0 +1,826 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A QueryMatcher evaluates MongoDB query specifiers, projections and sorts against documents
+ * held on the device. It supports implicit equality, {@code $eq}, {@code $ne}, {@code $gt},
+ * {@code $gte}, {@code $lt}, {@code $lte}, {@code $in}, {@code $nin}, {@code $exists},
+ * {@code $not}, {@code $size}, {@code $all}, {@code $elemMatch}, {@code $regex}, {@code $and},
+ * {@code $or} and {@code $nor} on dotted paths, traversing arrays the way the server does.
+ * Anything else is rejected with an {@link IllegalArgumentException} so that callers can fall
+ * back to the server instead of returning a wrong answer.
+ */
+final class QueryMatcher {
+
+    private QueryMatcher() {
+    }
+
+    /**
+     * @param query    The query specifier.
+     * @param document The document to evaluate the query specifier against.
+     * @return Whether or not the document matches the query specifier.
+     * @throws IllegalArgumentException If the query specifier uses an unsupported operator.
+     */
+    static boolean matches(final Document query, final Map<String, Object> document) {
+        return query == null || matchesQuery(query, document);
+    }
+
+    /**
+     * @param document   The document to project.
+     * @param projection The projection document, or {@code null} to keep every field.
+     * @return The projected document; the document itself if there is no projection.
+     * @throws IllegalArgumentException If the projection uses an operator or mixes inclusion and
+     *                                  exclusion.
+     */
+    static Document project(final Document document, final Document projection) {
+        if (projection == null || projection.isEmpty()) {
+            return document;
+        }
+
+        boolean includeId = true;
+        Boolean inclusion = null;
+        final Map<String, Object> tree = new LinkedHashMap<>();
+        for (final Map.Entry<String, Object> field : projection.entrySet()) {
+            final boolean included = isTruthy(field.getValue());
+            if (field.getKey().equals(Fields.ID)) {
+                includeId = included;
+                continue;
+            }
+            if (inclusion != null && inclusion != included) {
+                throw new IllegalArgumentException("projection mixes inclusion and exclusion");
+            }
+            inclusion = included;
+            addPath(tree, field.getKey());
+        }
+
+        if (inclusion == null || !inclusion) {
+            if (!includeId) {
+                tree.put(Fields.ID, Boolean.TRUE);
+            }
+            return (Document) exclude(document, tree);
+        }
+
+        final Document projected = new Document();
+        if (includeId && document.containsKey(Fields.ID)) {
+            projected.put(Fields.ID, document.get(Fields.ID));
+        }
+        for (final Map.Entry<String, Object> field : ((Document) include(document, tree)).entrySet()) {
+            if (!field.getKey().equals(Fields.ID)) {
+                projected.put(field.getKey(), field.getValue());
+            }
+        }
+        return projected;
+    }
+
+    /**
+     * @param sort The sort specification.
+     * @return A comparator ordering documents the way the sort specification would on the
+     * server for scalar values.
+     */
+    static Comparator<Map<String, Object>> comparator(final Document sort) {
+        return new Comparator<Map<String, Object>>() {
+            @Override
+            public int compare(final Map<String, Object> left, final Map<String, Object> right) {
+                for (final Map.Entry<String, Object> key : sort.entrySet()) {
+                    if (!(key.getValue() instanceof Number)) {
+                        throw new IllegalArgumentException("unsupported sort on " + key.getKey());
+                    }
+                    final int direction = ((Number) key.getValue()).intValue() < 0 ? -1 : 1;
+                    final int result = compareForSort(
+                            sortValue(left, key.getKey(), direction),
+                            sortValue(right, key.getKey(), direction));
+                    if (result != 0) {
+                        return direction * result;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * A query specifier is narrower than a base one if it keeps every top-level condition of
+     * the base unchanged, either directly or inside a top-level {@code $and}; it then matches a
+     * subset of the documents the base matches.
+     *
+     * @param query The query specifier.
+     * @param base  The base query specifier.
+     * @return Whether or not the query specifier is known to be narrower than the base.
+     */
+    static boolean isNarrowerThan(final Document query, final Document base) {
+        if (base == null || base.isEmpty()) {
+            return true;
+        }
+        if (query == null) {
+            return false;
+        }
+        for (final Map.Entry<String, Object> condition : base.entrySet()) {
+            if (!containsCondition(query, condition.getKey(), condition.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the documents matching a query the way a find on the server would.
+     *
+     * @param documents  The documents to search, in natural order.
+     * @param query      The query specifier.
+     * @param projection The projection document.
+     * @param limit      The maximum amount of matching documents to accept.
+     * @param options    The sort and skip to apply; other options are ignored.
+     * @return Copies of the matched and projected documents, which callers may modify without
+     * changing the documents searched.
+     */
+    static List<Document> find(
+            final Iterable<Document> documents,
+            final Document query,
+            final Document projection,
+            final Integer limit,
+            final FindOptions options
+    ) {
+        List<Document> matched = new ArrayList<>();
+        for (final Document document : documents) {
+            if (matches(query, document)) {
+                matched.add(document);
+            }
+        }
+
+        if (options != null && options.getSort() != null) {
+            Collections.sort(matched, comparator(options.getSort()));
+        }
+        final int skip = options != null && options.getSkip() != null ? options.getSkip() : 0;
+        matched = matched.subList(Math.min(skip, matched.size()), matched.size());
+        if (limit != null && limit > 0 && limit < matched.size()) {
+            matched = matched.subList(0, limit);
+        }
+
+        final List<Document> results = new ArrayList<>(matched.size());
+        for (final Document document : matched) {
+            results.add((Document) UpdateApplier.copy(project(document, projection)));
+        }
+        return results;
+    }
+
+    /**
+     * Counts the documents matching a query the way a count on the server would.
+     *
+     * @param documents The documents to search.
+     * @param query     The query specifier.
+     * @param limit     The maximum amount of matching documents to count.
+     * @param options   The skip to apply; other options are ignored.
+     * @return The number of matched documents.
+     */
+    static int count(
+            final Iterable<Document> documents,
+            final Document query,
+            final Integer limit,
+            final FindOptions options
+    ) {
+        int count = 0;
+        for (final Document document : documents) {
+            if (matches(query, document)) {
+                count++;
+            }
+        }
+        final int skip = options != null && options.getSkip() != null ? options.getSkip() : 0;
+        count = Math.max(0, count - skip);
+        return limit != null && limit > 0 ? Math.min(count, limit) : count;
+    }
+
+    /**
+     * @param document The document to look in.
+     * @param path     The dotted path.
+     * @return The values at the path, including the elements of array values.
+     */
+    static List<Object> valuesAt(final Map<String, Object> document, final String path) {
+        return candidates(resolve(document, path));
+    }
+
+    /**
+     * @return The order of two values in the server's comparison order, treating numbers of
+     * different types as equal when their values are.
+     */
+    static int compareValues(final Object left, final Object right) {
+        return compareForSort(left, right);
+    }
+
+    private static boolean containsCondition(final Document query, final String key, final Object value) {
+        if (query.containsKey(key) && valuesEqual(query.get(key), value)) {
+            return true;
+        }
+        final Object and = query.get(Operators.AND);
+        if (and instanceof List) {
+            for (final Object subQuery : (List<?>) and) {
+                if (subQuery instanceof Map
+                        && ((Map<?, ?>) subQuery).containsKey(key)
+                        && valuesEqual(((Map<?, ?>) subQuery).get(key), value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesQuery(final Map<?, ?> query, final Map<String, Object> document) {
+        for (final Map.Entry<?, ?> clause : query.entrySet()) {
+            final String key = (String) clause.getKey();
+            final Object condition = clause.getValue();
+            switch (key) {
+                case Operators.AND:
+                    for (final Map<?, ?> subQuery : subQueries(key, condition)) {
+                        if (!matchesQuery(subQuery, document)) {
+                            return false;
+                        }
+                    }
+                    break;
+                case Operators.OR:
+                    boolean any = false;
+                    for (final Map<?, ?> subQuery : subQueries(key, condition)) {
+                        if (matchesQuery(subQuery, document)) {
+                            any = true;
+                            break;
+                        }
+                    }
+                    if (!any) {
+                        return false;
+                    }
+                    break;
+                case Operators.NOR:
+                    for (final Map<?, ?> subQuery : subQueries(key, condition)) {
+                        if (matchesQuery(subQuery, document)) {
+                            return false;
+                        }
+                    }
+                    break;
+                default:
+                    if (key.startsWith("$")) {
+                        throw new IllegalArgumentException("unsupported query operator " + key);
+                    }
+                    if (!matchesField(resolve(document, key), condition)) {
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<?, ?>> subQueries(final String operator, final Object condition) {
+        if (!(condition instanceof List) || ((List<?>) condition).isEmpty()) {
+            throw new IllegalArgumentException(operator + " requires a non-empty array");
+        }
+        for (final Object subQuery : (List<?>) condition) {
+            if (!(subQuery instanceof Map)) {
+                throw new IllegalArgumentException(operator + " requires an array of documents");
+            }
+        }
+        return (List<Map<?, ?>>) condition;
+    }
+
+    /**
+     * @param values    The values found at the path of a field.
+     * @param condition The condition on the field.
+     * @return Whether or not the values satisfy the condition.
+     */
+    private static boolean matchesField(final List<Object> values, final Object condition) {
+        if (!isOperatorExpression(condition)) {
+            return matchesEquality(values, condition);
+        }
+
+        final Map<?, ?> operators = (Map<?, ?>) condition;
+        for (final Map.Entry<?, ?> entry : operators.entrySet()) {
+            final String operator = (String) entry.getKey();
+            final Object operand = entry.getValue();
+            final boolean matched;
+            switch (operator) {
+                case Operators.EQ:
+                    matched = matchesEquality(values, operand);
+                    break;
+                case Operators.NE:
+                    matched = !matchesEquality(values, operand);
+                    break;
+                case Operators.GT:
+                case Operators.GTE:
+                case Operators.LT:
+                case Operators.LTE:
+                    matched = matchesComparison(values, operator, operand);
+                    break;
+                case Operators.IN:
+                    matched = matchesAny(values, operand, operator);
+                    break;
+                case Operators.NIN:
+                    matched = !matchesAny(values, operand, operator);
+                    break;
+                case Operators.EXISTS:
+                    matched = values.isEmpty() != isTruthy(operand);
+                    break;
+                case Operators.NOT:
+                    if (!isOperatorExpression(operand)) {
+                        throw new IllegalArgumentException("$not requires an operator expression");
+                    }
+                    matched = !matchesField(values, operand);
+                    break;
+                case Operators.SIZE:
+                    matched = matchesSize(values, operand);
+                    break;
+                case Operators.ALL:
+                    matched = matchesAll(values, operand);
+                    break;
+                case Operators.ELEM_MATCH:
+                    matched = matchesElement(values, operand);
+                    break;
+                case Operators.REGEX:
+                    matched = matchesRegex(values, operand, operators.get(Operators.OPTIONS));
+                    break;
+                case Operators.OPTIONS:
+                    if (!operators.containsKey(Operators.REGEX)) {
+                        throw new IllegalArgumentException("$options requires $regex");
+                    }
+                    matched = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unsupported query operator " + operator);
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesEquality(final List<Object> values, final Object operand) {
+        if (operand == null && values.isEmpty()) {
+            return true;
+        }
+        if (operand instanceof Pattern) {
+            return matchesPattern(values, (Pattern) operand);
+        }
+        for (final Object candidate : candidates(values)) {
+            if (valuesEqual(candidate, operand)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesComparison(final List<Object> values, final String operator, final Object operand) {
+        for (final Object candidate : candidates(values)) {
+            final Integer result = compare(candidate, operand);
+            if (result == null) {
+                continue;
+            }
+            switch (operator) {
+                case Operators.GT:
+                    if (result > 0) {
+                        return true;
+                    }
+                    break;
+                case Operators.GTE:
+                    if (result >= 0) {
+                        return true;
+                    }
+                    break;
+                case Operators.LT:
+                    if (result < 0) {
+                        return true;
+                    }
+                    break;
+                default:
+                    if (result <= 0) {
+                        return true;
+                    }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(final List<Object> values, final Object operand, final String operator) {
+        if (!(operand instanceof List)) {
+            throw new IllegalArgumentException(operator + " requires an array");
+        }
+        for (final Object option : (List<?>) operand) {
+            if (matchesEquality(values, option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesSize(final List<Object> values, final Object operand) {
+        if (!(operand instanceof Number)) {
+            throw new IllegalArgumentException("$size requires a number");
+        }
+        for (final Object value : values) {
+            if (value instanceof List && ((List<?>) value).size() == ((Number) operand).intValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesAll(final List<Object> values, final Object operand) {
+        if (!(operand instanceof List)) {
+            throw new IllegalArgumentException("$all requires an array");
+        }
+        if (((List<?>) operand).isEmpty()) {
+            return false;
+        }
+        for (final Object required : (List<?>) operand) {
+            if (!matchesEquality(values, required)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matchesElement(final List<Object> values, final Object operand) {
+        if (!(operand instanceof Map)) {
+            throw new IllegalArgumentException("$elemMatch requires a document");
+        }
+        final boolean operatorExpression = isOperatorExpression(operand);
+        for (final Object value : values) {
+            if (!(value instanceof List)) {
+                continue;
+            }
+            for (final Object element : (List<?>) value) {
+                if (operatorExpression) {
+                    if (matchesField(Collections.singletonList(element), operand)) {
+                        return true;
+                    }
+                } else if (element instanceof Map
+                        && matchesQuery((Map<?, ?>) operand, (Map<String, Object>) element)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesRegex(final List<Object> values, final Object regex, final Object options) {
+        if (regex instanceof Pattern) {
+            return matchesPattern(values, (Pattern) regex);
+        }
+        if (!(regex instanceof String) || (options != null && !(options instanceof String))) {
+            throw new IllegalArgumentException("$regex requires a string");
+        }
+        int flags = 0;
+        if (options != null) {
+            for (final char option : ((String) options).toCharArray()) {
+                switch (option) {
+                    case 'i':
+                        flags |= Pattern.CASE_INSENSITIVE;
+                        break;
+                    case 'm':
+                        flags |= Pattern.MULTILINE;
+                        break;
+                    case 's':
+                        flags |= Pattern.DOTALL;
+                        break;
+                    case 'x':
+                        flags |= Pattern.COMMENTS;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unsupported $regex option " + option);
+                }
+            }
+        }
+        return matchesPattern(values, Pattern.compile((String) regex, flags));
+    }
+
+    private static boolean matchesPattern(final List<Object> values, final Pattern pattern) {
+        for (final Object candidate : candidates(values)) {
+            if (candidate instanceof String && pattern.matcher((String) candidate).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the values at a dotted path. Arrays along the path are traversed, so that a path
+     * into an array of documents yields the value of every element.
+     *
+     * @param document The document to look in.
+     * @param path     The dotted path.
+     * @return The values found; empty if the path does not exist.
+     */
+    private static List<Object> resolve(final Map<String, Object> document, final String path) {
+        final List<Object> values = new ArrayList<>();
+        collect(document, path.split("\\."), 0, values);
+        return values;
+    }
+
+    private static void collect(final Object current, final String[] parts, final int index, final List<Object> out) {
+        if (index == parts.length) {
+            out.add(current);
+            return;
+        }
+        final String part = parts[index];
+        if (current instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) current;
+            if (map.containsKey(part)) {
+                collect(map.get(part), parts, index + 1, out);
+            }
+        } else if (current instanceof List) {
+            final List<?> list = (List<?>) current;
+            final Integer position = parseIndex(part);
+            if (position != null && position < list.size()) {
+                collect(list.get(position), parts, index + 1, out);
+            }
+            for (final Object element : list) {
+                if (element instanceof Map) {
+                    collect(element, parts, index, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param values The values found at a path.
+     * @return The values to compare against a condition: every value, and the elements of
+     * every array value.
+     */
+    private static List<Object> candidates(final List<Object> values) {
+        final List<Object> candidates = new ArrayList<>(values);
+        for (final Object value : values) {
+            if (value instanceof List) {
+                candidates.addAll((List<?>) value);
+            }
+        }
+        return candidates;
+    }
+
+    private static boolean valuesEqual(final Object left, final Object right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumbers((Number) left, (Number) right) == 0;
+        }
+        if (left instanceof Map && right instanceof Map) {
+            // Field order is significant when comparing embedded documents
+            final Iterator<? extends Map.Entry<?, ?>> leftFields = ((Map<?, ?>) left).entrySet().iterator();
+            final Iterator<? extends Map.Entry<?, ?>> rightFields = ((Map<?, ?>) right).entrySet().iterator();
+            while (leftFields.hasNext() && rightFields.hasNext()) {
+                final Map.Entry<?, ?> leftField = leftFields.next();
+                final Map.Entry<?, ?> rightField = rightFields.next();
+                if (!leftField.getKey().equals(rightField.getKey())
+                        || !valuesEqual(leftField.getValue(), rightField.getValue())) {
+                    return false;
+                }
+            }
+            return !leftFields.hasNext() && !rightFields.hasNext();
+        }
+        if (left instanceof List && right instanceof List) {
+            final List<?> leftList = (List<?>) left;
+            final List<?> rightList = (List<?>) right;
+            if (leftList.size() != rightList.size()) {
+                return false;
+            }
+            for (int i = 0; i < leftList.size(); i++) {
+                if (!valuesEqual(leftList.get(i), rightList.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return left.equals(right);
+    }
+
+    /**
+     * @return The order of two values of the same type, or {@code null} if they are of
+     * different types and therefore never satisfy a comparison.
+     */
+    @SuppressWarnings("unchecked")
+    private static Integer compare(final Object left, final Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return compareNumbers((Number) left, (Number) right);
+        }
+        if ((left instanceof String && right instanceof String)
+                || (left instanceof Date && right instanceof Date)
+                || (left instanceof ObjectId && right instanceof ObjectId)
+                || (left instanceof Boolean && right instanceof Boolean)) {
+            return ((Comparable<Object>) left).compareTo(right);
+        }
+        return null;
+    }
+
+    private static int compareNumbers(final Number left, final Number right) {
+        if (isIntegral(left) && isIntegral(right)) {
+            final long leftValue = left.longValue();
+            final long rightValue = right.longValue();
+            return leftValue < rightValue ? -1 : (leftValue == rightValue ? 0 : 1);
+        }
+        return Double.compare(left.doubleValue(), right.doubleValue());
+    }
+
+    private static boolean isIntegral(final Number number) {
+        return number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte;
+    }
+
+    /**
+     * @return The value of a path to sort a document by: the smallest element of an array for
+     * an ascending sort and the largest for a descending one.
+     */
+    private static Object sortValue(final Map<String, Object> document, final String path, final int direction) {
+        Object chosen = null;
+        boolean found = false;
+        for (final Object candidate : candidates(resolve(document, path))) {
+            if (candidate instanceof List) {
+                continue;
+            }
+            if (!found || direction * compareForSort(candidate, chosen) < 0) {
+                chosen = candidate;
+                found = true;
+            }
+        }
+        return chosen;
+    }
+
+    private static int compareForSort(final Object left, final Object right) {
+        final int leftRank = typeRank(left);
+        final int rightRank = typeRank(right);
+        if (leftRank != rightRank) {
+            return leftRank < rightRank ? -1 : 1;
+        }
+        final Integer result = compare(left, right);
+        return result == null ? 0 : result;
+    }
+
+    /**
+     * @return The position of a value's type in the server's comparison order.
+     */
+    private static int typeRank(final Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return 1;
+        } else if (value instanceof String) {
+            return 2;
+        } else if (value instanceof Map) {
+            return 3;
+        } else if (value instanceof List) {
+            return 4;
+        } else if (value instanceof ObjectId) {
+            return 5;
+        } else if (value instanceof Boolean) {
+            return 6;
+        } else if (value instanceof Date) {
+            return 7;
+        }
+        return 8;
+    }
+
+    private static boolean isOperatorExpression(final Object value) {
+        if (!(value instanceof Map) || ((Map<?, ?>) value).isEmpty()) {
+            return false;
+        }
+        for (final Object key : ((Map<?, ?>) value).keySet()) {
+            if (!(key instanceof String) || !((String) key).startsWith("$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isTruthy(final Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        }
+        throw new IllegalArgumentException("unsupported projection or $exists value " + value);
+    }
+
+    private static Integer parseIndex(final String part) {
+        if (part.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < part.length(); i++) {
+            if (!Character.isDigit(part.charAt(i))) {
+                return null;
+            }
+        }
+        try {
+            return Integer.valueOf(part);
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addPath(final Map<String, Object> tree, final String path) {
+        if (path.startsWith("$") || path.contains(".$")) {
+            throw new IllegalArgumentException("unsupported projection " + path);
+        }
+        Map<String, Object> node = tree;
+        final String[] parts = path.split("\\.");
+        for (int i = 0; i < parts.length - 1; i++) {
+            final Object child = node.get(parts[i]);
+            if (child == Boolean.TRUE) {
+                return;
+            }
+            if (child == null) {
+                final Map<String, Object> created = new LinkedHashMap<>();
+                node.put(parts[i], created);
+                node = created;
+            } else {
+                node = (Map<String, Object>) child;
+            }
+        }
+        node.put(parts[parts.length - 1], Boolean.TRUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object include(final Object value, final Map<String, Object> tree) {
+        if (value instanceof List) {
+            final List<Object> included = new ArrayList<>();
+            for (final Object element : (Collection<?>) value) {
+                if (element instanceof Map) {
+                    included.add(include(element, tree));
+                }
+            }
+            return included;
+        }
+        final Document included = new Document();
+        for (final Map.Entry<String, Object> field : ((Map<String, Object>) value).entrySet()) {
+            final Object node = tree.get(field.getKey());
+            if (node == null) {
+                continue;
+            }
+            if (node == Boolean.TRUE) {
+                included.put(field.getKey(), field.getValue());
+            } else if (field.getValue() instanceof Map || field.getValue() instanceof List) {
+                included.put(field.getKey(), include(field.getValue(), (Map<String, Object>) node));
+            }
+        }
+        return included;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object exclude(final Object value, final Map<String, Object> tree) {
+        if (value instanceof List) {
+            final List<Object> excluded = new ArrayList<>();
+            for (final Object element : (Collection<?>) value) {
+                excluded.add(element instanceof Map ? exclude(element, tree) : element);
+            }
+            return excluded;
+        }
+        final Document excluded = new Document();
+        for (final Map.Entry<String, Object> field : ((Map<String, Object>) value).entrySet()) {
+            final Object node = tree.get(field.getKey());
+            if (node == Boolean.TRUE) {
+                continue;
+            }
+            if (node != null && (field.getValue() instanceof Map || field.getValue() instanceof List)) {
+                excluded.put(field.getKey(), exclude(field.getValue(), (Map<String, Object>) node));
+            } else {
+                excluded.put(field.getKey(), field.getValue());
+            }
+        }
+        return excluded;
+    }
+
+    private static class Fields {
+        private static final String ID = "_id";
+    }
+
+    private static class Operators {
+        private static final String AND = "$and";
+        private static final String OR = "$or";
+        private static final String NOR = "$nor";
+        private static final String EQ = "$eq";
+        private static final String NE = "$ne";
+        private static final String GT = "$gt";
+        private static final String GTE = "$gte";
+        private static final String LT = "$lt";
+        private static final String LTE = "$lte";
+        private static final String IN = "$in";
+        private static final String NIN = "$nin";
+        private static final String EXISTS = "$exists";
+        private static final String NOT = "$not";
+        private static final String SIZE = "$size";
+        private static final String ALL = "$all";
+        private static final String ELEM_MATCH = "$elemMatch";
+        private static final String REGEX = "$regex";
+        private static final String OPTIONS = "$options";
+    }
+}
@@ -0,0 +1,237 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UpdateApplier applies update specifiers made of {@code $set}, {@code $inc}, {@code $push} and
+ * {@code $unset} to documents on the device, the way the server would. Anything else is rejected
+ * with an {@link IllegalArgumentException}.
+ */
+final class UpdateApplier {
+
+    private static final String ID_FIELD = "_id";
+
+    private UpdateApplier() {
+    }
+
+    /**
+     * @param update The update specifier.
+     * @return Whether or not every operator of the update specifier can be applied locally.
+     */
+    static boolean isSupported(final Document update) {
+        if (update == null || update.isEmpty()) {
+            return false;
+        }
+        for (final Map.Entry<String, Object> operator : update.entrySet()) {
+            switch (operator.getKey()) {
+                case Operators.SET:
+                case Operators.INC:
+                case Operators.PUSH:
+                case Operators.UNSET:
+                    if (!(operator.getValue() instanceof Map)) {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param document The document to update, which is left unchanged.
+     * @param update   The update specifier.
+     * @return A copy of the document with the update applied.
+     * @throws IllegalArgumentException If the update cannot be applied to the document.
+     */
+    static Document apply(final Document document, final Document update) {
+        if (!isSupported(update)) {
+            throw new IllegalArgumentException("unsupported update " + update.toJson());
+        }
+        final Document updated = (Document) copy(document);
+        for (final Map.Entry<String, Object> operator : update.entrySet()) {
+            for (final Map.Entry<?, ?> field : ((Map<?, ?>) operator.getValue()).entrySet()) {
+                final String path = (String) field.getKey();
+                if (path.equals(ID_FIELD) || path.startsWith(ID_FIELD + ".")) {
+                    throw new IllegalArgumentException("_id cannot be updated");
+                }
+                final String[] parts = path.split("\\.");
+                switch (operator.getKey()) {
+                    case Operators.SET:
+                        set(updated, parts, copy(field.getValue()));
+                        break;
+                    case Operators.INC:
+                        set(updated, parts, increment(get(updated, parts), field.getValue(), path));
+                        break;
+                    case Operators.PUSH:
+                        set(updated, parts, push(get(updated, parts), field.getValue(), path));
+                        break;
+                    default:
+                        unset(updated, parts);
+                }
+            }
+        }
+        return updated;
+    }
+
+    private static Object increment(final Object current, final Object amount, final String path) {
+        if (!(amount instanceof Number) || (current != null && !(current instanceof Number))) {
+            throw new IllegalArgumentException("cannot $inc non-numeric " + path);
+        }
+        if (current == null) {
+            return amount;
+        }
+        final Number left = (Number) current;
+        final Number right = (Number) amount;
+        if (left instanceof Double || right instanceof Double || left instanceof Float || right instanceof Float) {
+            return left.doubleValue() + right.doubleValue();
+        }
+        final long sum = left.longValue() + right.longValue();
+        if (left instanceof Long || right instanceof Long || sum != (int) sum) {
+            return sum;
+        }
+        return (int) sum;
+    }
+
+    private static Object push(final Object current, final Object value, final String path) {
+        if (current != null && !(current instanceof List)) {
+            throw new IllegalArgumentException("cannot $push to non-array " + path);
+        }
+        final List<Object> list = current == null ? new ArrayList<>() : new ArrayList<>((List<?>) current);
+        if (value instanceof Map && ((Map<?, ?>) value).containsKey(Operators.EACH)) {
+            final Map<?, ?> modifiers = (Map<?, ?>) value;
+            if (modifiers.size() != 1 || !(modifiers.get(Operators.EACH) instanceof List)) {
+                throw new IllegalArgumentException("unsupported $push modifiers on " + path);
+            }
+            for (final Object element : (List<?>) modifiers.get(Operators.EACH)) {
+                list.add(copy(element));
+            }
+        } else {
+            list.add(copy(value));
+        }
+        return list;
+    }
+
+    private static Object get(final Document document, final String[] parts) {
+        Object current = document;
+        for (final String part : parts) {
+            current = child(current, part);
+            if (current == null) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void set(final Document document, final String[] parts, final Object value) {
+        Object parent = document;
+        for (int i = 0; i < parts.length - 1; i++) {
+            Object next = child(parent, parts[i]);
+            if (next == null) {
+                next = new Document();
+                put(parent, parts[i], next);
+            } else if (!(next instanceof Map) && !(next instanceof List)) {
+                throw new IllegalArgumentException("cannot create field in non-document " + parts[i]);
+            }
+            parent = next;
+        }
+        put(parent, parts[parts.length - 1], value);
+    }
+
+    private static void unset(final Document document, final String[] parts) {
+        Object parent = document;
+        for (int i = 0; i < parts.length - 1; i++) {
+            parent = child(parent, parts[i]);
+            if (parent == null) {
+                return;
+            }
+        }
+        final String last = parts[parts.length - 1];
+        if (parent instanceof Map) {
+            ((Map<?, ?>) parent).remove(last);
+        } else if (parent instanceof List) {
+            // Unsetting an array element leaves a null in its place
+            final Integer index = parseIndex(last);
+            if (index != null && index < ((List<?>) parent).size()) {
+                put(parent, last, null);
+            }
+        }
+    }
+
+    private static Object child(final Object parent, final String part) {
+        if (parent instanceof Map) {
+            return ((Map<?, ?>) parent).get(part);
+        }
+        if (parent instanceof List) {
+            final Integer index = parseIndex(part);
+            final List<?> list = (List<?>) parent;
+            return index != null && index < list.size() ? list.get(index) : null;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(final Object parent, final String part, final Object value) {
+        if (parent instanceof Map) {
+            ((Map<String, Object>) parent).put(part, value);
+            return;
+        }
+        final Integer index = parseIndex(part);
+        if (!(parent instanceof List) || index == null) {
+            throw new IllegalArgumentException("cannot set field " + part);
+        }
+        final List<Object> list = (List<Object>) parent;
+        while (list.size() <= index) {
+            list.add(null);
+        }
+        list.set(index, value);
+    }
+
+    /**
+     * @return A deep copy of the embedded documents and arrays of a value.
+     */
+    @SuppressWarnings("unchecked")
+    static Object copy(final Object value) {
+        if (value instanceof Map) {
+            final Document copied = new Document();
+            for (final Map.Entry<String, Object> field : ((Map<String, Object>) value).entrySet()) {
+                copied.put(field.getKey(), copy(field.getValue()));
+            }
+            return copied;
+        }
+        if (value instanceof List) {
+            final List<Object> copied = new ArrayList<>(((List<?>) value).size());
+            for (final Object element : (List<?>) value) {
+                copied.add(copy(element));
+            }
+            return copied;
+        }
+        return value;
+    }
+
+    private static Integer parseIndex(final String part) {
+        if (part.isEmpty() || part.length() > 9) {
+            return null;
+        }
+        for (int i = 0; i < part.length(); i++) {
+            if (!Character.isDigit(part.charAt(i))) {
+                return null;
+            }
+        }
+        return Integer.valueOf(part);
+    }
+
+    private static class Operators {
+        private static final String SET = "$set";
+        private static final String INC = "$inc";
+        private static final String PUSH = "$push";
+        private static final String UNSET = "$unset";
+        private static final String EACH = "$each";
+    }
+}
@@ -0,0 +1,349 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An UpdateCoalescer merges single document updates with the same query specifier that arrive
+ * within a short window into one update request. Only updates made up of {@code $set},
+ * {@code $unset} and {@code $inc} are merged; any other update to the same query specifier is
+ * sent after the pending updates. Requests for the same query specifier are sent one after
+ * another so that they are applied in the order they were made.
+ */
+class UpdateCoalescer {
+
+    private static final String SET = "$set";
+    private static final String UNSET = "$unset";
+    private static final String INC = "$inc";
+
+    private final MongoClient.Collection _collection;
+    private final long _windowMillis;
+    private final Executor _executor;
+    private final ScheduledExecutorService _scheduler;
+
+    // Guarded by this
+    private final Map<String, Pending> _pending = new HashMap<>();
+    private final Map<String, Task<Void>> _lastSent = new HashMap<>();
+
+    /**
+     * @param collection   The collection to update.
+     * @param windowMillis How long to wait for more updates after the first one of a batch.
+     * @param executor     The executor to send requests and complete tasks on.
+     * @param scheduler    The scheduler to time the window with.
+     */
+    UpdateCoalescer(
+            final MongoClient.Collection collection,
+            final long windowMillis,
+            final Executor executor,
+            final ScheduledExecutorService scheduler
+    ) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("window must not be negative");
+        }
+        _collection = collection;
+        _windowMillis = windowMillis;
+        _executor = executor;
+        _scheduler = scheduler;
+    }
+
+    /**
+     * Updates a single document matching the query specifier, merging the update into any
+     * pending update for the same query specifier when possible.
+     *
+     * @param query  The query specifier.
+     * @param update The update specifier.
+     * @param upsert Whether or not to upsert if the query matches no documents.
+     * @return A task that can be resolved upon completion of the request carrying the update.
+     */
+    Task<Void> update(final Document query, final Document update, final boolean upsert) {
+        final String key = query.toJson();
+        final TaskCompletionSource<Void> waiter = new TaskCompletionSource<>();
+
+        final boolean coalescable = !upsert && isCoalescable(update);
+        synchronized (this) {
+            Pending pending = _pending.get(key);
+            if (coalescable && pending != null && pending.merge(update)) {
+                pending._waiters.add(waiter);
+                return waiter.getTask();
+            }
+
+            if (pending != null) {
+                send(key, pending);
+            }
+            if (!coalescable) {
+                return chain(key, new Sender() {
+                    @Override
+                    public Task<Void> send() {
+                        return _collection.sendUpdateOne(query, update, upsert);
+                    }
+                });
+            }
+
+            pending = new Pending(query);
+            pending.merge(update);
+            pending._waiters.add(waiter);
+            _pending.put(key, pending);
+            schedule(key, pending);
+        }
+        return waiter.getTask();
+    }
+
+    /**
+     * Sends every pending update without waiting for its window to end.
+     */
+    synchronized void flush() {
+        for (final Map.Entry<String, Pending> entry : new ArrayList<>(_pending.entrySet())) {
+            send(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void schedule(final String key, final Pending pending) {
+        pending._scheduledFlush = _scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                _executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (UpdateCoalescer.this) {
+                            if (_pending.get(key) == pending) {
+                                send(key, pending);
+                            }
+                        }
+                    }
+                });
+            }
+        }, _windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a pending update once the previous request for its query specifier has completed.
+     * Must be called while holding this lock.
+     */
+    private void send(final String key, final Pending pending) {
+        _pending.remove(key);
+        if (pending._scheduledFlush != null) {
+            pending._scheduledFlush.cancel(false);
+        }
+
+        final Document update = pending.toUpdate();
+        chain(key, new Sender() {
+            @Override
+            public Task<Void> send() {
+                return _collection.sendUpdateOne(pending._query, update, false);
+            }
+        }).addOnCompleteListener(_executor, new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull final Task<Void> task) {
+                for (final TaskCompletionSource<Void> waiter : pending._waiters) {
+                    if (task.isSuccessful()) {
+                        waiter.setResult(null);
+                    } else {
+                        waiter.setException(task.getException());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts a request after the previous request for the same query specifier has completed,
+     * whether or not it succeeded. Must be called while holding this lock.
+     */
+    private Task<Void> chain(final String key, final Sender sender) {
+        final Task<Void> previous = _lastSent.get(key);
+        final Task<Void> sent;
+        if (previous == null) {
+            Task<Void> started;
+            try {
+                started = sender.send();
+            } catch (final RuntimeException e) {
+                // Fails the waiters instead of the thread that sends, such as a scheduled flush
+                started = Tasks.forException(e);
+            }
+            sent = started;
+        } else {
+            sent = previous.continueWithTask(_executor, new Continuation<Void, Task<Void>>() {
+                @Override
+                public Task<Void> then(@NonNull final Task<Void> task) throws Exception {
+                    return sender.send();
+                }
+            });
+        }
+        _lastSent.put(key, sent);
+        sent.addOnCompleteListener(_executor, new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull final Task<Void> task) {
+                synchronized (UpdateCoalescer.this) {
+                    if (_lastSent.get(key) == sent) {
+                        _lastSent.remove(key);
+                    }
+                }
+            }
+        });
+        return sent;
+    }
+
+    /**
+     * @param update The update specifier.
+     * @return Whether or not the update only uses operators that can be merged.
+     */
+    private static boolean isCoalescable(final Document update) {
+        if (update.isEmpty()) {
+            return false;
+        }
+        for (final Map.Entry<String, Object> entry : update.entrySet()) {
+            final String operator = entry.getKey();
+            if (!SET.equals(operator) && !UNSET.equals(operator) && !INC.equals(operator)) {
+                return false;
+            }
+            if (!(entry.getValue() instanceof Map) || ((Map<?, ?>) entry.getValue()).isEmpty()) {
+                return false;
+            }
+            if (INC.equals(operator)) {
+                for (final Object amount : ((Map<?, ?>) entry.getValue()).values()) {
+                    if (!(amount instanceof Integer || amount instanceof Long || amount instanceof Double)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private interface Sender {
+        Task<Void> send();
+    }
+
+    /**
+     * The merged update for a single query specifier.
+     */
+    private static final class Pending {
+        private final Document _query;
+        private final Map<String, Object> _set = new LinkedHashMap<>();
+        private final Map<String, Object> _unset = new LinkedHashMap<>();
+        private final Map<String, Number> _inc = new LinkedHashMap<>();
+        private final List<TaskCompletionSource<Void>> _waiters = new ArrayList<>();
+        private ScheduledFuture<?> _scheduledFlush;
+
+        Pending(final Document query) {
+            _query = query;
+        }
+
+        /**
+         * Merges an update into this one, as if it were applied after it.
+         *
+         * @param update The update specifier.
+         * @return Whether or not the update could be merged. Nothing is merged if it could not.
+         */
+        boolean merge(final Document update) {
+            for (final Map.Entry<String, Object> entry : update.entrySet()) {
+                for (final Object field : ((Map<?, ?>) entry.getValue()).keySet()) {
+                    if (conflicts(entry.getKey(), (String) field)) {
+                        return false;
+                    }
+                }
+            }
+
+            for (final Map.Entry<String, Object> entry : update.entrySet()) {
+                final String operator = entry.getKey();
+                for (final Map.Entry<?, ?> field : ((Map<?, ?>) entry.getValue()).entrySet()) {
+                    final String path = (String) field.getKey();
+                    if (SET.equals(operator)) {
+                        _unset.remove(path);
+                        _inc.remove(path);
+                        _set.put(path, field.getValue());
+                    } else if (UNSET.equals(operator)) {
+                        _set.remove(path);
+                        _inc.remove(path);
+                        _unset.put(path, "");
+                    } else {
+                        final Number amount = (Number) field.getValue();
+                        if (_set.containsKey(path)) {
+                            _set.put(path, add((Number) _set.get(path), amount));
+                        } else if (_unset.remove(path) != null) {
+                            // Incrementing a missing field sets it to the amount
+                            _set.put(path, amount);
+                        } else if (_inc.containsKey(path)) {
+                            _inc.put(path, add(_inc.get(path), amount));
+                        } else {
+                            _inc.put(path, amount);
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return Whether or not the field path overlaps a different field path already in this
+         * update, or is incremented after being set to something other than a plain number. The
+         * server rejects updates with overlapping paths.
+         */
+        private boolean conflicts(final String operator, final String path) {
+            if (INC.equals(operator) && _set.containsKey(path)) {
+                final Object value = _set.get(path);
+                if (!(value instanceof Integer || value instanceof Long || value instanceof Double)) {
+                    return true;
+                }
+            }
+            return overlaps(path, _set.keySet())
+                    || overlaps(path, _unset.keySet())
+                    || overlaps(path, _inc.keySet());
+        }
+
+        private static boolean overlaps(final String path, final Iterable<String> others) {
+            for (final String other : others) {
+                if (!other.equals(path) && (other.startsWith(path + ".") || path.startsWith(other + "."))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Number add(final Number left, final Number right) {
+            if (left instanceof Double || right instanceof Double) {
+                return left.doubleValue() + right.doubleValue();
+            }
+            final long sum = left.longValue() + right.longValue();
+            if (left instanceof Long || right instanceof Long
+                    || sum > Integer.MAX_VALUE || sum < Integer.MIN_VALUE) {
+                return sum;
+            }
+            return (int) sum;
+        }
+
+        /**
+         * @return The update specifier for the merged updates.
+         */
+        Document toUpdate() {
+            final Document update = new Document();
+            if (!_set.isEmpty()) {
+                update.put(SET, new Document(_set));
+            }
+            if (!_unset.isEmpty()) {
+                update.put(UNSET, new Document(_unset));
+            }
+            if (!_inc.isEmpty()) {
+                update.put(INC, new Document(new LinkedHashMap<String, Object>(_inc)));
+            }
+            return update;
+        }
+    }
+}
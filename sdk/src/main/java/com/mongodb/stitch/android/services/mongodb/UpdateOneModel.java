@@ -0,0 +1,53 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import org.bson.Document;
+
+/**
+ * An UpdateOneModel updates a single document matching a query specifier.
+ */
+public class UpdateOneModel extends WriteModel {
+
+    private final Document _query;
+    private final Document _update;
+    private final boolean _upsert;
+
+    /**
+     * @param query  The query specifier.
+     * @param update The update specifier.
+     */
+    public UpdateOneModel(final Document query, final Document update) {
+        this(query, update, false);
+    }
+
+    /**
+     * @param query  The query specifier.
+     * @param update The update specifier.
+     * @param upsert Whether or not to upsert if the query matches no document.
+     */
+    public UpdateOneModel(final Document query, final Document update, final boolean upsert) {
+        _query = query;
+        _update = update;
+        _upsert = upsert;
+    }
+
+    /**
+     * @return The query specifier.
+     */
+    public Document getQuery() {
+        return _query;
+    }
+
+    /**
+     * @return The update specifier.
+     */
+    public Document getUpdate() {
+        return _update;
+    }
+
+    /**
+     * @return Whether or not to upsert if the query matches no document.
+     */
+    public boolean isUpsert() {
+        return _upsert;
+    }
+}
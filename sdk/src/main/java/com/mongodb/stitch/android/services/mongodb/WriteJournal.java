@@ -0,0 +1,907 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.mongodb.stitch.android.AuthListener;
+import com.mongodb.stitch.android.StitchClient;
+import com.mongodb.stitch.android.StitchException.StitchCancelledException;
+import com.mongodb.stitch.android.StitchException.StitchRequestException;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A WriteJournal records writes to a collection in app storage and sends them to Stitch in the
+ * background. Writes through a collection reference using the journal, see
+ * {@link MongoClient.Collection#withWriteBehind}, complete as soon as they are durably recorded
+ * on the device. A flusher then sends them in order, in batches, as a bulk write. Writes that
+ * fail for a transient reason, including a missing network or session, are retried with backoff.
+ * Writes that Stitch rejects are dropped and reported to the listeners, and the writes after
+ * them are still sent.
+ * <p>
+ * The journal survives restarts: writes not yet acknowledged by Stitch when the app stopped are
+ * sent once the journal is started again by the same user. Inserted documents without an
+ * {@code _id} are given one when they are recorded.
+ * <p>
+ * Writes are delivered at least once. A write whose response is lost, or that Stitch applied
+ * just before the app stopped, is sent again. Inserts are then found already applied by their
+ * {@code _id}, and deletes by {@code _id}, deletes of many documents, replacements and updates
+ * made only of idempotent operators such as {@code $set} have the same effect when applied
+ * twice. Other writes, such as updates using {@code $inc} or {@code $push}, are applied twice.
+ * Each of those is sent at the end of a batch so that it is recorded as sent on its own, and
+ * at most one of them is applied twice for each lost response or stop.
+ */
+public class WriteJournal {
+
+    private static final String TAG = "Stitch-WriteJournal";
+    private static final String DIRECTORY_NAME = "stitch-journals";
+    private static final String COMMITTED_SUFFIX = ".committed";
+    private static final String ID_FIELD = "_id";
+
+    private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final MongoClient.Collection _collection;
+    private final StitchClient _stitchClient;
+    private final File _directory;
+    private final Executor _executor;
+    private final ScheduledExecutorService _scheduler;
+    private final List<Listener> _listeners = new CopyOnWriteArrayList<>();
+    private int _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private final Object _lock = new Object();
+    private boolean _started;
+    private boolean _loaded;
+    private String _userId;
+    private File _journalFile;
+    private File _committedFile;
+    private AuthListener _authListener;
+    private long _nextSequence = 1;
+
+    // Writes waiting to be recorded, and whether or not they are being recorded
+    private final LinkedList<Append> _appends = new LinkedList<>();
+    private boolean _appending;
+
+    // Recorded writes not yet acknowledged by Stitch, in order
+    private final LinkedList<JournalEntry> _pending = new LinkedList<>();
+    private boolean _flushing;
+    private long _retryDelayMillis;
+    private boolean _retryScheduled;
+    private final List<TaskCompletionSource<Void>> _drainWaiters = new ArrayList<>();
+
+    /**
+     * Listener is notified of the outcome of every write sent from the journal.
+     */
+    public interface Listener {
+
+        /**
+         * Called when Stitch has applied a write.
+         *
+         * @param entry The write.
+         */
+        void onApplied(JournalEntry entry);
+
+        /**
+         * Called when Stitch has rejected a write, which is then dropped from the journal.
+         *
+         * @param entry     The write.
+         * @param exception The reason the write was rejected.
+         */
+        void onRejected(JournalEntry entry, Exception exception);
+    }
+
+    /**
+     * @param context    The Android {@link Context} whose files directory holds the journal.
+     * @param collection The collection to write to.
+     */
+    public WriteJournal(final Context context, final MongoClient.Collection collection) {
+        _collection = collection;
+        _stitchClient = collection.getStitchClient();
+        _directory = new File(context.getFilesDir(), DIRECTORY_NAME);
+        _executor = collection.getExecutor();
+        _scheduler = _stitchClient.getScheduler();
+    }
+
+    /**
+     * @param maxBatchSize The maximum amount of writes to send in a single bulk write.
+     * @return This journal.
+     */
+    public WriteJournal withMaxBatchSize(final int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        _maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * @param listener The listener to notify, on the client's executor, of the outcome of every
+     *                 write sent from the journal.
+     */
+    public void addListener(final Listener listener) {
+        _listeners.add(listener);
+    }
+
+    /**
+     * @param listener The listener to stop notifying.
+     */
+    public void removeListener(final Listener listener) {
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Loads the writes recorded for the current user that Stitch has not acknowledged yet and
+     * starts sending them. The client must be authenticated. While another user is logged in,
+     * nothing is sent.
+     *
+     * @return A task that completes once the recorded writes are loaded.
+     */
+    public Task<Void> start() {
+        final String userId = _stitchClient.getAuth().getUserId();
+        synchronized (_lock) {
+            if (_started) {
+                throw new IllegalStateException("journal already started");
+            }
+            _started = true;
+            _loaded = false;
+            _userId = userId;
+            final String name = fileName(userId);
+            _journalFile = new File(_directory, name);
+            _committedFile = new File(_directory, name + COMMITTED_SUFFIX);
+            _authListener = new AuthListener() {
+                @Override
+                public void onLogin() {
+                    flushLater(0);
+                }
+
+                @Override
+                public void onLogout(final String lastProvider) {
+                }
+            };
+            _stitchClient.addAuthListener(_authListener);
+        }
+
+        final TaskCompletionSource<Void> loaded = new TaskCompletionSource<>();
+        _executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                IOException failure = null;
+                try {
+                    load();
+                } catch (final IOException e) {
+                    Log.d(TAG, "Error loading journal", e);
+                    failure = e;
+                }
+
+                // Writes made while loading were held back so that loading could not truncate
+                // them away
+                final boolean startAppending;
+                synchronized (_lock) {
+                    _loaded = true;
+                    startAppending = !_appending && !_appends.isEmpty();
+                    _appending = _appending || startAppending;
+                }
+                if (failure == null) {
+                    loaded.setResult(null);
+                } else {
+                    loaded.setException(failure);
+                }
+                if (startAppending) {
+                    drainAppends();
+                } else {
+                    flushNext();
+                }
+            }
+        });
+        return loaded.getTask();
+    }
+
+    /**
+     * Stops sending writes. Writes already recorded are kept for the next start.
+     */
+    public void stop() {
+        synchronized (_lock) {
+            if (!_started) {
+                return;
+            }
+            _started = false;
+            _stitchClient.removeAuthListener(_authListener);
+            _authListener = null;
+        }
+    }
+
+    /**
+     * @return The amount of recorded writes not yet acknowledged by Stitch.
+     */
+    public int getPendingCount() {
+        synchronized (_lock) {
+            return _pending.size() + _appends.size();
+        }
+    }
+
+    /**
+     * Sends the recorded writes now rather than waiting out a retry delay.
+     *
+     * @return A task that completes once every write recorded so far has been sent, applied or
+     * rejected.
+     */
+    public Task<Void> flush() {
+        final TaskCompletionSource<Void> drained = new TaskCompletionSource<>();
+        synchronized (_lock) {
+            if (_pending.isEmpty() && _appends.isEmpty() && !_appending) {
+                drained.setResult(null);
+                return drained.getTask();
+            }
+            _drainWaiters.add(drained);
+            _retryDelayMillis = 0;
+        }
+        flushLater(0);
+        return drained.getTask();
+    }
+
+    /**
+     * Records a write. Writes are recorded, and later sent, in the order this is called in.
+     * Writes made before the journal has loaded are recorded once it has.
+     *
+     * @param model The write.
+     * @return A task that completes once the write is durably recorded.
+     */
+    Task<Void> append(final WriteModel model) {
+        final Append append;
+        final boolean startAppending;
+        synchronized (_lock) {
+            if (!_started) {
+                throw new IllegalStateException("journal must be started before writing");
+            }
+            append = new Append(new JournalEntry(_nextSequence++, withId(model)));
+            _appends.add(append);
+            startAppending = _loaded && !_appending;
+            _appending = _appending || startAppending;
+        }
+        if (startAppending) {
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drainAppends();
+                }
+            });
+        }
+        return append._future.getTask();
+    }
+
+    /**
+     * Records every queued write with a single write and sync of the journal file, until no
+     * more are queued.
+     */
+    private void drainAppends() {
+        while (true) {
+            final List<Append> batch;
+            final File journalFile;
+            synchronized (_lock) {
+                if (_appends.isEmpty()) {
+                    _appending = false;
+                    return;
+                }
+                batch = new ArrayList<>(_appends);
+                _appends.clear();
+                journalFile = _journalFile;
+            }
+
+            IOException failure = null;
+            try {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final DocumentCodec codec = new DocumentCodec();
+                final EncoderContext context = EncoderContext.builder().build();
+                final BasicOutputBuffer buffer = new BasicOutputBuffer();
+                for (final Append append : batch) {
+                    buffer.truncateToPosition(0);
+                    codec.encode(new BsonBinaryWriter(buffer), encode(append._entry), context);
+                    buffer.pipe(bytes);
+                }
+                if (!_directory.isDirectory() && !_directory.mkdirs()) {
+                    throw new IOException("Could not create " + _directory);
+                }
+                final FileOutputStream out = new FileOutputStream(journalFile, true);
+                try {
+                    out.write(bytes.toByteArray());
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+            } catch (final IOException e) {
+                Log.d(TAG, "Error recording writes", e);
+                failure = e;
+            }
+
+            synchronized (_lock) {
+                for (final Append append : batch) {
+                    if (failure == null) {
+                        _pending.add(append._entry);
+                    }
+                }
+            }
+            for (final Append append : batch) {
+                if (failure == null) {
+                    append._future.setResult(null);
+                } else {
+                    append._future.setException(failure);
+                }
+            }
+            flushNext();
+        }
+    }
+
+    private void flushLater(final long delayMillis) {
+        synchronized (_lock) {
+            if (_retryScheduled && delayMillis > 0) {
+                return;
+            }
+            _retryScheduled = delayMillis > 0;
+        }
+        if (delayMillis <= 0) {
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushNext();
+                }
+            });
+            return;
+        }
+        _scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (_lock) {
+                    _retryScheduled = false;
+                }
+                _executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushNext();
+                    }
+                });
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the next batch of recorded writes unless one is already being sent, a retry is
+     * waiting, or the user who recorded them is not logged in.
+     */
+    private void flushNext() {
+        final List<JournalEntry> batch;
+        synchronized (_lock) {
+            if (!_started || _flushing || _retryScheduled || _pending.isEmpty()) {
+                return;
+            }
+            if (!isOwnerLoggedIn()) {
+                return;
+            }
+            _flushing = true;
+            batch = new ArrayList<>();
+            for (final JournalEntry entry : _pending) {
+                if (batch.size() == _maxBatchSize) {
+                    break;
+                }
+                // Adjacent inserts are merged into one request by the bulk write and share its
+                // outcome, so they are sent in separate batches to be applied or rejected one
+                // by one
+                if (!batch.isEmpty()
+                        && entry.getModel() instanceof InsertOneModel
+                        && batch.get(batch.size() - 1).getModel() instanceof InsertOneModel) {
+                    break;
+                }
+                batch.add(entry);
+                if (!isIdempotent(entry.getModel())) {
+                    break;
+                }
+            }
+        }
+
+        final List<WriteModel> models = new ArrayList<>(batch.size());
+        for (final JournalEntry entry : batch) {
+            models.add(entry.getModel());
+        }
+        _collection.bulkWrite(models, true).addOnCompleteListener(_executor, new OnCompleteListener<List<WriteResult>>() {
+            @Override
+            public void onComplete(@NonNull final Task<List<WriteResult>> task) {
+                onBatchComplete(batch, task);
+            }
+        });
+    }
+
+    private void onBatchComplete(final List<JournalEntry> batch, final Task<List<WriteResult>> task) {
+        final List<JournalEntry> applied = new ArrayList<>();
+        final List<JournalEntry> rejected = new ArrayList<>();
+        final List<Exception> rejections = new ArrayList<>();
+        Exception transientFailure = task.isSuccessful() ? null : task.getException();
+
+        if (task.isSuccessful()) {
+            final List<WriteResult> results = task.getResult();
+            for (int i = 0; i < batch.size(); i++) {
+                final WriteResult result = results.get(i);
+                if (result.isSuccessful()) {
+                    applied.add(batch.get(i));
+                } else if (!result.wasAttempted()) {
+                    break;
+                } else if (isTransient(result.getException())) {
+                    transientFailure = result.getException();
+                    break;
+                } else if (batch.get(i).getModel() instanceof InsertOneModel) {
+                    // The batch is ordered, so nothing after the failed write was attempted.
+                    // The writes before it are recorded as sent before checking the insert.
+                    commitSettled(applied, rejected);
+                    confirmInsert(batch.get(i), result.getException(), applied, rejected, rejections);
+                    return;
+                } else {
+                    rejected.add(batch.get(i));
+                    rejections.add(result.getException());
+                }
+            }
+        }
+
+        onBatchComplete(applied, rejected, rejections, transientFailure);
+    }
+
+    /**
+     * Settles an insert that Stitch failed. An insert sent again after its response was lost
+     * fails because a document with its {@code _id} already exists, so it is only rejected if
+     * the document stored under its {@code _id} is not the one it inserts.
+     */
+    private void confirmInsert(
+            final JournalEntry entry,
+            final Exception exception,
+            final List<JournalEntry> applied,
+            final List<JournalEntry> rejected,
+            final List<Exception> rejections
+    ) {
+        final Document document = ((InsertOneModel) entry.getModel()).getDocument();
+        _collection.find(new Document(ID_FIELD, document.get(ID_FIELD)), null, 1).addOnCompleteListener(_executor, new OnCompleteListener<List<Document>>() {
+            @Override
+            public void onComplete(@NonNull final Task<List<Document>> task) {
+                if (!task.isSuccessful()) {
+                    onBatchComplete(applied, rejected, rejections, task.getException());
+                    return;
+                }
+                if (!task.getResult().isEmpty() && task.getResult().get(0).equals(document)) {
+                    applied.add(entry);
+                } else {
+                    rejected.add(entry);
+                    rejections.add(exception);
+                }
+                onBatchComplete(applied, rejected, rejections, null);
+            }
+        });
+    }
+
+    /**
+     * Drops the writes of the batch that were applied or rejected, which precede any that were
+     * not, and sends the next batch.
+     */
+    private void onBatchComplete(
+            final List<JournalEntry> applied,
+            final List<JournalEntry> rejected,
+            final List<Exception> rejections,
+            final Exception transientFailure
+    ) {
+        final int done = applied.size() + rejected.size();
+        commitSettled(applied, rejected);
+
+        final List<TaskCompletionSource<Void>> drained = new ArrayList<>();
+        final long retryDelay;
+        synchronized (_lock) {
+            for (int i = 0; i < done; i++) {
+                _pending.removeFirst();
+            }
+            _flushing = false;
+            if (transientFailure != null) {
+                _retryDelayMillis = _retryDelayMillis == 0
+                        ? INITIAL_RETRY_DELAY_MILLIS
+                        : Math.min(_retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+            } else {
+                _retryDelayMillis = 0;
+            }
+            retryDelay = _retryDelayMillis;
+            if (_pending.isEmpty() && _appends.isEmpty() && !_appending) {
+                compact();
+                drained.addAll(_drainWaiters);
+                _drainWaiters.clear();
+            }
+        }
+
+        for (final JournalEntry entry : applied) {
+            for (final Listener listener : _listeners) {
+                listener.onApplied(entry);
+            }
+        }
+        for (int i = 0; i < rejected.size(); i++) {
+            Log.d(TAG, "Write rejected by Stitch", rejections.get(i));
+            for (final Listener listener : _listeners) {
+                listener.onRejected(rejected.get(i), rejections.get(i));
+            }
+        }
+        for (final TaskCompletionSource<Void> waiter : drained) {
+            waiter.setResult(null);
+        }
+
+        if (transientFailure != null) {
+            Log.d(TAG, "Error sending writes, retrying", transientFailure);
+            flushLater(retryDelay);
+        } else {
+            flushNext();
+        }
+    }
+
+    /**
+     * Records that writes Stitch applied or rejected have been sent, so that they are not sent
+     * again after a restart.
+     */
+    private void commitSettled(final List<JournalEntry> applied, final List<JournalEntry> rejected) {
+        long lastSequence = 0;
+        for (final JournalEntry entry : applied) {
+            lastSequence = Math.max(lastSequence, entry.getSequence());
+        }
+        for (final JournalEntry entry : rejected) {
+            lastSequence = Math.max(lastSequence, entry.getSequence());
+        }
+        if (lastSequence == 0) {
+            return;
+        }
+        try {
+            commit(lastSequence);
+        } catch (final IOException e) {
+            // The writes will be sent again after a restart
+            Log.d(TAG, "Error recording sent writes", e);
+        }
+    }
+
+    /**
+     * @param model A recorded write.
+     * @return Whether or not applying the write twice has the same effect as applying it once.
+     * Inserts are not, but are reconciled by their {@code _id} instead.
+     */
+    private static boolean isIdempotent(final WriteModel model) {
+        if (model instanceof InsertOneModel || model instanceof DeleteManyModel) {
+            return true;
+        }
+        if (model instanceof DeleteOneModel) {
+            // Deleting one document again could delete another one matching the same query
+            final Document query = ((DeleteOneModel) model).getQuery();
+            return query != null
+                    && query.size() == 1
+                    && query.containsKey(ID_FIELD)
+                    && !(query.get(ID_FIELD) instanceof Document);
+        }
+        if (model instanceof UpdateOneModel) {
+            return isIdempotent(((UpdateOneModel) model).getUpdate());
+        }
+        if (model instanceof UpdateManyModel) {
+            return isIdempotent(((UpdateManyModel) model).getUpdate());
+        }
+        return false;
+    }
+
+    /**
+     * @param update An update specifier.
+     * @return Whether or not applying the update twice has the same effect as applying it once.
+     */
+    private static boolean isIdempotent(final Document update) {
+        for (final String field : update.keySet()) {
+            if (!field.startsWith("$")) {
+                // A replacement
+                return true;
+            }
+            switch (field) {
+                case Operators.SET:
+                case Operators.UNSET:
+                case Operators.SET_ON_INSERT:
+                case Operators.MIN:
+                case Operators.MAX:
+                case Operators.ADD_TO_SET:
+                case Operators.PULL:
+                case Operators.PULL_ALL:
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether or not a write failed for a reason that may go away by itself, as opposed
+     * to Stitch rejecting it.
+     */
+    private boolean isTransient(final Exception exception) {
+        if (exception instanceof StitchCancelledException) {
+            return true;
+        }
+        if (exception instanceof StitchRequestException
+                && ((StitchRequestException) exception).isRetryable()) {
+            return true;
+        }
+        // A write failing because the session ended is sent again once the user logs back in.
+        // Anything else, such as a write that cannot be encoded, will fail again.
+        return !isOwnerLoggedIn();
+    }
+
+    /**
+     * @return Whether or not the user who recorded the writes is logged in.
+     */
+    private boolean isOwnerLoggedIn() {
+        return _stitchClient.isAuthenticated() && _userId.equals(_stitchClient.getAuth().getUserId());
+    }
+
+    /**
+     * Records that every write up to a sequence number has been sent.
+     */
+    private void commit(final long sequence) throws IOException {
+        final File committedFile;
+        synchronized (_lock) {
+            committedFile = _committedFile;
+        }
+        final File temp = new File(committedFile.getPath() + ".tmp");
+        final FileOutputStream out = new FileOutputStream(temp);
+        try {
+            new DataOutputStream(out).writeLong(sequence);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(committedFile)) {
+            temp.delete();
+            throw new IOException("Could not replace " + committedFile);
+        }
+    }
+
+    /**
+     * Deletes the journal once every write in it has been sent. Must be called while holding
+     * the lock, with no write pending or being recorded.
+     */
+    private void compact() {
+        if (_journalFile.delete()) {
+            _committedFile.delete();
+        }
+    }
+
+    private void load() throws IOException {
+        final File journalFile;
+        final File committedFile;
+        synchronized (_lock) {
+            journalFile = _journalFile;
+            committedFile = _committedFile;
+        }
+
+        long committed = 0;
+        if (committedFile.isFile()) {
+            final DataInputStream in = new DataInputStream(new FileInputStream(committedFile));
+            try {
+                committed = in.readLong();
+            } finally {
+                in.close();
+            }
+        }
+
+        final List<JournalEntry> entries = new ArrayList<>();
+        long lastSequence = committed;
+        if (journalFile.isFile()) {
+            long validLength = 0;
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            try {
+                for (Document document = readDocument(in); document != null; document = readDocument(in)) {
+                    final JournalEntry entry = decode(document);
+                    lastSequence = Math.max(lastSequence, entry.getSequence());
+                    if (entry.getSequence() > committed) {
+                        entries.add(entry);
+                    }
+                    validLength += document.getInteger(Fields.LENGTH, 0);
+                }
+            } finally {
+                in.close();
+            }
+
+            // Drop a partially written trailing write left by a crash so that later writes
+            // are appended after the last complete one
+            if (journalFile.length() > validLength) {
+                final RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+                try {
+                    file.setLength(validLength);
+                    file.getFD().sync();
+                } finally {
+                    file.close();
+                }
+            }
+        }
+
+        synchronized (_lock) {
+            // Every write recorded so far is in the journal, including any still pending from
+            // before the journal was last stopped
+            _pending.clear();
+            _pending.addAll(entries);
+            _nextSequence = Math.max(_nextSequence, lastSequence + 1);
+        }
+    }
+
+    /**
+     * @return The next BSON document in the stream, or {@code null} at its end or at a
+     * partially written trailing document left by a crash.
+     */
+    private static Document readDocument(final DataInputStream in) throws IOException {
+        final byte[] length = new byte[4];
+        try {
+            in.readFully(length);
+        } catch (final EOFException e) {
+            return null;
+        }
+        final int size = (length[0] & 0xff)
+                | (length[1] & 0xff) << 8
+                | (length[2] & 0xff) << 16
+                | (length[3] & 0xff) << 24;
+        if (size < length.length) {
+            return null;
+        }
+        final byte[] bytes = new byte[size];
+        System.arraycopy(length, 0, bytes, 0, length.length);
+        try {
+            in.readFully(bytes, length.length, size - length.length);
+        } catch (final EOFException e) {
+            return null;
+        }
+        return new RawBsonDocument(bytes).decode(new DocumentCodec()).append(Fields.LENGTH, size);
+    }
+
+    private static Document encode(final JournalEntry entry) {
+        final Document encoded = new Document(Fields.SEQUENCE, entry.getSequence());
+        final WriteModel model = entry.getModel();
+        if (model instanceof InsertOneModel) {
+            return encoded.append(Fields.OPERATION, Operations.INSERT_ONE)
+                    .append(Fields.DOCUMENT, ((InsertOneModel) model).getDocument());
+        } else if (model instanceof UpdateOneModel) {
+            final UpdateOneModel update = (UpdateOneModel) model;
+            return encoded.append(Fields.OPERATION, Operations.UPDATE_ONE)
+                    .append(Fields.QUERY, update.getQuery())
+                    .append(Fields.UPDATE, update.getUpdate())
+                    .append(Fields.UPSERT, update.isUpsert());
+        } else if (model instanceof UpdateManyModel) {
+            final UpdateManyModel update = (UpdateManyModel) model;
+            return encoded.append(Fields.OPERATION, Operations.UPDATE_MANY)
+                    .append(Fields.QUERY, update.getQuery())
+                    .append(Fields.UPDATE, update.getUpdate())
+                    .append(Fields.UPSERT, update.isUpsert());
+        } else if (model instanceof DeleteOneModel) {
+            return encoded.append(Fields.OPERATION, Operations.DELETE_ONE)
+                    .append(Fields.QUERY, ((DeleteOneModel) model).getQuery());
+        } else if (model instanceof DeleteManyModel) {
+            return encoded.append(Fields.OPERATION, Operations.DELETE_MANY)
+                    .append(Fields.QUERY, ((DeleteManyModel) model).getQuery());
+        }
+        throw new IllegalArgumentException("unsupported write model " + model.getClass().getName());
+    }
+
+    private static JournalEntry decode(final Document document) throws IOException {
+        final long sequence = document.getLong(Fields.SEQUENCE);
+        final String operation = document.getString(Fields.OPERATION);
+        final WriteModel model;
+        if (Operations.INSERT_ONE.equals(operation)) {
+            model = new InsertOneModel((Document) document.get(Fields.DOCUMENT));
+        } else if (Operations.UPDATE_ONE.equals(operation)) {
+            model = new UpdateOneModel(
+                    (Document) document.get(Fields.QUERY),
+                    (Document) document.get(Fields.UPDATE),
+                    document.getBoolean(Fields.UPSERT));
+        } else if (Operations.UPDATE_MANY.equals(operation)) {
+            model = new UpdateManyModel(
+                    (Document) document.get(Fields.QUERY),
+                    (Document) document.get(Fields.UPDATE),
+                    document.getBoolean(Fields.UPSERT));
+        } else if (Operations.DELETE_ONE.equals(operation)) {
+            model = new DeleteOneModel((Document) document.get(Fields.QUERY));
+        } else if (Operations.DELETE_MANY.equals(operation)) {
+            model = new DeleteManyModel((Document) document.get(Fields.QUERY));
+        } else {
+            throw new IOException("Unknown journal operation " + operation);
+        }
+        return new JournalEntry(sequence, model);
+    }
+
+    /**
+     * @return The write, with an {@code _id} given to a document to insert that has none, so
+     * that a document sent again after a lost response is not inserted twice.
+     */
+    private static WriteModel withId(final WriteModel model) {
+        if (!(model instanceof InsertOneModel)) {
+            return model;
+        }
+        final Document document = ((InsertOneModel) model).getDocument();
+        if (document.containsKey(ID_FIELD)) {
+            return model;
+        }
+        final Document identified = new Document(ID_FIELD, new ObjectId());
+        identified.putAll(document);
+        return new InsertOneModel(identified);
+    }
+
+    private String fileName(final String userId) {
+        try {
+            return URLEncoder.encode(String.format(
+                    "%s.%s.%s.%s",
+                    _stitchClient.getAppId(),
+                    userId,
+                    _collection.getService(),
+                    _collection.getNamespace()), "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Append {
+        private final JournalEntry _entry;
+        private final TaskCompletionSource<Void> _future = new TaskCompletionSource<>();
+
+        Append(final JournalEntry entry) {
+            _entry = entry;
+        }
+    }
+
+    private static class Fields {
+        private static final String SEQUENCE = "seq";
+        private static final String OPERATION = "op";
+        private static final String DOCUMENT = "document";
+        private static final String QUERY = "query";
+        private static final String UPDATE = "update";
+        private static final String UPSERT = "upsert";
+
+        // Not stored; the encoded size of an entry read back from the journal
+        private static final String LENGTH = "$length";
+    }
+
+    private static class Operations {
+        private static final String INSERT_ONE = "insertOne";
+        private static final String UPDATE_ONE = "updateOne";
+        private static final String UPDATE_MANY = "updateMany";
+        private static final String DELETE_ONE = "deleteOne";
+        private static final String DELETE_MANY = "deleteMany";
+    }
+
+    // Update operators that have the same effect when applied twice
+    private static class Operators {
+        private static final String SET = "$set";
+        private static final String UNSET = "$unset";
+        private static final String SET_ON_INSERT = "$setOnInsert";
+        private static final String MIN = "$min";
+        private static final String MAX = "$max";
+        private static final String ADD_TO_SET = "$addToSet";
+        private static final String PULL = "$pull";
+        private static final String PULL_ALL = "$pullAll";
+    }
+}
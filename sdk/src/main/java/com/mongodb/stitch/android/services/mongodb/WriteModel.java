@@ -0,0 +1,9 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+/**
+ * A WriteModel is a single write operation that can be sent as part of a bulk write.
+ */
+public abstract class WriteModel {
+
+    WriteModel() {}
+}
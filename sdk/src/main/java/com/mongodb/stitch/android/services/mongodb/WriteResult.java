@@ -0,0 +1,42 @@
+package com.mongodb.stitch.android.services.mongodb;
+
+/**
+ * A WriteResult describes the outcome of a single write operation of a bulk write.
+ */
+public class WriteResult {
+
+    private final boolean _attempted;
+    private final Exception _exception;
+
+    /**
+     * @param attempted Whether or not the operation was sent.
+     * @param exception The reason the operation failed, or null if it did not.
+     */
+    WriteResult(final boolean attempted, final Exception exception) {
+        _attempted = attempted;
+        _exception = exception;
+    }
+
+    /**
+     * @return Whether or not the operation was sent. An ordered bulk write does not send the
+     * operations after one that failed.
+     */
+    public boolean wasAttempted() {
+        return _attempted;
+    }
+
+    /**
+     * @return Whether or not the operation was applied.
+     */
+    public boolean isSuccessful() {
+        return _attempted && _exception == null;
+    }
+
+    /**
+     * @return The reason the operation failed, or null if it was applied or not attempted.
+     * Operations that were sent in the same request share the same failure.
+     */
+    public Exception getException() {
+        return _exception;
+    }
+}